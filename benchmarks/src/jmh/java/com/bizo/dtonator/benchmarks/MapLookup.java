@@ -0,0 +1,34 @@
+package com.bizo.dtonator.benchmarks;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.bizo.dtonator.DomainObjectLookup;
+
+/** Looks up domain objects from a map, so {@code fromDto} benchmarks measure the mapping and not a database. */
+class MapLookup implements DomainObjectLookup {
+
+  private final Map<Class<?>, Map<Long, Object>> objects = new HashMap<Class<?>, Map<Long, Object>>();
+
+  void store(final Long id, final Object instance) {
+    for (Class<?> c = instance.getClass(); c != Object.class; c = c.getSuperclass()) {
+      Map<Long, Object> byId = objects.get(c);
+      if (byId == null) {
+        byId = new HashMap<Long, Object>();
+        objects.put(c, byId);
+      }
+      byId.put(id, instance);
+    }
+  }
+
+  @Override
+  public <T> T lookup(final Class<T> type, final Long id) {
+    final Map<Long, Object> byId = objects.get(type);
+    final Object instance = byId == null ? null : byId.get(id);
+    if (instance == null) {
+      throw new IllegalStateException("Instance not found " + type + "#" + id);
+    }
+    return type.cast(instance);
+  }
+
+}
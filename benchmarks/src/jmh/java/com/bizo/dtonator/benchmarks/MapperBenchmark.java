@@ -0,0 +1,171 @@
+package com.bizo.dtonator.benchmarks;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.bizo.dtonator.client.model.EmployeeTslModel;
+import com.bizo.dtonator.client.model.EmployeeWithTypedAccountsModel;
+import com.bizo.dtonator.domain.Account;
+import com.bizo.dtonator.domain.BlueHueAccount;
+import com.bizo.dtonator.domain.Dollars;
+import com.bizo.dtonator.domain.Employee;
+import com.bizo.dtonator.domain.EmployeeAccount;
+import com.bizo.dtonator.domain.EmployeeType;
+import com.bizo.dtonator.domain.EmployeeWithTypedAccounts;
+import com.bizo.dtonator.domain.Employer;
+import com.bizo.dtonator.domain.GreenHueAccount;
+import com.bizo.dtonator.domain.RedAccount;
+import com.bizo.dtonator.domain.Role;
+import com.bizo.dtonator.domain.YellowAccount;
+import com.bizo.dtonator.dtos.EmployeeDto;
+import com.bizo.dtonator.dtos.EmployeeTslDto;
+import com.bizo.dtonator.dtos.EmployeeWithTypedAccountsDto;
+import com.bizo.dtonator.mapper.DefaultDollarsMapper;
+import com.bizo.dtonator.mapper.Mapper;
+
+/**
+ * Benchmarks the generated {@code Mapper}, DTOs and Tessell models for the features domain.
+ *
+ * {@code size} is the number of accounts (and roles) on each employee, so each path is measured with empty, small and
+ * large collections. Run with {@code gradle jmh}, which also reports allocation per operation with the GC profiler.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MapperBenchmark {
+
+  @Param({ "0", "10", "100", "1000" })
+  public int size;
+
+  private final MapLookup lookup = new MapLookup();
+  private Mapper mapper;
+  private Employee employee;
+  private EmployeeWithTypedAccounts typed;
+  private EmployeeDto employeeDto;
+  private EmployeeDto employeeDtoCopy;
+  private EmployeeWithTypedAccountsDto typedDto;
+  private EmployeeTslDto tslDto;
+
+  @Setup
+  public void setup() {
+    mapper = new Mapper(lookup, null, new NameAccountMapper(), null, null, new DefaultDollarsMapper());
+
+    final Employer employer = new Employer(1L, "employer");
+    lookup.store(employer.getId(), employer);
+
+    employee = new Employee(1L, "employee");
+    employee.setWorking(true);
+    employee.setType(EmployeeType.LARGE);
+    employee.setSalary(new Dollars(100000));
+    employee.setEmployer(employer);
+    final List<EmployeeAccount> accounts = new ArrayList<EmployeeAccount>();
+    final Set<Role> roles = new HashSet<Role>();
+    for (long i = 0; i < size; i++) {
+      final EmployeeAccount account = new EmployeeAccount(i, "account" + i);
+      account.setBalance(new Dollars((int) i));
+      accounts.add(account);
+      lookup.store(i, account);
+      final Role role = new Role(i, "role" + i);
+      roles.add(role);
+      lookup.store(i, role);
+    }
+    employee.setAccounts(accounts);
+    employee.setRoles(roles);
+    lookup.store(employee.getId(), employee);
+
+    typed = new EmployeeWithTypedAccounts(1L, "typed");
+    for (long i = 0; i < size; i++) {
+      final Account account = newAccount(i);
+      typed.getAccounts().add(account);
+      lookup.store(i, account);
+    }
+    lookup.store(typed.getId(), typed);
+
+    employeeDto = mapper.toEmployeeDto(employee);
+    employeeDtoCopy = mapper.toEmployeeDto(employee);
+    typedDto = mapper.toEmployeeWithTypedAccountsDto(typed);
+    tslDto = mapper.toEmployeeTslDto(employee);
+  }
+
+  @Benchmark
+  public EmployeeDto toEmployeeDto() {
+    return mapper.toEmployeeDto(employee);
+  }
+
+  @Benchmark
+  public EmployeeWithTypedAccountsDto toEmployeeWithTypedAccountsDto() {
+    return mapper.toEmployeeWithTypedAccountsDto(typed);
+  }
+
+  @Benchmark
+  public Employee fromEmployeeDto() {
+    return mapper.fromDto(employeeDto);
+  }
+
+  @Benchmark
+  public EmployeeWithTypedAccounts fromEmployeeWithTypedAccountsDto() {
+    return mapper.fromDto(typedDto);
+  }
+
+  @Benchmark
+  public EmployeeDto copyOfEmployeeDto() {
+    return EmployeeDto.copyOf(employeeDto);
+  }
+
+  @Benchmark
+  public EmployeeWithTypedAccountsDto copyOfEmployeeWithTypedAccountsDto() {
+    return EmployeeWithTypedAccountsDto.copyOf(typedDto);
+  }
+
+  @Benchmark
+  public void equalsAndHashCode(final Blackhole bh) {
+    bh.consume(employeeDto.equals(employeeDtoCopy));
+    bh.consume(employeeDto.hashCode());
+  }
+
+  @Benchmark
+  public EmployeeTslModel newEmployeeTslModel() {
+    return new EmployeeTslModel(tslDto);
+  }
+
+  @Benchmark
+  public void newEmployeeWithTypedAccountsModel(final Blackhole bh) {
+    final EmployeeWithTypedAccountsModel model = new EmployeeWithTypedAccountsModel(typedDto);
+    // the child models are created lazily, so include them
+    bh.consume(model.accountModels().get());
+  }
+
+  /** @return a mix of the account subclasses, so the mapper's dispatch on type is exercised */
+  private static Account newAccount(final long id) {
+    switch ((int) (id % 4)) {
+      case 0:
+        return new RedAccount(id, "red" + id, true);
+      case 1:
+        return new YellowAccount(id, "yellow" + id, false);
+      case 2:
+        return new BlueHueAccount(id, "blue" + id, true, false);
+      default:
+        return new GreenHueAccount(id, "green" + id, true, "oof", (int) id);
+    }
+  }
+
+}
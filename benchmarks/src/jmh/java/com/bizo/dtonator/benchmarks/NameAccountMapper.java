@@ -0,0 +1,20 @@
+package com.bizo.dtonator.benchmarks;
+
+import com.bizo.dtonator.domain.Account;
+import com.bizo.dtonator.mapper.AccountDtoMapper;
+import com.bizo.dtonator.mapper.Mapper;
+
+/** The {@code AccountDto.name} mapping that the features config forces to be hand-written. */
+class NameAccountMapper implements AccountDtoMapper {
+
+  @Override
+  public String getName(final Mapper m, final Account account) {
+    return account.getName();
+  }
+
+  @Override
+  public void setName(final Mapper m, final Account account, final String name) {
+    account.setName(name);
+  }
+
+}
@@ -0,0 +1,202 @@
+package com.bizo.dtonator.benchmarks;
+
+import static joist.util.Copy.list;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import org.yaml.snakeyaml.Yaml;
+
+import com.bizo.dtonator.Dtonator;
+import com.bizo.dtonator.config.RootConfig;
+import com.bizo.dtonator.properties.CachingTypeOracle;
+import com.bizo.dtonator.properties.ReflectionTypeOracle;
+
+/**
+ * Runs dtonator against {@link SyntheticModel}s of increasing size, to catch generator costs that grow faster than
+ * the number of DTOs.
+ *
+ * For each size, reports the {@code Dtonator.run} time (including parsing the YAML), the peak heap, the size of the
+ * output, and how long {@code javac} takes to compile the output. The per-DTO columns should stay flat as the sizes
+ * grow; if they climb, something is quadratic.
+ *
+ * Usage: {@code GeneratorScaleBenchmark [dtos...]}, e.g. {@code 250 1000 4000}.
+ */
+public class GeneratorScaleBenchmark {
+
+  private static final int depth = 5;
+  private static final int genericsEvery = 10;
+  private static final File root = new File("build/scale");
+
+  public static void main(final String[] args) throws Exception {
+    final List<Integer> sizes = list();
+    for (final String arg : args) {
+      sizes.add(Integer.valueOf(arg));
+    }
+    if (sizes.isEmpty()) {
+      sizes.addAll(list(250, 500, 1000, 2000, 4000));
+    }
+
+    // load and JIT the generator before measuring
+    measure(50);
+
+    System.out.println(String.format(Locale.ROOT, "%8s %10s %10s %12s %8s %10s %12s %10s %10s", //
+      "dtos",
+      "run ms",
+      "ms/dto",
+      "peak heap mb",
+      "files",
+      "output kb",
+      "mapper kb",
+      "javac ms",
+      "javac/dto"));
+    for (final int size : sizes) {
+      final Result r = measure(size);
+      System.out.println(String.format(Locale.ROOT, "%8d %10d %10.3f %12.1f %8d %10d %12d %10d %10.3f", //
+        r.dtos,
+        r.runMillis,
+        r.runMillis / (double) r.dtos,
+        r.peakHeapBytes / (1024.0 * 1024.0),
+        r.files,
+        r.outputBytes / 1024,
+        r.mapperBytes / 1024,
+        r.javacMillis,
+        r.javacMillis / (double) r.dtos));
+    }
+  }
+
+  private static class Result {
+    private int dtos;
+    private long runMillis;
+    private long peakHeapBytes;
+    private int files;
+    private long outputBytes;
+    private long mapperBytes;
+    private long javacMillis;
+  }
+
+  private static Result measure(final int entities) throws Exception {
+    final File dir = new File(root, String.valueOf(entities));
+    delete(dir);
+    final File domainSource = new File(dir, "domain-src");
+    final File domainClasses = new File(dir, "domain-classes");
+    final File output = new File(dir, "gen-java-src");
+    final File outputClasses = new File(dir, "gen-classes");
+    final File configFile = new File(dir, "dtonator.yaml");
+
+    final SyntheticModel model = new SyntheticModel(entities, depth, genericsEvery);
+    model.writeDomain(domainSource);
+    compile(domainSource, domainClasses, System.getProperty("java.class.path"));
+    final Map<String, Object> config = model.newConfig(output.getPath(), new File(dir, "src").getPath());
+    Files.write(configFile.toPath(), new Yaml().dump(config).getBytes("UTF-8"));
+
+    final Result r = new Result();
+    r.dtos = model.getDtoCount();
+    try (URLClassLoader loader = new URLClassLoader(new URL[] { domainClasses.toURI().toURL() }, Dtonator.class.getClassLoader())) {
+      System.gc();
+      resetPeakHeap();
+      final PrintStream stdout = System.out;
+      // the per-dto "Generating" lines would swamp the results
+      System.setOut(new PrintStream(new OutputStream() {
+        @Override
+        public void write(final int b) {
+        }
+      }));
+      final long start = System.nanoTime();
+      try {
+        final Object yaml = new Yaml().load(new String(Files.readAllBytes(configFile.toPath()), "UTF-8"));
+        new Dtonator(new RootConfig(new CachingTypeOracle(new ReflectionTypeOracle(loader)), yaml), loader).run();
+      } finally {
+        System.setOut(stdout);
+      }
+      r.runMillis = (System.nanoTime() - start) / 1000000;
+      r.peakHeapBytes = peakHeap();
+    }
+
+    for (final File file : javaFiles(output)) {
+      r.files++;
+      r.outputBytes += file.length();
+      if (file.getName().equals("Mapper.java")) {
+        r.mapperBytes = file.length();
+      }
+    }
+
+    final long start = System.nanoTime();
+    compile(output, outputClasses, domainClasses.getPath() + File.pathSeparator + System.getProperty("java.class.path"));
+    r.javacMillis = (System.nanoTime() - start) / 1000000;
+    return r;
+  }
+
+  private static void compile(final File sourceDirectory, final File classDirectory, final String classpath) throws IOException {
+    classDirectory.mkdirs();
+    final JavaCompiler javac = ToolProvider.getSystemJavaCompiler();
+    try (StandardJavaFileManager files = javac.getStandardFileManager(null, null, null)) {
+      final Iterable<? extends JavaFileObject> sources = files.getJavaFileObjectsFromFiles(javaFiles(sourceDirectory));
+      final List<String> options = list("-proc:none", "-nowarn", "-d", classDirectory.getPath(), "-classpath", classpath);
+      if (!javac.getTask(null, files, null, options, null, sources).call()) {
+        throw new IllegalStateException("Could not compile " + sourceDirectory);
+      }
+    }
+  }
+
+  private static void resetPeakHeap() {
+    for (final MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP) {
+        pool.resetPeakUsage();
+      }
+    }
+  }
+
+  /** @return the sum of the heap pools' peaks, which over-estimates the peak as they may not peak together */
+  private static long peakHeap() {
+    long peak = 0;
+    for (final MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP) {
+        peak += pool.getPeakUsage().getUsed();
+      }
+    }
+    return peak;
+  }
+
+  private static List<File> javaFiles(final File directory) {
+    final List<File> files = list();
+    final File[] children = directory.listFiles();
+    if (children != null) {
+      for (final File child : children) {
+        if (child.isDirectory()) {
+          files.addAll(javaFiles(child));
+        } else if (child.getName().endsWith(".java")) {
+          files.add(child);
+        }
+      }
+    }
+    return files;
+  }
+
+  private static void delete(final File file) {
+    final File[] children = file.listFiles();
+    if (children != null) {
+      for (final File child : children) {
+        delete(child);
+      }
+    }
+    file.delete();
+  }
+
+}
@@ -0,0 +1,183 @@
+package com.bizo.dtonator.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Writes a synthetic domain model, and the dtonator config for it, with any number of DTOs.
+ *
+ * The model is a number of inheritance chains of {@code depth} entities each. Each chain's root entity has an id, an
+ * enum, and a list of the next chain's root entities. Every {@code genericsEvery}th chain also gets a generic manager
+ * class and a subclass that binds its type parameters, like the features project's {@code AbstractManager} and
+ * {@code GreenManager}.
+ */
+class SyntheticModel {
+
+  static final String domainPackage = "com.synthetic.domain";
+  private final int chains;
+  private final int depth;
+  private final int genericsEvery;
+
+  /**
+   * @param entities the number of entities, and so entity DTOs
+   * @param depth the length of each {@code extends} chain
+   * @param genericsEvery how many chains to add a generic manager to, e.g. 10 for every 10th chain
+   */
+  SyntheticModel(final int entities, final int depth, final int genericsEvery) {
+    this.depth = Math.max(2, depth);
+    chains = Math.max(1, entities / this.depth);
+    this.genericsEvery = genericsEvery;
+  }
+
+  /** @return the number of DTOs in the config, including enums and managers */
+  int getDtoCount() {
+    return newConfig("", "").size() - 1;
+  }
+
+  void writeDomain(final File directory) throws IOException {
+    final File packageDirectory = new File(directory, domainPackage.replace('.', File.separatorChar));
+    packageDirectory.mkdirs();
+    for (int c = 0; c < chains; c++) {
+      write(packageDirectory, kind(c), "package " + domainPackage + ";\n\npublic enum " + kind(c) + " {\n  A, B, C;\n}\n");
+      for (int d = 0; d < depth; d++) {
+        write(packageDirectory, entity(c, d), entitySource(c, d));
+      }
+      if (hasManager(c)) {
+        write(packageDirectory, manager(c), managerSource(c));
+        write(packageDirectory, subManager(c), subManagerSource(c));
+      }
+    }
+  }
+
+  /** @return the YAML root for the model, with the generated code going to the given directories */
+  Map<String, Object> newConfig(final String outputDirectory, final String sourceDirectory) {
+    final Map<String, Object> root = new LinkedHashMap<String, Object>();
+    final Map<String, Object> config = new LinkedHashMap<String, Object>();
+    config.put("dtoPackage", "com.synthetic.dtos");
+    config.put("domainPackage", domainPackage);
+    config.put("mapperPackage", "com.synthetic.mapper");
+    config.put("outputDirectory", outputDirectory);
+    config.put("sourceDirectory", sourceDirectory);
+    config.put("indent", "two-space");
+    root.put("config", config);
+    for (int c = 0; c < chains; c++) {
+      root.put(kind(c), dto(kind(c), null, null));
+      root.put(entity(c, 0) + "Dto", dto(entity(c, 0), null, "*"));
+      for (int d = 1; d < depth; d++) {
+        root.put(entity(c, d) + "Dto", dto(entity(c, d), entity(c, d - 1) + "Dto", "*"));
+      }
+      if (hasManager(c)) {
+        final String bound = entity(c, 1) + "Dto";
+        root.put(manager(c) + "Dto", dto(manager(c), null, "account, *"));
+        root.put(subManager(c) + "Dto", dto(subManager(c), manager(c) + "Dto<" + bound + "," + bound + ">", "account, managedAccounts, *"));
+      }
+    }
+    return root;
+  }
+
+  private String entitySource(final int c, final int d) {
+    final StringBuilder sb = new StringBuilder();
+    sb.append("package ").append(domainPackage).append(";\n\n");
+    sb.append("public class ").append(entity(c, d));
+    if (d > 0) {
+      sb.append(" extends ").append(entity(c, d - 1));
+    }
+    sb.append(" {\n");
+    if (d == 0) {
+      property(sb, "Long", "id");
+      property(sb, "String", "name");
+      property(sb, kind(c), "kind");
+      property(sb, "java.util.List<" + entity((c + 1) % chains, 0) + ">", "related");
+    } else {
+      property(sb, "Integer", "value" + d);
+      property(sb, "String", "label" + d);
+      property(sb, "boolean", "flag" + d);
+    }
+    sb.append("}\n");
+    return sb.toString();
+  }
+
+  private String managerSource(final int c) {
+    final String bound = entity(c, 0);
+    final StringBuilder sb = new StringBuilder();
+    sb.append("package ").append(domainPackage).append(";\n\n");
+    sb.append("public abstract class ").append(manager(c));
+    sb.append("<T extends ").append(bound).append(", V extends ").append(bound).append("> {\n");
+    property(sb, "Long", "id");
+    property(sb, "String", "name");
+    property(sb, "T", "account");
+    property(sb, "int", "employees");
+    property(sb, "java.util.List<V>", "managedAccounts");
+    sb.append("}\n");
+    return sb.toString();
+  }
+
+  private String subManagerSource(final int c) {
+    final String bound = entity(c, 1);
+    final String list = "java.util.List<" + bound + ">";
+    final StringBuilder sb = new StringBuilder();
+    sb.append("package ").append(domainPackage).append(";\n\n");
+    sb.append("public class ").append(subManager(c));
+    sb.append(" extends ").append(manager(c)).append("<").append(bound).append(", ").append(bound).append("> {\n");
+    property(sb, "String", "location");
+    sb.append("  public ").append(list).append(" getManagedAccounts() {\n");
+    sb.append("    return super.getManagedAccounts();\n");
+    sb.append("  }\n");
+    sb.append("  public void setManagedAccounts(").append(list).append(" managedAccounts) {\n");
+    sb.append("    super.setManagedAccounts(managedAccounts);\n");
+    sb.append("  }\n");
+    sb.append("}\n");
+    return sb.toString();
+  }
+
+  private boolean hasManager(final int c) {
+    return genericsEvery > 0 && c % genericsEvery == 0;
+  }
+
+  private static Map<String, Object> dto(final String domain, final String baseDto, final String properties) {
+    final Map<String, Object> dto = new LinkedHashMap<String, Object>();
+    dto.put("domain", domain);
+    if (baseDto != null) {
+      dto.put("extends", baseDto);
+    }
+    if (properties != null) {
+      dto.put("properties", properties);
+    }
+    return dto;
+  }
+
+  private static void property(final StringBuilder sb, final String type, final String name) {
+    final String capitalized = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+    sb.append("  private ").append(type).append(" ").append(name).append(";\n");
+    sb.append("  public ").append(type).append(" ").append("boolean".equals(type) ? "is" : "get").append(capitalized).append("() {\n");
+    sb.append("    return ").append(name).append(";\n");
+    sb.append("  }\n");
+    sb.append("  public void set").append(capitalized).append("(").append(type).append(" ").append(name).append(") {\n");
+    sb.append("    this.").append(name).append(" = ").append(name).append(";\n");
+    sb.append("  }\n");
+  }
+
+  private static void write(final File directory, final String className, final String source) throws IOException {
+    Files.write(new File(directory, className + ".java").toPath(), source.getBytes("UTF-8"));
+  }
+
+  private static String entity(final int c, final int d) {
+    return "Entity" + c + "Level" + d;
+  }
+
+  private static String kind(final int c) {
+    return "Kind" + c;
+  }
+
+  private static String manager(final int c) {
+    return "Manager" + c;
+  }
+
+  private static String subManager(final int c) {
+    return "SubManager" + c;
+  }
+
+}
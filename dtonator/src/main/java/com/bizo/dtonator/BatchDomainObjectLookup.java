@@ -0,0 +1,21 @@
+package com.bizo.dtonator;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * A {@link DomainObjectLookup} that can also look up many entities at once.
+ *
+ * When the lookup implements this, the generated {@code Mapper} collects the ids in an incoming DTO graph (or list of
+ * DTOs) up front, and looks them up with one {@link #lookupAll} call per type, instead of one {@code lookup} call per
+ * id.
+ */
+public interface BatchDomainObjectLookup extends DomainObjectLookup {
+
+  /**
+   * @return the entities of {@code type} for {@code ids}, by id; ids that aren't in the map are looked up again with
+   *         {@link #lookup}, so it can fail or return {@code null} as it usually would
+   */
+  <T> Map<Long, T> lookupAll(final Class<T> type, final Collection<Long> ids);
+
+}
@@ -0,0 +1,411 @@
+package com.bizo.dtonator;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+
+/**
+ * Support for the generated DTOs' {@code writeTo(DataOutput)}/{@code readFrom(DataInput)} methods, with the
+ * {@code binaryCodec} setting.
+ *
+ * Each DTO is written as a record of:
+ *
+ * <ul>
+ * <li>the length of the rest of the record, so readers can skip records they don't know</li>
+ * <li>a tag, the hash of the DTO's name, if it's part of an {@code extends} hierarchy, so readers know which subclass
+ * to create</li>
+ * <li>each non-null property's key and value, with varints for numbers</li>
+ * <li>a {@code 0} key, for the end of the record</li>
+ * </ul>
+ *
+ * A property's key is the hash of its name and type, with its wire type in the low 3 bits, which says how to skip its
+ * value. Readers match properties by key, and skip the values of keys they don't know, so writers can add, remove,
+ * reorder, rename or retype properties, and readers see the ones they share, with the rest as absent.
+ */
+public class BinaryCodec {
+
+  /** A varint, for longs, ints, shorts and chars. */
+  public static final int VARINT = 1;
+  /** A single byte, for bytes and booleans. */
+  public static final int FIXED8 = 2;
+  /** Four bytes, for floats. */
+  public static final int FIXED32 = 3;
+  /** Eight bytes, for doubles. */
+  public static final int FIXED64 = 4;
+  /** A varint length and that many bytes, for strings, enums and Java-serialized values. */
+  public static final int BYTES = 5;
+  /** A four byte length and that many bytes, for nested records and collections. */
+  public static final int SIZED = 6;
+
+  private static final Charset utf8 = Charset.forName("UTF-8");
+
+  /** Writes/reads values of one type, e.g. for the elements of lists. */
+  public interface Codec<T> {
+    void write(DataOutput out, T value) throws IOException;
+
+    T read(DataInput in) throws IOException;
+  }
+
+  public static final Codec<String> STRING = new Codec<String>() {
+    @Override
+    public void write(final DataOutput out, final String value) throws IOException {
+      writeString(out, value);
+    }
+
+    @Override
+    public String read(final DataInput in) throws IOException {
+      return readString(in);
+    }
+  };
+
+  public static final Codec<Long> LONG = new Codec<Long>() {
+    @Override
+    public void write(final DataOutput out, final Long value) throws IOException {
+      writeVarLong(out, value);
+    }
+
+    @Override
+    public Long read(final DataInput in) throws IOException {
+      return readVarLong(in);
+    }
+  };
+
+  public static final Codec<Integer> INTEGER = new Codec<Integer>() {
+    @Override
+    public void write(final DataOutput out, final Integer value) throws IOException {
+      writeVarInt(out, value);
+    }
+
+    @Override
+    public Integer read(final DataInput in) throws IOException {
+      return readVarInt(in);
+    }
+  };
+
+  public static final Codec<Short> SHORT = new Codec<Short>() {
+    @Override
+    public void write(final DataOutput out, final Short value) throws IOException {
+      writeVarInt(out, value);
+    }
+
+    @Override
+    public Short read(final DataInput in) throws IOException {
+      return (short) readVarInt(in);
+    }
+  };
+
+  public static final Codec<Byte> BYTE = new Codec<Byte>() {
+    @Override
+    public void write(final DataOutput out, final Byte value) throws IOException {
+      out.writeByte(value);
+    }
+
+    @Override
+    public Byte read(final DataInput in) throws IOException {
+      return in.readByte();
+    }
+  };
+
+  public static final Codec<Character> CHARACTER = new Codec<Character>() {
+    @Override
+    public void write(final DataOutput out, final Character value) throws IOException {
+      writeVarInt(out, value);
+    }
+
+    @Override
+    public Character read(final DataInput in) throws IOException {
+      return (char) readVarInt(in);
+    }
+  };
+
+  public static final Codec<Boolean> BOOLEAN = new Codec<Boolean>() {
+    @Override
+    public void write(final DataOutput out, final Boolean value) throws IOException {
+      out.writeBoolean(value);
+    }
+
+    @Override
+    public Boolean read(final DataInput in) throws IOException {
+      return in.readBoolean();
+    }
+  };
+
+  public static final Codec<Double> DOUBLE = new Codec<Double>() {
+    @Override
+    public void write(final DataOutput out, final Double value) throws IOException {
+      out.writeDouble(value);
+    }
+
+    @Override
+    public Double read(final DataInput in) throws IOException {
+      return in.readDouble();
+    }
+  };
+
+  public static final Codec<Float> FLOAT = new Codec<Float>() {
+    @Override
+    public void write(final DataOutput out, final Float value) throws IOException {
+      out.writeFloat(value);
+    }
+
+    @Override
+    public Float read(final DataInput in) throws IOException {
+      return in.readFloat();
+    }
+  };
+
+  private static final Codec<Object> SERIALIZED = new Codec<Object>() {
+    @Override
+    public void write(final DataOutput out, final Object value) throws IOException {
+      writeSerialized(out, value);
+    }
+
+    @Override
+    public Object read(final DataInput in) throws IOException {
+      return readSerialized(in);
+    }
+  };
+
+  /** @return a codec that writes enums by name, so reordering the constants doesn't break existing data */
+  public static <E extends Enum<E>> Codec<E> enumCodec(final Class<E> type) {
+    return new Codec<E>() {
+      @Override
+      public void write(final DataOutput out, final E value) throws IOException {
+        writeString(out, value.name());
+      }
+
+      @Override
+      public E read(final DataInput in) throws IOException {
+        return Enum.valueOf(type, readString(in));
+      }
+    };
+  }
+
+  /** @return a codec for types we don't know, e.g. value types, that uses Java serialization */
+  @SuppressWarnings("unchecked")
+  public static <T> Codec<T> serialized() {
+    return (Codec<T>) SERIALIZED;
+  }
+
+  /** @return {@code out} if it's already a DTO's buffer, otherwise a new buffer, for a top-level DTO */
+  public static Buffer buffer(final DataOutput out) {
+    return out instanceof Buffer ? (Buffer) out : new Buffer();
+  }
+
+  /** @return the key for a property, which is never {@code 0}, as that ends records */
+  public static int key(final String name, final String type, final int wireType) {
+    return (name + " " + type).hashCode() & ~7 | wireType;
+  }
+
+  /** Skips the value of a property that we don't know, using the wire type in its {@code key}. */
+  public static void skip(final DataInput in, final int key) throws IOException {
+    switch (key & 7) {
+      case VARINT:
+        readUnsignedVarLong(in);
+        break;
+      case FIXED8:
+        in.readByte();
+        break;
+      case FIXED32:
+        in.readInt();
+        break;
+      case FIXED64:
+        in.readLong();
+        break;
+      case BYTES:
+        in.readFully(new byte[(int) readUnsignedVarLong(in)]);
+        break;
+      case SIZED:
+        in.readFully(new byte[in.readInt()]);
+        break;
+      default:
+        throw new IOException("Unknown wire type in key " + key);
+    }
+  }
+
+  /** Writes {@code value} zig-zag encoded, so small negative numbers are small too. */
+  public static void writeVarInt(final DataOutput out, final int value) throws IOException {
+    writeUnsignedVarLong(out, ((value << 1) ^ (value >> 31)) & 0xffffffffL);
+  }
+
+  public static int readVarInt(final DataInput in) throws IOException {
+    final int v = (int) readUnsignedVarLong(in);
+    return (v >>> 1) ^ -(v & 1);
+  }
+
+  /** Writes {@code value} zig-zag encoded, so small negative numbers are small too. */
+  public static void writeVarLong(final DataOutput out, final long value) throws IOException {
+    writeUnsignedVarLong(out, (value << 1) ^ (value >> 63));
+  }
+
+  public static long readVarLong(final DataInput in) throws IOException {
+    final long v = readUnsignedVarLong(in);
+    return (v >>> 1) ^ -(v & 1);
+  }
+
+  /** Writes {@code value} 7 bits at a time, with the high bit set on all but the last byte. */
+  public static void writeUnsignedVarLong(final DataOutput out, long value) throws IOException {
+    while ((value & ~0x7fL) != 0) {
+      out.writeByte((int) ((value & 0x7f) | 0x80));
+      value >>>= 7;
+    }
+    out.writeByte((int) value);
+  }
+
+  public static long readUnsignedVarLong(final DataInput in) throws IOException {
+    long value = 0;
+    for (int shift = 0; shift < 64; shift += 7) {
+      final byte b = in.readByte();
+      value |= (long) (b & 0x7f) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new IOException("Malformed varint");
+  }
+
+  /** Writes {@code value} as its UTF-8 length and bytes, as {@link DataOutput#writeUTF} is limited to 64k. */
+  public static void writeString(final DataOutput out, final String value) throws IOException {
+    final byte[] bytes = value.getBytes(utf8);
+    writeUnsignedVarLong(out, bytes.length);
+    out.write(bytes);
+  }
+
+  public static String readString(final DataInput in) throws IOException {
+    final byte[] bytes = new byte[(int) readUnsignedVarLong(in)];
+    in.readFully(bytes);
+    return new String(bytes, utf8);
+  }
+
+  /** Writes {@code values} as its size, a bit per element of whether it's non-null, and the non-null elements. */
+  public static <T> void writeCollection(final DataOutput out, final Collection<T> values, final Codec<? super T> codec)
+    throws IOException {
+    writeUnsignedVarLong(out, values.size());
+    final byte[] present = new byte[(values.size() + 7) / 8];
+    int i = 0;
+    for (final T value : values) {
+      if (value != null) {
+        present[i / 8] |= 1 << (i % 8);
+      }
+      i++;
+    }
+    out.write(present);
+    for (final T value : values) {
+      if (value != null) {
+        codec.write(out, value);
+      }
+    }
+  }
+
+  public static <T> ArrayList<T> readList(final DataInput in, final Codec<T> codec) throws IOException {
+    final int size = (int) readUnsignedVarLong(in);
+    return readElements(in, codec, size, new ArrayList<T>(size));
+  }
+
+  public static <T> HashSet<T> readSet(final DataInput in, final Codec<T> codec) throws IOException {
+    final int size = (int) readUnsignedVarLong(in);
+    return readElements(in, codec, size, new HashSet<T>(size * 4 / 3 + 1));
+  }
+
+  /** Writes {@code values} after its length, so readers can skip it, see {@link #SIZED}. */
+  public static <T> void writeSizedCollection(final Buffer b, final Collection<T> values, final Codec<? super T> codec)
+    throws IOException {
+    final int mark = b.mark();
+    writeCollection(b, values, codec);
+    b.end(mark, b);
+  }
+
+  public static <T> ArrayList<T> readSizedList(final DataInput in, final Codec<T> codec) throws IOException {
+    in.readInt();
+    return readList(in, codec);
+  }
+
+  public static <T> HashSet<T> readSizedSet(final DataInput in, final Codec<T> codec) throws IOException {
+    in.readInt();
+    return readSet(in, codec);
+  }
+
+  private static <T, C extends Collection<T>> C readElements(final DataInput in, final Codec<T> codec, final int size, final C into)
+    throws IOException {
+    final byte[] present = new byte[(size + 7) / 8];
+    in.readFully(present);
+    for (int i = 0; i < size; i++) {
+      into.add((present[i / 8] & (1 << (i % 8))) != 0 ? codec.read(in) : null);
+    }
+    return into;
+  }
+
+  /** Writes {@code value} with Java serialization, as its length and bytes. */
+  public static void writeSerialized(final DataOutput out, final Object value) throws IOException {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    final ObjectOutputStream oos = new ObjectOutputStream(bytes);
+    oos.writeObject(value);
+    oos.close();
+    writeUnsignedVarLong(out, bytes.size());
+    out.write(bytes.toByteArray());
+  }
+
+  public static Object readSerialized(final DataInput in) throws IOException {
+    final byte[] bytes = new byte[(int) readUnsignedVarLong(in)];
+    in.readFully(bytes);
+    final ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes));
+    try {
+      return ois.readObject();
+    } catch (final ClassNotFoundException cnfe) {
+      throw new IOException(cnfe);
+    } finally {
+      ois.close();
+    }
+  }
+
+  /**
+   * The output for a DTO and its nested DTOs, so each record's (and collection's) length can be filled in once its
+   * values are written, without copying the nested records.
+   */
+  public static class Buffer extends DataOutputStream {
+
+    private Buffer() {
+      super(new Bytes());
+    }
+
+    /** Writes a placeholder for the length of the values that follow, and returns its position for {@link #end}. */
+    public int mark() throws IOException {
+      final int position = size();
+      writeInt(0);
+      return position;
+    }
+
+    /** Fills in the length from {@link #mark}, and if this is the top-level DTO's buffer, copies it to {@code out}. */
+    public void end(final int mark, final DataOutput out) throws IOException {
+      final Bytes bytes = (Bytes) this.out;
+      bytes.putInt(mark, size() - mark - 4);
+      if (out != this) {
+        bytes.writeTo(out);
+      }
+    }
+  }
+
+  /** Exposes {@link ByteArrayOutputStream}'s buffer, to fill in lengths and copy to {@link DataOutput}s. */
+  private static class Bytes extends ByteArrayOutputStream {
+    private void putInt(final int position, final int value) {
+      buf[position] = (byte) (value >>> 24);
+      buf[position + 1] = (byte) (value >>> 16);
+      buf[position + 2] = (byte) (value >>> 8);
+      buf[position + 3] = (byte) value;
+    }
+
+    private void writeTo(final DataOutput out) throws IOException {
+      out.write(buf, 0, count);
+    }
+  }
+
+}
@@ -0,0 +1,248 @@
+package com.bizo.dtonator;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.AbstractList;
+
+/**
+ * Support for the generated {@code XxxDtoView} flyweights, with the {@code bufferView} setting, which read a DTO's
+ * properties straight out of a {@link ByteBuffer} as they're called.
+ *
+ * Each DTO is encoded as a record of:
+ *
+ * <ul>
+ * <li>a tag, the hash of the DTO's name, if it's part of an {@code extends} hierarchy, so views can tell the subclass</li>
+ * <li>a fixed-size slot per property, with base classes' properties first, so base views can read subclasses' records:
+ * primitives are stored in place (with a presence byte first if they're boxed), enums as their ordinal, and everything
+ * else as the position of its value, or -1 for {@code null}</li>
+ * <li>the values of the variable-sized properties, e.g. strings as their UTF-8 length and bytes, nested DTOs as their
+ * records, and lists as their size and a table of their elements' positions, followed by the elements</li>
+ * </ul>
+ *
+ * Positions are absolute within the buffer, so a view is just the buffer and its record's position, and nothing is
+ * decoded until it's read. As enums are stored by ordinal, buffers are meant to be read by the same build that wrote
+ * them, e.g. for caching, not for long-term storage.
+ */
+public class BufferViews {
+
+  private static final Charset utf8 = Charset.forName("UTF-8");
+
+  /** Reads the string written by {@link Encoder#string(String)} at {@code at}. */
+  public static String getString(final ByteBuffer b, final int at) {
+    final int length = b.getInt(at);
+    if (b.hasArray()) {
+      return new String(b.array(), b.arrayOffset() + at + 4, length, utf8);
+    }
+    final ByteBuffer bytes = b.duplicate();
+    bytes.position(at + 4);
+    bytes.limit(at + 4 + length);
+    return utf8.decode(bytes).toString();
+  }
+
+  /** Reads the object written by {@link Encoder#serialized(Object)} at {@code at}. */
+  public static Object getSerialized(final ByteBuffer b, final int at) {
+    final byte[] bytes = new byte[b.getInt(at)];
+    final ByteBuffer source = b.duplicate();
+    source.position(at + 4);
+    source.get(bytes);
+    try {
+      final ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes));
+      try {
+        return ois.readObject();
+      } finally {
+        ois.close();
+      }
+    } catch (final IOException io) {
+      throw new IllegalStateException(io);
+    } catch (final ClassNotFoundException cnfe) {
+      throw new IllegalStateException(cnfe);
+    }
+  }
+
+  /** A read-only view of a list written by {@link Encoder#list(int)}, which reads each element as it's called. */
+  public static abstract class ViewList<T> extends AbstractList<T> {
+    private final ByteBuffer b;
+    private final int at;
+    private final int size;
+
+    protected ViewList(final ByteBuffer b, final int at) {
+      this.b = b;
+      this.at = at;
+      size = b.getInt(at);
+    }
+
+    @Override
+    public T get(final int index) {
+      if (index < 0 || index >= size) {
+        throw new IndexOutOfBoundsException(index + " of " + size);
+      }
+      final int element = b.getInt(at + 4 + 4 * index);
+      return element < 0 ? null : element(b, element);
+    }
+
+    @Override
+    public int size() {
+      return size;
+    }
+
+    /** @return the non-null element at {@code at} */
+    protected abstract T element(ByteBuffer b, int at);
+  }
+
+  /** Writes records to a growing heap buffer, for the generated {@code XxxDtoView.encode} methods. */
+  public static class Encoder {
+    private ByteBuffer buffer = ByteBuffer.allocate(1024);
+
+    /** @return the position of {@code bytes} new zeroed bytes, e.g. for a record's slots */
+    public int reserve(final int bytes) {
+      final int at = buffer.position();
+      if (buffer.remaining() < bytes) {
+        final ByteBuffer grown = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, at + bytes));
+        buffer.flip();
+        grown.put(buffer);
+        buffer = grown;
+      }
+      buffer.position(at + bytes);
+      return at;
+    }
+
+    public void putLong(final int at, final long value) {
+      buffer.putLong(at, value);
+    }
+
+    public void putInt(final int at, final int value) {
+      buffer.putInt(at, value);
+    }
+
+    public void putShort(final int at, final short value) {
+      buffer.putShort(at, value);
+    }
+
+    public void putChar(final int at, final char value) {
+      buffer.putChar(at, value);
+    }
+
+    public void putByte(final int at, final byte value) {
+      buffer.put(at, value);
+    }
+
+    public void putBoolean(final int at, final boolean value) {
+      buffer.put(at, (byte) (value ? 1 : 0));
+    }
+
+    public void putDouble(final int at, final double value) {
+      buffer.putDouble(at, value);
+    }
+
+    public void putFloat(final int at, final float value) {
+      buffer.putFloat(at, value);
+    }
+
+    /** @return the position of {@code value}, as its UTF-8 length and bytes */
+    public int string(final String value) {
+      return bytes(value.getBytes(utf8));
+    }
+
+    /** @return the position of {@code value} written with Java serialization, for types we don't know */
+    public int serialized(final Object value) {
+      final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      try {
+        final ObjectOutputStream oos = new ObjectOutputStream(bytes);
+        oos.writeObject(value);
+        oos.close();
+      } catch (final IOException io) {
+        throw new IllegalStateException(io);
+      }
+      return bytes(bytes.toByteArray());
+    }
+
+    /** @return the position of {@code value}, e.g. for an element of a list */
+    public int value(final long value) {
+      final int at = reserve(8);
+      buffer.putLong(at, value);
+      return at;
+    }
+
+    public int value(final int value) {
+      final int at = reserve(4);
+      buffer.putInt(at, value);
+      return at;
+    }
+
+    public int value(final short value) {
+      final int at = reserve(2);
+      buffer.putShort(at, value);
+      return at;
+    }
+
+    public int value(final char value) {
+      final int at = reserve(2);
+      buffer.putChar(at, value);
+      return at;
+    }
+
+    public int value(final byte value) {
+      final int at = reserve(1);
+      buffer.put(at, value);
+      return at;
+    }
+
+    public int value(final boolean value) {
+      final int at = reserve(1);
+      buffer.put(at, (byte) (value ? 1 : 0));
+      return at;
+    }
+
+    public int value(final double value) {
+      final int at = reserve(8);
+      buffer.putDouble(at, value);
+      return at;
+    }
+
+    public int value(final float value) {
+      final int at = reserve(4);
+      buffer.putFloat(at, value);
+      return at;
+    }
+
+    /** @return the position of a list of {@code size} elements, whose positions are then filled in with {@link #element} */
+    public int list(final int size) {
+      final int at = reserve(4 + 4 * size);
+      buffer.putInt(at, size);
+      return at;
+    }
+
+    /** Sets the position of the {@code index}th element of the list at {@code list}, or -1 for {@code null}. */
+    public void element(final int list, final int index, final int at) {
+      buffer.putInt(list + 4 + 4 * index, at);
+    }
+
+    /** @return a heap buffer of the records written so far */
+    public ByteBuffer toByteBuffer() {
+      return ByteBuffer.wrap(buffer.array(), 0, buffer.position()).slice();
+    }
+
+    /** @return a direct buffer of the records written so far, e.g. to cache off-heap */
+    public ByteBuffer toDirectByteBuffer() {
+      final ByteBuffer direct = ByteBuffer.allocateDirect(buffer.position());
+      direct.put(toByteBuffer());
+      direct.flip();
+      return direct;
+    }
+
+    private int bytes(final byte[] bytes) {
+      final int at = reserve(4 + bytes.length);
+      buffer.putInt(at, bytes.length);
+      final ByteBuffer values = buffer.duplicate();
+      values.position(at + 4);
+      values.put(bytes);
+      return at;
+    }
+  }
+
+}
@@ -0,0 +1,60 @@
+package com.bizo.dtonator;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * A dictionary-encoded column of strings, for the generated {@code XxxDtoBatch} classes.
+ *
+ * Each row is stored as an {@code int} code into the list of distinct values, or -1 for {@code null}, so columns with
+ * few distinct values (e.g. statuses, names of a handful of employers) store each value once.
+ */
+public class DictionaryColumn implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  private int[] codes;
+  private final ArrayList<String> dictionary = new ArrayList<String>();
+  /** The code of each value, which isn't serialized, and is rebuilt if rows are set after deserialization. */
+  private transient HashMap<String, Integer> index;
+
+  public DictionaryColumn(final int capacity) {
+    codes = new int[capacity];
+  }
+
+  public void set(final int row, final String value) {
+    if (row >= codes.length) {
+      codes = Arrays.copyOf(codes, Math.max(16, Math.max(row + 1, codes.length * 2)));
+    }
+    codes[row] = value == null ? -1 : code(value);
+  }
+
+  public String get(final int row) {
+    final int code = codes[row];
+    return code < 0 ? null : dictionary.get(code);
+  }
+
+  /** @return the number of distinct non-null values */
+  public int distinct() {
+    return dictionary.size();
+  }
+
+  private int code(final String value) {
+    if (index == null) {
+      index = new HashMap<String, Integer>();
+      for (int i = 0; i < dictionary.size(); i++) {
+        index.put(dictionary.get(i), i);
+      }
+    }
+    Integer code = index.get(value);
+    if (code == null) {
+      code = dictionary.size();
+      dictionary.add(value);
+      index.put(value, code);
+    }
+    return code;
+  }
+
+}
@@ -1,14 +1,33 @@
 package com.bizo.dtonator;
 
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.Map;
+import java.util.Set;
 
-/** Tracks new DTOs -> new domain objects so we can avoid making dups. */
+/**
+ * Tracks new DTOs -> new domain objects so we can avoid making dups.
+ *
+ * Also holds the entities that were looked up in a batch, for {@link BatchDomainObjectLookup}s, so the rest of the
+ * mapping can use them instead of looking them up one at a time.
+ *
+ * By default, the {@code Mapper} shares a context across nested {@code fromDto} calls with {@link #push()}/
+ * {@link #pop()}. With the {@code explicitContext} setting, the {@code Mapper} also has {@code fromDto} methods that
+ * take the context as a parameter, in which case callers can make their own, and {@link #reset()} it between calls.
+ */
 public class DomainObjectContext {
 
   private static final ThreadLocal<DomainObjectContext> context = new ThreadLocal<DomainObjectContext>();
-  private final Map<Object, Object> objects = new IdentityHashMap<Object, Object>();
+  // created on first use, as most mappings don't create new objects or batch lookups
+  private Map<Object, Object> objects;
+  private Set<Object> visited;
+  private Map<Class<?>, Set<Long>> wanted;
+  private Map<Class<?>, Map<Long, ?>> fetched;
   private int outstanding;
+  private boolean batched;
 
   public static DomainObjectContext push() {
     DomainObjectContext c = context.get();
@@ -27,12 +46,85 @@ public class DomainObjectContext {
     }
   }
 
+  /** Forgets the objects and lookups of the last mapping, so this context can be reused for the next one. */
+  public void reset() {
+    objects = null;
+    visited = null;
+    wanted = null;
+    fetched = null;
+    batched = false;
+  }
+
   public void store(final Object dto, final Object domain) {
+    if (objects == null) {
+      objects = new IdentityHashMap<Object, Object>();
+    }
     objects.put(dto, domain);
   }
 
   public Object get(final Object dto) {
-    return objects.get(dto);
+    return objects == null ? null : objects.get(dto);
+  }
+
+  /**
+   * @return whether the caller should collect ids for {@link #fetch}, i.e. it's the outermost mapping (or an explicit
+   *         context's first) and {@code lookup} can batch
+   */
+  public boolean startBatch(final DomainObjectLookup lookup) {
+    if (batched || outstanding > 1 || !(lookup instanceof BatchDomainObjectLookup)) {
+      return false;
+    }
+    batched = true;
+    return true;
+  }
+
+  /** @return whether {@code dto} is visited for the first time, so its ids should be collected */
+  public boolean visit(final Object dto) {
+    if (visited == null) {
+      visited = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+    }
+    return visited.add(dto);
+  }
+
+  /** Records {@code id} to be looked up by the next {@link #fetch}. */
+  public void want(final Class<?> type, final Long id) {
+    if (wanted == null) {
+      wanted = new LinkedHashMap<Class<?>, Set<Long>>();
+    }
+    Set<Long> ids = wanted.get(type);
+    if (ids == null) {
+      ids = new LinkedHashSet<Long>();
+      wanted.put(type, ids);
+    }
+    ids.add(id);
+  }
+
+  /** Looks up all of the {@link #want}ed ids, with one {@link BatchDomainObjectLookup#lookupAll} call per type. */
+  public void fetch(final DomainObjectLookup lookup) {
+    if (wanted != null) {
+      for (final Map.Entry<Class<?>, Set<Long>> e : wanted.entrySet()) {
+        fetch((BatchDomainObjectLookup) lookup, e.getKey(), e.getValue());
+      }
+    }
+    wanted = null;
+    visited = null;
+  }
+
+  /** @return the entity from the last {@link #fetch}, or from {@code lookup} if it wasn't fetched */
+  public <T> T lookup(final DomainObjectLookup lookup, final Class<T> type, final Long id) {
+    final Map<Long, ?> entities = fetched == null ? null : fetched.get(type);
+    final Object entity = entities == null ? null : entities.get(id);
+    return entity != null ? type.cast(entity) : lookup.lookup(type, id);
+  }
+
+  private <T> void fetch(final BatchDomainObjectLookup lookup, final Class<T> type, final Set<Long> ids) {
+    final Map<Long, T> entities = lookup.lookupAll(type, ids);
+    if (entities != null) {
+      if (fetched == null) {
+        fetched = new HashMap<Class<?>, Map<Long, ?>>();
+      }
+      fetched.put(type, entities);
+    }
   }
 
 }
@@ -4,58 +4,157 @@ import static com.bizo.dtonator.Names.mapperInterface;
 import static joist.sourcegen.Argument.arg;
 import static joist.util.Copy.list;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import joist.sourcegen.GClass;
-import joist.sourcegen.GDirectory;
 import joist.sourcegen.GSettings;
 
 import org.yaml.snakeyaml.Yaml;
 
+import com.bizo.dtonator.GenerationReport.Timer;
 import com.bizo.dtonator.config.DtoConfig;
-import com.bizo.dtonator.config.Prune;
 import com.bizo.dtonator.config.RootConfig;
 import com.bizo.dtonator.config.ValueTypeConfig;
+import com.bizo.dtonator.config.YamlUtils;
+import com.bizo.dtonator.properties.BytecodeTypeOracle;
+import com.bizo.dtonator.properties.CachingTypeOracle;
 import com.bizo.dtonator.properties.ReflectionTypeOracle;
+import com.bizo.dtonator.properties.TypeOracle;
 
 /**
  * Runs the dtonator code generation process.
  *
- * Loads a {@code /dtonator.yaml} file from the classpath, parses it, then generates DTOs to {@code target/gen-java-src}
- * . Both are currently hard coded.
+ * Loads a {@code /dtonator.yaml} file from the classpath, or the classpath resource passed as the first argument, parses
+ * it, then generates DTOs to {@code target/gen-java-src}, or the config's {@code outputDirectory}.
  */
 public class Dtonator {
 
-  public static void main(final String args[]) throws ClassNotFoundException {
-    final Object root = new Yaml().load(Dtonator.class.getResourceAsStream("/dtonator.yaml"));
-    new Dtonator(new RootConfig(new ReflectionTypeOracle(), root)).run();
+  public static void main(final String args[]) throws ClassNotFoundException, IOException, InterruptedException {
+    if (args.length > 0 && "--watch".equals(args[0])) {
+      Watcher.fromClasspath().run();
+      return;
+    }
+    final GenerationReport report = new GenerationReport();
+    final Timer timer = report.start();
+    final String resource = args.length > 0 ? args[0] : "/dtonator.yaml";
+    final InputStream in = Dtonator.class.getResourceAsStream(resource);
+    if (in == null) {
+      throw new IllegalStateException("Could not find " + resource + " on the classpath");
+    }
+    final Object root = new Yaml().load(in);
+    report.phase("yaml", timer);
+    final ClassLoader loader = Dtonator.class.getClassLoader();
+    new Dtonator(new RootConfig(new CachingTypeOracle(newTypeOracle(root, loader)), root), loader, report).run();
   }
 
+  /** @return the oracle chosen by the {@code typeOracle} setting, which is read before we have a {@link RootConfig} */
+  static TypeOracle newTypeOracle(final Object root, final ClassLoader loader) {
+    final Map<String, Object> config = YamlUtils.ensureMap(YamlUtils.<String, Object> ensureMap(root).get("config"));
+    final String typeOracle = (String) config.get("typeOracle");
+    if (typeOracle == null || "reflection".equals(typeOracle)) {
+      return new ReflectionTypeOracle(loader);
+    } else if ("bytecode".equals(typeOracle)) {
+      return new BytecodeTypeOracle(loader, new ReflectionTypeOracle(loader));
+    } else {
+      throw new IllegalStateException("Unknown typeOracle setting: " + typeOracle);
+    }
+  }
+
+  /** How many DTOs to list in the report's summary. */
+  private static final int slowestDtos = 10;
   private final RootConfig config;
-  private final GDirectory source;
-  private final GDirectory out;
-  private final List<String> takenToDtoOverloads = list();
+  private final OutputDirectory source;
+  private final OutputDirectory out;
+  private final ClassLoader loader;
+  private final GenerationReport report;
+  private Manifest manifest;
 
   public Dtonator(final RootConfig root) {
+    this(root, Dtonator.class.getClassLoader());
+  }
+
+  /** @param loader the loader for the domain classes, used for enums and the incremental manifest */
+  public Dtonator(final RootConfig root, final ClassLoader loader) {
+    this(root, loader, new GenerationReport());
+  }
+
+  /** @param report records the timings of this run, and is written if the {@code report} setting is set */
+  public Dtonator(final RootConfig root, final ClassLoader loader, final GenerationReport report) {
     config = root;
-    source = new GDirectory(root.getSourceDirectory());
-    out = new GDirectory(root.getOutputDirectory());
+    this.loader = loader;
+    this.report = report;
+    source = new OutputDirectory(root.getSourceDirectory());
+    out = new OutputDirectory(root.getOutputDirectory());
     GSettings.setDefaultIndentation(root.getIndent());
   }
 
   public void run() throws ClassNotFoundException {
-    final GenerateMapper gm = new GenerateMapper(out, config);
+    if (generate()) {
+      write();
+    }
+  }
+
+  /**
+   * Generates the output classes in memory, without writing them.
+   *
+   * @return {@code false} if this is an incremental run and nothing changed
+   */
+  public boolean generate() throws ClassNotFoundException {
+    Timer timer = report.start();
+    manifest = config.isIncremental() ? new Manifest(config, loader) : null;
+    final List<DtoConfig> dtos = manifest == null ? list(config.getDtos()) : manifest.getDirtyDtos();
+    if (manifest != null) {
+      report.phase("manifest", timer);
+      if (dtos.isEmpty()) {
+        System.out.println("dtonator: " + config.getOutputDirectory() + " is up to date");
+        return false;
+      }
+    }
+
+    timer = report.start();
+    prefetchDomainTypes(dtos);
+    report.phase("prefetch", timer);
+
+    timer = report.start();
+    config.compile(dtos);
+    report.phase("compile", timer);
+
+    timer = report.start();
+    final List<DtoConfig> withMapperTypes = list();
+    for (final DtoConfig dto : config.getDtos()) {
+      if (manifest == null ? dto.requiresMapperType() : manifest.requiresMapperType(dto)) {
+        withMapperTypes.add(dto);
+      }
+    }
+    final GenerateMapper gm = new GenerateMapper(out, config, withMapperTypes);
     gm.generate();
-    final GClass mapper = gm.getMapper();
+    report.phase("mapper", timer);
+
+    final Map<DtoConfig, MapperFragment> fragments = generateDtos(dtos);
 
+    timer = report.start();
     for (final DtoConfig dto : config.getDtos()) {
-      if (dto.isEnum()) {
-        new GenerateEnum(out, mapper, dto).generate();
+      if (fragments.containsKey(dto)) {
+        gm.add(dto, fragments.get(dto));
+        if (manifest != null) {
+          manifest.record(dto, fragments.get(dto));
+        }
       } else {
-        new GenerateDto(config, out, mapper, takenToDtoOverloads, dto).generate();
-      }
-      if (dto.includeTessellModel()) {
-        new GenerateTessellModel(source, out, config, dto).generate();
+        // unchanged since the last incremental run
+        gm.add(dto, manifest.getFragment(dto));
+        manifest.recordUnchanged(dto);
       }
     }
 
@@ -65,14 +164,197 @@ public class Dtonator {
       vtcg.getMethod("toDto", arg(vtc.domainType, vtc.name)).returnType(vtc.dtoType);
       vtcg.getMethod("fromDto", arg(vtc.dtoType, vtc.name)).returnType(vtc.domainType);
     }
+    report.phase("mapper", timer);
+    return true;
+  }
+
+  /** @return the generated classes, for callers of {@link #generate()} that write them somewhere else */
+  public OutputDirectory getOut() {
+    return out;
+  }
 
+  /** @return the generated stubs that users are expected to edit, e.g. Tessell models */
+  public OutputDirectory getSource() {
+    return source;
+  }
+
+  private void write() {
+    Timer timer = report.start();
     out.output();
     source.output();
+    report.phase("output", timer);
 
-    if (config.getPrune() == Prune.ALL_PACKAGES) {
-      out.pruneIfNotTouched();
-    } else if (config.getPrune() == Prune.USED_PACKAGES) {
-      out.pruneIfNotTouchedWithinUsedPackages();
+    timer = report.start();
+    if (manifest == null || manifest.isFullRun()) {
+      out.prune(config.getPrune());
+    } else {
+      // partial runs only generate the changed dtos' files, so keep the record of everything else
+      out.keepPreviousFiles();
+    }
+    report.phase("prune", timer);
+    System.out.println(out);
+
+    if (manifest != null) {
+      manifest.save();
+    }
+
+    if (config.getOracle() instanceof CachingTypeOracle) {
+      System.out.println(config.getOracle());
+    }
+
+    if (config.getReportFile() != null) {
+      writeReport(new File(config.getReportFile()));
+    }
+  }
+
+  private void writeReport(final File file) {
+    try {
+      if (file.getParentFile() != null) {
+        file.getParentFile().mkdirs();
+      }
+      Files.write(file.toPath(), report.toJson(config.getOracle(), out).getBytes("UTF-8"));
+    } catch (final IOException io) {
+      throw new RuntimeException("Could not write " + file, io);
+    }
+    System.out.println(report.toSummary(slowestDtos));
+  }
+
+  /**
+   * @return the dtos that get the {@code toDto(domain)} overload, i.e. the first dto for each domain type, out of all of
+   *         the dtos, so an incremental run doesn't give a dirty dto the overload that a clean dto already has
+   */
+  private Set<DtoConfig> getToDtoOverloadOwners() {
+    final Set<String> taken = new HashSet<String>();
+    final Set<DtoConfig> owners = new HashSet<DtoConfig>();
+    for (final DtoConfig dto : config.getDtos()) {
+      if (!dto.isManualDto() && !dto.isEnum() && taken.add(dto.getDomainType())) {
+        owners.add(dto);
+      }
+    }
+    return owners;
+  }
+
+  /**
+   * Generates the DTOs, enums and Tessell models, concurrently if {@code parallel} is enabled.
+   *
+   * @return each DTO's {@code Mapper} methods, in YAML order, so the {@code Mapper} is the same as a serial run
+   */
+  private Map<DtoConfig, MapperFragment> generateDtos(final List<DtoConfig> dtos) throws ClassNotFoundException {
+    // create the generators serially, as they register their classes with the GDirectories, which aren't thread-safe
+    final List<Callable<MapperFragment>> generators = list();
+    final Set<DtoConfig> toDtoOverloadOwners = getToDtoOverloadOwners();
+    for (final DtoConfig dto : dtos) {
+      final MapperFragment fragment = new MapperFragment();
+      final GenerateEnum generateEnum = dto.isEnum() ? new GenerateEnum(out, fragment, dto, loader) : null;
+      final boolean addToDtoOverload = toDtoOverloadOwners.contains(dto);
+      final GenerateDto generateDto = dto.isEnum() ? null : new GenerateDto(config, out, fragment, addToDtoOverload, dto);
+      final GenerateTessellModel generateModel = dto.includeTessellModel() ? new GenerateTessellModel(source, out, config, dto) : null;
+      final GenerateJson generateJson = dto.includeJson() ? new GenerateJson(config, out, dto) : null;
+      final GenerateBufferView generateView = dto.includeBufferView() ? new GenerateBufferView(config, out, dto) : null;
+      final GenerateBatch generateBatch = dto.includeBatch() ? new GenerateBatch(config, out, dto) : null;
+      final GenerateCustomFieldSerializer generateSerializer = dto.includeCustomFieldSerializer() ? new GenerateCustomFieldSerializer(out, dto) : null;
+      generators.add(new Callable<MapperFragment>() {
+        @Override
+        public MapperFragment call() throws ClassNotFoundException {
+          final Timer timer = report.start();
+          if (generateEnum != null) {
+            generateEnum.generate();
+            report.dto(dto.getSimpleName(), "enum", timer);
+          } else {
+            generateDto.generate();
+            report.dto(dto.getSimpleName(), "dto", timer);
+          }
+          if (generateModel != null) {
+            final Timer modelTimer = report.start();
+            generateModel.generate();
+            report.phase("tessell", modelTimer);
+          }
+          if (generateJson != null) {
+            final Timer jsonTimer = report.start();
+            generateJson.generate();
+            report.phase("json", jsonTimer);
+          }
+          if (generateView != null) {
+            final Timer viewTimer = report.start();
+            generateView.generate();
+            report.phase("bufferView", viewTimer);
+          }
+          if (generateBatch != null) {
+            final Timer batchTimer = report.start();
+            generateBatch.generate();
+            report.phase("batch", batchTimer);
+          }
+          if (generateSerializer != null) {
+            final Timer serializerTimer = report.start();
+            generateSerializer.generate();
+            report.phase("customFieldSerializer", serializerTimer);
+          }
+          return fragment;
+        }
+      });
+    }
+
+    final Map<DtoConfig, MapperFragment> fragments = new LinkedHashMap<DtoConfig, MapperFragment>();
+    try {
+      if (config.isParallel()) {
+        final ForkJoinPool pool = new ForkJoinPool();
+        try {
+          final List<Future<MapperFragment>> futures = pool.invokeAll(generators);
+          for (int i = 0; i < dtos.size(); i++) {
+            fragments.put(dtos.get(i), futures.get(i).get());
+          }
+        } finally {
+          pool.shutdown();
+        }
+      } else {
+        for (int i = 0; i < dtos.size(); i++) {
+          fragments.put(dtos.get(i), generators.get(i).call());
+        }
+      }
+    } catch (final ExecutionException ee) {
+      if (ee.getCause() instanceof ClassNotFoundException) {
+        throw (ClassNotFoundException) ee.getCause();
+      } else if (ee.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) ee.getCause();
+      }
+      throw new RuntimeException(ee.getCause());
+    } catch (final InterruptedException ie) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(ie);
+    } catch (final ClassNotFoundException | RuntimeException e) {
+      throw e;
+    } catch (final Exception e) {
+      throw new RuntimeException(e);
+    }
+    return fragments;
+  }
+
+  /** Warms the oracle's cache with each DTO's domain type, concurrently, before the (serial) generation starts. */
+  private void prefetchDomainTypes(final List<DtoConfig> dtos) {
+    if (!(config.getOracle() instanceof CachingTypeOracle)) {
+      return;
+    }
+    final CachingTypeOracle oracle = (CachingTypeOracle) config.getOracle();
+    final List<Callable<Void>> lookups = list();
+    for (final DtoConfig dto : dtos) {
+      final String domainType = dto.getDomainType();
+      if (domainType == null) {
+        continue;
+      }
+      // the same lookups DtoConfig makes, so that generation will get cache hits
+      final boolean isChildClass = dto.isChildClass();
+      final List<String> excludedAnnotations = dto.getExcludedAnnotationTypes();
+      lookups.add(new Callable<Void>() {
+        @Override
+        public Void call() {
+          oracle.isEnum(domainType);
+          oracle.isAbstract(domainType);
+          oracle.getProperties(domainType, false);
+          oracle.getProperties(domainType, isChildClass, excludedAnnotations);
+          return null;
+        }
+      });
     }
+    oracle.prefetch(lookups);
   }
 }
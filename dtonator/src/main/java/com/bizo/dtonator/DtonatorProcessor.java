@@ -0,0 +1,150 @@
+package com.bizo.dtonator;
+
+import static joist.util.Copy.list;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedOptions;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.TypeElement;
+import javax.tools.Diagnostic.Kind;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+import joist.sourcegen.GClass;
+
+import org.yaml.snakeyaml.Yaml;
+
+import com.bizo.dtonator.config.DtoConfig;
+import com.bizo.dtonator.config.RootConfig;
+import com.bizo.dtonator.config.YamlUtils;
+import com.bizo.dtonator.properties.CachingTypeOracle;
+import com.bizo.dtonator.properties.ElementsTypeOracle;
+
+/**
+ * Runs dtonator inside javac, so the DTOs are generated in the same compile as the domain objects.
+ *
+ * Only runs when given the config file, e.g. {@code -Adtonator.config=dtonator.yaml}, which is read through the
+ * {@code Filer} from the source path or class path; without it, we support no annotation types, so having the dtonator
+ * jar on the classpath doesn't change existing builds. All generated files, including the Tessell model stubs that
+ * aren't already in the compile, are written through the {@code Filer}, with the domain types as their originating
+ * elements, so build tools can treat it as an aggregating processor.
+ */
+@SupportedOptions(DtonatorProcessor.configOption)
+public class DtonatorProcessor extends AbstractProcessor {
+
+  static final String configOption = "dtonator.config";
+  private boolean generated = false;
+
+  /** @return every type, as the domain objects aren't annotated, but only when configured */
+  @Override
+  public Set<String> getSupportedAnnotationTypes() {
+    if (processingEnv == null || processingEnv.getOptions().get(configOption) == null) {
+      return Collections.emptySet();
+    }
+    return Collections.singleton("*");
+  }
+
+  @Override
+  public SourceVersion getSupportedSourceVersion() {
+    return SourceVersion.latestSupported();
+  }
+
+  @Override
+  public boolean process(final Set<? extends TypeElement> annotations, final RoundEnvironment roundEnv) {
+    final String path = processingEnv.getOptions().get(configOption);
+    if (path == null || generated || roundEnv.processingOver()) {
+      return false;
+    }
+    // the domain objects are all visible in the first round, and generating again would recreate the same files
+    generated = true;
+    try {
+      final Map<String, Object> root = YamlUtils.ensureMap(loadConfig(path));
+      // javac and the build tool decide what to recompile, and the Filer needs every file each time
+      YamlUtils.ensureMap(root.get("config")).remove("incremental");
+      final RootConfig config = new RootConfig(new CachingTypeOracle(new ElementsTypeOracle(processingEnv)), root);
+      final Dtonator dtonator = new Dtonator(config);
+      if (dtonator.generate()) {
+        final Element[] originatingElements = getOriginatingElements(config);
+        write(dtonator.getOut(), originatingElements, false);
+        write(dtonator.getSource(), originatingElements, true);
+      }
+    } catch (final Exception e) {
+      final StringWriter trace = new StringWriter();
+      e.printStackTrace(new PrintWriter(trace));
+      processingEnv.getMessager().printMessage(Kind.ERROR, "dtonator failed: " + trace);
+    }
+    return false;
+  }
+
+  /** @return the YAML, from the source path if it's there, as build tools track its files, else the class path */
+  private Object loadConfig(final String name) throws IOException {
+    final InputStream in = getResource(name).openInputStream();
+    try {
+      return new Yaml().load(in);
+    } finally {
+      in.close();
+    }
+  }
+
+  private FileObject getResource(final String name) throws IOException {
+    try {
+      return open(StandardLocation.SOURCE_PATH, name);
+    } catch (final IOException | IllegalArgumentException notOnSourcePath) {
+      // e.g. there is no source path
+      return open(StandardLocation.CLASS_PATH, name);
+    }
+  }
+
+  /** @return the file, after opening it, as {@code getResource} doesn't check that it exists */
+  private FileObject open(final StandardLocation location, final String name) throws IOException {
+    final FileObject file = processingEnv.getFiler().getResource(location, "", name);
+    file.openInputStream().close();
+    return file;
+  }
+
+  /**
+   * Writes {@code out}'s classes, skipping any that are already in the compile if {@code onlyNew}, i.e. the Tessell
+   * model stubs, which users edit in their own source tree.
+   */
+  private void write(final OutputDirectory out, final Element[] originatingElements, final boolean onlyNew) throws IOException {
+    for (final Map.Entry<String, GClass> e : out.getClasses().entrySet()) {
+      if (onlyNew && processingEnv.getElementUtils().getTypeElement(e.getKey()) != null) {
+        continue;
+      }
+      final Writer w = processingEnv.getFiler().createSourceFile(e.getKey(), originatingElements).openWriter();
+      try {
+        w.write(e.getValue().toCode());
+      } finally {
+        w.close();
+      }
+    }
+  }
+
+  /** @return the domain types, as the Mapper (at least) depends on all of them */
+  private Element[] getOriginatingElements(final RootConfig config) {
+    final List<Element> elements = list();
+    for (final DtoConfig dto : config.getDtos()) {
+      if (dto.getDomainType() == null) {
+        continue;
+      }
+      final TypeElement te = processingEnv.getElementUtils().getTypeElement(dto.getDomainType().replace('$', '.'));
+      if (te != null) {
+        elements.add(te);
+      }
+    }
+    return elements.toArray(new Element[elements.size()]);
+  }
+
+}
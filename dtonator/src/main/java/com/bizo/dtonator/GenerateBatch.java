@@ -0,0 +1,235 @@
+package com.bizo.dtonator;
+
+import static com.bizo.dtonator.Names.getter;
+import static com.bizo.dtonator.Names.read;
+import static com.bizo.dtonator.Names.write;
+import static joist.sourcegen.Argument.arg;
+import static joist.util.Copy.list;
+
+import java.util.List;
+
+import joist.sourcegen.GClass;
+import joist.sourcegen.GMethod;
+
+import com.bizo.dtonator.config.DtoConfig;
+import com.bizo.dtonator.config.DtoProperty;
+import com.bizo.dtonator.config.Primitives;
+import com.bizo.dtonator.config.RootConfig;
+
+/**
+ * Generates a {@code XxxDtoBatch} class for a DTO with the {@code batch} setting, which stores a list of the DTO
+ * column by column, i.e. an array per property instead of an object per row.
+ *
+ * Numbers, chars and booleans are stored in primitive arrays, with a {@link java.util.BitSet} of the nulls if they're
+ * boxed; strings in a {@link DictionaryColumn}; enums as their ordinals; and any other properties, e.g. nested DTOs
+ * and lists, in a list of their values. Rows are read with {@code getXxx(row)}, {@code row(i)}, or {@code get(i)},
+ * which creates the DTO.
+ */
+public class GenerateBatch {
+
+  private final RootConfig config;
+  private final DtoConfig dto;
+  private final GClass gc;
+  private final List<DtoProperty> properties;
+
+  /** Creates our class in {@code out}, so must be called serially; {@link #generate()} can then run concurrently. */
+  public GenerateBatch(final RootConfig config, final OutputDirectory out, final DtoConfig dto) {
+    this.config = config;
+    this.dto = dto;
+    gc = out.getClass(batchClass(dto));
+    properties = list(dto.getAllPropertiesMap().values());
+  }
+
+  public void generate() {
+    gc.implementsInterface("java.io.Serializable");
+    gc.getField("serialVersionUID").type("long").setPrivate().setStatic().setFinal().initialValue("1L");
+    gc.getField("size").type("int").setPrivate();
+    gc.getField("capacity").type("int").setPrivate();
+    addColumns();
+    addConstructors();
+    addAdd();
+    addGrow();
+    gc.getMethod("size").returnType("int").body.line("return size;");
+    for (final DtoProperty dp : properties) {
+      addGetter(dp);
+    }
+    addGet();
+    addRow();
+  }
+
+  private void addColumns() {
+    for (final DtoProperty dp : properties) {
+      final String primitive = primitiveType(dp);
+      if (primitive != null) {
+        gc.getField(column(dp)).type(primitive + "[]").setPrivate();
+        if (!Primitives.isPrimitive(dp.getDtoType())) {
+          gc.getField(nulls(dp)).type("java.util.BitSet").setPrivate().setFinal().initialValue("new java.util.BitSet()");
+        }
+      } else if (isString(dp.getDtoType())) {
+        gc.getField(column(dp)).type("DictionaryColumn").setPrivate().setFinal();
+      } else if (dp.isEnum()) {
+        gc.getField(column(dp)).type(ordinalType(dp) + "[]").setPrivate();
+        gc.getField(dp.getName() + "Values").type(dp.getDtoType() + "[]").setPrivate().setStatic().setFinal().initialValue(
+          "{}.values()",
+          dp.getDtoType());
+      } else {
+        gc.getField(column(dp)).type("java.util.ArrayList<{}>", dp.getDtoType()).setPrivate().setFinal();
+      }
+    }
+    gc.addImports(DictionaryColumn.class);
+  }
+
+  private void addConstructors() {
+    final GMethod c = gc.getConstructor(arg("int", "capacity"));
+    c.body.line("this.capacity = capacity;");
+    for (final DtoProperty dp : properties) {
+      final String primitive = primitiveType(dp);
+      if (primitive != null) {
+        c.body.line("{} = new {}[capacity];", column(dp), primitive);
+      } else if (isString(dp.getDtoType())) {
+        c.body.line("{} = new DictionaryColumn(capacity);", column(dp));
+      } else if (dp.isEnum()) {
+        c.body.line("{} = new {}[capacity];", column(dp), ordinalType(dp));
+      } else {
+        c.body.line("{} = new java.util.ArrayList<{}>(capacity);", column(dp), dp.getDtoType());
+      }
+    }
+    gc.getConstructor().body.line("this(16);");
+  }
+
+  /** Adds {@code add(dto)}, which appends the dto's properties to each column. */
+  private void addAdd() {
+    final GMethod m = gc.getMethod("add", arg(dto.getDtoType(), "dto"));
+    m.body.line("if (size == capacity) {");
+    m.body.line("_ grow();");
+    m.body.line("}");
+    m.body.line("final int row = size++;");
+    for (final DtoProperty dp : properties) {
+      final String v = read("dto", dp);
+      if (Primitives.isPrimitive(dp.getDtoType())) {
+        m.body.line("{}[row] = {};", column(dp), v);
+      } else if (primitiveType(dp) != null) {
+        m.body.line("if ({} == null) {", v);
+        m.body.line("_ {}.set(row);", nulls(dp));
+        m.body.line("} else {");
+        m.body.line("_ {}[row] = {};", column(dp), v);
+        m.body.line("}");
+      } else if (isString(dp.getDtoType())) {
+        m.body.line("{}.set(row, {});", column(dp), v);
+      } else if (dp.isEnum()) {
+        m.body.line("{}[row] = ({}) ({} == null ? -1 : {}.ordinal());", column(dp), ordinalType(dp), v, v);
+      } else {
+        m.body.line("{}.add({});", column(dp), v);
+      }
+    }
+  }
+
+  /** Adds {@code grow}, which doubles the arrays, as the other columns grow themselves. */
+  private void addGrow() {
+    final GMethod m = gc.getMethod("grow").setPrivate();
+    m.body.line("capacity = Math.max(16, capacity * 2);");
+    for (final DtoProperty dp : properties) {
+      if (primitiveType(dp) != null || dp.isEnum()) {
+        m.body.line("{} = java.util.Arrays.copyOf({}, capacity);", column(dp), column(dp));
+      }
+    }
+  }
+
+  private void addGetter(final DtoProperty dp) {
+    final GMethod g = gc.getMethod(getter(dp), arg("int", "row")).returnType(dp.getDtoType());
+    g.body.line("check(row);");
+    if (Primitives.isPrimitive(dp.getDtoType())) {
+      g.body.line("return {}[row];", column(dp));
+    } else if (primitiveType(dp) != null) {
+      g.body.line("return {}.get(row) ? null : {}[row];", nulls(dp), column(dp));
+    } else if (isString(dp.getDtoType())) {
+      g.body.line("return {}.get(row);", column(dp));
+    } else if (dp.isEnum()) {
+      g.body.line("final {} ordinal = {}[row];", ordinalType(dp), column(dp));
+      g.body.line("return ordinal < 0 ? null : {}Values[ordinal];", dp.getName());
+    } else {
+      g.body.line("return {}.get(row);", column(dp));
+    }
+  }
+
+  /** Adds {@code get(row)}, which creates the row's dto, and {@code toDtos()}. */
+  private void addGet() {
+    final String type = dto.getDtoType();
+    final GMethod get = gc.getMethod("get", arg("int", "row")).returnType(type);
+    get.body.line("final {} dto = new {}();", type, type);
+    for (final DtoProperty dp : properties) {
+      get.body.line(write("dto", dp, getter(dp) + "(row)"));
+    }
+    get.body.line("return dto;");
+
+    final GMethod toDtos = gc.getMethod("toDtos").returnType("java.util.List<{}>", type);
+    toDtos.body.line("final java.util.List<{}> dtos = new java.util.ArrayList<{}>(size);", type, type);
+    toDtos.body.line("for (int i = 0; i < size; i++) {");
+    toDtos.body.line("_ dtos.add(get(i));");
+    toDtos.body.line("}");
+    toDtos.body.line("return dtos;");
+
+    final GMethod check = gc.getMethod("check", arg("int", "row")).setPrivate();
+    check.body.line("if (row < 0 || row >= size) {");
+    check.body.line("_ throw new IndexOutOfBoundsException(row + \" of \" + size);");
+    check.body.line("}");
+  }
+
+  /** Adds the {@code Row} accessor, which reads one row's columns without creating its dto. */
+  private void addRow() {
+    final GClass row = gc.getInnerClass("Row").notStatic();
+    row.getField("row").type("int").setPrivate().setFinal();
+    row.getConstructor(arg("int", "row")).setPrivate().body.line("this.row = row;");
+    row.getMethod("getIndex").returnType("int").body.line("return row;");
+    for (final DtoProperty dp : properties) {
+      // qualified, as our getter hides the batch's overload
+      final String batch = dto.getSimpleName() + "Batch";
+      row.getMethod(getter(dp)).returnType(dp.getDtoType()).body.line("return {}.this.{}(row);", batch, getter(dp));
+    }
+    row.getMethod("toDto").returnType(dto.getDtoType()).body.line("return get(row);");
+
+    final GMethod r = gc.getMethod("row", arg("int", "row")).returnType("Row");
+    r.body.line("check(row);");
+    r.body.line("return new Row(row);");
+
+    final GMethod rows = gc.getMethod("rows").returnType("java.util.List<Row>");
+    rows.body.line("return new java.util.AbstractList<Row>() {");
+    rows.body.line("_ public Row get(int row) {");
+    rows.body.line("_ _ return row(row);");
+    rows.body.line("_ }");
+    rows.body.line("_ public int size() {");
+    rows.body.line("_ _ return size;");
+    rows.body.line("_ }");
+    rows.body.line("};");
+  }
+
+  /** @return the smallest type for {@code dp}'s enum's ordinals, with -1 for null */
+  private String ordinalType(final DtoProperty dp) {
+    final DtoConfig e = config.getDto(dp.getDtoType());
+    final List<String> values = e == null ? null : e.getEnumValues();
+    return values != null && values.size() <= Byte.MAX_VALUE ? "byte" : "short";
+  }
+
+  /** @return the primitive for numbers, chars and booleans, boxed or not, or {@code null} */
+  private static String primitiveType(final DtoProperty dp) {
+    final String type = dp.getDtoType();
+    return Primitives.isPrimitive(type) ? type : Primitives.unbox(type);
+  }
+
+  private static boolean isString(final String type) {
+    return "String".equals(type) || "java.lang.String".equals(type);
+  }
+
+  private static String column(final DtoProperty dp) {
+    return dp.getName() + "Column";
+  }
+
+  private static String nulls(final DtoProperty dp) {
+    return dp.getName() + "Nulls";
+  }
+
+  static String batchClass(final DtoConfig dto) {
+    return dto.getDtoType() + "Batch";
+  }
+
+}
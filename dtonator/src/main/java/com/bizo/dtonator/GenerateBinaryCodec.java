@@ -0,0 +1,346 @@
+package com.bizo.dtonator;
+
+import static com.bizo.dtonator.Names.read;
+import static com.bizo.dtonator.Names.write;
+import static joist.sourcegen.Argument.arg;
+import static joist.util.Copy.list;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import joist.sourcegen.GClass;
+import joist.sourcegen.GMethod;
+
+import org.apache.commons.collections4.Predicate;
+
+import com.bizo.dtonator.config.DtoConfig;
+import com.bizo.dtonator.config.DtoProperty;
+import com.bizo.dtonator.config.Primitives;
+import com.bizo.dtonator.config.RootConfig;
+
+/**
+ * Adds the {@code binaryCodec} methods to a DTO, i.e. {@code writeTo(DataOutput)}, {@code readFrom(DataInput)}, and
+ * {@code Externalizable}'s methods, which use them.
+ *
+ * See {@link BinaryCodec} for the format. Each DTO writes and reads all of its properties, including inherited ones,
+ * each under the key for its name and type, so a reader can tell which properties it shares with the writer.
+ */
+public class GenerateBinaryCodec {
+
+  private static final Map<String, String> codecs = new HashMap<String, String>();
+
+  static {
+    codecs.put("long", "BinaryCodec.LONG");
+    codecs.put("int", "BinaryCodec.INTEGER");
+    codecs.put("short", "BinaryCodec.SHORT");
+    codecs.put("byte", "BinaryCodec.BYTE");
+    codecs.put("char", "BinaryCodec.CHARACTER");
+    codecs.put("boolean", "BinaryCodec.BOOLEAN");
+    codecs.put("double", "BinaryCodec.DOUBLE");
+    codecs.put("float", "BinaryCodec.FLOAT");
+  }
+
+  private final RootConfig config;
+  private final DtoConfig dto;
+  private final GClass gc;
+  private final List<DtoProperty> properties;
+  /** Whether our base DTO has a codec, so we override its methods instead of adding them. */
+  private final boolean baseCodec;
+  /** Whether records have a tag, as we have a base class with a codec, or subclasses. */
+  private final boolean tagged;
+
+  public GenerateBinaryCodec(final RootConfig config, final DtoConfig dto, final GClass gc) {
+    this.config = config;
+    this.dto = dto;
+    this.gc = gc;
+    properties = list(dto.getAllPropertiesMap().values());
+    baseCodec = dto.getBaseDto() != null && dto.getBaseDto().includeBinaryCodec();
+    tagged = baseCodec || !dto.getSubClassDtos().isEmpty();
+  }
+
+  public void generate() {
+    // nested dtos without a codec would fall back to Java serialization, which they don't implement
+    dto.checkNestedDtos("binaryCodec", new Predicate<DtoConfig>() {
+      @Override
+      public boolean evaluate(final DtoConfig other) {
+        return other.includeBinaryCodec();
+      }
+    });
+    gc.addImports(BinaryCodec.class);
+    gc.addImports("java.io.DataInput", "java.io.DataOutput", "java.io.IOException");
+    addCodecField();
+    addWriteTo();
+    addReadFrom();
+    addReadBody();
+    if (!baseCodec) {
+      addExternalizable();
+    }
+  }
+
+  /** Adds a {@code CODEC} field, for lists and sets of this DTO. */
+  private void addCodecField() {
+    final String type = dto.getDtoType();
+    gc.getField("CODEC").setPublic().setStatic().setFinal().type("BinaryCodec.Codec<{}>", type).initialValue(
+      "new BinaryCodec.Codec<{}>() {\n"
+        + "  public void write(DataOutput out, {} value) throws IOException {\n"
+        + "    value.writeTo(out);\n"
+        + "  }\n"
+        + "  public {} read(DataInput in) throws IOException {\n"
+        + "    return {}.readFrom(in);\n"
+        + "  }\n"
+        + "}",
+      type,
+      type,
+      type,
+      type);
+  }
+
+  private void addWriteTo() {
+    final GMethod m = gc.getMethod("writeTo", arg("DataOutput", "out")).addThrows("IOException");
+    if (baseCodec) {
+      m.addOverride();
+    }
+    m.body.line("final BinaryCodec.Buffer b = BinaryCodec.buffer(out);");
+    m.body.line("final int mark = b.mark();");
+    if (tagged) {
+      m.body.line("b.writeInt({});", hex(tag(dto)));
+    }
+    for (final DtoProperty dp : properties) {
+      if (isPrimitive(dp)) {
+        m.body.line("b.writeInt({});", hex(key(dp)));
+        m.body.line(writeValue(dp, value(dp)));
+      } else {
+        m.body.line("if ({}) {", isPresent(dp));
+        m.body.line("_ b.writeInt({});", hex(key(dp)));
+        m.body.line("_ " + writeValue(dp, value(dp)));
+        m.body.line("}");
+      }
+    }
+    m.body.line("b.writeInt(0);");
+    m.body.line("b.end(mark, out);");
+  }
+
+  /** Adds the static {@code readFrom}, which creates the DTO, or the subclass for the record's tag. */
+  private void addReadFrom() {
+    final String type = dto.getDtoType();
+    final GMethod m = gc.getMethod("readFrom", arg("DataInput", "in")).returnType(type).setStatic().addThrows("IOException");
+    m.body.line("final {} dto;", type);
+    m.body.line("// skip the record's length, which only readers skipping the record need");
+    m.body.line("in.readInt();");
+    if (tagged) {
+      m.body.line("final int tag = in.readInt();");
+      final Set<Integer> tags = new HashSet<Integer>();
+      String prefix = "";
+      for (final DtoConfig c : list(dto.getSubClassDtos()).with(dto)) {
+        if (c.isAbstract()) {
+          continue;
+        }
+        if (!tags.add(tag(c))) {
+          throw new IllegalStateException(c.getSimpleName() + "'s binaryCodec tag collides with another in its hierarchy");
+        }
+        m.body.line("{}if (tag == {}) {", prefix, hex(tag(c)));
+        m.body.line("_ dto = new {}();", c.getDtoType());
+        prefix = "} else ";
+      }
+      if (prefix.isEmpty()) {
+        // no concrete classes, so nothing to read
+        m.body.line("throw new IOException(\"Unknown tag \" + tag + \" for {}\");", dto.getSimpleName());
+        return;
+      }
+      m.body.line("} else {");
+      m.body.line("_ throw new IOException(\"Unknown tag \" + tag + \" for {}\");", dto.getSimpleName());
+      m.body.line("}");
+    } else if (dto.isAbstract()) {
+      m.body.line("throw new IOException(\"{} is abstract\");", dto.getSimpleName());
+      return;
+    } else {
+      m.body.line("dto = new {}();", type);
+    }
+    m.body.line("dto.readBody(in);");
+    m.body.line("return dto;");
+  }
+
+  /**
+   * Adds {@code readBody}, which reads the record after the tag into this DTO, and which subclasses override.
+   *
+   * Properties are matched by key, so the writer's properties can be in any order, and ones we don't know are skipped.
+   */
+  private void addReadBody() {
+    final GMethod m = gc.getMethod("readBody", arg("DataInput", "in")).setProtected().addThrows("IOException");
+    if (baseCodec) {
+      m.addOverride();
+    }
+    for (final DtoProperty dp : properties) {
+      if (dp.isList() || dp.isSet()) {
+        // the default constructor may have made an empty collection, but it's absent unless the record has it
+        m.body.line(write("this", dp, "null"));
+      }
+    }
+    m.body.line("for (int key = in.readInt(); key != 0; key = in.readInt()) {");
+    m.body.line("_ switch (key) {");
+    final Set<Integer> keys = new HashSet<Integer>();
+    for (final DtoProperty dp : properties) {
+      if (!keys.add(key(dp))) {
+        throw new IllegalStateException(dto.getSimpleName() + "." + dp.getName() + "'s binaryCodec key collides with another property's");
+      }
+      m.body.line("_ _ case {}:", hex(key(dp)));
+      m.body.line("_ _ _ " + write("this", dp, readValue(dp)));
+      m.body.line("_ _ _ break;");
+    }
+    m.body.line("_ _ default:");
+    m.body.line("_ _ _ BinaryCodec.skip(in, key);");
+    m.body.line("_ }");
+    m.body.line("}");
+  }
+
+  private void addExternalizable() {
+    gc.implementsInterface("java.io.Externalizable");
+    final GMethod write = gc.getMethod("writeExternal", arg("java.io.ObjectOutput", "out")).addThrows("IOException").addOverride();
+    write.body.line("writeTo(out);");
+    final GMethod read = gc.getMethod("readExternal", arg("java.io.ObjectInput", "in")).addThrows("IOException").addOverride();
+    read.body.line("// skip the record's length, which only readers skipping the record need");
+    read.body.line("in.readInt();");
+    if (tagged) {
+      read.body.line("// and the tag, as serialization has already created the right class");
+      read.body.line("in.readInt();");
+    }
+    read.body.line("readBody(in);");
+  }
+
+  /** @return the statement to write {@code v}, which is non-null */
+  private String writeValue(final DtoProperty dp, final String v) {
+    final String primitive = primitiveType(dp);
+    if ("long".equals(primitive)) {
+      return "BinaryCodec.writeVarLong(b, " + v + ");";
+    } else if ("int".equals(primitive) || "short".equals(primitive) || "char".equals(primitive)) {
+      return "BinaryCodec.writeVarInt(b, " + v + ");";
+    } else if (primitive != null) {
+      // byte, boolean, double, float
+      return "b.write" + Character.toUpperCase(primitive.charAt(0)) + primitive.substring(1) + "(" + v + ");";
+    } else if (isString(dp.getDtoType())) {
+      return "BinaryCodec.writeString(b, " + v + ");";
+    } else if (dp.isEnum()) {
+      return "BinaryCodec.writeString(b, " + v + ".name());";
+    } else if (hasCodec(dp.getDtoType())) {
+      return v + ".writeTo(b);";
+    } else if (dp.isList() || dp.isSet()) {
+      return "BinaryCodec.writeSizedCollection(b, " + v + ", " + codec(dp.getSingleDtoType()) + ");";
+    } else {
+      return "BinaryCodec.writeSerialized(b, " + v + ");";
+    }
+  }
+
+  /** @return the expression to read a value of {@code dp} from {@code in} */
+  private String readValue(final DtoProperty dp) {
+    final String primitive = primitiveType(dp);
+    if ("long".equals(primitive)) {
+      return "BinaryCodec.readVarLong(in)";
+    } else if ("int".equals(primitive)) {
+      return "BinaryCodec.readVarInt(in)";
+    } else if ("short".equals(primitive) || "char".equals(primitive)) {
+      return "(" + primitive + ") BinaryCodec.readVarInt(in)";
+    } else if (primitive != null) {
+      return "in.read" + Character.toUpperCase(primitive.charAt(0)) + primitive.substring(1) + "()";
+    } else if (isString(dp.getDtoType())) {
+      return "BinaryCodec.readString(in)";
+    } else if (dp.isEnum()) {
+      return dp.getDtoType() + ".valueOf(BinaryCodec.readString(in))";
+    } else if (hasCodec(dp.getDtoType())) {
+      return dp.getDtoType() + ".readFrom(in)";
+    } else if (dp.isList()) {
+      return "BinaryCodec.readSizedList(in, " + codec(dp.getSingleDtoType()) + ")";
+    } else if (dp.isSet()) {
+      return "BinaryCodec.readSizedSet(in, " + codec(dp.getSingleDtoType()) + ")";
+    } else {
+      return "(" + dp.getDtoType() + ") BinaryCodec.readSerialized(in)";
+    }
+  }
+
+  /** @return the {@link BinaryCodec.Codec} for elements of {@code type} */
+  private String codec(final String type) {
+    final String boxed = codecs.get(Primitives.unbox(type));
+    final DtoConfig other = config.getDto(type);
+    if (boxed != null) {
+      return boxed;
+    } else if (isString(type)) {
+      return "BinaryCodec.STRING";
+    } else if (other != null && other.isEnum()) {
+      return "BinaryCodec.enumCodec(" + other.getDtoType() + ".class)";
+    } else if (hasCodec(type)) {
+      return other.getDtoType() + ".CODEC";
+    } else {
+      return "BinaryCodec.<" + type + "> serialized()";
+    }
+  }
+
+  /** @return {@code dp}'s key, see {@link BinaryCodec#key} */
+  private int key(final DtoProperty dp) {
+    return BinaryCodec.key(dp.getName(), dp.getDtoType(), wireType(dp));
+  }
+
+  /** @return how {@code dp}'s values are written, so readers that don't know it can skip them */
+  private int wireType(final DtoProperty dp) {
+    final String primitive = primitiveType(dp);
+    if ("long".equals(primitive) || "int".equals(primitive) || "short".equals(primitive) || "char".equals(primitive)) {
+      return BinaryCodec.VARINT;
+    } else if ("byte".equals(primitive) || "boolean".equals(primitive)) {
+      return BinaryCodec.FIXED8;
+    } else if ("float".equals(primitive)) {
+      return BinaryCodec.FIXED32;
+    } else if ("double".equals(primitive)) {
+      return BinaryCodec.FIXED64;
+    } else if (hasCodec(dp.getDtoType()) || dp.isList() || dp.isSet()) {
+      return BinaryCodec.SIZED;
+    } else {
+      // strings, enums by name, and Java-serialized values
+      return BinaryCodec.BYTES;
+    }
+  }
+
+  /** @return the expression for {@code dp}'s value, which is the raw field for our own primitive fields */
+  private String value(final DtoProperty dp) {
+    return dto.getPrimitiveFields().contains(dp) ? "this." + dp.getName() : read("this", dp);
+  }
+
+  private String isPresent(final DtoProperty dp) {
+    if (dto.getPrimitiveFields().contains(dp)) {
+      return "(nullMask & " + hex(dp.getNullBit()) + ") == 0";
+    }
+    return read("this", dp) + " != null";
+  }
+
+  private boolean hasCodec(final String type) {
+    final DtoConfig other = config.getDto(type);
+    return other != null && !other.isEnum() && other.includeBinaryCodec();
+  }
+
+  /** @return the primitive for numbers and booleans, boxed or not, or {@code null} */
+  private static String primitiveType(final DtoProperty dp) {
+    return isPrimitive(dp) ? dp.getDtoType() : Primitives.unbox(dp.getDtoType());
+  }
+
+  private static boolean isPrimitive(final DtoProperty dp) {
+    return codecs.containsKey(dp.getDtoType());
+  }
+
+  private static boolean isString(final String type) {
+    return "String".equals(type) || "java.lang.String".equals(type);
+  }
+
+  /** @return the tag for {@code dto}'s records, which is the hash of its name, so stays the same as the DTO changes */
+  private static int tag(final DtoConfig dto) {
+    return dto.getSimpleName().hashCode();
+  }
+
+  private static String hex(final int bits) {
+    return String.format("0x%x", bits);
+  }
+
+  private static String hex(final long bits) {
+    return String.format("0x%x", bits);
+  }
+
+}
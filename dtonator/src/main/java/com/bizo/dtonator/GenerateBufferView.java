@@ -0,0 +1,376 @@
+package com.bizo.dtonator;
+
+import static com.bizo.dtonator.Names.getter;
+import static com.bizo.dtonator.Names.read;
+import static joist.sourcegen.Argument.arg;
+import static joist.util.Copy.list;
+import static org.apache.commons.lang.StringUtils.capitalize;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import joist.sourcegen.GClass;
+import joist.sourcegen.GMethod;
+
+import org.apache.commons.collections4.Predicate;
+
+import com.bizo.dtonator.config.DtoConfig;
+import com.bizo.dtonator.config.DtoProperty;
+import com.bizo.dtonator.config.Primitives;
+import com.bizo.dtonator.config.RootConfig;
+
+/**
+ * Generates a {@code XxxDtoView} class for a DTO with the {@code bufferView} setting, which is a flyweight that reads
+ * the DTO's properties from a {@link java.nio.ByteBuffer} as they're called, and the {@code encode} methods that write
+ * the buffer.
+ *
+ * See {@link BufferViews} for the format. Views extend their base DTO's view, if it has one, which can read our
+ * records as our slots come after its slots.
+ */
+public class GenerateBufferView {
+
+  private static final Map<String, Integer> sizes = new HashMap<String, Integer>();
+
+  static {
+    sizes.put("long", 8);
+    sizes.put("double", 8);
+    sizes.put("int", 4);
+    sizes.put("float", 4);
+    sizes.put("short", 2);
+    sizes.put("char", 2);
+    sizes.put("byte", 1);
+    sizes.put("boolean", 1);
+  }
+
+  private final RootConfig config;
+  private final DtoConfig dto;
+  private final GClass gc;
+  /** Our base DTO, if it has a view for us to extend. */
+  private final DtoConfig baseView;
+  /** Whether records have a tag, as we have a base class or subclasses. */
+  private final boolean tagged;
+  /** The position of each property's slot within our records. */
+  private final Map<DtoProperty, Integer> slots = new LinkedHashMap<DtoProperty, Integer>();
+  private final int size;
+
+  /** Creates our class in {@code out}, so must be called serially; {@link #generate()} can then run concurrently. */
+  public GenerateBufferView(final RootConfig config, final OutputDirectory out, final DtoConfig dto) {
+    this.config = config;
+    this.dto = dto;
+    gc = out.getClass(viewClass(dto));
+    baseView = dto.getBaseDto() != null && dto.getBaseDto().includeBufferView() ? dto.getBaseDto() : null;
+    tagged = dto.getBaseDto() != null || !dto.getSubClassDtos().isEmpty();
+    int at = tagged ? 4 : 0;
+    for (final DtoProperty dp : properties()) {
+      slots.put(dp, at);
+      at += slotSize(dp);
+    }
+    size = at;
+  }
+
+  public void generate() {
+    // nested dtos without a view would be encoded with Java serialization, and read back whole instead of as views
+    dto.checkNestedDtos("bufferView", new Predicate<DtoConfig>() {
+      @Override
+      public boolean evaluate(final DtoConfig other) {
+        return other.includeBufferView();
+      }
+    });
+    gc.addImports("java.nio.ByteBuffer");
+    gc.addImports(BufferViews.class);
+    if (baseView != null) {
+      gc.baseClassName(viewClass(baseView));
+    } else {
+      gc.getField("buffer").type("ByteBuffer").setProtected().setFinal();
+      gc.getField("base").type("int").setProtected().setFinal();
+    }
+    addConstructor();
+    addWrap();
+    addEncode();
+    if (!dto.isAbstract()) {
+      addEncodeRecord();
+    }
+    for (final DtoProperty dp : slots.keySet()) {
+      if (baseView == null || !dto.getInheritedProperties().contains(dp)) {
+        addGetter(dp);
+      }
+    }
+  }
+
+  private void addConstructor() {
+    final GMethod c = gc.getConstructor(arg("ByteBuffer", "buffer"), arg("int", "base"));
+    if (baseView != null) {
+      c.body.line("super(buffer, base);");
+    } else {
+      c.body.line("this.buffer = buffer;");
+      c.body.line("this.base = base;");
+    }
+  }
+
+  /** Adds {@code wrap}, which creates the view for the record's subclass, and for the root of the views, {@code wrapList}. */
+  private void addWrap() {
+    final String view = viewClass(dto);
+    final GMethod wrap = gc.getMethod("wrap", arg("ByteBuffer", "buffer")).returnType(view).setStatic();
+    wrap.body.line("return wrap(buffer, 0);");
+
+    final GMethod at = gc.getMethod("wrap", arg("ByteBuffer", "buffer"), arg("int", "at")).returnType(view).setStatic();
+    if (tagged) {
+      at.body.line("final int tag = buffer.getInt(at);");
+      final Set<Integer> tags = new HashSet<Integer>();
+      for (final DtoConfig c : dto.getSubClassDtos()) {
+        if (!c.isAbstract() && c.includeBufferView()) {
+          if (!tags.add(tag(c))) {
+            throw new IllegalStateException(c.getSimpleName() + "'s bufferView tag collides with another in its hierarchy");
+          }
+          at.body.line("if (tag == {}) {", hex(tag(c)));
+          at.body.line("_ return new {}(buffer, at);", viewClass(c));
+          at.body.line("}");
+        }
+      }
+    }
+    at.body.line("return new {}(buffer, at);", view);
+
+    // subclasses inherit these, as their signatures would clash
+    if (baseView == null) {
+      final GMethod wrapList = gc.getMethod("wrapList", arg("ByteBuffer", "buffer")).returnType("java.util.List<{}>", view).setStatic();
+      wrapList.body.line("return new BufferViews.ViewList<{}>(buffer, 0) {", view);
+      wrapList.body.line("_ protected {} element(ByteBuffer b, int at) {", view);
+      wrapList.body.line("_ _ return wrap(b, at);");
+      wrapList.body.line("_ }");
+      wrapList.body.line("};");
+    }
+  }
+
+  /** Adds the {@code encode} methods, which dispatch to the subclass's view to write its record. */
+  private void addEncode() {
+    final String type = dto.getDtoType();
+    final GMethod encode = gc.getMethod("encode", arg(type, "dto")).returnType("ByteBuffer").setStatic();
+    encode.body.line("final BufferViews.Encoder e = new BufferViews.Encoder();");
+    encode.body.line("encode(e, dto);");
+    encode.body.line("return e.toByteBuffer();");
+
+    if (baseView == null) {
+      final GMethod encodeList = gc.getMethod("encodeList", arg("java.util.Collection<? extends " + type + ">", "dtos"));
+      encodeList.returnType("ByteBuffer").setStatic();
+      encodeList.body.line("final BufferViews.Encoder e = new BufferViews.Encoder();");
+      encodeList.body.line("final int list = e.list(dtos.size());");
+      encodeList.body.line("int i = 0;");
+      encodeList.body.line("for (final {} dto : dtos) {", type);
+      encodeList.body.line("_ e.element(list, i++, encode(e, dto));");
+      encodeList.body.line("}");
+      encodeList.body.line("return e.toByteBuffer();");
+    }
+
+    final GMethod m = gc.getMethod("encode", arg("BufferViews.Encoder", "e"), arg(type, "dto")).returnType("int").setStatic();
+    m.body.line("if (dto == null) {");
+    m.body.line("_ return -1;");
+    m.body.line("}");
+    // leaves come first, so the most specific subclass matches
+    for (final DtoConfig c : dto.getSubClassDtos()) {
+      if (!c.isAbstract() && c.includeBufferView()) {
+        m.body.line("if (dto instanceof {}) {", c.getDtoType());
+        m.body.line("_ return {}.encodeRecord(e, ({}) dto);", viewClass(c), c.getDtoType());
+        m.body.line("}");
+      }
+    }
+    if (dto.isAbstract()) {
+      m.body.line("throw new IllegalArgumentException(\"No view for \" + dto.getClass());");
+    } else {
+      m.body.line("return encodeRecord(e, dto);");
+    }
+  }
+
+  /** Adds {@code encodeRecord}, which reserves our slots, then writes each property's value and fills in its slot. */
+  private void addEncodeRecord() {
+    final GMethod m = gc.getMethod("encodeRecord", arg("BufferViews.Encoder", "e"), arg(dto.getDtoType(), "dto"));
+    m.returnType("int").setStatic();
+    m.body.line("final int at = e.reserve({});", size);
+    if (tagged) {
+      m.body.line("e.putInt(at, {});", hex(tag(dto)));
+    }
+    for (final Map.Entry<DtoProperty, Integer> entry : slots.entrySet()) {
+      final DtoProperty dp = entry.getKey();
+      final String slot = "at + " + entry.getValue();
+      final String v = read("dto", dp);
+      final String primitive = primitiveType(dp.getDtoType());
+      final DtoConfig other = config.getDto(dp.getDtoType());
+      if (Primitives.isPrimitive(dp.getDtoType())) {
+        m.body.line("e.put{}({}, {});", capitalize(primitive), slot, v);
+      } else if (primitive != null) {
+        m.body.line("if ({} != null) {", v);
+        m.body.line("_ e.putBoolean({}, true);", slot);
+        m.body.line("_ e.put{}({} + 1, {});", capitalize(primitive), slot, v);
+        m.body.line("}");
+      } else if (other != null && other.isEnum()) {
+        m.body.line("e.putShort({}, (short) ({} == null ? -1 : {}.ordinal()));", slot, v, v);
+      } else if (dp.isList() || dp.isSet()) {
+        m.body.line("if ({} == null) {", v);
+        m.body.line("_ e.putInt({}, -1);", slot);
+        m.body.line("} else {");
+        m.body.line("_ final int list = e.list({}.size());", v);
+        m.body.line("_ int i = 0;");
+        m.body.line("_ for (final {} element : {}) {", dp.getSingleDtoType(), v);
+        m.body.line("_ _ e.element(list, i++, {});", encodeValue(dp.getSingleDtoType(), "element"));
+        m.body.line("_ }");
+        m.body.line("_ e.putInt({}, list);", slot);
+        m.body.line("}");
+      } else {
+        m.body.line("e.putInt({}, {});", slot, encodeValue(dp.getDtoType(), v));
+      }
+    }
+    m.body.line("return at;");
+  }
+
+  private void addGetter(final DtoProperty dp) {
+    final String type = dp.getDtoType();
+    final String slot = "base + " + slots.get(dp);
+    final String primitive = primitiveType(type);
+    final DtoConfig other = config.getDto(type);
+    final GMethod g = gc.getMethod(getter(dp));
+    if (Primitives.isPrimitive(type)) {
+      g.returnType(type).body.line("return {};", readPrimitive(primitive, "buffer", slot));
+    } else if (primitive != null) {
+      g.returnType(type).body.line("return buffer.get({}) == 0 ? null : {};", slot, readPrimitive(primitive, "buffer", slot + " + 1"));
+    } else if (other != null && other.isEnum()) {
+      g.returnType(type);
+      g.body.line("final short ordinal = buffer.getShort({});", slot);
+      g.body.line("return ordinal < 0 ? null : {}[ordinal];", enumValues(other));
+    } else if (dp.isList() || dp.isSet()) {
+      final String element = viewType(dp.getSingleDtoType());
+      g.returnType("java.util.List<{}>", element);
+      g.body.line("final int position = buffer.getInt({});", slot);
+      g.body.line("if (position < 0) {");
+      g.body.line("_ return null;");
+      g.body.line("}");
+      g.body.line("return new BufferViews.ViewList<{}>(buffer, position) {", element);
+      g.body.line("_ protected {} element(ByteBuffer b, int at) {", element);
+      g.body.line("_ _ return {};", readValue(dp.getSingleDtoType(), "b", "at"));
+      g.body.line("_ }");
+      g.body.line("};");
+    } else {
+      g.returnType(viewType(type));
+      g.body.line("final int position = buffer.getInt({});", slot);
+      g.body.line("return position < 0 ? null : {};", readValue(type, "buffer", "position"));
+    }
+  }
+
+  /** @return the expression for the position of {@code v}, a single value of {@code type}, or -1 if it's null */
+  private String encodeValue(final String type, final String v) {
+    final String primitive = primitiveType(type);
+    final DtoConfig other = config.getDto(type);
+    if (hasView(other)) {
+      return viewClass(other) + ".encode(e, " + v + ")";
+    }
+    final String position;
+    if (primitive != null) {
+      position = "e.value(" + v + ")";
+    } else if (isString(type)) {
+      position = "e.string(" + v + ")";
+    } else if (other != null && other.isEnum()) {
+      position = "e.value((short) " + v + ".ordinal())";
+    } else {
+      position = "e.serialized(" + v + ")";
+    }
+    return v + " == null ? -1 : " + position;
+  }
+
+  /** @return the expression to read the non-null value of {@code type} at {@code at} in {@code b} */
+  private String readValue(final String type, final String b, final String at) {
+    final String primitive = primitiveType(type);
+    final DtoConfig other = config.getDto(type);
+    if (primitive != null) {
+      return readPrimitive(primitive, b, at);
+    } else if (isString(type)) {
+      return "BufferViews.getString(" + b + ", " + at + ")";
+    } else if (other != null && other.isEnum()) {
+      return enumValues(other) + "[" + b + ".getShort(" + at + ")]";
+    } else if (hasView(other)) {
+      return viewClass(other) + ".wrap(" + b + ", " + at + ")";
+    } else {
+      return "(" + type + ") BufferViews.getSerialized(" + b + ", " + at + ")";
+    }
+  }
+
+  /** @return the type that getters return for {@code type}, which is the view for DTOs that have them */
+  private String viewType(final String type) {
+    final DtoConfig other = config.getDto(type);
+    return hasView(other) ? viewClass(other) : type;
+  }
+
+  /** @return a field of {@code e}'s constants, as {@code values()} copies them each call */
+  private String enumValues(final DtoConfig e) {
+    final String name = e.getSimpleName() + "Values";
+    // getField returns the existing field if another property already added it
+    gc.getField(name).type(e.getDtoType() + "[]").setPrivate().setStatic().setFinal().initialValue("{}.values()", e.getDtoType());
+    return name;
+  }
+
+  /** @return our properties, including inherited ones, skipping any whose type is a type parameter */
+  private List<DtoProperty> properties() {
+    final List<DtoProperty> properties = list();
+    final Set<String> names = new HashSet<String>();
+    final List<DtoProperty> all = list(dto.getInheritedProperties());
+    all.addAll(dto.getClassProperties());
+    for (final DtoProperty dp : all) {
+      final String type = dp.isList() || dp.isSet() ? dp.getSingleDtoType() : dp.getDtoType();
+      final boolean known = type.contains(".") || primitiveType(type) != null || isString(type) || config.getDto(type) != null;
+      if (known && names.add(dp.getName())) {
+        properties.add(dp);
+      }
+    }
+    return properties;
+  }
+
+  private int slotSize(final DtoProperty dp) {
+    final String type = dp.getDtoType();
+    final DtoConfig other = config.getDto(type);
+    if (Primitives.isPrimitive(type)) {
+      return sizes.get(type);
+    } else if (Primitives.unbox(type) != null) {
+      return 1 + sizes.get(Primitives.unbox(type));
+    } else if (other != null && other.isEnum()) {
+      return 2;
+    }
+    return 4;
+  }
+
+  private static String readPrimitive(final String primitive, final String b, final String at) {
+    if ("boolean".equals(primitive)) {
+      return b + ".get(" + at + ") != 0";
+    } else if ("byte".equals(primitive)) {
+      return b + ".get(" + at + ")";
+    }
+    return b + ".get" + capitalize(primitive) + "(" + at + ")";
+  }
+
+  private static boolean hasView(final DtoConfig other) {
+    return other != null && !other.isEnum() && other.includeBufferView();
+  }
+
+  /** @return the primitive for numbers, chars and booleans, boxed or not, or {@code null} */
+  private static String primitiveType(final String type) {
+    return Primitives.isPrimitive(type) ? type : Primitives.unbox(type);
+  }
+
+  private static boolean isString(final String type) {
+    return "String".equals(type) || "java.lang.String".equals(type);
+  }
+
+  /** @return the tag for {@code dto}'s records, which is the hash of its name, like the binary codec's */
+  private static int tag(final DtoConfig dto) {
+    return dto.getSimpleName().hashCode();
+  }
+
+  private static String hex(final int bits) {
+    return String.format("0x%x", bits);
+  }
+
+  static String viewClass(final DtoConfig dto) {
+    return dto.getDtoType() + "View";
+  }
+
+}
@@ -0,0 +1,171 @@
+package com.bizo.dtonator;
+
+import static com.bizo.dtonator.Names.read;
+import static com.bizo.dtonator.Names.write;
+import static joist.sourcegen.Argument.arg;
+import static org.apache.commons.lang.StringUtils.capitalize;
+
+import joist.sourcegen.GClass;
+import joist.sourcegen.GMethod;
+
+import com.bizo.dtonator.config.DtoConfig;
+import com.bizo.dtonator.config.DtoProperty;
+import com.bizo.dtonator.config.Primitives;
+
+/**
+ * Generates a GWT-RPC {@code XxxDto_CustomFieldSerializer} for a DTO with the {@code customFieldSerializer} setting,
+ * which writes the DTO's fields in a fixed order, instead of GWT's generated serializer walking them generically.
+ *
+ * Primitives and strings use the stream's typed methods, boxed values a presence {@code boolean} and then the
+ * primitive, and enums their ordinal, so none of them go through {@code writeObject}'s type signatures. Nested DTOs,
+ * collections and other types still use {@code writeObject}, so GWT picks their subclass's serializer. A subclass's
+ * serializer calls its base's first, if the base has one, like GWT's own serializers do.
+ */
+public class GenerateCustomFieldSerializer {
+
+  private static final String writer = "com.google.gwt.user.client.rpc.SerializationStreamWriter";
+  private static final String reader = "com.google.gwt.user.client.rpc.SerializationStreamReader";
+
+  private final DtoConfig dto;
+  private final GClass gc;
+  /** Whether the dto has a changed mask, which is written after all of the fields. */
+  private final boolean tracked;
+
+  /** Creates our class in {@code out}, so must be called serially; {@link #generate()} can then run concurrently. */
+  public GenerateCustomFieldSerializer(final OutputDirectory out, final DtoConfig dto) {
+    this.dto = dto;
+    gc = out.getClass(serializerClass(dto));
+    tracked = dto.includeDirtyTracking();
+  }
+
+  public void generate() {
+    gc.baseClassName("com.google.gwt.user.client.rpc.CustomFieldSerializer<{}>", dto.getDtoType());
+    gc.addImports("com.google.gwt.user.client.rpc.SerializationException");
+    addSerialize();
+    addDeserialize();
+    if (!dto.isAbstract()) {
+      addInstantiate();
+    }
+  }
+
+  /**
+   * Adds the static {@code serialize} that GWT calls, and the {@code serializeInstance} override.
+   *
+   * With dirty tracking, the fields are written by {@code serializeFields}, which subclasses call, so {@code serialize}
+   * writes the changed mask once, after all of them.
+   */
+  private void addSerialize() {
+    final GMethod fields = gc.getMethod(tracked ? "serializeFields" : "serialize", arg(writer, "w"), arg(dto.getDtoType(), "instance"));
+    fields.setStatic().addThrows("SerializationException");
+    if (baseHasSerializer()) {
+      fields.body.line("{}.{}(w, instance);", serializerClass(dto.getBaseDto()), baseTracked() ? "serializeFields" : "serialize");
+    }
+    for (final DtoProperty dp : baseHasSerializer() ? dto.getClassProperties() : dto.getAllPropertiesMap().values()) {
+      addWriteValue(fields, dp);
+    }
+    if (tracked) {
+      final GMethod m = gc.getMethod("serialize", arg(writer, "w"), arg(dto.getDtoType(), "instance")).setStatic();
+      m.addThrows("SerializationException");
+      m.body.line("serializeFields(w, instance);");
+      m.body.line("w.writeLong(instance.changedMask);");
+    }
+
+    final GMethod i = gc.getMethod("serializeInstance", arg(writer, "w"), arg(dto.getDtoType(), "instance"));
+    i.addOverride().addThrows("SerializationException");
+    i.body.line("serialize(w, instance);");
+  }
+
+  /**
+   * Adds the static {@code deserialize} that GWT calls, and the {@code deserializeInstance} override.
+   *
+   * With dirty tracking, the changed mask is read after the fields, as primitive fields' setters mark them changed.
+   */
+  private void addDeserialize() {
+    final GMethod fields = gc.getMethod(tracked ? "deserializeFields" : "deserialize", arg(reader, "r"), arg(dto.getDtoType(), "instance"));
+    fields.setStatic().addThrows("SerializationException");
+    fields.addAnnotation("@SuppressWarnings(\"unchecked\")");
+    if (baseHasSerializer()) {
+      fields.body.line("{}.{}(r, instance);", serializerClass(dto.getBaseDto()), baseTracked() ? "deserializeFields" : "deserialize");
+    }
+    for (final DtoProperty dp : baseHasSerializer() ? dto.getClassProperties() : dto.getAllPropertiesMap().values()) {
+      addReadValue(fields, dp);
+    }
+    if (tracked) {
+      final GMethod m = gc.getMethod("deserialize", arg(reader, "r"), arg(dto.getDtoType(), "instance")).setStatic();
+      m.addThrows("SerializationException");
+      m.body.line("deserializeFields(r, instance);");
+      m.body.line("instance.changedMask = r.readLong();");
+    }
+
+    final GMethod i = gc.getMethod("deserializeInstance", arg(reader, "r"), arg(dto.getDtoType(), "instance"));
+    i.addOverride().addThrows("SerializationException");
+    i.body.line("deserialize(r, instance);");
+  }
+
+  /** Adds {@code instantiate}, so GWT doesn't need to reach our protected constructor itself. */
+  private void addInstantiate() {
+    final GMethod m = gc.getMethod("instantiate", arg(reader, "r")).returnType(dto.getDtoType()).setStatic();
+    m.addThrows("SerializationException");
+    m.body.line("return new {}();", dto.getDtoType());
+
+    gc.getMethod("hasCustomInstantiateInstance").returnType("boolean").addOverride().body.line("return true;");
+
+    final GMethod i = gc.getMethod("instantiateInstance", arg(reader, "r")).returnType(dto.getDtoType());
+    i.addOverride().addThrows("SerializationException");
+    i.body.line("return instantiate(r);");
+  }
+
+  private void addWriteValue(final GMethod m, final DtoProperty dp) {
+    final String type = dp.getDtoType();
+    final String v = read("instance", dp);
+    final String boxed = Primitives.unbox(type);
+    if (Primitives.isPrimitive(type)) {
+      m.body.line("w.write{}({});", capitalize(type), v);
+    } else if (boxed != null) {
+      m.body.line("w.writeBoolean({} != null);", v);
+      m.body.line("if ({} != null) {", v);
+      m.body.line("_ w.write{}({});", capitalize(boxed), v);
+      m.body.line("}");
+    } else if (isString(type)) {
+      m.body.line("w.writeString({});", v);
+    } else if (dp.isEnum()) {
+      m.body.line("w.writeInt({} == null ? -1 : {}.ordinal());", v, v);
+    } else {
+      m.body.line("w.writeObject({});", v);
+    }
+  }
+
+  private void addReadValue(final GMethod m, final DtoProperty dp) {
+    final String type = dp.getDtoType();
+    final String boxed = Primitives.unbox(type);
+    if (Primitives.isPrimitive(type)) {
+      m.body.line(write("instance", dp, "r.read" + capitalize(type) + "()"));
+    } else if (boxed != null) {
+      m.body.line(write("instance", dp, "r.readBoolean() ? r.read" + capitalize(boxed) + "() : null"));
+    } else if (isString(type)) {
+      m.body.line(write("instance", dp, "r.readString()"));
+    } else if (dp.isEnum()) {
+      m.body.line("final int {}Ordinal = r.readInt();", dp.getName());
+      m.body.line(write("instance", dp, dp.getName() + "Ordinal < 0 ? null : " + type + ".values()[" + dp.getName() + "Ordinal]"));
+    } else {
+      m.body.line(write("instance", dp, "(" + type + ") r.readObject()"));
+    }
+  }
+
+  private boolean baseHasSerializer() {
+    return dto.getBaseDto() != null && dto.getBaseDto().includeCustomFieldSerializer();
+  }
+
+  private boolean baseTracked() {
+    return dto.getBaseDto().includeDirtyTracking();
+  }
+
+  private static boolean isString(final String type) {
+    return "String".equals(type) || "java.lang.String".equals(type);
+  }
+
+  static String serializerClass(final DtoConfig dto) {
+    return dto.getDtoType() + "_CustomFieldSerializer";
+  }
+
+}
@@ -1,48 +1,79 @@
 package com.bizo.dtonator;
 
+import static com.bizo.dtonator.Names.getter;
 import static com.bizo.dtonator.Names.mapperFieldName;
 import static com.bizo.dtonator.Names.mapperInterface;
+import static com.bizo.dtonator.Names.read;
+import static com.bizo.dtonator.Names.setter;
 import static com.bizo.dtonator.Names.simple;
+import static com.bizo.dtonator.Names.write;
 import static joist.sourcegen.Argument.arg;
 import static joist.util.Copy.list;
 import static org.apache.commons.lang.StringUtils.capitalize;
 import static org.apache.commons.lang.StringUtils.uncapitalize;
 
+import java.util.Arrays;
 import java.util.List;
 
+import com.bizo.dtonator.MapperFragment.MapperMethod;
 import com.bizo.dtonator.config.DtoConfig;
 import com.bizo.dtonator.config.DtoProperty;
+import com.bizo.dtonator.config.MapperShards;
 import com.bizo.dtonator.config.RootConfig;
 import com.bizo.dtonator.properties.GenericParser;
 import com.bizo.dtonator.properties.GenericPartsDto;
 
 import joist.sourcegen.Argument;
 import joist.sourcegen.GClass;
-import joist.sourcegen.GDirectory;
 import joist.sourcegen.GMethod;
 import joist.util.Copy;
 import joist.util.Join;
 
 public class GenerateDto {
 
-  private final GDirectory out;
-  private final GClass mapper;
+  private final MapperFragment mapper;
   private final RootConfig config;
-  private final List<String> takenToDtoOverloads;
+  private final boolean addToDtoOverload;
   private final DtoConfig dto;
   private final GClass gc;
+  private final GClass mb;
+  /** The {@code Mapper}, as passed to extension mappers, which is {@code m} from within a mapper shard. */
+  private final String self;
+  /** The prefix for calls to other {@code Mapper} methods, so shards call them on the {@code Mapper}. */
+  private final String call;
+  /** Whether {@code fromDto} takes the {@link DomainObjectContext} as a parameter, instead of from the ThreadLocal. */
+  private final boolean explicitContext;
+  /** The context argument for calls to other {@code fromDto} methods, i.e. {@code , c} if it's explicit. */
+  private final String ctx;
+  /** Whether {@code toXxxDto} maps each entity once per call, with a {@link ToDtoContext}. */
+  private final boolean identityToDto;
+  /** The context argument for calls to other {@code toXxxDto} methods, i.e. {@code , c} with {@code identityToDto}. */
+  private final String toCtx;
 
+  /**
+   * Creates our classes in {@code out}, which isn't thread-safe, so generators must be created serially.
+   *
+   * {@link #generate()} then only touches our own classes and {@code mapper}, so can run concurrently.
+   *
+   * @param addToDtoOverload whether this dto gets the {@code toDto(domain)} overload, as only one dto per domain type can
+   */
   public GenerateDto(
     final RootConfig config,
-    final GDirectory out,
-    final GClass mapper,
-    final List<String> takenToDtoOverloads,
+    final OutputDirectory out,
+    final MapperFragment mapper,
+    final boolean addToDtoOverload,
     final DtoConfig dto) {
     this.config = config;
-    this.out = out;
     this.mapper = mapper;
-    this.takenToDtoOverloads = takenToDtoOverloads;
+    this.addToDtoOverload = addToDtoOverload;
     this.dto = dto;
+    final boolean sharded = config.getMapperShards() != MapperShards.NONE;
+    self = sharded ? "m" : "this";
+    call = sharded ? "m." : "";
+    explicitContext = config.isExplicitContext();
+    ctx = explicitContext ? ", c" : "";
+    identityToDto = config.isIdentityToDto();
+    toCtx = identityToDto ? ", c" : "";
     String dtoType = dto.getDtoType();
 
     String typeStr = dto.getClassTypesString();
@@ -52,10 +83,11 @@ public class GenerateDto {
     }
 
     gc = out.getClass(dtoType);
+    mb = dto.requiresMapperType() ? out.getClass(mapperInterfaceWithGenerics()).setInterface() : null;
   }
 
   public void generate() {
-    System.out.println("Generating " + dto.getSimpleName());
+    checkIdentityToDto();
     addBaseClassIfNeeded();
     addAnnotations();
     addInterfaces();
@@ -66,6 +98,9 @@ public class GenerateDto {
     addCopyMethod();
     addEqualityIfNeeded();
     addToString();
+    if (dto.includeBinaryCodec()) {
+      new GenerateBinaryCodec(config, dto, gc).generate();
+    }
     addToFromMethodsToMapperIfNeeded();
     createMapperTypeIfNeeded();
     makeAbstractIfNeeded();
@@ -92,11 +127,71 @@ public class GenerateDto {
 
   private void addDtoFields() {
     for (final DtoProperty dp : dto.getClassProperties()) {
-      gc.getField(dp.getName()).setPublic().type(dp.getDtoType());
-      if (dto.includeBeanMethods()) {
-        gc.addGetterSetter(dp.getDtoType(), dp.getName());
+      if (dp.isPrimitiveField()) {
+        addPrimitiveField(dp);
+        continue;
+      }
+      if (dto.includeDirtyTracking()) {
+        // protected, so writes from other packages have to go through the setter, which sets its changed bit
+        gc.getField(dp.getName()).setProtected().type(dp.getDtoType());
+        gc.getMethod(getter(dp)).returnType(dp.getDtoType()).body.line("return {};", dp.getName());
+        final GMethod set = gc.getMethod(setter(dp), arg(dp.getDtoType(), dp.getName()));
+        set.body.line("this.{} = {};", dp.getName(), dp.getName());
+        addMarkChanged(set, dp);
+      } else {
+        gc.getField(dp.getName()).setPublic().type(dp.getDtoType());
+        if (dto.includeBeanMethods()) {
+          gc.addGetterSetter(dp.getDtoType(), dp.getName());
+        }
       }
     }
+    final int primitives = dto.getPrimitiveFields().size();
+    if (primitives > 0) {
+      // every property starts out null
+      gc.getField("nullMask").setPrivate().type("int").initialValue(hex((int) ((1L << primitives) - 1)));
+    }
+    if (dto.declaresChangedMask()) {
+      addChangedMask();
+    }
+  }
+
+  /**
+   * Adds the {@code changedMask}, which the setters set each property's bit in, and {@code fromDto} checks. Every
+   * property starts out changed, so dtos from constructors or other deserializers apply everything, until the mapper's
+   * {@code toDto} clears it.
+   */
+  private void addChangedMask() {
+    gc.getField("changedMask").setProtected().type("long").initialValue("-1L");
+    final GMethod isChanged = gc.getMethod("isChanged", arg("long", "bits")).returnType("boolean");
+    isChanged.body.line("return (changedMask & bits) != 0;");
+    gc.getMethod("clearChanged").body.line("changedMask = 0;");
+  }
+
+  private void addMarkChanged(final GMethod set, final DtoProperty dp) {
+    // properties past the 64th don't have a bit, and are always applied
+    if (dto.includeDirtyTracking() && dp.getChangedBit() != 0) {
+      set.body.line("changedMask |= {};", hex(dp.getChangedBit()));
+    }
+  }
+
+  /**
+   * Adds {@code dp} as a private primitive field, which is zero when null, and boxed accessors that check its bit in
+   * the {@code nullMask}, so the dto doesn't hold (or serialize) a boxed object per number/boolean.
+   */
+  private void addPrimitiveField(final DtoProperty dp) {
+    final String bit = hex(dp.getNullBit());
+    gc.getField(dp.getName()).setPrivate().type(dp.getDtoTypeUnboxed());
+    final GMethod get = gc.getMethod(getter(dp)).returnType(dp.getDtoType());
+    get.body.line("return (nullMask & {}) != 0 ? null : {};", bit, dp.getName());
+    final GMethod set = gc.getMethod(setter(dp), arg(dp.getDtoType(), dp.getName()));
+    set.body.line("if ({} == null) {", dp.getName());
+    set.body.line("_ this.{} = {};", dp.getName(), "boolean".equals(dp.getDtoTypeUnboxed()) ? "false" : "0");
+    set.body.line("_ nullMask |= {};", bit);
+    set.body.line("} else {");
+    set.body.line("_ this.{} = {};", dp.getName(), dp.getName());
+    set.body.line("_ nullMask &= ~{};", bit);
+    set.body.line("}");
+    addMarkChanged(set, dp);
   }
 
   private void addDefaultConstructor() {
@@ -108,7 +203,8 @@ public class GenerateDto {
           cstr0.body.line("this.{} = new {}();", dp.getName(), dp.getDtoType());
         }
       }
-    } else {
+    } else if (!dto.includeBinaryCodec()) {
+      // Externalizable needs a public constructor
       cstr0.setProtected();
     }
   }
@@ -125,10 +221,18 @@ public class GenerateDto {
     }
     cstr.body.line("super({});", Join.commaSpace(superParams));
     for (final DtoProperty dp : dto.getClassProperties()) {
-      cstr.body.line("this.{} = {};", dp.getName(), dp.getName());
+      if (dp.isPrimitiveField()) {
+        cstr.body.line("{}({});", setter(dp), dp.getName());
+      } else {
+        cstr.body.line("this.{} = {};", dp.getName(), dp.getName());
+      }
     }
   }
 
+  /**
+   * Adds {@code copyOf}, which copies nested dtos too, except with {@code identityToDto}, where they may refer back to
+   * {@code o}, so the copy shares them instead of recursing forever.
+   */
   private void addCopyOfMethod() {
     final GMethod m = gc.getMethod("copyOf", Argument.arg(dto.getDtoType(), "o")).returnType(dto.getDtoType()).setStatic();
     if (dto.getGenericTypeParameters() != null && !dto.isChildClass()) {
@@ -151,7 +255,7 @@ public class GenerateDto {
           gc.stripAndImportPackageIfPossible("java.util.ArrayList");
           m.body.line("_ ArrayList<{}> {}Copy = new ArrayList<{}>();", dp.getSingleDto(), dp.getName(), dp.getSingleDto());
           m.body.line("_ for ({} e : (({}) o).{}) {", dp.getSingleDto(), c.getDtoType(), dp.getName());
-          if (dp.getSingleDto().isEnum()) {
+          if (dp.getSingleDto().isEnum() || identityToDto) {
             m.body.line("_ _ {}Copy.add(e);", dp.getName());
           } else {
             m.body.line("_ _ {}Copy.add({}.copyOf(e));", dp.getName(), dp.getSingleDto());
@@ -161,7 +265,7 @@ public class GenerateDto {
           gc.stripAndImportPackageIfPossible("java.util.HashSet");
           m.body.line("_ HashSet<{}> {}Copy = new HashSet<{}>();", dp.getSingleDto(), dp.getName(), dp.getSingleDto());
           m.body.line("_ for ({} e : (({}) o).{}) {", dp.getSingleDto(), c.getDtoType(), dp.getName());
-          if (dp.getSingleDto().isEnum()) {
+          if (dp.getSingleDto().isEnum() || identityToDto) {
             m.body.line("_ _ {}Copy.add(e);", dp.getName());
           } else {
             m.body.line("_ _ {}Copy.add({}.copyOf(e));", dp.getName(), dp.getSingleDto());
@@ -174,10 +278,10 @@ public class GenerateDto {
       for (final DtoProperty dp : c.getAllPropertiesMap().values()) {
         if (dp.isListOfDtos() || dp.isSetOfDtos()) {
           m.body.line("_ _ {}Copy,", dp.getName());
-        } else if (dp.isDto()) {
+        } else if (dp.isDto() && !identityToDto) {
           m.body.line("_ _ {}.copyOf((({}) o).{}),", dp.getDtoType(), c.getDtoType(), dp.getName());
         } else {
-          m.body.line("_ _ (({}) o).{},", c.getDtoType(), dp.getName());
+          m.body.line("_ _ {},", read("((" + c.getDtoType() + ") o)", dp));
         }
       }
       m.body.stripLastCharacterOnPreviousLine();
@@ -198,14 +302,182 @@ public class GenerateDto {
 
   private void addEqualityIfNeeded() {
     // optionally generate equals + hashCode
-    final List<String> eq = dto.getEquality();
-    if (eq != null) {
+    final List<String> eq = dto.getEquality() == null ? null : withoutCycles(dto.getEquality());
+    if (eq != null && (hasPrimitiveFields(eq) || hasCycles(eq))) {
+      addOwnEquals(eq);
+      addOwnHashCode(eq);
+    } else if (eq != null) {
       gc.addEquals(eq).addHashCode(eq);
     }
   }
 
+  /**
+   * Adds {@code equals}, comparing our own primitive fields' null bits and values, without boxing them, and nested dtos
+   * by id with {@code identityToDto}.
+   */
+  private void addOwnEquals(final List<String> names) {
+    int mask = 0;
+    final List<String> conditions = list();
+    for (final String name : names) {
+      final DtoProperty dp = dto.getAllPropertiesMap().get(name);
+      if (isOwnPrimitiveField(dp)) {
+        mask |= dp.getNullBit();
+        if ("double".equals(dp.getDtoTypeUnboxed())) {
+          conditions.add("Double.compare(" + name + ", o." + name + ") == 0");
+        } else if ("float".equals(dp.getDtoTypeUnboxed())) {
+          conditions.add("Float.compare(" + name + ", o." + name + ") == 0");
+        } else {
+          conditions.add(name + " == o." + name);
+        }
+      } else {
+        final String a = readValue("this", name);
+        final String b = readValue("o", name);
+        conditions.add("(" + a + " == null ? " + b + " == null : " + a + ".equals(" + b + "))");
+      }
+    }
+    if (mask != 0) {
+      conditions.add(0, "(nullMask & " + hex(mask) + ") == (o.nullMask & " + hex(mask) + ")");
+    }
+    final GMethod m = gc.getMethod("equals", arg("Object", "other")).returnType("boolean").addOverride();
+    m.body.line("if (other != null && other.getClass().equals(getClass())) {");
+    m.body.line("_ final {} o = ({}) other;", dto.getSimpleName(), dto.getSimpleName());
+    for (int i = 0; i < conditions.size(); i++) {
+      final String end = i == conditions.size() - 1 ? ";" : "";
+      m.body.line((i == 0 ? "_ return " : "_ _ && ") + conditions.get(i) + end);
+    }
+    m.body.line("}");
+    m.body.line("return false;");
+  }
+
+  /**
+   * Adds {@code hashCode}, hashing our own primitive fields like their boxed types would, and 0 for null, and nested dtos
+   * by id with {@code identityToDto}.
+   */
+  private void addOwnHashCode(final List<String> names) {
+    final GMethod m = gc.getMethod("hashCode").returnType("int").addOverride();
+    m.body.line("int hash = 17;");
+    for (final String name : names) {
+      final DtoProperty dp = dto.getAllPropertiesMap().get(name);
+      if (isOwnPrimitiveField(dp)) {
+        final String type = dp.getDtoTypeUnboxed();
+        final String hash;
+        if ("long".equals(type)) {
+          hash = "(int) (" + name + " ^ (" + name + " >>> 32))";
+        } else if ("double".equals(type)) {
+          final String bits = "Double.doubleToLongBits(" + name + ")";
+          hash = "(int) (" + bits + " ^ (" + bits + " >>> 32))";
+        } else if ("float".equals(type)) {
+          hash = "Float.floatToIntBits(" + name + ")";
+        } else if ("boolean".equals(type)) {
+          hash = "(" + name + " ? 1231 : 1237)";
+        } else {
+          hash = name;
+        }
+        m.body.line("hash = 31 * hash + ((nullMask & {}) != 0 ? 0 : {});", hex(dp.getNullBit()), hash);
+      } else {
+        final String value = readValue("this", name);
+        m.body.line("hash = 31 * hash + ({} == null ? 0 : {}.hashCode());", value, value);
+      }
+    }
+    m.body.line("return hash;");
+  }
+
+  /** @return whether any of {@code names} are primitive fields, which joist's equals/toString would read as-is */
+  private boolean hasPrimitiveFields(final List<String> names) {
+    for (final String name : names) {
+      if (dto.isPrimitiveField(name)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** @return the code to read the {@code name} property, which may be inherited, from {@code target} */
+  private String readProperty(final String target, final String name) {
+    final DtoProperty dp = dto.getAllPropertiesMap().get(name);
+    return dp == null ? target + "." + name : read(target, dp);
+  }
+
+  /**
+   * @return whether {@code dp} is a nested dto, or a list/set of them, which with {@code identityToDto} may refer back
+   *         to us, so equals/hashCode/toString can't follow it
+   */
+  private boolean isCycle(final DtoProperty dp) {
+    if (!identityToDto || dp == null) {
+      return false;
+    }
+    return dp.isDto() || (dp.isListOfDtos() || dp.isSetOfDtos()) && !dp.getSingleDto().isEnum();
+  }
+
+  private boolean hasCycles(final List<String> names) {
+    for (final String name : names) {
+      if (isCycle(dto.getAllPropertiesMap().get(name))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** @return {@code names} without the properties that may be cycles and have no id to stand in for them */
+  private List<String> withoutCycles(final List<String> names) {
+    final List<String> kept = list();
+    for (final String name : names) {
+      final DtoProperty dp = dto.getAllPropertiesMap().get(name);
+      if (!isCycle(dp) || nestedId(dp) != null) {
+        kept.add(name);
+      }
+    }
+    return kept;
+  }
+
+  /** @return the id property of {@code dp}'s dto, if it's a single nested dto with an id */
+  private DtoProperty nestedId(final DtoProperty dp) {
+    return dp.isDto() ? config.getDto(dp.getDtoType()).getAllPropertiesMap().get("id") : null;
+  }
+
+  /** @return the code to read the {@code name} property from {@code target}, or its id if it may be a cycle */
+  private String readValue(final String target, final String name) {
+    final DtoProperty dp = dto.getAllPropertiesMap().get(name);
+    if (!isCycle(dp)) {
+      return readProperty(target, name);
+    }
+    final String nested = read(target, dp);
+    return "(" + nested + " == null ? null : " + read(nested, nestedId(dp)) + ")";
+  }
+
+  /**
+   * Fails if we have nested dtos with {@code identityToDto} and a codec, as the codecs write nested dtos inline, so
+   * would recurse forever on the cycles that {@code identityToDto} makes.
+   */
+  private void checkIdentityToDto() {
+    if (!identityToDto) {
+      return;
+    }
+    final String setting = dto.includeBinaryCodec() ? "binaryCodec" : dto.includeJson() ? "json" : dto.includeBufferView() ? "bufferView" : null;
+    if (setting == null) {
+      return;
+    }
+    for (final DtoProperty dp : dto.getAllPropertiesMap().values()) {
+      if (isCycle(dp)) {
+        throw new IllegalStateException(dto.getSimpleName() + "." + dp.getName() + " may be a cycle with identityToDto, which " + setting + " can't write");
+      }
+    }
+  }
+
+  private boolean isOwnPrimitiveField(final DtoProperty dp) {
+    return dto.getPrimitiveFields().contains(dp);
+  }
+
+  private static String hex(final int bits) {
+    return String.format("0x%x", bits);
+  }
+
+  private static String hex(final long bits) {
+    return String.format("0x%xL", bits);
+  }
+
   private void addToString() {
-    final List<String> fieldNames = list();
+    List<String> fieldNames = list();
     if (dto.getEquality() != null) {
       fieldNames.addAll(dto.getEquality());
     } else {
@@ -213,19 +485,32 @@ public class GenerateDto {
         fieldNames.add(dp.getName());
       }
     }
-    gc.addToString(fieldNames);
-  }
-
-  private void createMapperTypeIfNeeded() {
-    if (!dto.requiresMapperType()) {
-      return;
+    fieldNames = withoutCycles(fieldNames);
+    if (hasPrimitiveFields(fieldNames) || hasCycles(fieldNames)) {
+      // read the primitive fields via their getters, so nulls are still "null", and nested dtos by id
+      final List<String> values = list();
+      for (final String name : fieldNames) {
+        values.add(readValue("this", name));
+      }
+      final GMethod m = gc.getMethod("toString").returnType("String").addOverride();
+      m.body.line("return \"{}[\" + {} + \"]\";", dto.getSimpleName(), Join.join(values, " + \", \" + "));
+    } else {
+      gc.addToString(fieldNames);
     }
+  }
 
+  private String mapperInterfaceWithGenerics() {
     String dtoType = mapperInterface(config, dto);
     if (dto.getClassTypesString() != null) {
       dtoType = dtoType + "<" + dto.getClassTypesString() + ">";
     }
-    final GClass mb = out.getClass(dtoType).setInterface();
+    return dtoType;
+  }
+
+  private void createMapperTypeIfNeeded() {
+    if (mb == null) {
+      return;
+    }
 
     if (dto.getGenericClassTypes() != null && !dto.getGenericClassTypes().isEmpty()) {
       for (GenericPartsDto type : dto.getGenericClassTypes()) {
@@ -252,35 +537,65 @@ public class GenerateDto {
     if (dto.isManualDto()) {
       return;
     }
+    mapper.addImports(DomainObjectContext.class, MappedViews.class, Mapping.class);
+    if (identityToDto) {
+      mapper.addImports(ToDtoContext.class);
+    }
     addToDtoMethodToMapper();
     addToDtoOverloadToMapperIfAble();
     addFromDtoMethodToMapper();
     if (dto.hasIdProperty()) {
       addFromOnlyDtoMethodToMapper();
     }
+    addCollectIdsMethodToMapper();
+    addToDtosMethodToMapper();
+    addLazyToDtosMethodsToMapper();
+    if (dto.includeBatch()) {
+      addToDtoBatchMethodToMapper();
+    }
+    if (dto.hasIdProperty()) {
+      addFromDtosMethodToMapper();
+    }
   }
 
-  /** Adds {@code mapper.toXxxDto(Domain)}. */
+  /**
+   * Adds {@code mapper.toXxxDto(Domain)}.
+   *
+   * With {@code identityToDto}, it takes a {@link ToDtoContext}, and returns the DTO it already made for {@code o}, if
+   * any. The entity properties are set after the DTO is put in the context, so cycles end at the first repeated entity.
+   */
   private void addToDtoMethodToMapper() {
-    final GMethod toDto = mapper.getMethod("to" + dto.getSimpleName(), arg(dto.getDomainType(), "o"));
+    final MapperMethod toDto = mapper.getMethod("to" + dto.getSimpleName(), withToDtoContext(arg(dto.getDomainType(), "o")));
     toDto.returnType(dto.getDtoType());
     toDto.body.line("if (o == null) {");
     toDto.body.line("_ return null;");
     toDto.body.line("}");
     for (DtoConfig subClass : dto.getSubClassDtos()) {
       toDto.body.line("if (o instanceof {}) {", subClass.getDomainType());
-      toDto.body.line("_ return to{}(({}) o);", subClass.getSimpleName(), subClass.getDomainType());
+      toDto.body.line("_ return {}to{}(({}) o{});", call, subClass.getSimpleName(), subClass.getDomainType(), toCtx);
       toDto.body.line("}");
     }
     if (dto.isAbstract()) {
       toDto.body.line("throw new IllegalArgumentException(o + \" should be a subclass\");");
       return;
     }
-    toDto.body.line("return new {}(", dto.getDtoType());
+    // the properties to set once the dto is in the context, with identityToDto
+    final List<DtoProperty> deferred = list();
+    if (identityToDto) {
+      toDto.body.line("{} existing = c.get({}.class, o);", dto.getDtoType(), dto.getDtoType());
+      toDto.body.line("if (existing != null) {");
+      toDto.body.line("_ return existing;");
+      toDto.body.line("}");
+      toDto.body.line("{} dto = new {}(", dto.getDtoType(), dto.getDtoType());
+    } else if (dto.includeDirtyTracking()) {
+      toDto.body.line("{} dto = new {}(", dto.getDtoType(), dto.getDtoType());
+    } else {
+      toDto.body.line("return new {}(", dto.getDtoType());
+    }
     for (final DtoProperty dp : dto.getAllPropertiesMap().values()) {
       if (dp.isExtension()) {
         // delegate to the user's mapper method for this property
-        toDto.body.line("_ {}.{}(this, o),", mapperFieldName(dp.getDto()), extensionGetter(dp));
+        toDto.body.line("_ {}.{}({}, o),", mapperFieldName(dp.getDto()), extensionGetter(dp), self);
       } else if (dp.getGetterMethodName() == null) {
 
         toDto.body.line("_ null,");
@@ -293,16 +608,25 @@ public class GenerateDto {
           dp.getGetterMethodName());
       } else if (dp.isEnum()) {
         // delegate to the enum converter
-        toDto.body.line("_ toDto(o.{}()),", dp.getGetterMethodName());
+        toDto.body.line("_ {}toDto(o.{}()),", call, dp.getGetterMethodName());
       } else if (dp.isChainedId()) {
         toDto.body.line("_ o.{}() == null ? null : o.{}().getId(),", dp.getGetterMethodName(), dp.getGetterMethodName()); // assume getId
+      } else if (dp.isEntity() && identityToDto) {
+        toDto.body.line("_ null,");
+        deferred.add(dp);
       } else if (dp.isEntity()) {
         // delegate to the entity's toDto converter
-        toDto.body.line("_ toDto(o.{}()),", dp.getGetterMethodName());
+        toDto.body.line("_ {}toDto(o.{}()),", call, dp.getGetterMethodName());
       } else if (dp.isListOfEntities()) {
         // make and delegate to a method to convert the entities to dtos
-        toDto.body.line("_ {}For{}(o.{}()),", dp.getName(), dto.getSimpleName(), dp.getGetterMethodName());
-        final GMethod c = mapper.getMethod(dp.getName() + "For" + dto.getSimpleName(), arg(dp.getDomainType(), "os"));
+        if (identityToDto) {
+          toDto.body.line("_ null,");
+          deferred.add(dp);
+        } else {
+          toDto.body.line("_ {}For{}(o.{}()),", dp.getName(), dto.getSimpleName(), dp.getGetterMethodName());
+        }
+        final String helperMethod = dp.getName() + "For" + dto.getSimpleName();
+        final MapperMethod c = mapper.getMethod(helperMethod, withToDtoContext(arg(dp.getDomainType(), "os")));
         c.returnType(dp.getDtoType()).setPrivate();
         // assumes dto type can be instantiated
         c.body.line("if (os == null) {");
@@ -314,15 +638,22 @@ public class GenerateDto {
         } else if (dp.getDtoType().startsWith("java.util.List")) {
           collectionType = dp.getDtoType().replaceFirst("java.util.List", "java.util.ArrayList");
         }
+        addParallelToDtoIfNeeded(c, dp, collectionType);
         c.body.line("{} dtos = new {}();", dp.getDtoType(), collectionType);
         c.body.line("for ({} o : os) {", dp.getSingleDomainType());
-        c.body.line("_ dtos.add(to{}(o));", dp.getSimpleSingleDtoType());
+        c.body.line("_ dtos.add({}to{}(o{}));", call, dp.getSimpleSingleDtoType(), toCtx);
         c.body.line("}");
         c.body.line("return dtos;");
       } else if (dp.isSetOfEntities()) {
         // make and delegate to a method to convert the entities to dtos
-        toDto.body.line("_ {}For{}(o.{}()),", dp.getName(), dto.getSimpleName(), dp.getGetterMethodName());
-        final GMethod c = mapper.getMethod(dp.getName() + "For" + dto.getSimpleName(), arg(dp.getDomainType(), "os"));
+        if (identityToDto) {
+          toDto.body.line("_ null,");
+          deferred.add(dp);
+        } else {
+          toDto.body.line("_ {}For{}(o.{}()),", dp.getName(), dto.getSimpleName(), dp.getGetterMethodName());
+        }
+        final String helperMethod = dp.getName() + "For" + dto.getSimpleName();
+        final MapperMethod c = mapper.getMethod(helperMethod, withToDtoContext(arg(dp.getDomainType(), "os")));
         c.returnType(dp.getDtoType()).setPrivate();
         // assumes dto type can be instantiated
         c.body.line("if (os == null) {");
@@ -334,9 +665,10 @@ public class GenerateDto {
         } else if (dp.getDtoType().startsWith("java.util.Set")) {
           collectionType = dp.getDtoType().replaceFirst("java.util.Set", "java.util.HashSet");
         }
+        addParallelToDtoIfNeeded(c, dp, collectionType);
         c.body.line("{} dtos = new {}();", dp.getDtoType(), collectionType);
         c.body.line("for ({} o : os) {", dp.getSingleDomainType());
-        c.body.line("_ dtos.add(to{}(o));", dp.getSimpleSingleDtoType());
+        c.body.line("_ dtos.add({}to{}(o{}));", call, dp.getSimpleSingleDtoType(), toCtx);
         c.body.line("}");
         c.body.line("return dtos;");
       } else {
@@ -346,26 +678,69 @@ public class GenerateDto {
     }
     toDto.body.stripLastCharacterOnPreviousLine();
     toDto.body.line(");");
+    if (dto.includeDirtyTracking() && !identityToDto) {
+      // so the client's setters are the only changes
+      toDto.body.line("dto.clearChanged();");
+      toDto.body.line("return dto;");
+    }
+    if (identityToDto) {
+      toDto.body.line("c.put({}.class, o, dto);", dto.getDtoType());
+      for (final DtoProperty dp : deferred) {
+        if (dp.isEntity()) {
+          toDto.body.line(write("dto", dp, call + "to" + simple(dp.getDtoType()) + "(o." + dp.getGetterMethodName() + "(), c)"));
+        } else {
+          toDto.body.line(write("dto", dp, dp.getName() + "For" + dto.getSimpleName() + "(o." + dp.getGetterMethodName() + "(), c)"));
+        }
+      }
+      if (dto.includeDirtyTracking()) {
+        // after the deferred properties, as their setters mark them changed
+        toDto.body.line("dto.clearChanged();");
+      }
+      toDto.body.line("return dto;");
+      // and keep the original signature, with a context for just this call
+      final MapperMethod wrapper = mapper.getMethod("to" + dto.getSimpleName(), arg(dto.getDomainType(), "o"));
+      wrapper.returnType(dto.getDtoType());
+      wrapper.body.line("return {}to{}(o, new ToDtoContext());", call, dto.getSimpleName());
+    }
+  }
+
+  /**
+   * Adds mapping {@code os} on the {@link ParallelMapping} pool, if it's larger than the {@code parallelThreshold}.
+   *
+   * Only {@code toDto} goes parallel, as {@code fromDto} shares the {@link DomainObjectContext} across the whole graph,
+   * and {@code identityToDto} shares the {@link ToDtoContext}, which aren't thread-safe.
+   */
+  private void addParallelToDtoIfNeeded(final MapperMethod c, final DtoProperty dp, final String collectionType) {
+    final Integer threshold = dto.getParallelThreshold(dp.getName());
+    if (threshold == null || identityToDto) {
+      return;
+    }
+    mapper.addImports(ParallelMapping.class, Mapping.class);
+    c.body.line("if (os.size() >= {}) {", threshold);
+    c.body.line("_ return ParallelMapping.map(os, new Mapping<{}, {}>() {", dp.getSingleDomainType(), dp.getSingleDtoType());
+    c.body.line("_ _ public {} map({} o) {", dp.getSingleDtoType(), dp.getSingleDomainType());
+    c.body.line("_ _ _ return {}to{}(o);", call, dp.getSimpleSingleDtoType());
+    c.body.line("_ _ }");
+    c.body.line("_ }, new {}(os.size()));", collectionType);
+    c.body.line("}");
   }
 
   /** Adds {@code mapper.toDto(domain)} (no "Xxx") if the overload isn't taken yet. */
   private void addToDtoOverloadToMapperIfAble() {
-    if (!takenToDtoOverloads.contains(dto.getDomainType())) {
-      final GMethod toDtoOverload = mapper.getMethod("toDto", arg(dto.getDomainType(), "o"));
+    if (addToDtoOverload) {
+      final MapperMethod toDtoOverload = mapper.getMethod("toDto", arg(dto.getDomainType(), "o"));
       toDtoOverload.returnType(dto.getDtoType());
-      toDtoOverload.body.line("return to{}(o);", dto.getSimpleName());
-      takenToDtoOverloads.add(dto.getDomainType());
+      toDtoOverload.body.line("return {}to{}(o);", call, dto.getSimpleName());
     }
   }
 
   /** Adds {@code mapper.fromDto(domain, dto)}, the client is responsible for finding {@code domain}. */
   private void addFromDtoMethodToMapper() {
-    final GMethod fromDto = mapper.getMethod(
+    final MapperMethod fromDto = mapper.getMethod(
       "fromDto", //
-      arg(dto.getDomainType(), "o"),
-      arg(dto.getDtoType(), "dto"));
-    fromDto.body.line("DomainObjectContext c = DomainObjectContext.push();");
-    fromDto.body.line("try {");
+      withContext(arg(dto.getDomainType(), "o"), arg(dto.getDtoType(), "dto")));
+    final String open = openContext(fromDto);
+    addStartBatch(fromDto, open);
     for (final DtoProperty dp : dto.getClassProperties()) {
       if (dp.isReadOnly()) {
         continue;
@@ -374,29 +749,35 @@ public class GenerateDto {
       if ("id".equals(dp.getName())) {
         continue;
       }
+      // with dirty tracking, only call the setters (and collection helpers) of changed properties
+      final boolean guarded = dto.includeDirtyTracking() && dp.getChangedBit() != 0;
+      if (guarded) {
+        fromDto.body.line(open + "if (dto.isChanged({})) {", hex(dp.getChangedBit()));
+      }
+      final String in = guarded ? open + "_ " : open;
       if (dp.isExtension()) {
-        fromDto.body.line("_ {}.{}(this, o, dto.{});", mapperFieldName(dto), extensionSetter(dp), dp.getName());
+        fromDto.body.line(in + "{}.{}({}, o, {});", mapperFieldName(dto), extensionSetter(dp), self, read("dto", dp));
       } else if (dp.isValueType()) {
         fromDto.body.line(
-          "_ o.{}(dto.{} == null ? null : {}.fromDto(dto.{}));", //
+          in + "o.{}({} == null ? null : {}.fromDto({}));", //
           dp.getSetterMethodName(),
-          dp.getName(),
+          read("dto", dp),
           mapperFieldName(dp.getValueTypeConfig()),
-          dp.getName());
+          read("dto", dp));
       } else if (dp.isEnum()) {
-        fromDto.body.line("_ o.{}(fromDto(dto.{}));", dp.getSetterMethodName(), dp.getName());
+        fromDto.body.line(in + "o.{}({}fromDto({}));", dp.getSetterMethodName(), call, read("dto", dp));
       } else if (dp.isChainedId()) {
-        fromDto.body.line("_ if (dto.{} != null) {", dp.getName());
-        fromDto.body.line("_ _ o.{}(lookup.lookup({}.class, dto.{}));", dp.getSetterMethodName(), dp.getDomainType(), dp.getName());
-        fromDto.body.line("_ } else {");
-        fromDto.body.line("_ _ o.{}(null);", dp.getSetterMethodName());
-        fromDto.body.line("_ }");
+        fromDto.body.line(in + "if ({} != null) {", read("dto", dp));
+        fromDto.body.line(in + "_ o.{}(c.lookup(lookup, {}.class, {}));", dp.getSetterMethodName(), dp.getDomainType(), read("dto", dp));
+        fromDto.body.line(in + "} else {");
+        fromDto.body.line(in + "_ o.{}(null);", dp.getSetterMethodName());
+        fromDto.body.line(in + "}");
       } else if (dp.isEntity()) {
-        fromDto.body.line("_ o.{}(fromDto(dto.{}));", dp.getSetterMethodName(), dp.getName());
+        fromDto.body.line(in + "o.{}({}fromDto({}{}));", dp.getSetterMethodName(), call, read("dto", dp), ctx);
       } else if (dp.isListOfEntities()) {
         final String helperMethod = dp.getName() + "From" + dto.getSimpleName();
-        fromDto.body.line("_ o.{}({}(dto.{}));", dp.getSetterMethodName(), helperMethod, dp.getName());
-        final GMethod c = mapper.getMethod(helperMethod, arg(dp.getDtoType(), "dtos"));
+        fromDto.body.line(in + "o.{}({}({}{}));", dp.getSetterMethodName(), helperMethod, read("dto", dp), ctx);
+        final MapperMethod c = mapper.getMethod(helperMethod, withContext(arg(dp.getDtoType(), "dtos")));
         c.returnType(dp.getDomainType()).setPrivate();
         // assumes List->ArrayList
         c.body.line("if (dtos == null) {");
@@ -404,13 +785,13 @@ public class GenerateDto {
         c.body.line("}");
         c.body.line("{} os = new {}();", dp.getDomainType(), dp.getDomainType().replace("List", "ArrayList"));
         c.body.line("for ({} dto : dtos) {", dp.getSingleDtoType());
-        c.body.line("_ os.add(fromDto(dto));");
+        c.body.line("_ os.add({}fromDto(dto{}));", call, ctx);
         c.body.line("}");
         c.body.line("return os;");
       } else if (dp.isSetOfEntities()) {
         final String helperMethod = dp.getName() + "From" + dto.getSimpleName();
-        fromDto.body.line("_ o.{}({}(dto.{}));", dp.getSetterMethodName(), helperMethod, dp.getName());
-        final GMethod c = mapper.getMethod(helperMethod, arg(dp.getDtoType(), "dtos"));
+        fromDto.body.line(in + "o.{}({}({}{}));", dp.getSetterMethodName(), helperMethod, read("dto", dp), ctx);
+        final MapperMethod c = mapper.getMethod(helperMethod, withContext(arg(dp.getDtoType(), "dtos")));
         c.returnType(dp.getDomainType()).setPrivate();
         // assumes Set->HashSet
         c.body.line("if (dtos == null) {");
@@ -418,57 +799,271 @@ public class GenerateDto {
         c.body.line("}");
         c.body.line("{} os = new {}();", dp.getDomainType(), dp.getDomainType().replace("Set", "HashSet"));
         c.body.line("for ({} dto : dtos) {", dp.getSingleDtoType());
-        c.body.line("_ os.add(fromDto(dto));");
+        c.body.line("_ os.add({}fromDto(dto{}));", call, ctx);
         c.body.line("}");
         c.body.line("return os;");
       } else if (dp.isGenericType()) {
-        fromDto.body.line("_ o.{}(fromDto(dto.{}));", dp.getSetterMethodName(), dp.getName());
+        fromDto.body.line(in + "o.{}({}fromDto({}{}));", dp.getSetterMethodName(), call, read("dto", dp), ctx);
       }
 
       else {
-        fromDto.body.line("_ o.{}(dto.{});", dp.getSetterMethodName(), dp.getName());
+        fromDto.body.line(in + "o.{}({});", dp.getSetterMethodName(), read("dto", dp));
+      }
+      if (guarded) {
+        fromDto.body.line(open + "}");
       }
     }
     if (dto.getBaseDto() != null) {
-      fromDto.body.line("_ fromDto(o, ({}) dto);", dto.getBaseDto().getDtoType());
+      fromDto.body.line(open + "{}fromDto(o, ({}) dto{});", call, dto.getBaseDto().getDtoType(), ctx);
+    }
+    closeContext(fromDto);
+    if (explicitContext) {
+      final MapperMethod wrapper = mapper.getMethod("fromDto", arg(dto.getDomainType(), "o"), arg(dto.getDtoType(), "dto"));
+      wrapper.body.line("DomainObjectContext c = DomainObjectContext.push();");
+      wrapper.body.line("try {");
+      wrapper.body.line("_ {}fromDto(o, dto, c);", call);
+      wrapper.body.line("} finally {");
+      wrapper.body.line("_ c.pop();");
+      wrapper.body.line("}");
     }
-    fromDto.body.line("} finally {");
-    fromDto.body.line("_ c.pop();");
-    fromDto.body.line("}");
   }
 
   /** Adds {@code mapper.fromDto(dto)}, using the {@code id} and {@link DomainObjectLookup}. */
   private void addFromOnlyDtoMethodToMapper() {
-    final GMethod fromDto = mapper.getMethod("fromDto", arg(dto.getDtoType(), "dto"));
+    final MapperMethod fromDto = mapper.getMethod("fromDto", withContext(arg(dto.getDtoType(), "dto")));
     fromDto.returnType(dto.getDomainType());
-    fromDto.body.line("DomainObjectContext c = DomainObjectContext.push();");
-    fromDto.body.line("try {");
-    fromDto.body.line("_ if (dto == null) {");
-    fromDto.body.line("_ _ return null;");
-    fromDto.body.line("_ }");
+    final String in = openContext(fromDto);
+    fromDto.body.line(in + "if (dto == null) {");
+    fromDto.body.line(in + "_ return null;");
+    fromDto.body.line(in + "}");
+    addStartBatch(fromDto, in);
     for (DtoConfig subClass : dto.getSubClassDtos()) {
-      fromDto.body.line("_ if (dto instanceof {}) {", subClass.getDtoType());
-      fromDto.body.line("_ _ return fromDto(({}) dto);", subClass.getDtoType());
-      fromDto.body.line("_ }");
+      fromDto.body.line(in + "if (dto instanceof {}) {", subClass.getDtoType());
+      fromDto.body.line(in + "_ return {}fromDto(({}) dto{});", call, subClass.getDtoType(), ctx);
+      fromDto.body.line(in + "}");
     }
     if (dto.isAbstract()) {
-      fromDto.body.line("_ throw new IllegalArgumentException(dto + \" must be a subclass because " + dto.getDomainType() + " is abstract\");");
+      fromDto.body.line(in + "throw new IllegalArgumentException(dto + \" must be a subclass because " + dto.getDomainType() + " is abstract\");");
     } else {
-      fromDto.body.line("_ final {} o;", dto.getDomainType());
-      fromDto.body.line("_ if (dto.id != null) {");
-      fromDto.body.line("_ _ o = lookup.lookup({}.class, dto.id);", dto.getDomainType());
-      fromDto.body.line("_ } else if (c.get(dto) != null) {");
-      fromDto.body.line("_ _ o = ({}) c.get(dto);", dto.getDomainType());
-      fromDto.body.line("_ } else {");
-      fromDto.body.line("_ _ o = new {}();", dto.getDomainType());
-      fromDto.body.line("_ _ c.store(dto, o);");
-      fromDto.body.line("_ }");
-      fromDto.body.line("_ fromDto(o, dto);");
-      fromDto.body.line("_ return o;");
-    }
-    fromDto.body.line("} finally {");
-    fromDto.body.line("_ c.pop();");
-    fromDto.body.line("}");
+      fromDto.body.line(in + "final {} o;", dto.getDomainType());
+      final String id = read("dto", dto.getAllPropertiesMap().get("id"));
+      fromDto.body.line(in + "if ({} != null) {", id);
+      fromDto.body.line(in + "_ o = c.lookup(lookup, {}.class, {});", dto.getDomainType(), id);
+      fromDto.body.line(in + "} else if (c.get(dto) != null) {");
+      fromDto.body.line(in + "_ o = ({}) c.get(dto);", dto.getDomainType());
+      fromDto.body.line(in + "} else {");
+      fromDto.body.line(in + "_ o = new {}();", dto.getDomainType());
+      fromDto.body.line(in + "_ c.store(dto, o);");
+      fromDto.body.line(in + "}");
+      fromDto.body.line(in + "{}fromDto(o, dto{});", call, ctx);
+      fromDto.body.line(in + "return o;");
+    }
+    closeContext(fromDto);
+    if (explicitContext) {
+      final MapperMethod wrapper = mapper.getMethod("fromDto", arg(dto.getDtoType(), "dto"));
+      wrapper.returnType(dto.getDomainType());
+      wrapper.body.line("DomainObjectContext c = DomainObjectContext.push();");
+      wrapper.body.line("try {");
+      wrapper.body.line("_ return {}fromDto(dto, c);", call);
+      wrapper.body.line("} finally {");
+      wrapper.body.line("_ c.pop();");
+      wrapper.body.line("}");
+    }
+  }
+
+  /**
+   * Adds {@code mapper.collectIds(dto, c)}, which records the ids {@code fromDto} will look up in the whole DTO graph,
+   * so they can be looked up in one batch.
+   */
+  private void addCollectIdsMethodToMapper() {
+    final MapperMethod collect = mapper.getMethod("collectIds", arg(dto.getDtoType(), "dto"), arg("DomainObjectContext", "c"));
+    collect.body.line("if (dto == null) {");
+    collect.body.line("_ return;");
+    collect.body.line("}");
+    // subclasses collect all of their properties, so dispatch before visiting the dto
+    for (DtoConfig subClass : dto.getSubClassDtos()) {
+      collect.body.line("if (dto instanceof {}) {", subClass.getDtoType());
+      collect.body.line("_ {}collectIds(({}) dto, c);", call, subClass.getDtoType());
+      collect.body.line("_ return;");
+      collect.body.line("}");
+    }
+    if (dto.isAbstract()) {
+      return;
+    }
+    collect.body.line("if (!c.visit(dto)) {");
+    collect.body.line("_ return;");
+    collect.body.line("}");
+    if (dto.hasIdProperty()) {
+      final String id = read("dto", dto.getAllPropertiesMap().get("id"));
+      collect.body.line("if ({} != null) {", id);
+      collect.body.line("_ c.want({}.class, {});", dto.getDomainType(), id);
+      collect.body.line("}");
+    }
+    for (final DtoProperty dp : dto.getAllPropertiesMap().values()) {
+      if (dp.isReadOnly() || "id".equals(dp.getName()) || dp.isExtension() || dp.isValueType()) {
+        continue;
+      }
+      if (dp.isChainedId()) {
+        collect.body.line("if ({} != null) {", read("dto", dp));
+        collect.body.line("_ c.want({}.class, {});", dp.getDomainType(), read("dto", dp));
+        collect.body.line("}");
+      } else if (dp.isEntity()) {
+        collect.body.line("{}collectIds({}, c);", call, read("dto", dp));
+      } else if (dp.isListOfEntities() || dp.isSetOfEntities()) {
+        collect.body.line("if ({} != null) {", read("dto", dp));
+        collect.body.line("_ for ({} d : {}) {", dp.getSingleDtoType(), read("dto", dp));
+        collect.body.line("_ _ {}collectIds(d, c);", call);
+        collect.body.line("_ }");
+        collect.body.line("}");
+      }
+    }
+  }
+
+  /** Adds {@code mapper.toXxxDtos(domains)}, for mapping a page of entities without the caller's own loop. */
+  private void addToDtosMethodToMapper() {
+    final String domains = "java.util.List<" + dto.getDomainType() + ">";
+    final MapperMethod toDtos = mapper.getMethod("to" + dto.getSimpleName() + "s", arg(domains, "os"));
+    toDtos.returnType("java.util.List<" + dto.getDtoType() + ">");
+    toDtos.body.line("if (os == null) {");
+    toDtos.body.line("_ return null;");
+    toDtos.body.line("}");
+    toDtos.body.line("java.util.List<{}> dtos = new java.util.ArrayList<{}>(os.size());", dto.getDtoType(), dto.getDtoType());
+    if (identityToDto) {
+      // share entities across the whole list
+      toDtos.body.line("ToDtoContext c = new ToDtoContext();");
+    }
+    toDtos.body.line("for ({} o : os) {", dto.getDomainType());
+    toDtos.body.line("_ dtos.add({}to{}(o{}));", call, dto.getSimpleName(), toCtx);
+    toDtos.body.line("}");
+    toDtos.body.line("return dtos;");
+  }
+
+  /**
+   * Adds {@code mapper.toXxxDtosLazy(domains)} and {@code mapper.toXxxDtos(Iterable)}, which map each entity as it's
+   * read, so callers can stream large results without holding every DTO.
+   */
+  private void addLazyToDtosMethodsToMapper() {
+    final String domains = "java.util.List<" + dto.getDomainType() + ">";
+    final MapperMethod view = mapper.getMethod("to" + dto.getSimpleName() + "sLazy", arg(domains, "os"));
+    view.returnType("java.util.List<" + dto.getDtoType() + ">");
+    view.body.line("if (os == null) {");
+    view.body.line("_ return null;");
+    view.body.line("}");
+    view.body.line("return MappedViews.list(os, new Mapping<{}, {}>() {", dto.getDomainType(), dto.getDtoType());
+    addMappingMethod(view);
+    view.body.line("});");
+
+    final String iterableDomains = "Iterable<" + dto.getDomainType() + ">";
+    final MapperMethod iterable = mapper.getMethod("to" + dto.getSimpleName() + "s", arg(iterableDomains, "os"));
+    iterable.returnType("Iterable<" + dto.getDtoType() + ">");
+    iterable.body.line("if (os == null) {");
+    iterable.body.line("_ return null;");
+    iterable.body.line("}");
+    iterable.body.line("return MappedViews.iterable(os, new Mapping<{}, {}>() {", dto.getDomainType(), dto.getDtoType());
+    addMappingMethod(iterable);
+    iterable.body.line("});");
+  }
+
+  /**
+   * Adds {@code mapper.toXxxDtoBatch(domains)}, which maps each entity with {@code toXxxDto} and appends it to the
+   * batch's columns, so the dtos are short-lived.
+   */
+  private void addToDtoBatchMethodToMapper() {
+    final String domains = "java.util.List<" + dto.getDomainType() + ">";
+    final String batch = GenerateBatch.batchClass(dto);
+    final MapperMethod toBatch = mapper.getMethod("to" + dto.getSimpleName() + "Batch", arg(domains, "os"));
+    toBatch.returnType(batch);
+    toBatch.body.line("if (os == null) {");
+    toBatch.body.line("_ return null;");
+    toBatch.body.line("}");
+    toBatch.body.line("{} batch = new {}(os.size());", batch, batch);
+    if (identityToDto) {
+      toBatch.body.line("ToDtoContext c = new ToDtoContext();");
+    }
+    toBatch.body.line("for ({} o : os) {", dto.getDomainType());
+    toBatch.body.line("_ batch.add({}to{}(o{}));", call, dto.getSimpleName(), toCtx);
+    toBatch.body.line("}");
+    toBatch.body.line("return batch;");
+  }
+
+  /** Adds the {@code map} method of an anonymous {@link Mapping} that calls {@code toXxxDto}. */
+  private void addMappingMethod(final MapperMethod m) {
+    m.body.line("_ public {} map({} o) {", dto.getDtoType(), dto.getDomainType());
+    m.body.line("_ _ return {}to{}(o);", call, dto.getSimpleName());
+    m.body.line("_ }");
+  }
+
+  /** Adds {@code mapper.fromXxxDtos(dtos)}, which looks up the ids of all of {@code dtos} in one batch, if it can. */
+  private void addFromDtosMethodToMapper() {
+    final String dtos = "java.util.List<" + dto.getDtoType() + ">";
+    final MapperMethod fromDtos = mapper.getMethod("from" + dto.getSimpleName() + "s", arg(dtos, "dtos"));
+    fromDtos.returnType("java.util.List<" + dto.getDomainType() + ">");
+    fromDtos.body.line("if (dtos == null) {");
+    fromDtos.body.line("_ return null;");
+    fromDtos.body.line("}");
+    fromDtos.body.line("DomainObjectContext c = DomainObjectContext.push();");
+    fromDtos.body.line("try {");
+    fromDtos.body.line("_ if (c.startBatch(lookup)) {");
+    fromDtos.body.line("_ _ for ({} dto : dtos) {", dto.getDtoType());
+    fromDtos.body.line("_ _ _ {}collectIds(dto, c);", call);
+    fromDtos.body.line("_ _ }");
+    fromDtos.body.line("_ _ c.fetch(lookup);");
+    fromDtos.body.line("_ }");
+    final String domainType = dto.getDomainType();
+    fromDtos.body.line("_ java.util.List<{}> os = new java.util.ArrayList<{}>(dtos.size());", domainType, domainType);
+    fromDtos.body.line("_ for ({} dto : dtos) {", dto.getDtoType());
+    fromDtos.body.line("_ _ os.add({}fromDto(dto{}));", call, ctx);
+    fromDtos.body.line("_ }");
+    fromDtos.body.line("_ return os;");
+    fromDtos.body.line("} finally {");
+    fromDtos.body.line("_ c.pop();");
+    fromDtos.body.line("}");
+  }
+
+  /** Adds the lines that, for the outermost {@code fromDto}, look up the DTO graph's ids in one batch. */
+  private void addStartBatch(final MapperMethod m, final String in) {
+    m.body.line(in + "if (c.startBatch(lookup)) {");
+    m.body.line(in + "_ {}collectIds(dto, c);", call);
+    m.body.line(in + "_ c.fetch(lookup);");
+    m.body.line(in + "}");
+  }
+
+  /** @return the indentation for the rest of the body, which is in a {@code try} if we push a ThreadLocal context */
+  private String openContext(final MapperMethod m) {
+    if (explicitContext) {
+      return "";
+    }
+    m.body.line("DomainObjectContext c = DomainObjectContext.push();");
+    m.body.line("try {");
+    return "_ ";
+  }
+
+  private void closeContext(final MapperMethod m) {
+    if (!explicitContext) {
+      m.body.line("} finally {");
+      m.body.line("_ c.pop();");
+      m.body.line("}");
+    }
+  }
+
+  /** @return {@code args}, plus the {@link ToDtoContext} with {@code identityToDto} */
+  private Argument[] withToDtoContext(final Argument... args) {
+    if (!identityToDto) {
+      return args;
+    }
+    final Argument[] withContext = Arrays.copyOf(args, args.length + 1);
+    withContext[args.length] = arg("ToDtoContext", "c");
+    return withContext;
+  }
+
+  /** @return {@code args}, plus the {@link DomainObjectContext} if it's explicit */
+  private Argument[] withContext(final Argument... args) {
+    if (!explicitContext) {
+      return args;
+    }
+    final Argument[] withContext = Arrays.copyOf(args, args.length + 1);
+    withContext[args.length] = arg("DomainObjectContext", "c");
+    return withContext;
   }
 
   private void makeAbstractIfNeeded() {
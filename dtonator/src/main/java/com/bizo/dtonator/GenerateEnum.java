@@ -7,26 +7,27 @@ import java.lang.reflect.Method;
 import java.util.List;
 
 import joist.sourcegen.GClass;
-import joist.sourcegen.GDirectory;
 import joist.sourcegen.GMethod;
 
+import com.bizo.dtonator.MapperFragment.MapperMethod;
 import com.bizo.dtonator.config.DtoConfig;
 import com.bizo.dtonator.config.TypeUtils;
 
 public class GenerateEnum {
 
-  private final GClass mapper;
+  private final MapperFragment mapper;
   private final DtoConfig dto;
+  private final ClassLoader loader;
   private final GClass gc;
 
-  public GenerateEnum(final GDirectory out, final GClass mapper, final DtoConfig dto) {
+  public GenerateEnum(final OutputDirectory out, final MapperFragment mapper, final DtoConfig dto, final ClassLoader loader) {
     this.mapper = mapper;
     this.dto = dto;
+    this.loader = loader;
     gc = out.getClass(dto.getDtoType()).setEnum();
   }
 
   public void generate() throws ClassNotFoundException {
-    System.out.println("Generating " + dto.getSimpleName());
     addAnnotations();
     addInterfaces();
     addEnumValues();
@@ -51,8 +52,15 @@ public class GenerateEnum {
     }
   }
 
-  private void addEnumGetters() throws ClassNotFoundException {
-    final Class<?> clazz = Class.forName(dto.getDomainType());
+  private void addEnumGetters() {
+    final Class<?> clazz;
+    try {
+      clazz = Class.forName(dto.getDomainType(), true, loader);
+    } catch (final ClassNotFoundException cnfe) {
+      // the getters' values are only known by running them, which needs the compiled enum, e.g. not when annotation processing
+      System.out.println("Skipping getters for " + dto.getSimpleName() + ", as " + dto.getDomainType() + " isn't compiled");
+      return;
+    }
     for (final Method method : clazz.getDeclaredMethods()) {
       final List<String> genMethod = list();
       if (method.getName().startsWith("get")) {
@@ -84,7 +92,7 @@ public class GenerateEnum {
   }
 
   private void addMapperToDto() {
-    final GMethod toDto = mapper.getMethod("toDto", arg(dto.getDomainType(), "e"));
+    final MapperMethod toDto = mapper.getMethod("toDto", arg(dto.getDomainType(), "e"));
     toDto.returnType(dto.getDtoType());
     toDto.body.line("if (e == null) {");
     toDto.body.line("_ return null;");
@@ -98,7 +106,7 @@ public class GenerateEnum {
   }
 
   private void addMapperFromDto() {
-    final GMethod fromDto = mapper.getMethod("fromDto", arg(dto.getDtoType(), "e"));
+    final MapperMethod fromDto = mapper.getMethod("fromDto", arg(dto.getDtoType(), "e"));
     fromDto.returnType(dto.getDomainType());
     fromDto.body.line("if (e == null) {");
     fromDto.body.line("_ return null;");
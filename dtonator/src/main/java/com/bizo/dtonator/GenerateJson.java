@@ -0,0 +1,304 @@
+package com.bizo.dtonator;
+
+import static com.bizo.dtonator.Names.read;
+import static com.bizo.dtonator.Names.write;
+import static joist.sourcegen.Argument.arg;
+import static joist.util.Copy.list;
+import static org.apache.commons.lang.StringUtils.substringBefore;
+
+import java.util.List;
+
+import joist.sourcegen.GClass;
+import joist.sourcegen.GMethod;
+
+import org.apache.commons.collections4.Predicate;
+
+import com.bizo.dtonator.config.DtoConfig;
+import com.bizo.dtonator.config.DtoProperty;
+import com.bizo.dtonator.config.Primitives;
+import com.bizo.dtonator.config.RootConfig;
+
+/**
+ * Generates a {@code XxxDtoJson} class for a DTO with the {@code json} setting, which writes/reads the DTO with
+ * {@link JsonWriter}/{@link JsonReader}, so without reflection or an intermediate tree.
+ *
+ * DTOs in an {@code extends} hierarchy are written with an {@code @type} property first, of the DTO's simple name,
+ * which readers use to create the right subclass. Unknown properties are skipped when reading.
+ */
+public class GenerateJson {
+
+  private final RootConfig config;
+  private final DtoConfig dto;
+  private final GClass gc;
+  /** The DTO's raw type, as generic DTOs' Json classes use them raw. */
+  private final String type;
+  /** Whether objects have an {@code @type}, as we have a base class or subclasses. */
+  private final boolean tagged;
+
+  /** Creates our class in {@code out}, so must be called serially; {@link #generate()} can then run concurrently. */
+  public GenerateJson(final RootConfig config, final OutputDirectory out, final DtoConfig dto) {
+    this.config = config;
+    this.dto = dto;
+    type = dto.getDtoType();
+    gc = out.getClass(jsonClass(dto));
+    tagged = dto.getBaseDto() != null || !dto.getSubClassDtos().isEmpty();
+  }
+
+  public void generate() {
+    // nested dtos without json would only find they have no adapter in JsonValueTypes at runtime
+    dto.checkNestedDtos("json", new Predicate<DtoConfig>() {
+      @Override
+      public boolean evaluate(final DtoConfig other) {
+        return other.includeJson();
+      }
+    });
+    gc.addImports(JsonWriter.class, JsonReader.class);
+    gc.addImports("java.io.IOException");
+    addEntryPoints();
+    addWrite();
+    addRead();
+    if (!dto.isAbstract()) {
+      addWriteObject();
+      addReadObject();
+    }
+  }
+
+  /** Adds the {@code Writer}/{@code Reader}-based methods, which are what users call. */
+  private void addEntryPoints() {
+    final GMethod write = gc.getMethod("write", arg("java.io.Writer", "out"), arg(type, "dto")).setStatic();
+    write.addThrows("IOException");
+    write.body.line("final JsonWriter w = new JsonWriter(out);");
+    write.body.line("write(w, dto);");
+    write.body.line("w.flush();");
+
+    final GMethod writeStream = gc.getMethod("write", arg("java.io.OutputStream", "out"), arg(type, "dto")).setStatic();
+    writeStream.addThrows("IOException");
+    writeStream.body.line("write(new java.io.OutputStreamWriter(out, \"UTF-8\"), dto);");
+
+    final GMethod writeList = gc.getMethod("writeList", arg("java.io.Writer", "out"), arg("Iterable<? extends " + type + ">", "dtos"));
+    writeList.setStatic().addThrows("IOException");
+    writeList.body.line("final JsonWriter w = new JsonWriter(out);");
+    writeList.body.line("w.beginArray();");
+    writeList.body.line("for (final {} dto : dtos) {", type);
+    writeList.body.line("_ write(w, dto);");
+    writeList.body.line("}");
+    writeList.body.line("w.endArray();");
+    writeList.body.line("w.flush();");
+
+    final GMethod read = gc.getMethod("read", arg("java.io.Reader", "in")).returnType(type).setStatic();
+    read.addThrows("IOException");
+    read.body.line("return read(new JsonReader(in));");
+
+    final GMethod readStream = gc.getMethod("read", arg("java.io.InputStream", "in")).returnType(type).setStatic();
+    readStream.addThrows("IOException");
+    readStream.body.line("return read(new java.io.InputStreamReader(in, \"UTF-8\"));");
+
+    final GMethod readList = gc.getMethod("readList", arg("java.io.Reader", "in")).returnType("java.util.List<{}>", type).setStatic();
+    readList.addThrows("IOException");
+    readList.body.line("final JsonReader r = new JsonReader(in);");
+    readList.body.line("if (r.nextNull()) {");
+    readList.body.line("_ return null;");
+    readList.body.line("}");
+    readList.body.line("final java.util.List<{}> dtos = new java.util.ArrayList<{}>();", type, type);
+    readList.body.line("r.beginArray();");
+    readList.body.line("while (r.hasNext()) {");
+    readList.body.line("_ dtos.add(read(r));");
+    readList.body.line("}");
+    readList.body.line("r.endArray();");
+    readList.body.line("return dtos;");
+  }
+
+  /** Adds {@code write}, which writes {@code null}, or dispatches to the subclass's Json class. */
+  private void addWrite() {
+    final GMethod m = gc.getMethod("write", arg("JsonWriter", "w"), arg(type, "dto")).setStatic().addThrows("IOException");
+    m.body.line("if (dto == null) {");
+    m.body.line("_ w.nullValue();");
+    m.body.line("_ return;");
+    m.body.line("}");
+    // leaves come first, so the most specific subclass matches
+    for (final DtoConfig c : dto.getSubClassDtos()) {
+      if (!c.isAbstract()) {
+        m.body.line("if (dto instanceof {}) {", c.getDtoType());
+        m.body.line("_ {}.writeObject(w, ({}) dto);", jsonClass(c), c.getDtoType());
+        m.body.line("_ return;");
+        m.body.line("}");
+      }
+    }
+    if (dto.isAbstract()) {
+      m.body.line("throw new IllegalArgumentException(\"No JSON writer for \" + dto.getClass());");
+    } else {
+      m.body.line("writeObject(w, dto);");
+    }
+  }
+
+  /** Adds {@code read}, which reads {@code null}, or the object, as the subclass for its {@code @type}. */
+  private void addRead() {
+    final GMethod m = gc.getMethod("read", arg("JsonReader", "r")).returnType(type).setStatic().addThrows("IOException");
+    m.body.line("if (r.nextNull()) {");
+    m.body.line("_ return null;");
+    m.body.line("}");
+    m.body.line("r.beginObject();");
+    if (!tagged) {
+      m.body.line("return readObject(r);");
+      return;
+    }
+    m.body.line("final String type = r.nextTypeName();");
+    for (final DtoConfig c : list(dto.getSubClassDtos()).with(dto)) {
+      if (!c.isAbstract()) {
+        // objects without a type are assumed to be us
+        final String orNull = c == dto ? "type == null || " : "";
+        m.body.line("if ({}\"{}\".equals(type)) {", orNull, c.getSimpleName());
+        m.body.line("_ return {}.readObject(r);", jsonClass(c));
+        m.body.line("}");
+      }
+    }
+    m.body.line("throw new IOException(\"Unknown @type \" + type + \" for {}\");", dto.getSimpleName());
+  }
+
+  /** Adds {@code writeObject}, which writes all of our properties, including inherited ones, for our base's Json class too. */
+  private void addWriteObject() {
+    final GMethod m = gc.getMethod("writeObject", arg("JsonWriter", "w"), arg(type, "dto")).setStatic().addThrows("IOException");
+    m.body.line("w.beginObject();");
+    if (tagged) {
+      m.body.line("w.name(\"@type\").value(\"{}\");", dto.getSimpleName());
+    }
+    for (final DtoProperty dp : properties()) {
+      m.body.line("w.name(\"{}\");", dp.getName());
+      if (dp.isList() || dp.isSet()) {
+        // written element by element, so large collections aren't buffered
+        m.body.line("if ({} == null) {", read("dto", dp));
+        m.body.line("_ w.nullValue();");
+        m.body.line("} else {");
+        m.body.line("_ w.beginArray();");
+        m.body.line("_ for (final {} e : {}) {", dp.getSingleDtoType(), read("dto", dp));
+        addWriteValue(m, "_ _ ", dp.getSingleDtoType(), "e");
+        m.body.line("_ }");
+        m.body.line("_ w.endArray();");
+        m.body.line("}");
+      } else {
+        addWriteValue(m, "", dp.getDtoType(), read("dto", dp));
+      }
+    }
+    m.body.line("w.endObject();");
+  }
+
+  /** Adds {@code readObject}, which reads the properties after the {@code @type}, for our base's Json class too. */
+  private void addReadObject() {
+    final GMethod m = gc.getMethod("readObject", arg("JsonReader", "r")).returnType(type).setStatic().addThrows("IOException");
+    m.body.line("final {} dto = new {}();", type, type);
+    m.body.line("while (r.hasNext()) {");
+    m.body.line("_ final String name = r.nextName();");
+    String prefix = "";
+    for (final DtoProperty dp : properties()) {
+      m.body.line("_ {}if (\"{}\".equals(name)) {", prefix, dp.getName());
+      if (dp.isList() || dp.isSet()) {
+        final String element = dp.getSingleDtoType();
+        final String impl = (dp.isList() ? "java.util.ArrayList<" : "java.util.HashSet<") + element + ">";
+        m.body.line("_ _ if (r.nextNull()) {");
+        m.body.line("_ _ _ {}", write("dto", dp, "null"));
+        m.body.line("_ _ } else {");
+        m.body.line("_ _ _ final {} values = new {}();", impl, impl);
+        m.body.line("_ _ _ r.beginArray();");
+        m.body.line("_ _ _ while (r.hasNext()) {");
+        m.body.line("_ _ _ _ values.add({});", readValue(element, false));
+        m.body.line("_ _ _ }");
+        m.body.line("_ _ _ r.endArray();");
+        m.body.line("_ _ _ {}", write("dto", dp, "values"));
+        m.body.line("_ _ }");
+      } else {
+        m.body.line("_ _ {}", write("dto", dp, readValue(dp.getDtoType(), Primitives.isPrimitive(dp.getDtoType()))));
+      }
+      prefix = "} else ";
+    }
+    if (prefix.isEmpty()) {
+      m.body.line("_ r.skipValue();");
+    } else {
+      m.body.line("_ } else {");
+      m.body.line("_ _ r.skipValue();");
+      m.body.line("_ }");
+    }
+    m.body.line("}");
+    m.body.line("r.endObject();");
+    m.body.line("return dto;");
+  }
+
+  /** Adds the statement to write {@code v}, which is a single value of {@code type}, i.e. not a collection. */
+  private void addWriteValue(final GMethod m, final String indent, final String type, final String v) {
+    final String primitive = primitiveType(type);
+    final DtoConfig other = config.getDto(type);
+    if ("char".equals(type)) {
+      m.body.line(indent + "w.value(String.valueOf({}));", v);
+    } else if ("char".equals(primitive)) {
+      m.body.line(indent + "w.value({} == null ? null : {}.toString());", v, v);
+    } else if (other != null && other.isEnum()) {
+      m.body.line(indent + "w.value({} == null ? null : {}.name());", v, v);
+    } else if (primitive != null || isString(type)) {
+      m.body.line(indent + "w.value({});", v);
+    } else if (hasJson(other)) {
+      m.body.line(indent + "{}.write(w, {});", jsonClass(other), v);
+    } else {
+      m.body.line(indent + "JsonValueTypes.write(w, {}.class, {});", substringBefore(type, "<"), v);
+    }
+  }
+
+  /** @return the expression to read a value of {@code type}, which is never {@code null} for {@code primitive} types */
+  private String readValue(final String type, final boolean primitive) {
+    final String unboxed = primitiveType(type);
+    final DtoConfig other = config.getDto(type);
+    final String value;
+    if ("long".equals(unboxed)) {
+      value = "r.nextLong()";
+    } else if ("int".equals(unboxed)) {
+      value = "r.nextInt()";
+    } else if ("short".equals(unboxed) || "byte".equals(unboxed)) {
+      value = "(" + unboxed + ") r.nextInt()";
+    } else if ("double".equals(unboxed)) {
+      value = "r.nextDouble()";
+    } else if ("float".equals(unboxed)) {
+      value = "(float) r.nextDouble()";
+    } else if ("boolean".equals(unboxed)) {
+      value = "r.nextBoolean()";
+    } else if ("char".equals(unboxed)) {
+      value = "r.nextString().charAt(0)";
+    } else if (isString(type)) {
+      value = "r.nextString()";
+    } else if (other != null && other.isEnum()) {
+      value = other.getDtoType() + ".valueOf(r.nextString())";
+    } else if (hasJson(other)) {
+      return jsonClass(other) + ".read(r)";
+    } else {
+      return "JsonValueTypes.read(r, " + substringBefore(type, "<") + ".class)";
+    }
+    return primitive ? value : "r.nextNull() ? null : " + value;
+  }
+
+  /** @return our properties, skipping any whose type is a type parameter, as we don't know its concrete type */
+  private List<DtoProperty> properties() {
+    final List<DtoProperty> properties = list();
+    for (final DtoProperty dp : dto.getAllPropertiesMap().values()) {
+      final String type = dp.isList() || dp.isSet() ? dp.getSingleDtoType() : dp.getDtoType();
+      if (type.contains(".") || primitiveType(type) != null || isString(type) || config.getDto(type) != null) {
+        properties.add(dp);
+      }
+    }
+    return properties;
+  }
+
+  private static boolean hasJson(final DtoConfig other) {
+    return other != null && !other.isEnum() && other.includeJson();
+  }
+
+  /** @return the primitive for numbers, chars and booleans, boxed or not, or {@code null} */
+  private static String primitiveType(final String type) {
+    return Primitives.isPrimitive(type) ? type : Primitives.unbox(type);
+  }
+
+  private static boolean isString(final String type) {
+    return "String".equals(type) || "java.lang.String".equals(type);
+  }
+
+  static String jsonClass(final DtoConfig dto) {
+    return dto.getDtoType() + "Json";
+  }
+
+}
@@ -4,46 +4,89 @@ import static com.bizo.dtonator.Names.mapperFieldName;
 import static com.bizo.dtonator.Names.mapperInterface;
 import static joist.sourcegen.Argument.arg;
 import static joist.util.Copy.list;
+import static org.apache.commons.lang.StringUtils.capitalize;
+import static org.apache.commons.lang.StringUtils.substringAfterLast;
+import static org.apache.commons.lang.StringUtils.substringBeforeLast;
+import static org.apache.commons.lang.StringUtils.uncapitalize;
 
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import joist.sourcegen.Argument;
 import joist.sourcegen.GClass;
-import joist.sourcegen.GDirectory;
+import joist.sourcegen.GMethod;
+import joist.util.Join;
 
 import com.bizo.dtonator.config.DtoConfig;
+import com.bizo.dtonator.config.MapperShards;
 import com.bizo.dtonator.config.RootConfig;
 import com.bizo.dtonator.config.ValueTypeConfig;
 
+/**
+ * Generates the {@code Mapper}, and adds each DTO's {@link MapperFragment} to it.
+ *
+ * With the {@code mapperShards} setting, the DTOs' methods go into package-private shard classes instead, one per DTO
+ * or per domain package, and the {@code Mapper} just has delegates to them. The {@code Mapper} creates each shard the
+ * first time it's used, so the JVM only loads and verifies the shards that are used.
+ */
 public class GenerateMapper {
 
+  private final OutputDirectory out;
   private final RootConfig config;
+  private final List<DtoConfig> withMapperTypes;
   private final GClass mapper;
+  private final List<Argument> args = list();
+  /** The shards' simple names, by DTO name or domain package. */
+  private final Map<String, String> shards = new HashMap<String, String>();
+  private final Set<String> shardNames = new HashSet<String>();
 
-  public GenerateMapper(final GDirectory out, final RootConfig config) {
+  public GenerateMapper(final OutputDirectory out, final RootConfig config) {
+    this(out, config, dtosRequiringMapperTypes(config));
+  }
+
+  /** @param withMapperTypes the dtos that need extension mappers, e.g. as recorded by an incremental run's manifest */
+  public GenerateMapper(final OutputDirectory out, final RootConfig config, final List<DtoConfig> withMapperTypes) {
+    this.out = out;
     this.config = config;
+    this.withMapperTypes = withMapperTypes;
     mapper = out.getClass(config.getMapperPackage() + ".Mapper");
   }
 
   public void generate() {
     addConstructorAndFields();
-    mapper.addImports(DomainObjectContext.class);
   }
 
   public GClass getMapper() {
     return mapper;
   }
 
+  /** Adds {@code dto}'s methods to the {@code Mapper}, or to its shard, with delegates on the {@code Mapper}. */
+  public void add(final DtoConfig dto, final MapperFragment fragment) {
+    if (config.getMapperShards() == MapperShards.NONE) {
+      fragment.addTo(mapper);
+    } else if (!fragment.isEmpty()) {
+      final String shardKey = config.getMapperShards() == MapperShards.DTO ? dto.getSimpleName() : packageOf(dto);
+      String shard = shards.get(shardKey);
+      if (shard == null) {
+        shard = shardName(dto);
+        addShard(shard);
+        shards.put(shardKey, shard);
+      }
+      fragment.addTo(out.getClass(config.getMapperPackage() + "." + shard));
+      fragment.addDelegatesTo(mapper, uncapitalize(shard) + "()");
+    }
+  }
+
   private void addConstructorAndFields() {
     // create the mapper cstr
-    final List<Argument> args = list();
     // we always need a DomainObjectLookup
     args.add(arg(DomainObjectLookup.class.getName(), "lookup"));
     // add arguments for extension mappers, if any
-    for (final DtoConfig dto : config.getDtos()) {
-      if (dto.requiresMapperType()) {
-        args.add(arg(mapperInterface(config, dto), mapperFieldName(dto)));
-      }
+    for (final DtoConfig dto : withMapperTypes) {
+      args.add(arg(mapperInterface(config, dto), mapperFieldName(dto)));
     }
     // include user type mappers
     for (final ValueTypeConfig utc : config.getValueTypes()) {
@@ -56,4 +99,68 @@ public class GenerateMapper {
     mapper.getConstructor(args).assignFields();
   }
 
+  /**
+   * Adds a shard, which has its own copy of our fields, so the DTOs' methods can use them as-is, and a lazily-created
+   * field and getter for it on the {@code Mapper}.
+   *
+   * The field is {@code volatile}, so a {@code Mapper} shared across threads sees a fully-created shard; the shards
+   * don't have any mutable state, so racing to create one is fine.
+   */
+  private void addShard(final String simpleName) {
+    final GClass shard = out.getClass(config.getMapperPackage() + "." + simpleName).setPackagePrivate();
+    final List<Argument> shardArgs = list(arg("Mapper", "m"));
+    shardArgs.addAll(args);
+    final List<String> names = list();
+    for (final Argument arg : shardArgs) {
+      shard.getField(arg.name).type(arg.type).setFinal();
+      names.add(arg.name.equals("m") ? "this" : arg.name);
+    }
+    shard.getConstructor(shardArgs).assignFields();
+
+    final String field = uncapitalize(simpleName);
+    mapper.getField(field).type(simpleName).setVolatile();
+    final GMethod getter = mapper.getMethod(field).returnType(simpleName).setPrivate();
+    getter.body.line("{} shard = {};", simpleName, field);
+    getter.body.line("if (shard == null) {");
+    getter.body.line("_ shard = new {}({});", simpleName, Join.commaSpace(names));
+    getter.body.line("_ {} = shard;", field);
+    getter.body.line("}");
+    getter.body.line("return shard;");
+  }
+
+  /** @return e.g. {@code FooDtoMapperShard}, or {@code DomainMapperShard} for a package shard, made unique */
+  private String shardName(final DtoConfig dto) {
+    final String base;
+    if (config.getMapperShards() == MapperShards.DTO) {
+      base = dto.getSimpleName();
+    } else {
+      final String packageName = packageOf(dto);
+      if (packageName.isEmpty()) {
+        base = "Default";
+      } else {
+        base = capitalize(packageName.contains(".") ? substringAfterLast(packageName, ".") : packageName);
+      }
+    }
+    String name = base + "MapperShard";
+    for (int i = 2; !shardNames.add(name); i++) {
+      name = base + i + "MapperShard";
+    }
+    return name;
+  }
+
+  private static String packageOf(final DtoConfig dto) {
+    final String domainType = dto.getDomainType();
+    return domainType.contains(".") ? substringBeforeLast(domainType, ".") : "";
+  }
+
+  private static List<DtoConfig> dtosRequiringMapperTypes(final RootConfig config) {
+    final List<DtoConfig> dtos = list();
+    for (final DtoConfig dto : config.getDtos()) {
+      if (dto.requiresMapperType()) {
+        dtos.add(dto);
+      }
+    }
+    return dtos;
+  }
+
 }
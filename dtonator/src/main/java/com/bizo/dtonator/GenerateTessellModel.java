@@ -1,5 +1,7 @@
 package com.bizo.dtonator;
 
+import static com.bizo.dtonator.Names.read;
+import static com.bizo.dtonator.Names.write;
 import static joist.sourcegen.Argument.arg;
 import static org.apache.commons.lang.StringUtils.capitalize;
 import static org.apache.commons.lang.StringUtils.removeEnd;
@@ -8,7 +10,6 @@ import java.util.HashMap;
 import java.util.Map;
 
 import joist.sourcegen.GClass;
-import joist.sourcegen.GDirectory;
 import joist.sourcegen.GField;
 import joist.sourcegen.GMethod;
 
@@ -35,7 +36,7 @@ public class GenerateTessellModel {
   private final DtoConfig dto;
   private final GClass baseClass;
 
-  public GenerateTessellModel(final GDirectory source, final GDirectory out, final RootConfig config, final DtoConfig dto) {
+  public GenerateTessellModel(final OutputDirectory source, final OutputDirectory out, final RootConfig config, final DtoConfig dto) {
     this.config = config;
     this.dto = dto;
 
@@ -82,13 +83,11 @@ public class GenerateTessellModel {
         "return \"{}\";",
         p.getName());
       // set(value)
-      innerValue.getMethod("set", arg(p.getDtoTypeBoxed(), "v")).addOverride().body.line(//
-        "getDto().{} = v;",
-        p.getName());
+      innerValue.getMethod("set", arg(p.getDtoTypeBoxed(), "v")).addOverride().body.line(write("getDto()", p, "v"));
       // get(), avoiding NPEs on read
       innerValue.getMethod("get").returnType(p.getDtoTypeBoxed()).addOverride().body.line(//
-        "return getDto() == null ? null : getDto().{};",
-        p.getName());
+        "return getDto() == null ? null : {};",
+        read("getDto()", p));
       // isReadOnly()
       innerValue.getMethod("isReadOnly").returnType("boolean").addOverride().body.line(//
         "return {};",
@@ -0,0 +1,183 @@
+package com.bizo.dtonator;
+
+import static joist.util.Copy.list;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import com.bizo.dtonator.properties.CachingTypeOracle;
+import com.bizo.dtonator.properties.TypeOracle;
+
+/**
+ * Records where a run's time goes, for the {@code report} setting.
+ *
+ * Each phase (e.g. {@code compile}, {@code output}) and each DTO is timed with a {@link Timer}, which also measures
+ * the bytes allocated by the current thread, when the JVM supports it. Phases that happen once per DTO, i.e.
+ * {@code dtos} and {@code tessell}, are summed across DTOs, so with {@code parallel} they can add up to more than the
+ * total wall time.
+ */
+public class GenerationReport {
+
+  private static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+  private final long start = System.nanoTime();
+  private final Map<String, long[]> phases = new LinkedHashMap<String, long[]>();
+  private final List<DtoTiming> dtos = list();
+
+  /** Measures from its creation, on the thread that created it. */
+  public static class Timer {
+    private final long start = System.nanoTime();
+    private final long startBytes = allocatedBytes();
+
+    private long elapsedNanos() {
+      return System.nanoTime() - start;
+    }
+
+    private long allocated() {
+      return startBytes == -1 ? -1 : allocatedBytes() - startBytes;
+    }
+  }
+
+  private static class DtoTiming {
+    private final String name;
+    private final String kind;
+    private final long nanos;
+    private final long allocatedBytes;
+
+    private DtoTiming(final String name, final String kind, final long nanos, final long allocatedBytes) {
+      this.name = name;
+      this.kind = kind;
+      this.nanos = nanos;
+      this.allocatedBytes = allocatedBytes;
+    }
+  }
+
+  public Timer start() {
+    return new Timer();
+  }
+
+  /** Adds the time since {@code timer} started to {@code phase}. */
+  public synchronized void phase(final String phase, final Timer timer) {
+    add(phase, timer.elapsedNanos(), timer.allocated());
+  }
+
+  /** Records the time since {@code timer} started as generating {@code name}, and adds it to the {@code dtos} phase. */
+  public synchronized void dto(final String name, final String kind, final Timer timer) {
+    final DtoTiming timing = new DtoTiming(name, kind, timer.elapsedNanos(), timer.allocated());
+    dtos.add(timing);
+    add("dtos", timing.nanos, timing.allocatedBytes);
+  }
+
+  /** @return the report as JSON, with the oracle's counts (if it's caching) and the output directory's file counts */
+  public synchronized String toJson(final TypeOracle oracle, final OutputDirectory out) {
+    final StringBuilder sb = new StringBuilder();
+    sb.append("{\n");
+    sb.append("  \"totalMillis\": ").append(millis(System.nanoTime() - start)).append(",\n");
+    sb.append("  \"phases\": [");
+    boolean first = true;
+    for (final Map.Entry<String, long[]> e : phases.entrySet()) {
+      sb.append(first ? "\n" : ",\n");
+      sb.append("    {\"name\": ").append(quote(e.getKey()));
+      sb.append(", \"millis\": ").append(millis(e.getValue()[0]));
+      sb.append(", \"allocatedBytes\": ").append(e.getValue()[1]).append("}");
+      first = false;
+    }
+    sb.append("\n  ],\n");
+    if (oracle instanceof CachingTypeOracle) {
+      final CachingTypeOracle caching = (CachingTypeOracle) oracle;
+      sb.append("  \"oracle\": {\"calls\": ").append(caching.getHits() + caching.getMisses());
+      sb.append(", \"hits\": ").append(caching.getHits());
+      sb.append(", \"misses\": ").append(caching.getMisses());
+      sb.append(", \"missMillis\": ").append(millis(caching.getMissNanos())).append("},\n");
+    }
+    sb.append("  \"output\": {\"written\": ").append(out.getWritten());
+    sb.append(", \"skipped\": ").append(out.getSkipped());
+    sb.append(", \"deleted\": ").append(out.getDeleted()).append("},\n");
+    sb.append("  \"dtos\": [");
+    first = true;
+    for (final DtoTiming dto : slowestDtos()) {
+      sb.append(first ? "\n" : ",\n");
+      sb.append("    {\"name\": ").append(quote(dto.name));
+      sb.append(", \"kind\": ").append(quote(dto.kind));
+      sb.append(", \"millis\": ").append(millis(dto.nanos));
+      sb.append(", \"allocatedBytes\": ").append(dto.allocatedBytes).append("}");
+      first = false;
+    }
+    sb.append("\n  ]\n");
+    sb.append("}\n");
+    return sb.toString();
+  }
+
+  /** @return a human-readable summary of the phases and the {@code count} slowest DTOs */
+  public synchronized String toSummary(final int count) {
+    final StringBuilder sb = new StringBuilder();
+    sb.append("dtonator: ").append(millis(System.nanoTime() - start)).append("ms total");
+    for (final Map.Entry<String, long[]> e : phases.entrySet()) {
+      sb.append(", ").append(e.getKey()).append(" ").append(millis(e.getValue()[0])).append("ms");
+    }
+    final List<DtoTiming> slowest = slowestDtos();
+    if (!slowest.isEmpty()) {
+      sb.append("\nSlowest DTOs:");
+      for (final DtoTiming dto : slowest.subList(0, Math.min(count, slowest.size()))) {
+        sb.append("\n  ").append(dto.name).append(" ").append(millis(dto.nanos)).append("ms");
+      }
+    }
+    return sb.toString();
+  }
+
+  private void add(final String phase, final long nanos, final long allocatedBytes) {
+    long[] totals = phases.get(phase);
+    if (totals == null) {
+      totals = new long[2];
+      phases.put(phase, totals);
+    }
+    totals[0] += nanos;
+    totals[1] = totals[1] == -1 || allocatedBytes == -1 ? -1 : totals[1] + allocatedBytes;
+  }
+
+  private List<DtoTiming> slowestDtos() {
+    final List<DtoTiming> sorted = list(dtos);
+    Collections.sort(sorted, new Comparator<DtoTiming>() {
+      @Override
+      public int compare(final DtoTiming a, final DtoTiming b) {
+        return Long.compare(b.nanos, a.nanos);
+      }
+    });
+    return sorted;
+  }
+
+  /** @return the current thread's allocated bytes so far, or -1 if the JVM can't tell us */
+  private static long allocatedBytes() {
+    if (threads instanceof com.sun.management.ThreadMXBean) {
+      final com.sun.management.ThreadMXBean sun = (com.sun.management.ThreadMXBean) threads;
+      if (sun.isThreadAllocatedMemorySupported() && sun.isThreadAllocatedMemoryEnabled()) {
+        return sun.getThreadAllocatedBytes(Thread.currentThread().getId());
+      }
+    }
+    return -1;
+  }
+
+  private static String millis(final long nanos) {
+    return String.format(Locale.ROOT, "%.3f", nanos / 1000000.0);
+  }
+
+  private static String quote(final String s) {
+    final StringBuilder sb = new StringBuilder("\"");
+    for (final char c : s.toCharArray()) {
+      if (c == '"' || c == '\\') {
+        sb.append('\\').append(c);
+      } else if (c < 0x20) {
+        sb.append(String.format("\\u%04x", (int) c));
+      } else {
+        sb.append(c);
+      }
+    }
+    return sb.append('"').toString();
+  }
+
+}
@@ -0,0 +1,251 @@
+package com.bizo.dtonator;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Reads JSON a token at a time from a {@link Reader}, for the generated {@code XxxDtoJson} classes.
+ *
+ * Only a buffer's worth of input is held in memory, so large arrays can be read element by element. Separators
+ * ({@code ,} and {@code :}) are skipped like whitespace rather than checked, as it's meant for reading JSON we wrote.
+ */
+public class JsonReader {
+
+  private final Reader in;
+  private final char[] buffer = new char[8192];
+  private int position;
+  private int limit;
+  /** A name that's been read by {@link #nextTypeName()} but not yet returned by {@link #nextName()}. */
+  private String pendingName;
+
+  public JsonReader(final Reader in) {
+    this.in = in;
+  }
+
+  public void beginObject() throws IOException {
+    expect('{');
+  }
+
+  public void endObject() throws IOException {
+    expect('}');
+  }
+
+  public void beginArray() throws IOException {
+    expect('[');
+  }
+
+  public void endArray() throws IOException {
+    expect(']');
+  }
+
+  /** @return whether the current object/array has another element */
+  public boolean hasNext() throws IOException {
+    if (pendingName != null) {
+      return true;
+    }
+    final int c = peek();
+    return c != '}' && c != ']';
+  }
+
+  public String nextName() throws IOException {
+    if (pendingName != null) {
+      final String name = pendingName;
+      pendingName = null;
+      return name;
+    }
+    return nextString();
+  }
+
+  /**
+   * Reads the {@code @type} discriminator, if it's the object's first name.
+   *
+   * @return the type, or {@code null} if there wasn't one (and the name is left for {@link #nextName()})
+   */
+  public String nextTypeName() throws IOException {
+    if (!hasNext()) {
+      return null;
+    }
+    final String name = nextName();
+    if ("@type".equals(name)) {
+      return nextString();
+    }
+    pendingName = name;
+    return null;
+  }
+
+  /** @return whether the next value is {@code null}, in which case it's skipped */
+  public boolean nextNull() throws IOException {
+    if (peek() == 'n') {
+      literal("null");
+      return true;
+    }
+    return false;
+  }
+
+  public String nextString() throws IOException {
+    expect('"');
+    final StringBuilder sb = new StringBuilder();
+    while (true) {
+      final char c = read();
+      if (c == '"') {
+        return sb.toString();
+      } else if (c == '\\') {
+        final char e = read();
+        switch (e) {
+          case 'b':
+            sb.append('\b');
+            break;
+          case 'f':
+            sb.append('\f');
+            break;
+          case 'n':
+            sb.append('\n');
+            break;
+          case 'r':
+            sb.append('\r');
+            break;
+          case 't':
+            sb.append('\t');
+            break;
+          case 'u':
+            final char[] hex = { read(), read(), read(), read() };
+            try {
+              sb.append((char) Integer.parseInt(new String(hex), 16));
+            } catch (final NumberFormatException nfe) {
+              throw syntaxError("Invalid escape \\u" + new String(hex));
+            }
+            break;
+          default:
+            sb.append(e);
+        }
+      } else {
+        sb.append(c);
+      }
+    }
+  }
+
+  public long nextLong() throws IOException {
+    final String number = number();
+    try {
+      return Long.parseLong(number);
+    } catch (final NumberFormatException nfe) {
+      throw syntaxError("Expected a whole number but was " + number);
+    }
+  }
+
+  public int nextInt() throws IOException {
+    final long value = nextLong();
+    if (value != (int) value) {
+      throw syntaxError(value + " is too large for an int");
+    }
+    return (int) value;
+  }
+
+  public double nextDouble() throws IOException {
+    final String number = number();
+    try {
+      return Double.parseDouble(number);
+    } catch (final NumberFormatException nfe) {
+      throw syntaxError("Expected a number but was " + number);
+    }
+  }
+
+  public boolean nextBoolean() throws IOException {
+    if (peek() == 't') {
+      literal("true");
+      return true;
+    }
+    literal("false");
+    return false;
+  }
+
+  /** Skips the next value, including any nested objects/arrays, e.g. for properties we don't know about. */
+  public void skipValue() throws IOException {
+    final int c = peek();
+    if (c == '{' || c == '[') {
+      read();
+      while (hasNext()) {
+        if (c == '{') {
+          nextName();
+        }
+        skipValue();
+      }
+      read();
+    } else if (c == '"') {
+      nextString();
+    } else if (c == 't' || c == 'f') {
+      nextBoolean();
+    } else if (!nextNull()) {
+      number();
+    }
+  }
+
+  private String number() throws IOException {
+    peek();
+    final StringBuilder sb = new StringBuilder();
+    while (true) {
+      if (position == limit && !fill()) {
+        break;
+      }
+      final char c = buffer[position];
+      if ((c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.' || c == 'e' || c == 'E') {
+        sb.append(c);
+        position++;
+      } else {
+        break;
+      }
+    }
+    if (sb.length() == 0) {
+      throw syntaxError("Expected a value");
+    }
+    return sb.toString();
+  }
+
+  private void literal(final String literal) throws IOException {
+    for (int i = 0; i < literal.length(); i++) {
+      if (read() != literal.charAt(i)) {
+        throw syntaxError("Expected " + literal);
+      }
+    }
+  }
+
+  private void expect(final char expected) throws IOException {
+    if (peek() != expected) {
+      throw syntaxError("Expected " + expected);
+    }
+    position++;
+  }
+
+  /** @return the next character that isn't whitespace or a separator, without consuming it */
+  private int peek() throws IOException {
+    while (true) {
+      if (position == limit && !fill()) {
+        throw syntaxError("Unexpected end of input");
+      }
+      final char c = buffer[position];
+      if (c == ' ' || c == '\n' || c == '\r' || c == '\t' || c == ',' || c == ':') {
+        position++;
+      } else {
+        return c;
+      }
+    }
+  }
+
+  private char read() throws IOException {
+    if (position == limit && !fill()) {
+      throw syntaxError("Unexpected end of input");
+    }
+    return buffer[position++];
+  }
+
+  private boolean fill() throws IOException {
+    position = 0;
+    limit = Math.max(in.read(buffer), 0);
+    return limit > 0;
+  }
+
+  private IOException syntaxError(final String message) {
+    return new IOException("Invalid JSON: " + message);
+  }
+
+}
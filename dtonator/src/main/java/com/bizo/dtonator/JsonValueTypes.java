@@ -0,0 +1,50 @@
+package com.bizo.dtonator;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Adapters for the types the generated {@code XxxDtoJson} classes don't know how to write, e.g. value types.
+ *
+ * Users register an adapter per type on startup, e.g. {@code JsonValueTypes.register(Dollars.class, ...)}; there is
+ * no reflection-based fallback, so using an unregistered type fails fast.
+ */
+public class JsonValueTypes {
+
+  private static final ConcurrentHashMap<Class<?>, Adapter<?>> adapters = new ConcurrentHashMap<Class<?>, Adapter<?>>();
+
+  /** Writes/reads non-null values of one type. */
+  public interface Adapter<T> {
+    void write(JsonWriter w, T value) throws IOException;
+
+    T read(JsonReader r) throws IOException;
+  }
+
+  public static <T> void register(final Class<T> type, final Adapter<T> adapter) {
+    adapters.put(type, adapter);
+  }
+
+  @SuppressWarnings("unchecked")
+  public static <T> Adapter<T> get(final Class<T> type) {
+    final Adapter<T> adapter = (Adapter<T>) adapters.get(type);
+    if (adapter == null) {
+      throw new IllegalStateException("No JSON adapter registered for " + type.getName());
+    }
+    return adapter;
+  }
+
+  /** Writes {@code value} with {@code type}'s adapter, or {@code null}. */
+  public static <T> void write(final JsonWriter w, final Class<T> type, final T value) throws IOException {
+    if (value == null) {
+      w.nullValue();
+    } else {
+      get(type).write(w, value);
+    }
+  }
+
+  /** Reads a value with {@code type}'s adapter, or {@code null}. */
+  public static <T> T read(final JsonReader r, final Class<T> type) throws IOException {
+    return r.nextNull() ? null : get(type).read(r);
+  }
+
+}
@@ -0,0 +1,166 @@
+package com.bizo.dtonator;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * Writes JSON straight to a {@link Writer}, for the generated {@code XxxDtoJson} classes.
+ *
+ * Output is buffered, so callers must {@link #flush()} when they're done. Commas are added as needed, but nesting
+ * isn't checked, as the generated code is assumed to be balanced.
+ */
+public class JsonWriter implements Flushable {
+
+  private final Writer out;
+  private final char[] buffer = new char[8192];
+  private int position;
+  /** Whether each open object/array needs a comma before its next value, by depth, grown as needed. */
+  private boolean[] commas = new boolean[32];
+  private int depth;
+  /** Whether we just wrote a name, so the value doesn't need a comma. */
+  private boolean afterName;
+
+  public JsonWriter(final Writer out) {
+    this.out = out;
+  }
+
+  public JsonWriter beginObject() throws IOException {
+    return open('{');
+  }
+
+  public JsonWriter endObject() throws IOException {
+    return close('}');
+  }
+
+  public JsonWriter beginArray() throws IOException {
+    return open('[');
+  }
+
+  public JsonWriter endArray() throws IOException {
+    return close(']');
+  }
+
+  public JsonWriter name(final String name) throws IOException {
+    beforeValue();
+    string(name);
+    append(':');
+    afterName = true;
+    return this;
+  }
+
+  public JsonWriter value(final String value) throws IOException {
+    if (value == null) {
+      return nullValue();
+    }
+    beforeValue();
+    string(value);
+    return this;
+  }
+
+  public JsonWriter value(final long value) throws IOException {
+    beforeValue();
+    raw(Long.toString(value));
+    return this;
+  }
+
+  public JsonWriter value(final double value) throws IOException {
+    if (Double.isNaN(value) || Double.isInfinite(value)) {
+      throw new IllegalArgumentException("JSON can't have " + value);
+    }
+    beforeValue();
+    raw(Double.toString(value));
+    return this;
+  }
+
+  public JsonWriter value(final boolean value) throws IOException {
+    beforeValue();
+    raw(value ? "true" : "false");
+    return this;
+  }
+
+  /** Writes boxed numbers, or {@code null}. */
+  public JsonWriter value(final Number value) throws IOException {
+    if (value == null) {
+      return nullValue();
+    } else if (value instanceof Double || value instanceof Float) {
+      return value(value.doubleValue());
+    }
+    return value(value.longValue());
+  }
+
+  public JsonWriter value(final Boolean value) throws IOException {
+    return value == null ? nullValue() : value(value.booleanValue());
+  }
+
+  public JsonWriter nullValue() throws IOException {
+    beforeValue();
+    raw("null");
+    return this;
+  }
+
+  @Override
+  public void flush() throws IOException {
+    out.write(buffer, 0, position);
+    position = 0;
+    out.flush();
+  }
+
+  private JsonWriter open(final char c) throws IOException {
+    beforeValue();
+    append(c);
+    if (++depth == commas.length) {
+      commas = Arrays.copyOf(commas, depth * 2);
+    }
+    commas[depth] = false;
+    return this;
+  }
+
+  private JsonWriter close(final char c) throws IOException {
+    depth--;
+    append(c);
+    return this;
+  }
+
+  private void beforeValue() throws IOException {
+    if (afterName) {
+      afterName = false;
+    } else if (commas[depth]) {
+      append(',');
+    } else {
+      commas[depth] = true;
+    }
+  }
+
+  private void string(final String s) throws IOException {
+    append('"');
+    for (int i = 0; i < s.length(); i++) {
+      final char c = s.charAt(i);
+      if (c == '"' || c == '\\') {
+        append('\\');
+        append(c);
+      } else if (c < 0x20 || c == '\u2028' || c == '\u2029') {
+        raw(String.format("\\u%04x", (int) c));
+      } else {
+        append(c);
+      }
+    }
+    append('"');
+  }
+
+  private void raw(final String s) throws IOException {
+    for (int i = 0; i < s.length(); i++) {
+      append(s.charAt(i));
+    }
+  }
+
+  private void append(final char c) throws IOException {
+    if (position == buffer.length) {
+      out.write(buffer, 0, position);
+      position = 0;
+    }
+    buffer[position++] = c;
+  }
+
+}
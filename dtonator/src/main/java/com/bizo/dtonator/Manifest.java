@@ -0,0 +1,328 @@
+package com.bizo.dtonator;
+
+import static joist.util.Copy.list;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.yaml.snakeyaml.Yaml;
+
+import com.bizo.dtonator.config.DtoConfig;
+import com.bizo.dtonator.config.DtoProperty;
+import com.bizo.dtonator.config.InheritanceGraph;
+import com.bizo.dtonator.config.MapperShards;
+import com.bizo.dtonator.config.Primitives;
+import com.bizo.dtonator.config.RootConfig;
+import com.bizo.dtonator.config.TypeUtils;
+import com.bizo.dtonator.config.ValueTypeConfig;
+import com.bizo.dtonator.config.YamlUtils;
+
+/**
+ * Tracks what the last run generated, so that {@code incremental} runs only regenerate the DTOs that changed.
+ *
+ * Each DTO is hashed from its YAML entry and the bytecode of its domain type (and the domain type's supertypes). A DTO
+ * is regenerated if its hash, or its base/sub classes' hashes, or the hash of any DTO its properties referred to last
+ * time, changed. Changes to the {@code config} section, the set of DTOs, or dtonator itself regenerate everything.
+ *
+ * The {@code Mapper} is always rebuilt, using the saved {@link MapperFragment}s of the DTOs that didn't change.
+ */
+public class Manifest {
+
+  private static final String version = "2";
+  /** Changes to these classes can change any of the output. */
+  private static final Class<?>[] generatorClasses = {
+    Dtonator.class,
+    GenerateDto.class,
+    GenerateEnum.class,
+    GenerateMapper.class,
+    GenerateTessellModel.class,
+    GenerateJson.class,
+    GenerateBinaryCodec.class,
+    GenerateBufferView.class,
+    GenerateBatch.class,
+    GenerateCustomFieldSerializer.class,
+    MapperFragment.class,
+    Names.class,
+    DtoConfig.class,
+    DtoProperty.class,
+    RootConfig.class,
+    InheritanceGraph.class,
+    MapperShards.class,
+    Primitives.class,
+    TypeUtils.class,
+    ValueTypeConfig.class };
+  private final RootConfig config;
+  private final File file;
+  private final ClassLoader loader;
+  private final String globalHash;
+  private final Map<String, String> ownHashes = new HashMap<String, String>();
+  private final Map<String, String> hashes = new HashMap<String, String>();
+  private final Map<String, Map<String, Object>> previous = new HashMap<String, Map<String, Object>>();
+  private final Map<String, Map<String, Object>> next = new LinkedHashMap<String, Map<String, Object>>();
+  private final boolean fullRun;
+
+  public Manifest(final RootConfig config) {
+    this(config, Manifest.class.getClassLoader());
+  }
+
+  public Manifest(final RootConfig config, final ClassLoader loader) {
+    this(config, new File(config.getOutputDirectory() + ".manifest"), loader);
+  }
+
+  public Manifest(final RootConfig config, final File file, final ClassLoader loader) {
+    this.config = config;
+    this.file = file;
+    this.loader = loader;
+    globalHash = hashGlobal();
+    for (final DtoConfig dto : config.getDtos()) {
+      ownHashes.put(dto.getSimpleName(), hashDto(dto));
+    }
+    for (final DtoConfig dto : config.getDtos()) {
+      hashes.put(dto.getSimpleName(), hashWithRelatedDtos(dto));
+    }
+    final Map<String, Object> loaded = load();
+    fullRun = loaded == null || !globalHash.equals(loaded.get("hash")) || !new File(config.getOutputDirectory()).exists();
+    if (!fullRun) {
+      final Map<String, Object> dtos = YamlUtils.ensureMap(loaded.get("dtos"));
+      for (final Map.Entry<String, Object> e : dtos.entrySet()) {
+        previous.put(e.getKey(), YamlUtils.<String, Object> ensureMap(e.getValue()));
+      }
+    }
+  }
+
+  /** @return whether everything needs regenerated, e.g. because there was no previous run */
+  public boolean isFullRun() {
+    return fullRun;
+  }
+
+  /** @return the DTOs that need regenerated, in YAML order */
+  public List<DtoConfig> getDirtyDtos() {
+    final List<DtoConfig> dirty = list();
+    for (final DtoConfig dto : config.getDtos()) {
+      if (isDirty(dto)) {
+        dirty.add(dto);
+      }
+    }
+    return dirty;
+  }
+
+  public boolean isDirty(final DtoConfig dto) {
+    if (fullRun) {
+      return true;
+    }
+    final Map<String, Object> last = previous.get(dto.getSimpleName());
+    if (last == null || !hashes.get(dto.getSimpleName()).equals(last.get("hash"))) {
+      return true;
+    }
+    for (final Object reference : (List<?>) last.get("references")) {
+      final Map<String, Object> lastReference = previous.get(reference);
+      if (lastReference == null || !lastReference.get("own").equals(ownHashes.get(reference))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** @return whether {@code dto} needs a mapper type, from the last run if it's not dirty, so we don't resolve its properties */
+  public boolean requiresMapperType(final DtoConfig dto) {
+    if (isDirty(dto)) {
+      return dto.requiresMapperType();
+    }
+    return Boolean.TRUE.equals(previous.get(dto.getSimpleName()).get("requiresMapperType"));
+  }
+
+  /** @return the {@code Mapper} methods {@code dto} generated last time */
+  public MapperFragment getFragment(final DtoConfig dto) {
+    return MapperFragment.load(YamlUtils.<String, Object> ensureMap(previous.get(dto.getSimpleName()).get("mapper")));
+  }
+
+  /** Records the output of {@code dto} for the next run; {@code dto} must have been compiled. */
+  public void record(final DtoConfig dto, final MapperFragment fragment) {
+    final Map<String, Object> entry = new LinkedHashMap<String, Object>();
+    entry.put("hash", hashes.get(dto.getSimpleName()));
+    entry.put("own", ownHashes.get(dto.getSimpleName()));
+    entry.put("requiresMapperType", dto.requiresMapperType());
+    entry.put("references", list(findReferences(dto)));
+    entry.put("mapper", fragment.dump());
+    next.put(dto.getSimpleName(), entry);
+  }
+
+  /** Keeps the last run's output for {@code dto}, which wasn't dirty. */
+  public void recordUnchanged(final DtoConfig dto) {
+    next.put(dto.getSimpleName(), previous.get(dto.getSimpleName()));
+  }
+
+  public void save() {
+    final Map<String, Object> saved = new LinkedHashMap<String, Object>();
+    saved.put("hash", globalHash);
+    saved.put("dtos", next);
+    try {
+      final Writer w = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+      try {
+        new Yaml().dump(saved, w);
+      } finally {
+        w.close();
+      }
+    } catch (final IOException io) {
+      throw new RuntimeException("Could not write " + file, io);
+    }
+  }
+
+  private Map<String, Object> load() {
+    if (!file.exists()) {
+      return null;
+    }
+    try {
+      final Reader r = new InputStreamReader(new FileInputStream(file), "UTF-8");
+      try {
+        final Object loaded = new Yaml().load(r);
+        return loaded instanceof Map ? YamlUtils.<String, Object> ensureMap(loaded) : null;
+      } finally {
+        r.close();
+      }
+    } catch (final IOException io) {
+      // treat an unreadable manifest like a missing one
+      return null;
+    }
+  }
+
+  private String hashGlobal() {
+    final MessageDigest digest = newDigest();
+    update(digest, version);
+    update(digest, String.valueOf(config.getYaml().get("config")));
+    for (final DtoConfig dto : config.getDtos()) {
+      update(digest, dto.getSimpleName());
+    }
+    for (final Class<?> generator : generatorClasses) {
+      updateWithBytecode(digest, generator.getName());
+    }
+    return toHex(digest.digest());
+  }
+
+  /** @return the hash of the YAML entry and domain type of {@code dto} */
+  private String hashDto(final DtoConfig dto) {
+    final MessageDigest digest = newDigest();
+    update(digest, dto.getSimpleName());
+    update(digest, String.valueOf(config.getYaml().get(dto.getSimpleName())));
+    if (dto.getDomainType() != null) {
+      final String domainType = dto.getDomainType().replaceAll("<.*", "");
+      try {
+        for (Class<?> c = Class.forName(domainType, false, loader); c != null && !isJdk(c); c = c.getSuperclass()) {
+          updateWithBytecode(digest, c.getName());
+          for (final Class<?> i : c.getInterfaces()) {
+            if (!isJdk(i)) {
+              updateWithBytecode(digest, i.getName());
+            }
+          }
+        }
+      } catch (final ClassNotFoundException cnfe) {
+        update(digest, "missing " + domainType);
+      }
+    }
+    return toHex(digest.digest());
+  }
+
+  /** @return the hash of {@code dto} combined with the DTOs whose changes affect its output */
+  private String hashWithRelatedDtos(final DtoConfig dto) {
+    final InheritanceGraph inheritance = config.getInheritance();
+    final Set<DtoConfig> related = new LinkedHashSet<DtoConfig>();
+    related.add(dto);
+    related.addAll(inheritance.getBaseClasses(dto));
+    related.addAll(inheritance.getSubClasses(dto));
+    // dtos with the same domain type decide which of them gets the toDto(domain) overload
+    if (dto.getDomainType() != null) {
+      related.addAll(config.getDtosForDomainType(dto.getDomainType()));
+    }
+    final MessageDigest digest = newDigest();
+    for (final DtoConfig other : related) {
+      update(digest, ownHashes.get(other.getSimpleName()));
+    }
+    return toHex(digest.digest());
+  }
+
+  /** @return the other DTOs that {@code dto}'s properties map to */
+  private Set<String> findReferences(final DtoConfig dto) {
+    final Set<String> references = new LinkedHashSet<String>();
+    for (final DtoProperty p : dto.getAllProperties()) {
+      addReference(references, p.getDtoType());
+      if (p.isList() || p.isSet()) {
+        addReference(references, p.getSimpleSingleDtoType());
+      }
+    }
+    references.remove(dto.getSimpleName());
+    return references;
+  }
+
+  private void addReference(final Set<String> references, final String dtoType) {
+    final DtoConfig other = dtoType == null ? null : config.getDto(dtoType);
+    if (other != null) {
+      references.add(other.getSimpleName());
+    }
+  }
+
+  private void updateWithBytecode(final MessageDigest digest, final String className) {
+    final InputStream in = loader.getResourceAsStream(className.replace('.', '/') + ".class");
+    if (in == null) {
+      update(digest, "missing " + className);
+      return;
+    }
+    try {
+      try {
+        final byte[] buffer = new byte[8192];
+        for (int read = in.read(buffer); read != -1; read = in.read(buffer)) {
+          digest.update(buffer, 0, read);
+        }
+      } finally {
+        in.close();
+      }
+    } catch (final IOException io) {
+      throw new RuntimeException("Could not read " + className, io);
+    }
+  }
+
+  private static boolean isJdk(final Class<?> c) {
+    return c.getName().startsWith("java.") || c.getName().startsWith("javax.");
+  }
+
+  private static void update(final MessageDigest digest, final String value) {
+    try {
+      digest.update(value.getBytes("UTF-8"));
+      digest.update((byte) 0);
+    } catch (final UnsupportedEncodingException uee) {
+      throw new RuntimeException(uee);
+    }
+  }
+
+  private static MessageDigest newDigest() {
+    try {
+      return MessageDigest.getInstance("SHA-1");
+    } catch (final NoSuchAlgorithmException nsae) {
+      throw new RuntimeException(nsae);
+    }
+  }
+
+  private static String toHex(final byte[] bytes) {
+    final StringBuilder sb = new StringBuilder();
+    for (final byte b : bytes) {
+      sb.append(String.format("%02x", b));
+    }
+    return sb.toString();
+  }
+
+}
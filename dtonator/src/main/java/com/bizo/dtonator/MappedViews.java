@@ -0,0 +1,82 @@
+package com.bizo.dtonator;
+
+import java.util.AbstractList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Lazily-mapped views of collections, for the {@code toXxxDtosLazy} and {@code toXxxDtos(Iterable)} mapper methods.
+ *
+ * Elements are mapped each time they're read, and not kept, so callers that read each element once (e.g. writing a
+ * large result set to a response) never hold all of the DTOs at once. Callers that read elements repeatedly should
+ * copy the view instead.
+ */
+public class MappedViews {
+
+  /** @return a read-only view of {@code froms} that maps each element when it's read */
+  public static <F, T> List<T> list(final List<? extends F> froms, final Mapping<F, T> mapping) {
+    return new MappedList<F, T>(froms, mapping);
+  }
+
+  /** @return an iterable over {@code froms} that maps each element as it's iterated */
+  public static <F, T> Iterable<T> iterable(final Iterable<? extends F> froms, final Mapping<F, T> mapping) {
+    return new Iterable<T>() {
+      @Override
+      public Iterator<T> iterator() {
+        return new MappedIterator<F, T>(froms.iterator(), mapping);
+      }
+    };
+  }
+
+  private static class MappedList<F, T> extends AbstractList<T> {
+    private final List<? extends F> froms;
+    private final Mapping<F, T> mapping;
+
+    private MappedList(final List<? extends F> froms, final Mapping<F, T> mapping) {
+      this.froms = froms;
+      this.mapping = mapping;
+    }
+
+    @Override
+    public T get(final int index) {
+      return mapping.map(froms.get(index));
+    }
+
+    @Override
+    public int size() {
+      return froms.size();
+    }
+
+    /** Iterates {@code froms} directly, as {@code get} may be slow, e.g. for linked lists. */
+    @Override
+    public Iterator<T> iterator() {
+      return new MappedIterator<F, T>(froms.iterator(), mapping);
+    }
+  }
+
+  private static class MappedIterator<F, T> implements Iterator<T> {
+    private final Iterator<? extends F> froms;
+    private final Mapping<F, T> mapping;
+
+    private MappedIterator(final Iterator<? extends F> froms, final Mapping<F, T> mapping) {
+      this.froms = froms;
+      this.mapping = mapping;
+    }
+
+    @Override
+    public boolean hasNext() {
+      return froms.hasNext();
+    }
+
+    @Override
+    public T next() {
+      return mapping.map(froms.next());
+    }
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+}
@@ -0,0 +1,227 @@
+package com.bizo.dtonator;
+
+import static joist.util.Copy.list;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.bizo.dtonator.config.YamlUtils;
+
+import joist.sourcegen.Argument;
+import joist.sourcegen.GClass;
+import joist.sourcegen.GMethod;
+import joist.util.Join;
+
+/**
+ * The {@code Mapper} methods generated for a single DTO.
+ *
+ * DTOs may be generated concurrently, so instead of writing into the shared {@code Mapper} {@link GClass}, each DTO
+ * records its methods here, and {@link Dtonator} replays them onto the {@code Mapper} in YAML order. This keeps the
+ * output the same as generating the DTOs one at a time.
+ */
+public class MapperFragment {
+
+  private final Map<String, MapperMethod> methods = new LinkedHashMap<String, MapperMethod>();
+  /** The classes our methods use, e.g. {@link ToDtoContext}, by simple name, for the class they're added to import. */
+  private final Map<String, String> imports = new TreeMap<String, String>();
+
+  /** Records that our methods use {@code classes}, so only mappers that need them import them. */
+  public void addImports(final Class<?>... classes) {
+    for (final Class<?> c : classes) {
+      imports.put(c.getSimpleName(), c.getName());
+    }
+  }
+
+  /** @return the method {@code name(args)}, creating it if needed, like {@link GClass#getMethod} */
+  public MapperMethod getMethod(final String name, final Argument... args) {
+    final StringBuilder key = new StringBuilder(name);
+    for (final Argument arg : args) {
+      key.append(",").append(arg.type);
+    }
+    MapperMethod m = methods.get(key.toString());
+    if (m == null) {
+      m = new MapperMethod(name, args);
+      methods.put(key.toString(), m);
+    }
+    return m;
+  }
+
+  /** @return our imports and methods as plain lists/maps/strings, so they can be stored in the {@link Manifest} */
+  public Map<String, Object> dump() {
+    final List<Object> dumpedMethods = list();
+    for (final MapperMethod m : methods.values()) {
+      dumpedMethods.add(m.dump());
+    }
+    final Map<String, Object> dumped = new LinkedHashMap<String, Object>();
+    dumped.put("imports", list(imports.values()));
+    dumped.put("methods", dumpedMethods);
+    return dumped;
+  }
+
+  /** @return the fragment previously saved by {@link #dump()} */
+  public static MapperFragment load(final Map<String, Object> dumped) {
+    final MapperFragment fragment = new MapperFragment();
+    for (final Object name : (List<?>) dumped.get("imports")) {
+      final String className = (String) name;
+      fragment.imports.put(className.substring(className.lastIndexOf('.') + 1), className);
+    }
+    for (final Object o : (List<?>) dumped.get("methods")) {
+      final Map<String, Object> method = YamlUtils.ensureMap(o);
+      final List<Argument> args = list();
+      for (final Object arg : (List<?>) method.get("args")) {
+        args.add(Argument.arg((String) ((List<?>) arg).get(0), (String) ((List<?>) arg).get(1)));
+      }
+      final MapperMethod m = fragment.getMethod((String) method.get("name"), args.toArray(new Argument[args.size()]));
+      m.returnType = (String) method.get("returnType");
+      m.isPrivate = Boolean.TRUE.equals(method.get("private"));
+      for (final Object line : (List<?>) method.get("lines")) {
+        final List<?> parts = (List<?>) line;
+        if (parts.isEmpty()) {
+          m.body.stripLastCharacterOnPreviousLine();
+        } else {
+          m.body.line((String) parts.get(0), parts.subList(1, parts.size()).toArray());
+        }
+      }
+    }
+    return fragment;
+  }
+
+  /** Adds our methods, in the order they were created, to {@code mapper}. */
+  public void addTo(final GClass mapper) {
+    for (final String className : imports.values()) {
+      mapper.addImports(className);
+    }
+    for (final MapperMethod m : methods.values()) {
+      m.addTo(mapper);
+    }
+  }
+
+  /** Adds delegates for our non-private methods to {@code mapper}, which call them on {@code shard}, e.g. {@code fooShard()}. */
+  public void addDelegatesTo(final GClass mapper, final String shard) {
+    for (final MapperMethod m : methods.values()) {
+      if (!m.isPrivate) {
+        m.addDelegateTo(mapper, shard);
+        // the delegates only use our imports in their parameters, e.g. a ToDtoContext
+        for (final Argument arg : m.args) {
+          if (imports.containsKey(arg.type)) {
+            mapper.addImports(imports.get(arg.type));
+          }
+        }
+      }
+    }
+  }
+
+  public boolean isEmpty() {
+    return methods.isEmpty();
+  }
+
+  /** A recorded {@code Mapper} method. */
+  public static class MapperMethod {
+    private final String name;
+    private final Argument[] args;
+    private String returnType;
+    private boolean isPrivate;
+    public final MapperMethodBody body = new MapperMethodBody();
+
+    private MapperMethod(final String name, final Argument[] args) {
+      this.name = name;
+      this.args = args;
+    }
+
+    public MapperMethod returnType(final String returnType) {
+      this.returnType = returnType;
+      return this;
+    }
+
+    public MapperMethod setPrivate() {
+      isPrivate = true;
+      return this;
+    }
+
+    private Map<String, Object> dump() {
+      final Map<String, Object> dumped = new LinkedHashMap<String, Object>();
+      dumped.put("name", name);
+      final List<Object> dumpedArgs = list();
+      for (final Argument arg : args) {
+        dumpedArgs.add(list(arg.type, arg.name));
+      }
+      dumped.put("args", dumpedArgs);
+      dumped.put("returnType", returnType);
+      dumped.put("private", isPrivate);
+      dumped.put("lines", body.dump());
+      return dumped;
+    }
+
+    private void addTo(final GClass mapper) {
+      final GMethod m = mapper.getMethod(name, (Object[]) args);
+      if (returnType != null) {
+        m.returnType(returnType);
+      }
+      if (isPrivate) {
+        m.setPrivate();
+      }
+      body.addTo(m);
+    }
+
+    private void addDelegateTo(final GClass mapper, final String shard) {
+      final GMethod m = mapper.getMethod(name, (Object[]) args);
+      final List<String> names = list();
+      for (final Argument arg : args) {
+        names.add(arg.name);
+      }
+      if (returnType != null) {
+        m.returnType(returnType);
+        m.body.line("return {}.{}({});", shard, name, Join.commaSpace(names));
+      } else {
+        m.body.line("{}.{}({});", shard, name, Join.commaSpace(names));
+      }
+    }
+  }
+
+  /** Records {@code body.line} calls to replay them later. */
+  public static class MapperMethodBody {
+    private static final Object[] stripLastCharacter = new Object[0];
+    private final List<Object[]> lines = list();
+
+    public void line(final String line, final Object... args) {
+      // args are only ever interpolated as strings, so convert them now to keep the fragment easy to store
+      final String[] strings = new String[args.length];
+      for (int i = 0; i < args.length; i++) {
+        strings[i] = String.valueOf(args[i]);
+      }
+      lines.add(new Object[] { line, strings });
+    }
+
+    public void stripLastCharacterOnPreviousLine() {
+      lines.add(stripLastCharacter);
+    }
+
+    private List<Object> dump() {
+      final List<Object> dumped = list();
+      for (final Object[] line : lines) {
+        final List<Object> parts = list();
+        if (line != stripLastCharacter) {
+          parts.add(line[0]);
+          for (final String arg : (String[]) line[1]) {
+            parts.add(arg);
+          }
+        }
+        dumped.add(parts);
+      }
+      return dumped;
+    }
+
+    private void addTo(final GMethod m) {
+      for (final Object[] line : lines) {
+        if (line == stripLastCharacter) {
+          m.body.stripLastCharacterOnPreviousLine();
+        } else {
+          m.body.line((String) line[0], (Object[]) line[1]);
+        }
+      }
+    }
+  }
+
+}
@@ -0,0 +1,8 @@
+package com.bizo.dtonator;
+
+/** Maps one element of a collection, e.g. with {@code mapper.toXxxDto}, for {@link ParallelMapping} and {@link MappedViews}. */
+public interface Mapping<F, T> {
+
+  T map(F from);
+
+}
@@ -6,6 +6,7 @@ import static org.apache.commons.lang.StringUtils.substringBetween;
 import static org.apache.commons.lang.StringUtils.uncapitalize;
 
 import com.bizo.dtonator.config.DtoConfig;
+import com.bizo.dtonator.config.DtoProperty;
 import com.bizo.dtonator.config.RootConfig;
 import com.bizo.dtonator.config.ValueTypeConfig;
 
@@ -27,6 +28,26 @@ public class Names {
     return rc.getMapperPackage() + "." + capitalize(vtc.name) + "Mapper";
   }
 
+  /** @return the dto's boxed getter for {@code dp}, which primitive fields always have */
+  static String getter(final DtoProperty dp) {
+    return "get" + capitalize(dp.getName());
+  }
+
+  /** @return the dto's boxed setter for {@code dp}, which primitive fields always have */
+  static String setter(final DtoProperty dp) {
+    return "set" + capitalize(dp.getName());
+  }
+
+  /** @return the code to read {@code dp} from the {@code dto} expression, via its getter if its field isn't public */
+  static String read(final String dto, final DtoProperty dp) {
+    return dp.hasAccessorsOnly() ? dto + "." + getter(dp) + "()" : dto + "." + dp.getName();
+  }
+
+  /** @return the statement to write {@code value} to {@code dp} of the {@code dto} expression, via its setter if it has to */
+  static String write(final String dto, final DtoProperty dp, final String value) {
+    return dp.hasAccessorsOnly() ? dto + "." + setter(dp) + "(" + value + ");" : dto + "." + dp.getName() + " = " + value + ";";
+  }
+
   public static String listType(final String type) {
     return substringBetween(type, "<", ">");
   }
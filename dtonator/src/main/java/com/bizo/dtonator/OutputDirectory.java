@@ -0,0 +1,255 @@
+package com.bizo.dtonator;
+
+import static joist.util.Copy.list;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import joist.sourcegen.GClass;
+
+import com.bizo.dtonator.config.Prune;
+
+/**
+ * A directory of generated classes, like joist's {@code GDirectory}, but that leaves unchanged files alone.
+ *
+ * Rewriting every file on every run makes javac, gradle and IDEs think everything changed, so {@link #output()} only
+ * writes files whose content is different, and {@link #prune(Prune)} only deletes files that a previous run generated
+ * (as recorded in a {@code <directory>.files} list), instead of scanning the directory for untouched files.
+ */
+public class OutputDirectory {
+
+  private final File directory;
+  private final File filesList;
+  private final Map<String, GClass> classes = new TreeMap<String, GClass>();
+  private final AtomicInteger written = new AtomicInteger();
+  private final AtomicInteger skipped = new AtomicInteger();
+  private final AtomicInteger deleted = new AtomicInteger();
+
+  public OutputDirectory(final String directory) {
+    this.directory = new File(directory);
+    filesList = new File(directory + ".files");
+  }
+
+  /** @return the class {@code fullClassName} (which may have generics), creating it if needed */
+  public synchronized GClass getClass(final String fullClassName) {
+    final String path = toPath(fullClassName);
+    GClass gc = classes.get(path);
+    if (gc == null) {
+      gc = new GClass(fullClassName);
+      classes.put(path, gc);
+    }
+    return gc;
+  }
+
+  /** @return whether {@code fullClassName} has been generated, either already on disk or during this run */
+  public synchronized boolean exists(final String fullClassName) {
+    final String path = toPath(fullClassName);
+    return classes.containsKey(path) || new File(directory, path).exists();
+  }
+
+  /** @return our classes, by class name, e.g. for writing them through an annotation processor's {@code Filer} */
+  public synchronized Map<String, GClass> getClasses() {
+    final Map<String, GClass> byName = new TreeMap<String, GClass>();
+    for (final Map.Entry<String, GClass> e : classes.entrySet()) {
+      byName.put(e.getKey().replaceAll("\\.java$", "").replace('/', '.'), e.getValue());
+    }
+    return byName;
+  }
+
+  /** Writes our classes on a thread pool, skipping any whose files already have the same content. */
+  public void output() {
+    final Collection<Callable<Void>> writes = list();
+    for (final Map.Entry<String, GClass> e : classes.entrySet()) {
+      final File file = new File(directory, e.getKey());
+      final GClass gc = e.getValue();
+      writes.add(new Callable<Void>() {
+        @Override
+        public Void call() throws IOException {
+          final byte[] code = gc.toCode().getBytes("UTF-8");
+          if (file.exists() && Arrays.equals(code, read(file))) {
+            skipped.incrementAndGet();
+          } else {
+            file.getParentFile().mkdirs();
+            write(file, code);
+            written.incrementAndGet();
+          }
+          return null;
+        }
+      });
+    }
+    final ExecutorService pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+    try {
+      for (final Future<Void> f : pool.invokeAll(writes)) {
+        f.get();
+      }
+    } catch (final ExecutionException ee) {
+      throw new RuntimeException("Could not write to " + directory, ee.getCause());
+    } catch (final InterruptedException ie) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(ie);
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  /**
+   * Deletes the files a previous run generated but this one didn't, and records this run's files for next time.
+   *
+   * If there is no record of a previous run, e.g. the first run after upgrading, all {@code .java} files in the
+   * directory are assumed to be ours.
+   */
+  public void prune(final Prune prune) {
+    final Set<String> previous = filesList.exists() ? readFilesList() : findJavaFiles(directory, "");
+    final Set<String> current = new TreeSet<String>(classes.keySet());
+    final Set<String> usedPackages = new TreeSet<String>();
+    for (final String path : current) {
+      usedPackages.add(packageOf(path));
+    }
+    final Set<String> kept = new TreeSet<String>(current);
+    for (final String path : previous) {
+      if (current.contains(path)) {
+        continue;
+      }
+      final boolean stale = prune == Prune.ALL_PACKAGES || (prune == Prune.USED_PACKAGES && usedPackages.contains(packageOf(path)));
+      final File file = new File(directory, path);
+      if (stale) {
+        if (file.delete()) {
+          deleted.incrementAndGet();
+        }
+      } else if (file.exists()) {
+        // still ours, so it can be pruned later, e.g. if pruning is turned back on
+        kept.add(path);
+      }
+    }
+    writeFilesList(kept);
+  }
+
+  /** Records our files along with the previous run's, for incremental runs that only generate some of the files. */
+  public void keepPreviousFiles() {
+    final Set<String> kept = new TreeSet<String>(classes.keySet());
+    if (filesList.exists()) {
+      for (final String path : readFilesList()) {
+        if (new File(directory, path).exists()) {
+          kept.add(path);
+        }
+      }
+    }
+    writeFilesList(kept);
+  }
+
+  public int getWritten() {
+    return written.get();
+  }
+
+  public int getSkipped() {
+    return skipped.get();
+  }
+
+  public int getDeleted() {
+    return deleted.get();
+  }
+
+  @Override
+  public String toString() {
+    return directory + ": " + getWritten() + " written, " + getSkipped() + " skipped, " + getDeleted() + " deleted";
+  }
+
+  private Set<String> readFilesList() {
+    final Set<String> paths = new TreeSet<String>();
+    try {
+      for (final String line : new String(read(filesList), "UTF-8").split("\n")) {
+        if (!line.isEmpty()) {
+          paths.add(line);
+        }
+      }
+    } catch (final IOException io) {
+      throw new RuntimeException("Could not read " + filesList, io);
+    }
+    return paths;
+  }
+
+  private void writeFilesList(final Set<String> paths) {
+    final StringBuilder sb = new StringBuilder();
+    for (final String path : paths) {
+      sb.append(path).append("\n");
+    }
+    try {
+      filesList.getAbsoluteFile().getParentFile().mkdirs();
+      write(filesList, sb.toString().getBytes("UTF-8"));
+    } catch (final IOException io) {
+      throw new RuntimeException("Could not write " + filesList, io);
+    }
+  }
+
+  /** @return e.g. {@code com/foo/Bar.java} for {@code com.foo.Bar<T>} */
+  private static String toPath(final String fullClassName) {
+    final int generics = fullClassName.indexOf('<');
+    final String name = generics == -1 ? fullClassName : fullClassName.substring(0, generics);
+    return name.trim().replace('.', '/') + ".java";
+  }
+
+  private static String packageOf(final String path) {
+    final int slash = path.lastIndexOf('/');
+    return slash == -1 ? "" : path.substring(0, slash);
+  }
+
+  private static Set<String> findJavaFiles(final File dir, final String prefix) {
+    final Set<String> found = new TreeSet<String>();
+    final File[] files = dir.listFiles();
+    if (files == null) {
+      return found;
+    }
+    for (final File file : files) {
+      if (file.isDirectory()) {
+        found.addAll(findJavaFiles(file, prefix + file.getName() + "/"));
+      } else if (file.getName().endsWith(".java")) {
+        found.add(prefix + file.getName());
+      }
+    }
+    return found;
+  }
+
+  private static byte[] read(final File file) throws IOException {
+    final byte[] bytes = new byte[(int) file.length()];
+    final InputStream in = new FileInputStream(file);
+    try {
+      int offset = 0;
+      while (offset < bytes.length) {
+        final int read = in.read(bytes, offset, bytes.length - offset);
+        if (read == -1) {
+          break;
+        }
+        offset += read;
+      }
+    } finally {
+      in.close();
+    }
+    return bytes;
+  }
+
+  private static void write(final File file, final byte[] bytes) throws IOException {
+    final OutputStream out = new FileOutputStream(file);
+    try {
+      out.write(bytes);
+    } finally {
+      out.close();
+    }
+  }
+
+}
@@ -0,0 +1,83 @@
+package com.bizo.dtonator;
+
+import java.util.Collection;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Maps large collections on a fork-join pool, for the {@code parallelThreshold} setting.
+ *
+ * The results are added to the output collection in the same order as the input collection's iterator, so lists keep
+ * their order. The mapping must be safe to call from many threads at once.
+ */
+public class ParallelMapping {
+
+  /** How many elements each task should map, at least, as smaller tasks cost more to schedule than to run. */
+  private static final int minimumChunk = 256;
+
+  /** Creates the pool the first time it's used, so mappers that never go parallel don't start it. */
+  private static class Holder {
+    private static final ForkJoinPool pool = new ForkJoinPool();
+  }
+
+  /** @return {@code into}, after adding the result of {@code mapping} for each of {@code froms} */
+  public static <F, T, C extends Collection<? super T>> C map(
+    final Collection<? extends F> froms,
+    final Mapping<F, T> mapping,
+    final C into) {
+    final Object[] in = froms.toArray();
+    final Object[] out = new Object[in.length];
+    final boolean nested = ForkJoinTask.inForkJoinPool();
+    final int parallelism = nested ? ForkJoinTask.getPool().getParallelism() : Holder.pool.getParallelism();
+    final int chunk = Math.max(minimumChunk, in.length / (parallelism * 4));
+    final MapRange<F, T> task = new MapRange<F, T>(mapping, in, out, 0, in.length, chunk);
+    if (nested) {
+      // nested collections, so fork within the pool we're already in
+      task.invoke();
+    } else {
+      Holder.pool.invoke(task);
+    }
+    for (final Object o : out) {
+      @SuppressWarnings("unchecked")
+      final T t = (T) o;
+      into.add(t);
+    }
+    return into;
+  }
+
+  private static class MapRange<F, T> extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+    private final Mapping<F, T> mapping;
+    private final Object[] in;
+    private final Object[] out;
+    private final int from;
+    private final int to;
+    private final int chunk;
+
+    private MapRange(final Mapping<F, T> mapping, final Object[] in, final Object[] out, final int from, final int to, final int chunk) {
+      this.mapping = mapping;
+      this.in = in;
+      this.out = out;
+      this.from = from;
+      this.to = to;
+      this.chunk = chunk;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected void compute() {
+      if (to - from <= chunk) {
+        for (int i = from; i < to; i++) {
+          out[i] = mapping.map((F) in[i]);
+        }
+      } else {
+        final int middle = (from + to) >>> 1;
+        invokeAll(
+          new MapRange<F, T>(mapping, in, out, from, middle, chunk),
+          new MapRange<F, T>(mapping, in, out, middle, to, chunk));
+      }
+    }
+  }
+
+}
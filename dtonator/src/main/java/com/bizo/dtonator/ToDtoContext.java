@@ -0,0 +1,37 @@
+package com.bizo.dtonator;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Tracks domain objects -> the DTOs made for them during a {@code toXxxDto} call, for the {@code identityToDto} setting.
+ *
+ * An entity that's referenced many times in a graph is mapped once, and shared by all of the DTOs that refer to it,
+ * and cycles end at the first repeated entity. Domain objects are compared by identity, and each DTO type is tracked
+ * separately, as one entity can map to several DTOs.
+ */
+public class ToDtoContext {
+
+  // created on first use, keyed by dto type, as most DTO types are only used once per call
+  private Map<Class<?>, Map<Object, Object>> dtos;
+
+  /** @return the DTO of {@code type} already made for {@code domain}, or {@code null} */
+  public <T> T get(final Class<T> type, final Object domain) {
+    final Map<Object, Object> byDomain = dtos == null ? null : dtos.get(type);
+    return byDomain == null ? null : type.cast(byDomain.get(domain));
+  }
+
+  public void put(final Class<?> type, final Object domain, final Object dto) {
+    if (dtos == null) {
+      dtos = new HashMap<Class<?>, Map<Object, Object>>();
+    }
+    Map<Object, Object> byDomain = dtos.get(type);
+    if (byDomain == null) {
+      byDomain = new IdentityHashMap<Object, Object>();
+      dtos.put(type, byDomain);
+    }
+    byDomain.put(domain, dto);
+  }
+
+}
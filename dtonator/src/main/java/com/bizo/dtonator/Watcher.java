@@ -0,0 +1,275 @@
+package com.bizo.dtonator;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+import static joist.util.Copy.list;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.yaml.snakeyaml.Yaml;
+
+import com.bizo.dtonator.config.RootConfig;
+import com.bizo.dtonator.config.YamlUtils;
+import com.bizo.dtonator.properties.CachingTypeOracle;
+
+/**
+ * Regenerates whenever {@code dtonator.yaml} or the domain classes change, from a long-running JVM.
+ *
+ * The parsed config and the {@link CachingTypeOracle} are kept between runs. Recompiled classes are read with a new
+ * class loader, and only they (and their subtypes) are dropped from the cache. Runs are always {@code incremental}, so
+ * the {@link Manifest} picks which DTOs to regenerate.
+ */
+public class Watcher {
+
+  /** How long to wait for more changes before regenerating, as compilers write a batch of files at once. */
+  private static final long quietMillis = 50;
+  private final Path configFile;
+  private final List<Path> classDirectories = list();
+  private final URL[] classpath;
+  private final Map<WatchKey, Path> watched = new HashMap<WatchKey, Path>();
+  private WatchService watchService;
+  private Object root;
+  private URLClassLoader loader;
+  private CachingTypeOracle oracle;
+
+  /** @return a watcher for the {@code /dtonator.yaml} and class directories on our classpath, like {@link Dtonator#main} */
+  public static Watcher fromClasspath() throws IOException {
+    final URL config = Dtonator.class.getResource("/dtonator.yaml");
+    if (config == null || !"file".equals(config.getProtocol())) {
+      throw new IllegalStateException("Watching needs a dtonator.yaml file on the classpath, not " + config);
+    }
+    final List<File> classpath = list();
+    for (final String entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+      classpath.add(new File(entry));
+    }
+    return new Watcher(toFile(config), classpath);
+  }
+
+  /**
+   * @param configFile the {@code dtonator.yaml} file
+   * @param classpath the domain classes and their dependencies; the directories are watched for recompiled classes
+   */
+  public Watcher(final File configFile, final List<File> classpath) throws MalformedURLException {
+    this.configFile = configFile.toPath().toAbsolutePath().normalize();
+    this.classpath = new URL[classpath.size()];
+    for (int i = 0; i < classpath.size(); i++) {
+      this.classpath[i] = classpath.get(i).toURI().toURL();
+      if (classpath.get(i).isDirectory()) {
+        classDirectories.add(classpath.get(i).toPath().toAbsolutePath().normalize());
+      }
+    }
+  }
+
+  /** Generates, then regenerates on each change, until interrupted. */
+  public void run() throws IOException, InterruptedException {
+    watchService = FileSystems.getDefault().newWatchService();
+    try {
+      register(configFile.getParent());
+      for (final Path directory : classDirectories) {
+        registerAll(directory);
+      }
+      System.out.println("dtonator: watching " + configFile + " and " + classDirectories);
+      loadConfig();
+      generate();
+      while (!Thread.currentThread().isInterrupted()) {
+        onChanges(waitForChanges());
+      }
+    } finally {
+      watchService.close();
+      // the loader is only made once the config loads
+      if (loader != null) {
+        loader.close();
+      }
+    }
+  }
+
+  /** @param changed the changed files, or {@code null} if events were lost */
+  private void onChanges(final Set<Path> changed) throws IOException {
+    if (changed == null || changed.contains(configFile)) {
+      loadConfig();
+    } else {
+      final Set<String> classNames = new LinkedHashSet<String>();
+      for (final Path file : changed) {
+        final String className = toClassName(classDirectories, file);
+        if (className != null) {
+          classNames.add(className);
+        }
+      }
+      if (classNames.isEmpty()) {
+        return;
+      }
+      reloadClasses(classNames);
+    }
+    generate();
+  }
+
+  /** Reads the config, and starts over with a new cache, as the config can change the oracle or its lookups. */
+  private void loadConfig() throws IOException {
+    final InputStream in = new FileInputStream(configFile.toFile());
+    try {
+      root = new Yaml().load(in);
+    } finally {
+      in.close();
+    }
+    // the manifest is what lets us regenerate only the affected dtos
+    YamlUtils.<String, Object> ensureMap(YamlUtils.<String, Object> ensureMap(root).get("config")).put("incremental", true);
+    newLoader();
+    oracle = new CachingTypeOracle(Dtonator.newTypeOracle(root, loader));
+  }
+
+  /** Switches the oracle to a new class loader, and forgets what it knew about the changed classes. */
+  private void reloadClasses(final Set<String> classNames) throws IOException {
+    newLoader();
+    oracle.setDelegate(Dtonator.newTypeOracle(root, loader));
+    oracle.invalidate(findAffected(oracle.getClassNames(), classNames, loader));
+  }
+
+  private void generate() {
+    final long start = System.currentTimeMillis();
+    try {
+      new Dtonator(new RootConfig(oracle, root), loader).run();
+      System.out.println("dtonator: done in " + (System.currentTimeMillis() - start) + "ms");
+    } catch (final Exception e) {
+      // keep watching, as the next change may fix it
+      System.out.println("dtonator: failed, " + e);
+    }
+  }
+
+  /** Uses a new loader that doesn't delegate to ours, as ours already has the old versions of the domain classes. */
+  private void newLoader() throws IOException {
+    if (loader != null) {
+      loader.close();
+    }
+    loader = new URLClassLoader(classpath, ClassLoader.getSystemClassLoader().getParent());
+  }
+
+  /** @return the changed files, once no more changes have come in for {@link #quietMillis}, or {@code null} on overflow */
+  private Set<Path> waitForChanges() throws IOException, InterruptedException {
+    final Set<Path> changed = new LinkedHashSet<Path>();
+    boolean overflowed = false;
+    for (WatchKey key = watchService.take(); key != null; key = watchService.poll(quietMillis, TimeUnit.MILLISECONDS)) {
+      final Path directory = watched.get(key);
+      for (final WatchEvent<?> event : key.pollEvents()) {
+        if (event.kind() == OVERFLOW) {
+          overflowed = true;
+          continue;
+        }
+        final Path file = directory.resolve((Path) event.context());
+        changed.add(file);
+        // new packages need watching too
+        if (event.kind() == ENTRY_CREATE && Files.isDirectory(file) && isInClassDirectory(file)) {
+          registerAll(file);
+        }
+      }
+      if (!key.reset()) {
+        watched.remove(key);
+      }
+    }
+    return overflowed ? null : changed;
+  }
+
+  private boolean isInClassDirectory(final Path file) {
+    for (final Path directory : classDirectories) {
+      if (file.startsWith(directory)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void registerAll(final Path directory) throws IOException {
+    Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+      @Override
+      public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attrs) throws IOException {
+        register(dir);
+        return FileVisitResult.CONTINUE;
+      }
+    });
+  }
+
+  private void register(final Path directory) throws IOException {
+    watched.put(directory.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE), directory);
+  }
+
+  /** @return the binary name of the class in {@code file}, or {@code null} if it's not a class in {@code classDirectories} */
+  static String toClassName(final Collection<Path> classDirectories, final Path file) {
+    if (!file.toString().endsWith(".class")) {
+      return null;
+    }
+    for (final Path directory : classDirectories) {
+      if (file.startsWith(directory)) {
+        final StringBuilder className = new StringBuilder();
+        for (final Path part : directory.relativize(file)) {
+          className.append(className.length() == 0 ? "" : ".").append(part);
+        }
+        return className.substring(0, className.length() - ".class".length());
+      }
+    }
+    return null;
+  }
+
+  /** @return the {@code changed} classes, and the {@code cached} classes that extend or implement them */
+  static Set<String> findAffected(final Collection<String> cached, final Set<String> changed, final ClassLoader loader) {
+    final Set<String> affected = new LinkedHashSet<String>(changed);
+    for (final String className : cached) {
+      try {
+        if (isSubtypeOfAny(Class.forName(className, false, loader), changed)) {
+          affected.add(className);
+        }
+      } catch (final ClassNotFoundException | LinkageError e) {
+        // deleted, or it's a primitive or type parameter, so drop it to be safe
+        affected.add(className);
+      }
+    }
+    return affected;
+  }
+
+  private static boolean isSubtypeOfAny(final Class<?> c, final Set<String> classNames) {
+    if (c == null) {
+      return false;
+    }
+    if (classNames.contains(c.getName()) || isSubtypeOfAny(c.getSuperclass(), classNames)) {
+      return true;
+    }
+    for (final Class<?> i : c.getInterfaces()) {
+      if (isSubtypeOfAny(i, classNames)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static File toFile(final URL url) {
+    try {
+      return new File(url.toURI());
+    } catch (final URISyntaxException use) {
+      return new File(url.getPath());
+    }
+  }
+
+}
@@ -40,6 +40,12 @@ public class DtoConfig {
   private final Map<String, Object> map;
   private List<DtoProperty> properties;
   private MultiValuedMap<String, GenericPartsDto> genericTypeParameters;
+  // derived from properties, which don't change once resolved
+  private List<DtoProperty> classProperties;
+  private List<DtoProperty> inheritedProperties;
+  private Map<String, DtoProperty> allPropertiesMap;
+  private List<DtoProperty> primitiveFields;
+  private List<String> forcedMappers;
 
   public DtoConfig(final TypeOracle oracle, final RootConfig root, final String simpleName, final Object map) {
     this.oracle = oracle;
@@ -66,37 +72,35 @@ public class DtoConfig {
   }
 
   public List<DtoProperty> getClassProperties() {
-    Predicate<? super DtoProperty> p = new Predicate<DtoProperty>() {
+    if (classProperties == null) {
+      Predicate<? super DtoProperty> p = new Predicate<DtoProperty>() {
 
-      @Override
-      public boolean evaluate(DtoProperty t) {
+        @Override
+        public boolean evaluate(DtoProperty t) {
 
-        return !t.isInherited() && !t.isAbstract();
-      }
-    };
+          return !t.isInherited() && !t.isAbstract();
+        }
+      };
 
-    return (List<DtoProperty>) CollectionUtils.select(getProperties(), p);
+      classProperties = Collections.unmodifiableList((List<DtoProperty>) CollectionUtils.select(getProperties(), p));
+    }
+    return classProperties;
   }
 
   public List<DtoProperty> getInheritedProperties() {
-    final List<DtoProperty> p = list();
-    for (final DtoConfig base : getBaseDtos()) {
-      p.addAll(base.getClassProperties());
+    if (inheritedProperties == null) {
+      final List<DtoProperty> p = list();
+      for (final DtoConfig base : getBaseDtos()) {
+        p.addAll(base.getClassProperties());
+      }
+      inheritedProperties = Collections.unmodifiableList(p);
     }
-    return p;
+    return inheritedProperties;
   }
 
   /** @return the base dtos, with the root dto first. */
   private List<DtoConfig> getBaseDtos() {
-    final List<DtoConfig> p = list();
-    String currentName = getBaseDtoSimpleName();
-    while (currentName != null) {
-      final DtoConfig dto = root.getDto(currentName);
-      p.add(dto);
-      currentName = dto.getBaseDtoSimpleName();
-    }
-    Collections.reverse(p);
-    return p;
+    return root.getInheritance().getBaseClasses(this);
   }
 
   public List<DtoProperty> getAllProperties() {
@@ -106,17 +110,20 @@ public class DtoConfig {
   }
 
   public Map<String, DtoProperty> getAllPropertiesMap() {
-    FluentMap<String, DtoProperty> map = new FluentMap<>();
-    for (DtoProperty p : getInheritedProperties()) {
-      map.put(p.getName(), p);
-    }
-
-    for (DtoProperty p : getProperties()) {
-      if (!p.isAbstract()) {
+    if (allPropertiesMap == null) {
+      FluentMap<String, DtoProperty> map = new FluentMap<>();
+      for (DtoProperty p : getInheritedProperties()) {
         map.put(p.getName(), p);
       }
+
+      for (DtoProperty p : getProperties()) {
+        if (!p.isAbstract()) {
+          map.put(p.getName(), p);
+        }
+      }
+      allPropertiesMap = Collections.unmodifiableMap(map);
     }
-    return map;
+    return allPropertiesMap;
   }
 
   public String getSimpleName() {
@@ -230,32 +237,143 @@ public class DtoConfig {
 
   /** @return this DTOs base class, or {@code null} */
   public DtoConfig getBaseDto() {
-    if (getBaseDtoSimpleName() != null) {
-      return root.getDto(getBaseDtoSimpleName());
-    }
-    return null;
+    return root.getInheritance().getParent(this);
   }
 
   /** @return subclasses, with the leaf classes (e.g. grand children) first */
   public List<DtoConfig> getSubClassDtos() {
-    final List<DtoConfig> subClasses = list();
-    final List<DtoConfig> toProbe = list(this);
-    while (!toProbe.isEmpty()) {
-      final DtoConfig current = toProbe.remove(0);
-      // scan for subclasses of current
-      for (final DtoConfig other : root.getDtos()) {
-        if (current.getSimpleName().equals(other.getBaseDtoSimpleName())) {
-          subClasses.add(other);
-          toProbe.add(other);
+    return root.getInheritance().getSubClasses(this);
+  }
+
+  public boolean includeBeanMethods() {
+    return TRUE.equals(map.get("beanMethods")) || root.includeBeanMethods();
+  }
+
+  /**
+   * @return whether the dto's bean setters track which properties changed, so {@code fromDto} only applies those;
+   *         subclasses inherit it, as they share their base's changed mask
+   */
+  public boolean includeDirtyTracking() {
+    final boolean dirty = TRUE.equals(map.get("dirtyTracking")) || root.includeDirtyTracking() || getBaseDto() != null && getBaseDto().includeDirtyTracking();
+    return dirty && includeBeanMethods() && !isEnum();
+  }
+
+  /** @return whether we declare the changed mask, i.e. track changes and our base dto doesn't */
+  public boolean declaresChangedMask() {
+    return includeDirtyTracking() && (getBaseDto() == null || !getBaseDto().includeDirtyTracking());
+  }
+
+  /**
+   * @return whether the dto gets {@code writeTo}/{@code readFrom} methods, which subclasses inherit, as the base's
+   *         {@code readFrom} creates them from their tag and then calls their {@code readBody}
+   */
+  public boolean includeBinaryCodec() {
+    return TRUE.equals(map.get("binaryCodec")) || root.includeBinaryCodec() || getBaseDto() != null && getBaseDto().includeBinaryCodec();
+  }
+
+  /**
+   * @return whether the dto gets a {@code XxxDtoJson} class, which subclasses inherit, as the base's reads them by their
+   *         {@code @type}, and generic dtos can't have, as we don't know their type parameters' concrete types
+   */
+  public boolean includeJson() {
+    final boolean json = TRUE.equals(map.get("json")) || root.includeJson() || getBaseDto() != null && getBaseDto().includeJson();
+    return json && !isEnum() && StringUtils.isEmpty(getClassTypesString());
+  }
+
+  /**
+   * @return whether the dto gets a {@code XxxDtoView} flyweight, which subclasses inherit, so the base view's
+   *         {@code wrap} can return theirs for their records' tags
+   */
+  public boolean includeBufferView() {
+    final boolean view = TRUE.equals(map.get("bufferView")) || root.includeBufferView() || getBaseDto() != null && getBaseDto().includeBufferView();
+    return view && !isEnum() && StringUtils.isEmpty(getClassTypesString());
+  }
+
+  /**
+   * @return whether the dto gets a GWT-RPC {@code XxxDto_CustomFieldSerializer}, which subclasses inherit, so each of
+   *         their serializers writes their own fields after calling their base's
+   */
+  public boolean includeCustomFieldSerializer() {
+    final boolean cfs = TRUE.equals(map.get("customFieldSerializer"))
+      || root.includeCustomFieldSerializer()
+      || getBaseDto() != null && getBaseDto().includeCustomFieldSerializer();
+    return cfs && !isEnum() && StringUtils.isEmpty(getClassTypesString());
+  }
+
+  /**
+   * @return whether the dto gets a columnar {@code XxxDtoBatch}, which dtos in {@code extends} hierarchies can't have, as
+   *         a batch's rows are all the same class
+   */
+  public boolean includeBatch() {
+    final boolean batch = TRUE.equals(map.get("batch")) || root.includeBatch();
+    return batch && !isEnum() && !isAbstract() && getBaseDto() == null && getSubClassDtos().isEmpty() && StringUtils.isEmpty(getClassTypesString());
+  }
+
+  /**
+   * Fails if any of our properties is a dto, or a list/set of them, without {@code setting}, for the generators whose
+   * code calls the nested dtos' generated code for that setting.
+   */
+  public void checkNestedDtos(final String setting, final Predicate<DtoConfig> has) {
+    for (final DtoProperty dp : getAllPropertiesMap().values()) {
+      final String type = dp.isList() || dp.isSet() ? dp.getSingleDtoType() : dp.getDtoType();
+      final DtoConfig other = root.getDto(type);
+      if (other != null && !other.isEnum() && !has.evaluate(other)) {
+        throw new IllegalStateException(simpleName + "." + dp.getName() + " is a " + other.getSimpleName() + ", which needs " + setting + " too");
+      }
+    }
+  }
+
+  /** @return whether boxed number/boolean properties are stored as primitives plus a null mask, defaults to {@code false} */
+  public boolean usePrimitiveFields() {
+    return TRUE.equals(map.get("primitiveFields")) || root.usePrimitiveFields();
+  }
+
+  /**
+   * @return the class properties that are stored as primitive fields, where each property's bit in the null mask is its
+   *         index, so only the first 32 boxed properties are stored as primitives
+   */
+  public List<DtoProperty> getPrimitiveFields() {
+    if (primitiveFields == null) {
+      final List<DtoProperty> p = list();
+      if (usePrimitiveFields()) {
+        for (final DtoProperty dp : getClassProperties()) {
+          if (dp.getDtoTypeUnboxed() != null && p.size() < 32) {
+            p.add(dp);
+          }
         }
       }
+      primitiveFields = Collections.unmodifiableList(p);
     }
-    Collections.reverse(subClasses);
-    return subClasses;
+    return primitiveFields;
   }
 
-  public boolean includeBeanMethods() {
-    return TRUE.equals(map.get("beanMethods")) || root.includeBeanMethods();
+  /** @return whether the {@code property}, which may be from a base dto, is stored as a primitive field */
+  public boolean isPrimitiveField(final String property) {
+    for (DtoConfig dto = this; dto != null; dto = dto.getBaseDto()) {
+      for (final DtoProperty dp : dto.getPrimitiveFields()) {
+        if (dp.getName().equals(property)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @return the size at which the {@code property} collection is mapped in parallel, or {@code null} to never, from
+   *         the dto's {@code parallelThreshold}, which is either a size or a map of property names to sizes
+   */
+  public Integer getParallelThreshold(final String property) {
+    final Object value = map.get("parallelThreshold");
+    if (value instanceof Map) {
+      final Object threshold = ((Map<?, ?>) value).get(property);
+      if (threshold != null) {
+        return Integer.valueOf(threshold.toString());
+      }
+    } else if (value != null) {
+      return Integer.valueOf(value.toString());
+    }
+    return root.getParallelThreshold();
   }
 
   public List<AnnotationConfig> getExcludedAnnotations() {
@@ -300,6 +418,17 @@ public class DtoConfig {
     return combinedValues;
   }
 
+  /** @return the annotation types whose properties should be skipped, as passed to the {@link TypeOracle}. */
+  public List<String> getExcludedAnnotationTypes() {
+    final List<String> annotations = list();
+    for (final AnnotationConfig av : getExcludedAnnotations()) {
+      if (av.exclude) {
+        annotations.add(av.domainType);
+      }
+    }
+    return annotations;
+  }
+
   /** @return the domain type backing this DTO, or {@code null} if it's standalone. */
   public String getDomainType() {
     final String rawValue = (String) map.get("domain");
@@ -355,7 +484,10 @@ public class DtoConfig {
 
   /** @return a list of properties that we want to force mapper methods for */
   public List<String> getForcedMappers() {
-    return YamlUtils.parseExpectedStringToList("forceMapperMethods", map.get("forceMapperMethods"));
+    if (forcedMappers == null) {
+      forcedMappers = Collections.unmodifiableList(YamlUtils.parseExpectedStringToList("forceMapperMethods", map.get("forceMapperMethods")));
+    }
+    return forcedMappers;
   }
 
   public boolean requiresMapperType() {
@@ -380,19 +512,24 @@ public class DtoConfig {
     return false;
   }
 
+  /** Resolves and classifies all of our properties, see {@link RootConfig#compile()}. */
+  void compile() {
+    for (final DtoProperty p : getAllPropertiesMap().values()) {
+      p.compile();
+    }
+    for (final DtoProperty p : getProperties()) {
+      p.compile();
+    }
+    getPrimitiveFields();
+  }
+
   @Override
   public String toString() {
     return getSimpleName();
   }
 
   private void addChainedPropertiesFromDomainObject(final List<PropConfig> pcs) {
-    List<String> annotations = list();
-    for (AnnotationConfig av : getExcludedAnnotations()) {
-      if (av.exclude) {
-        annotations.add(av.domainType);
-      }
-    }
-
+    final List<String> annotations = getExcludedAnnotationTypes();
     for (final Prop p : oracle.getProperties(getDomainType(), isChildClass(), annotations)) {
       // if we found "getFoo()/setFoo()" via reflection, look for a "fooId" prop config,
       // that would tell us the user wants to get/set Foo as its id
@@ -426,12 +563,7 @@ public class DtoConfig {
 
   private void addPropertiesFromDomainObject(final List<PropConfig> pcs) {
 
-    List<String> annotations = list();
-    for (AnnotationConfig av : getExcludedAnnotations()) {
-      if (av.exclude) {
-        annotations.add(av.domainType);
-      }
-    }
+    final List<String> annotations = getExcludedAnnotationTypes();
 
     for (final Prop p : oracle.getProperties(getDomainType(), isChildClass(), annotations)) {
       final PropConfig pc = findPropConfig(pcs, p.name);
@@ -785,13 +917,21 @@ public class DtoConfig {
 
   /** Sorts the properties based on their order in the YAML file, whether they're {@code id}, or alphabetically. */
   private static void sortProperties(final List<PropConfig> pcs, final List<DtoProperty> properties) {
+    // index the prop configs up front, instead of scanning them on each comparison
+    final Map<String, PropConfig> byDomainName = new HashMap<String, PropConfig>();
+    final Map<String, Integer> indexByName = new HashMap<String, Integer>();
+    for (int i = pcs.size() - 1; i >= 0; i--) {
+      // iterate backwards so that the first match wins, like findPropConfig/indexOfPropConfig
+      byDomainName.put(pcs.get(i).domainName, pcs.get(i));
+      indexByName.put(pcs.get(i).name, i);
+    }
     Collections.sort(properties, new Comparator<DtoProperty>() {
       @Override
       public int compare(DtoProperty o1, DtoProperty o2) {
-        final PropConfig pc1 = findPropConfig(pcs, o1.getName());
-        final PropConfig pc2 = findPropConfig(pcs, o2.getName());
+        final PropConfig pc1 = byDomainName.get(o1.getName());
+        final PropConfig pc2 = byDomainName.get(o2.getName());
         if (pc1 != null && pc2 != null) {
-          return indexOfPropConfig(pcs, o1.getName()) - indexOfPropConfig(pcs, o2.getName());
+          return indexOf(indexByName, o1.getName()) - indexOf(indexByName, o2.getName());
         } else if (pc1 != null && pc2 == null) {
           return -1;
         } else if (pc1 == null && pc2 != null) {
@@ -828,15 +968,9 @@ public class DtoConfig {
     return null;
   }
 
-  private static int indexOfPropConfig(final List<PropConfig> pcs, final String name) {
-    int i = 0;
-    for (final PropConfig pc : pcs) {
-      if (pc.name.equals(name)) {
-        return i;
-      }
-      i++;
-    }
-    return -1;
+  private static int indexOf(final Map<String, Integer> indexByName, final String name) {
+    final Integer i = indexByName.get(name);
+    return i == null ? -1 : i;
   }
 
   private static DtoConfig guessDtoTypeForDomainType(final RootConfig root, final String domainType) {
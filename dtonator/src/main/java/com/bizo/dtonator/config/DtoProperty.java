@@ -1,5 +1,6 @@
 package com.bizo.dtonator.config;
 
+import static joist.util.Copy.list;
 import static org.apache.commons.lang.StringUtils.substringAfterLast;
 import static org.apache.commons.lang.StringUtils.substringBetween;
 
@@ -27,6 +28,18 @@ public class DtoProperty {
   private final boolean inherited;
   private final String genericDomainType;
   private final boolean isAbstract;
+  // classifications, resolved once on first use (or by compile) as they hit the oracle/config
+  private Boolean entity;
+  private Boolean enumType;
+  private Boolean dtoOfConfig;
+  private Boolean listOfEntities;
+  private Boolean setOfEntities;
+  private Boolean listOfDtos;
+  private Boolean setOfDtos;
+  private Boolean extension;
+  private Long changedBit;
+  private ValueTypeConfig valueTypeConfig;
+  private boolean valueTypeConfigResolved;
 
   public DtoProperty(
     final TypeOracle oracle,
@@ -69,8 +82,46 @@ public class DtoProperty {
     return Primitives.boxIfNecessary(dtoType);
   }
 
+  /** @return the primitive for a boxed number/boolean dto type, e.g. {@code long} for {@code Long}, or {@code null} */
+  public String getDtoTypeUnboxed() {
+    return Primitives.unbox(dtoType);
+  }
+
+  /** @return whether the dto stores us as a primitive field, with a bit in its null mask, and boxed accessors */
+  public boolean isPrimitiveField() {
+    return dto.isPrimitiveField(name);
+  }
+
+  /**
+   * @return whether the dto's field for us isn't public, so it's read/written with the getter/setter, i.e. we're a
+   *         primitive field, or our dto tracks changes, which only its setters record
+   */
+  public boolean hasAccessorsOnly() {
+    return isPrimitiveField() || dto.includeDirtyTracking();
+  }
+
+  /** @return our bit in the null mask, assuming {@link #isPrimitiveField()} and we're a class property */
+  public int getNullBit() {
+    return 1 << dto.getPrimitiveFields().indexOf(this);
+  }
+
+  /**
+   * @return our bit in the dto's changed mask, which is our index in all of its properties, so inherited properties
+   *         keep their base's bit, or 0 if we're past the 64th property, which are then always applied
+   */
+  public long getChangedBit() {
+    if (changedBit == null) {
+      final int i = list(dto.getAllPropertiesMap().values()).indexOf(this);
+      changedBit = i >= 0 && i < 64 ? 1L << i : 0;
+    }
+    return changedBit;
+  }
+
   public boolean isEntity() {
-    return DtoConfig.isEntity(oracle, domainType);
+    if (entity == null) {
+      entity = DtoConfig.isEntity(oracle, domainType);
+    }
+    return entity;
   }
 
   public boolean isGenericType() {
@@ -78,7 +129,10 @@ public class DtoProperty {
   }
 
   public boolean isDto() {
-    return config.getDto(dtoType) != null && !config.getDto(dtoType).isEnum();
+    if (dtoOfConfig == null) {
+      dtoOfConfig = config.getDto(dtoType) != null && !config.getDto(dtoType).isEnum();
+    }
+    return dtoOfConfig;
   }
 
   public boolean isList() {
@@ -90,19 +144,31 @@ public class DtoProperty {
   }
 
   public boolean isListOfEntities() {
-    return DtoConfig.isListOfEntities(config, domainType);
+    if (listOfEntities == null) {
+      listOfEntities = DtoConfig.isListOfEntities(config, domainType);
+    }
+    return listOfEntities;
   }
 
   public boolean isSetOfEntities() {
-    return DtoConfig.isSetOfEntities(config, domainType);
+    if (setOfEntities == null) {
+      setOfEntities = DtoConfig.isSetOfEntities(config, domainType);
+    }
+    return setOfEntities;
   }
 
   public boolean isListOfDtos() {
-    return DtoConfig.isListOfDtos(config, dtoType);
+    if (listOfDtos == null) {
+      listOfDtos = DtoConfig.isListOfDtos(config, dtoType);
+    }
+    return listOfDtos;
   }
 
   public boolean isSetOfDtos() {
-    return DtoConfig.isSetOfDtos(config, dtoType);
+    if (setOfDtos == null) {
+      setOfDtos = DtoConfig.isSetOfDtos(config, dtoType);
+    }
+    return setOfDtos;
   }
 
   public String getSingleDtoType() {
@@ -130,20 +196,45 @@ public class DtoProperty {
   }
 
   public boolean isEnum() {
-    if (config.getDto(getDtoType()) != null) {
-      return config.getDto(getDtoType()).isEnum();
+    if (enumType == null) {
+      if (config.getDto(getDtoType()) != null) {
+        enumType = config.getDto(getDtoType()).isEnum();
+      } else {
+        enumType = oracle.isEnum(getDomainType());
+      }
     }
-    return oracle.isEnum(getDomainType());
+    return enumType;
   }
 
   public ValueTypeConfig getValueTypeConfig() {
-    return config.getValueTypeForDomainType(getDomainType());
+    if (!valueTypeConfigResolved) {
+      valueTypeConfig = config.getValueTypeForDomainType(getDomainType());
+      valueTypeConfigResolved = true;
+    }
+    return valueTypeConfig;
   }
 
   /** only meaningful for non-manual dtos, otherwise everything is manual... */
   public boolean isExtension() {
-    return (getterMethodName == null && setterNameMethod == null && !isChainedId()) //
-      || dto.getForcedMappers().contains(name);
+    if (extension == null) {
+      extension = (getterMethodName == null && setterNameMethod == null && !isChainedId()) //
+        || dto.getForcedMappers().contains(name);
+    }
+    return extension;
+  }
+
+  /** Resolves all of our classifications up front, see {@link RootConfig#compile()}. */
+  void compile() {
+    isEntity();
+    isDto();
+    isEnum();
+    isListOfEntities();
+    isSetOfEntities();
+    isListOfDtos();
+    isSetOfDtos();
+    isExtension();
+    getChangedBit();
+    getValueTypeConfig();
   }
 
   @Override
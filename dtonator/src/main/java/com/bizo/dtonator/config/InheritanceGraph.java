@@ -0,0 +1,124 @@
+package com.bizo.dtonator.config;
+
+import static joist.util.Copy.list;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import joist.util.Copy;
+
+/**
+ * The {@code extends} relationships between DTOs, built once per {@link RootConfig}.
+ *
+ * Generation asks for subclasses/base classes of each DTO many times, so we resolve them once here instead of having
+ * each DTO scan all of the others.
+ */
+public class InheritanceGraph {
+
+  private final Map<DtoConfig, DtoConfig> parents = new HashMap<DtoConfig, DtoConfig>();
+  private final Map<DtoConfig, List<DtoConfig>> children = new HashMap<DtoConfig, List<DtoConfig>>();
+  private final Map<DtoConfig, List<DtoConfig>> subClasses = new HashMap<DtoConfig, List<DtoConfig>>();
+  private final Map<DtoConfig, List<DtoConfig>> baseClasses = new HashMap<DtoConfig, List<DtoConfig>>();
+  private final List<DtoConfig> topologicalOrder;
+
+  InheritanceGraph(final RootConfig root, final Collection<DtoConfig> dtos) {
+    for (final DtoConfig dto : dtos) {
+      children.put(dto, Copy.<DtoConfig> list());
+    }
+    // children are kept in YAML order
+    for (final DtoConfig dto : dtos) {
+      final String baseName = dto.getBaseDtoSimpleName();
+      if (baseName == null) {
+        continue;
+      }
+      final DtoConfig base = root.getDto(baseName);
+      if (base == null) {
+        throw new IllegalStateException(dto.getSimpleName() + " extends unknown dto " + baseName);
+      }
+      parents.put(dto, base);
+      children.get(base).add(dto);
+    }
+    topologicalOrder = Collections.unmodifiableList(sort(dtos));
+    // resolve everything up front, so the graph is read-only (and so thread-safe) once built
+    for (final DtoConfig dto : topologicalOrder) {
+      subClasses.put(dto, Collections.unmodifiableList(findSubClasses(dto)));
+      baseClasses.put(dto, Collections.unmodifiableList(findBaseClasses(dto)));
+    }
+  }
+
+  /** @return the direct base DTO of {@code dto}, or {@code null} */
+  public DtoConfig getParent(final DtoConfig dto) {
+    return parents.get(dto);
+  }
+
+  /** @return the direct subclasses of {@code dto}, in YAML order */
+  public List<DtoConfig> getChildren(final DtoConfig dto) {
+    return Collections.unmodifiableList(children.get(dto));
+  }
+
+  /** @return all subclasses of {@code dto}, with the leaf classes (e.g. grand children) first */
+  public List<DtoConfig> getSubClasses(final DtoConfig dto) {
+    return subClasses.get(dto);
+  }
+
+  /** @return the base dtos of {@code dto}, with the root dto first */
+  public List<DtoConfig> getBaseClasses(final DtoConfig dto) {
+    return baseClasses.get(dto);
+  }
+
+  /** @return all DTOs with base classes before their subclasses, otherwise in YAML order */
+  public List<DtoConfig> getTopologicalOrder() {
+    return topologicalOrder;
+  }
+
+  private List<DtoConfig> findSubClasses(final DtoConfig dto) {
+    // breadth-first, then reversed, so that leaves come first
+    final List<DtoConfig> found = list();
+    final List<DtoConfig> toProbe = list(dto);
+    for (int i = 0; i < toProbe.size(); i++) {
+      for (final DtoConfig child : children.get(toProbe.get(i))) {
+        found.add(child);
+        toProbe.add(child);
+      }
+    }
+    Collections.reverse(found);
+    return found;
+  }
+
+  private List<DtoConfig> findBaseClasses(final DtoConfig dto) {
+    final List<DtoConfig> found = list();
+    for (DtoConfig current = parents.get(dto); current != null; current = parents.get(current)) {
+      found.add(current);
+    }
+    Collections.reverse(found);
+    return found;
+  }
+
+  private List<DtoConfig> sort(final Collection<DtoConfig> dtos) {
+    final List<DtoConfig> sorted = list();
+    final Set<DtoConfig> visited = new HashSet<DtoConfig>();
+    for (final DtoConfig dto : dtos) {
+      // walk up to the root first, so parents are added before their children
+      final List<DtoConfig> chain = list();
+      final Set<DtoConfig> seen = new HashSet<DtoConfig>();
+      for (DtoConfig current = dto; current != null && !visited.contains(current); current = parents.get(current)) {
+        if (!seen.add(current)) {
+          throw new IllegalStateException("Cycle in extends for " + current.getSimpleName());
+        }
+        chain.add(current);
+      }
+      Collections.reverse(chain);
+      for (final DtoConfig current : chain) {
+        visited.add(current);
+        sorted.add(current);
+      }
+    }
+    return sorted;
+  }
+
+}
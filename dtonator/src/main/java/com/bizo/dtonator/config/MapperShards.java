@@ -0,0 +1,7 @@
+package com.bizo.dtonator.config;
+
+public enum MapperShards {
+
+  NONE, DTO, PACKAGE;
+
+}
@@ -5,9 +5,10 @@ import java.util.Map;
 
 import org.apache.commons.lang.StringUtils;
 
-class Primitives {
+public class Primitives {
 
   private static Map<String, String> p = new HashMap<String, String>();
+  private static Map<String, String> unboxed = new HashMap<String, String>();
 
   static {
     p.put("boolean", "java.lang.Boolean");
@@ -18,10 +19,26 @@ class Primitives {
     p.put("short", "java.lang.Short");
     p.put("float", "java.lang.Float");
     p.put("char", "java.lang.Char");
+    for (final Map.Entry<String, String> e : p.entrySet()) {
+      unboxed.put(e.getValue(), e.getKey());
+      unboxed.put(StringUtils.substringAfterLast(e.getValue(), "."), e.getKey());
+    }
+    unboxed.put("java.lang.Character", "char");
+    unboxed.put("Character", "char");
   }
 
   static String boxIfNecessary(final String type) {
     return StringUtils.defaultString(p.get(type), type);
   }
 
+  /** @return whether {@code type} is a primitive, e.g. {@code long} */
+  public static boolean isPrimitive(final String type) {
+    return p.containsKey(type);
+  }
+
+  /** @return the primitive for a boxed {@code type}, e.g. {@code long} for {@code Long}, or {@code null} */
+  public static String unbox(final String type) {
+    return unboxed.get(type);
+  }
+
 }
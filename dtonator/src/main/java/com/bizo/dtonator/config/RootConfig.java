@@ -5,6 +5,8 @@ import static joist.util.Copy.list;
 import static org.apache.commons.lang.StringUtils.defaultString;
 
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -16,25 +18,40 @@ public class RootConfig {
   private final TypeOracle oracle;
   private final Map<String, Object> root;
   private List<DtoConfig> dtos = null;
+  // indexes, lazily built from the parsed YAML, which is assumed to not change once we start asking questions
+  private Map<String, DtoConfig> dtosByName = null;
+  private Map<String, List<DtoConfig>> dtosByDomainType = null;
+  private InheritanceGraph inheritance = null;
+  private List<ValueTypeConfig> valueTypes = null;
+  private Map<String, ValueTypeConfig> valueTypesByDomainType = null;
+  private List<String> domainPackages = null;
+  private List<String> commonInterfaces = null;
+  private List<AnnotationConfig> excludedAnnotations = null;
 
   public RootConfig(final TypeOracle oracle, final Object root) {
     this.oracle = oracle;
     this.root = YamlUtils.ensureMap(root);
   }
 
+  public TypeOracle getOracle() {
+    return oracle;
+  }
+
+  /** @return the parsed YAML, e.g. for hashing in incremental runs */
+  public Map<String, Object> getYaml() {
+    return Collections.unmodifiableMap(root);
+  }
+
   public String getDtoPackage() {
     return getConfig().get("dtoPackage");
   }
 
   public List<String> getDomainPackages() {
-
-    final Object value = getConfig().get("domainPackage");
-    if (value == null) {
-      return list();
-    } else {
-      return YamlUtils.parseExpectedStringToList("domainPackage", value);
+    if (domainPackages == null) {
+      final Object value = getConfig().get("domainPackage");
+      domainPackages = Collections.unmodifiableList(YamlUtils.parseExpectedStringToList("domainPackage", value));
     }
-
+    return domainPackages;
   }
 
   public String getMapperPackage() {
@@ -83,27 +100,106 @@ public class RootConfig {
     }
   }
 
+  /** @return how to split the {@code Mapper} methods into shards, defaults to {@code NONE}, i.e. all in {@code Mapper} */
+  public MapperShards getMapperShards() {
+    final String shards = defaultString(getConfig().get("mapperShards"), "none");
+    if ("none".equals(shards)) {
+      return MapperShards.NONE;
+    } else if ("dto".equals(shards)) {
+      return MapperShards.DTO;
+    } else if ("package".equals(shards)) {
+      return MapperShards.PACKAGE;
+    } else {
+      throw new IllegalStateException("Unknown mapperShards setting: " + shards);
+    }
+  }
+
   public List<String> getCommonInterfaces() {
-    if (getConfig().containsKey("commonInterfaces")) {
-      return list(getConfig().get("commonInterfaces").split(", ?"));
+    if (commonInterfaces == null) {
+      final List<String> interfaces = list();
+      if (getConfig().containsKey("commonInterfaces")) {
+        interfaces.addAll(list(getConfig().get("commonInterfaces").split(", ?")));
+      }
+      commonInterfaces = Collections.unmodifiableList(interfaces);
     }
-    return list();
+    return commonInterfaces;
+  }
+
+  /** @return whether to generate DTOs concurrently, defaults to {@code false} */
+  public boolean isParallel() {
+    return TRUE.equals(getConfig().get("parallel"));
+  }
+
+  /** @return whether to only regenerate DTOs that changed since the last run, defaults to {@code false} */
+  public boolean isIncremental() {
+    return TRUE.equals(getConfig().get("incremental"));
+  }
+
+  /** @return whether {@code fromDto} takes the {@code DomainObjectContext} as a parameter, defaults to {@code false} */
+  public boolean isExplicitContext() {
+    return TRUE.equals(getConfig().get("explicitContext"));
+  }
+
+  /** @return whether {@code toXxxDto} maps each entity only once per call, defaults to {@code false} */
+  public boolean isIdentityToDto() {
+    return TRUE.equals(getConfig().get("identityToDto"));
+  }
+
+  /** @return the size at which entity collections are mapped in parallel, or {@code null} to never, the default */
+  public Integer getParallelThreshold() {
+    final Object value = getConfig().get("parallelThreshold");
+    return value == null ? null : Integer.valueOf(value.toString());
+  }
+
+  /** @return the file to write a JSON timing report to, or {@code null} to not report */
+  public String getReportFile() {
+    return getConfig().get("report");
+  }
+
+  public boolean includeDirtyTracking() {
+    return TRUE.equals(getConfig().get("dirtyTracking"));
   }
 
   public boolean includeBeanMethods() {
     return TRUE.equals(getConfig().get("beanMethods"));
   }
 
+  public boolean includeBinaryCodec() {
+    return TRUE.equals(getConfig().get("binaryCodec"));
+  }
+
+  public boolean includeCustomFieldSerializer() {
+    return TRUE.equals(getConfig().get("customFieldSerializer"));
+  }
+
+  public boolean includeBatch() {
+    return TRUE.equals(getConfig().get("batch"));
+  }
+
+  public boolean includeBufferView() {
+    return TRUE.equals(getConfig().get("bufferView"));
+  }
+
+  public boolean includeJson() {
+    return TRUE.equals(getConfig().get("json"));
+  }
+
+  public boolean usePrimitiveFields() {
+    return TRUE.equals(getConfig().get("primitiveFields"));
+  }
+
   public List<AnnotationConfig> getExcludedAnnotations() {
-    final Object value = getConfig().get("excludedAnnotations");
-    if (value == null) {
-      return list();
-    }
-    final List<AnnotationConfig> valueTypes = list();
-    for (final Map.Entry<Object, Object> e : YamlUtils.ensureMap(value).entrySet()) {
-      valueTypes.add(new AnnotationConfig(e));
+    if (excludedAnnotations == null) {
+      final List<AnnotationConfig> annotations = list();
+      final Object value = getConfig().get("excludedAnnotations");
+      if (value != null) {
+        for (final Map.Entry<Object, Object> e : YamlUtils.ensureMap(value).entrySet()) {
+          annotations.add(new AnnotationConfig(e));
+        }
+      }
+      excludedAnnotations = Collections.unmodifiableList(annotations);
     }
-    return valueTypes;
+    return excludedAnnotations;
   }
 
   public Collection<DtoConfig> getDtos() {
@@ -120,21 +216,34 @@ public class RootConfig {
   }
 
   public DtoConfig getDto(final String simpleOrFullName) {
-    for (final DtoConfig dto : getDtos()) {
-      if (dto.getSimpleName().equals(simpleOrFullName) || dto.getDtoType().equals(simpleOrFullName)) {
-        return dto;
-      }
+    if (dtosByName == null) {
+      index();
     }
-    return null;
+    return dtosByName.get(simpleOrFullName);
+  }
+
+  /** @return the DTOs mapped from {@code domainType}, in YAML order, or an empty list */
+  public List<DtoConfig> getDtosForDomainType(final String domainType) {
+    if (dtosByDomainType == null) {
+      index();
+    }
+    final List<DtoConfig> matches = dtosByDomainType.get(domainType);
+    return matches == null ? Collections.<DtoConfig> emptyList() : Collections.unmodifiableList(matches);
+  }
+
+  /** @return the {@code extends} relationships between our DTOs */
+  public InheritanceGraph getInheritance() {
+    if (inheritance == null) {
+      inheritance = new InheritanceGraph(this, getDtos());
+    }
+    return inheritance;
   }
 
   public ValueTypeConfig getValueTypeForDomainType(final String domainType) {
-    for (final ValueTypeConfig vtc : getValueTypes()) {
-      if (vtc.domainType.equals(domainType)) {
-        return vtc;
-      }
+    if (valueTypesByDomainType == null) {
+      index();
     }
-    return null;
+    return valueTypesByDomainType.get(domainType);
   }
 
   public ValueTypeConfig getValueTypeForDtoType(final String dtoType) {
@@ -147,13 +256,15 @@ public class RootConfig {
   }
 
   public List<ValueTypeConfig> getValueTypes() {
-    final Object value = getConfig().get("valueTypes");
-    if (value == null) {
-      return list();
-    }
-    final List<ValueTypeConfig> valueTypes = list();
-    for (final Map.Entry<Object, Object> e : YamlUtils.ensureMap(value).entrySet()) {
-      valueTypes.add(new ValueTypeConfig(e));
+    if (valueTypes == null) {
+      final List<ValueTypeConfig> parsed = list();
+      final Object value = getConfig().get("valueTypes");
+      if (value != null) {
+        for (final Map.Entry<Object, Object> e : YamlUtils.ensureMap(value).entrySet()) {
+          parsed.add(new ValueTypeConfig(e));
+        }
+      }
+      valueTypes = Collections.unmodifiableList(parsed);
     }
     return valueTypes;
   }
@@ -166,8 +277,65 @@ public class RootConfig {
     return (String) YamlUtils.ensureMap(map).get(dtoType);
   }
 
+  /**
+   * Resolves every DTO's properties and their classifications (entity, enum, value type, etc.) up front.
+   *
+   * After this, the config is effectively frozen, and generation only does lookups against it.
+   */
+  public void compile() {
+    compile(getDtos());
+  }
+
+  /** Compiles only {@code dtos}, e.g. the ones that changed in an incremental run. */
+  public void compile(final Collection<DtoConfig> dtos) {
+    if (dtosByName == null) {
+      index();
+    }
+    // base dtos first, as subclasses inherit their properties
+    for (final DtoConfig dto : getInheritance().getTopologicalOrder()) {
+      if (dtos.contains(dto)) {
+        dto.compile();
+      }
+    }
+  }
+
   private Map<String, String> getConfig() {
     return YamlUtils.ensureMap(root.get(configKey));
   }
 
+  /** Builds our lookup maps, either in {@link #compile()} or on the first lookup. */
+  private void index() {
+    final Map<String, DtoConfig> byName = new HashMap<String, DtoConfig>();
+    final Map<String, List<DtoConfig>> byDomainType = new HashMap<String, List<DtoConfig>>();
+    for (final DtoConfig dto : getDtos()) {
+      // if a simple name and a dto type ever collide, the first dto wins
+      putIfAbsent(byName, dto.getSimpleName(), dto);
+      putIfAbsent(byName, dto.getDtoType(), dto);
+    }
+    dtosByName = byName;
+    for (final DtoConfig dto : getDtos()) {
+      if (dto.getDomainType() == null) {
+        continue;
+      }
+      List<DtoConfig> matches = byDomainType.get(dto.getDomainType());
+      if (matches == null) {
+        matches = list();
+        byDomainType.put(dto.getDomainType(), matches);
+      }
+      matches.add(dto);
+    }
+    dtosByDomainType = byDomainType;
+    final Map<String, ValueTypeConfig> valueTypesByDomain = new HashMap<String, ValueTypeConfig>();
+    for (final ValueTypeConfig vtc : getValueTypes()) {
+      putIfAbsent(valueTypesByDomain, vtc.domainType, vtc);
+    }
+    valueTypesByDomainType = valueTypesByDomain;
+  }
+
+  private static <K, V> void putIfAbsent(final Map<K, V> map, final K key, final V value) {
+    if (!map.containsKey(key)) {
+      map.put(key, value);
+    }
+  }
+
 }
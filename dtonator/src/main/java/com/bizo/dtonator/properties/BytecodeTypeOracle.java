@@ -0,0 +1,570 @@
+package com.bizo.dtonator.properties;
+
+import static joist.util.Copy.list;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.collections4.MultiValuedMap;
+import org.apache.commons.collections4.multimap.ArrayListValuedHashMap;
+
+import com.bizo.dtonator.properties.ClassFile.Member;
+
+/**
+ * Finds metadata by reading {@code .class} files from the classpath, so domain classes (and whatever their static
+ * initializers pull in, e.g. ORMs or logging) are never loaded.
+ *
+ * Properties are found the same way {@code java.beans.Introspector} does, and described the same way as
+ * {@link ReflectionTypeOracle}. Classes whose properties need type variables resolved (e.g. {@code T getValue()} on a
+ * generic base class), or that are generic themselves, are handed to the {@code fallback} oracle instead.
+ */
+public class BytecodeTypeOracle implements TypeOracle {
+
+  /** Stands in for missing classes, which {@link ConcurrentHashMap} can't hold. */
+  private static final Object MISSING = new Object();
+  private final ClassLoader loader;
+  private final TypeOracle fallback;
+  private final ConcurrentMap<String, Object> classFiles = new ConcurrentHashMap<String, Object>();
+
+  public BytecodeTypeOracle() {
+    this(BytecodeTypeOracle.class.getClassLoader(), new ReflectionTypeOracle());
+  }
+
+  public BytecodeTypeOracle(final ClassLoader loader, final TypeOracle fallback) {
+    this.loader = loader;
+    this.fallback = fallback;
+  }
+
+  @Override
+  public List<Prop> getProperties(final String className, final boolean excludeInherited) {
+    return getProperties(className, excludeInherited, null);
+  }
+
+  @Override
+  public List<Prop> getProperties(final String className, final boolean excludeInherited, final List<String> excludedAnnotations) {
+    final ClassFile cf = getClassFile(className);
+    if (cf == null) {
+      return list();
+    }
+    if (isGeneric(cf)) {
+      return fallback.getProperties(className, excludeInherited, excludedAnnotations);
+    }
+    if (excludedAnnotations != null) {
+      for (final String annotation : excludedAnnotations) {
+        if (getClassFile(annotation) == null) {
+          return list(); // the reflection oracle fails to load the annotation, and finds nothing
+        }
+      }
+    }
+    final List<ClassFile> superClasses = getSuperClasses(cf);
+    if (superClasses == null) {
+      return fallback.getProperties(className, excludeInherited, excludedAnnotations);
+    }
+
+    final List<Prop> ps = list();
+    for (final Accessors a : findAccessors(superClasses).values()) {
+      if (a.name.equals("class") || a.name.equals("declaringClass")) {
+        continue;
+      }
+      final Method read = a.getRead();
+      final Method write = a.getWrite(read);
+      if (read == null && write == null) {
+        continue;
+      }
+      if (excludedAnnotations != null && hasAnnotation(cf, superClasses, a.name, read, excludedAnnotations)) {
+        continue;
+      }
+      String type;
+      if (read == null) {
+        type = erasure(parameterDescriptor(write.member.descriptor));
+      } else {
+        type = erasure(returnDescriptor(read.member.descriptor));
+        final Signature generic = read.member.signature == null ? null : Signature.parse(returnSignature(read.member.signature));
+        if (generic != null && generic.hasTypeVariables()) {
+          return fallback.getProperties(className, excludeInherited, excludedAnnotations);
+        }
+        if (generic != null && generic.isGeneric() && (read.owner == cf || generic.isParameterized())) {
+          type = generic.getTypeName();
+        }
+      }
+      ps.add(new Prop( //
+        a.name,
+        type,
+        write == null,
+        read == null ? null : read.member.name,
+        write == null ? null : write.member.name,
+        excludeInherited && read != null && !className.equals(read.owner.name),
+        read != null && read.member.is(ClassFile.ACC_ABSTRACT),
+        new ArrayListValuedHashMap<String, GenericParts>()));
+    }
+    return ps;
+  }
+
+  @Override
+  public MultiValuedMap<String, GenericPartsDto> getClassTypes(final String className) {
+    final ClassFile cf = getClassFile(className);
+    if (cf == null) {
+      return null;
+    } else if (isGeneric(cf)) {
+      return fallback.getClassTypes(className);
+    }
+    return GenericParser.convertGenericMap(new ArrayListValuedHashMap<String, GenericParts>());
+  }
+
+  @Override
+  public String getClassTypesString(final String className) {
+    final MultiValuedMap<String, GenericPartsDto> partsMap = getClassTypes(className);
+    return partsMap == null ? "" : GenericParser.typeToMapString(partsMap);
+  }
+
+  @Override
+  public boolean isEnum(final String className) {
+    final ClassFile cf = getClassFile(className);
+    return cf != null && cf.is(ClassFile.ACC_ENUM) && "java.lang.Enum".equals(cf.superName);
+  }
+
+  @Override
+  public boolean isAbstract(final String className) {
+    final ClassFile cf = getClassFile(className);
+    return cf != null && cf.is(ClassFile.ACC_ABSTRACT);
+  }
+
+  @Override
+  public List<String> getEnumValues(final String className) {
+    final List<String> values = list();
+    final ClassFile cf = getClassFile(className);
+    if (cf != null) {
+      for (final Member field : cf.fields) {
+        if (field.is(ClassFile.ACC_ENUM)) {
+          values.add(field.name);
+        }
+      }
+    }
+    return values;
+  }
+
+  /** @return the parsed {@code .class} file for {@code className}, or {@code null} if it's not on the classpath */
+  ClassFile getClassFile(final String className) {
+    if (className == null) {
+      return null;
+    }
+    final Object cached = classFiles.get(className);
+    if (cached != null) {
+      return cached == MISSING ? null : (ClassFile) cached;
+    }
+    final ClassFile cf = readClassFile(className);
+    final Object existing = classFiles.putIfAbsent(className, cf == null ? MISSING : cf);
+    return existing == null ? cf : (existing == MISSING ? null : (ClassFile) existing);
+  }
+
+  private ClassFile readClassFile(final String className) {
+    final InputStream in = loader.getResourceAsStream(className.replace('.', '/') + ".class");
+    if (in == null) {
+      return null;
+    }
+    try {
+      try {
+        return ClassFile.read(in);
+      } finally {
+        in.close();
+      }
+    } catch (final IOException io) {
+      throw new RuntimeException("Could not read " + className, io);
+    }
+  }
+
+  /** @return {@code cf} and its superclasses, excluding {@code Object}, or {@code null} if one is missing */
+  private List<ClassFile> getSuperClasses(final ClassFile cf) {
+    final List<ClassFile> classes = list();
+    for (ClassFile current = cf; !current.name.equals("java.lang.Object");) {
+      classes.add(current);
+      if (current.superName == null) {
+        break;
+      }
+      current = getClassFile(current.superName);
+      if (current == null) {
+        return null;
+      }
+    }
+    return classes;
+  }
+
+  /** @return the bean accessors, by property name, considering subclass methods before the ones they override */
+  private static Map<String, Accessors> findAccessors(final List<ClassFile> superClasses) {
+    final Map<String, Method> methods = new LinkedHashMap<String, Method>();
+    for (final ClassFile cf : superClasses) {
+      for (final Member m : cf.methods) {
+        if (!m.is(ClassFile.ACC_PUBLIC) || m.is(ClassFile.ACC_STATIC) || m.is(ClassFile.ACC_BRIDGE) || m.is(ClassFile.ACC_SYNTHETIC)) {
+          continue;
+        }
+        final String key = m.name + m.descriptor.substring(0, m.descriptor.indexOf(')') + 1);
+        if (!methods.containsKey(key)) {
+          methods.put(key, new Method(cf, m));
+        }
+      }
+    }
+    // the Introspector returns properties sorted by name
+    final Map<String, Accessors> accessors = new TreeMap<String, Accessors>();
+    for (final Method method : methods.values()) {
+      final String name = method.member.name;
+      final int parameters = countParameters(method.member.descriptor);
+      final String returns = returnDescriptor(method.member.descriptor);
+      if (parameters == 0 && name.startsWith("get") && name.length() > 3 && !returns.equals("V")) {
+        get(accessors, name.substring(3)).getters.add(method);
+      } else if (parameters == 0 && name.startsWith("is") && name.length() > 2 && returns.equals("Z")) {
+        get(accessors, name.substring(2)).isGetter = method;
+      } else if (parameters == 1 && name.startsWith("set") && name.length() > 3 && returns.equals("V")) {
+        get(accessors, name.substring(3)).setters.add(method);
+      }
+    }
+    return accessors;
+  }
+
+  private static Accessors get(final Map<String, Accessors> accessors, final String suffix) {
+    final String name = decapitalize(suffix);
+    Accessors a = accessors.get(name);
+    if (a == null) {
+      a = new Accessors(name);
+      accessors.put(name, a);
+    }
+    return a;
+  }
+
+  /** Matches {@code ReflectionTypeOracle.hasAnnotation}: annotated fields, or annotated getters in any supertype. */
+  private boolean hasAnnotation(final ClassFile cf, final List<ClassFile> superClasses, final String name, final Method read, final List<String> annotations) {
+    for (final ClassFile superClass : superClasses) {
+      for (final Member field : superClass.fields) {
+        if (field.name.equals(name) && containsAny(field.annotations, annotations)) {
+          return true;
+        }
+      }
+    }
+    if (read == null) {
+      return false;
+    }
+    // supertypes, including interfaces, as MethodUtils.getMethodsListWithAnnotation searches them
+    final Set<String> seen = new HashSet<String>();
+    final Deque<String> toProbe = new ArrayDeque<String>();
+    toProbe.add(cf.name);
+    while (!toProbe.isEmpty()) {
+      final ClassFile current = getClassFile(toProbe.removeFirst());
+      if (current == null || !seen.add(current.name)) {
+        continue;
+      }
+      for (final Member method : current.methods) {
+        if (method.name.equals(read.member.name) && containsAny(method.annotations, annotations)) {
+          return true;
+        }
+      }
+      if (current.superName != null) {
+        toProbe.add(current.superName);
+      }
+      toProbe.addAll(current.interfaces);
+    }
+    return false;
+  }
+
+  private static boolean containsAny(final Set<String> present, final List<String> wanted) {
+    for (final String annotation : wanted) {
+      if (present.contains(annotation)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean isGeneric(final ClassFile cf) {
+    return cf.signature != null && cf.signature.startsWith("<");
+  }
+
+  /** Same as {@code java.beans.Introspector.decapitalize}. */
+  private static String decapitalize(final String name) {
+    if (name.length() > 1 && Character.isUpperCase(name.charAt(1)) && Character.isUpperCase(name.charAt(0))) {
+      return name;
+    }
+    return Character.toLowerCase(name.charAt(0)) + name.substring(1);
+  }
+
+  private static int countParameters(final String descriptor) {
+    int count = 0;
+    for (int i = 1; descriptor.charAt(i) != ')'; i++) {
+      while (descriptor.charAt(i) == '[') {
+        i++;
+      }
+      if (descriptor.charAt(i) == 'L') {
+        i = descriptor.indexOf(';', i);
+      }
+      count++;
+    }
+    return count;
+  }
+
+  private static String returnDescriptor(final String descriptor) {
+    return descriptor.substring(descriptor.indexOf(')') + 1);
+  }
+
+  private static String parameterDescriptor(final String descriptor) {
+    return descriptor.substring(1, descriptor.indexOf(')'));
+  }
+
+  /** @return the return type of a method signature, skipping its type parameters, parameters and exceptions */
+  private static String returnSignature(final String signature) {
+    final String returns = signature.substring(signature.indexOf(')') + 1);
+    final int exceptions = returns.indexOf('^');
+    return exceptions == -1 ? returns : returns.substring(0, exceptions);
+  }
+
+  /** @return {@code descriptor} as {@link Class#getName()} would, e.g. {@code int} or {@code [Ljava.lang.String;} */
+  static String erasure(final String descriptor) {
+    switch (descriptor.charAt(0)) {
+      case 'L':
+        return descriptor.substring(1, descriptor.length() - 1).replace('/', '.');
+      case '[':
+        return descriptor.replace('/', '.');
+      default:
+        return Signature.primitive(descriptor.charAt(0));
+    }
+  }
+
+  /** A public method and the class that declares it. */
+  private static class Method {
+    private final ClassFile owner;
+    private final Member member;
+
+    private Method(final ClassFile owner, final Member member) {
+      this.owner = owner;
+      this.member = member;
+    }
+  }
+
+  /** The possible getters/setters for a property. */
+  private static class Accessors {
+    private final String name;
+    private final List<Method> getters = list();
+    private final List<Method> setters = list();
+    private Method isGetter;
+
+    private Accessors(final String name) {
+      this.name = name;
+    }
+
+    private Method getRead() {
+      // isFoo wins over getFoo for booleans
+      if (isGetter != null) {
+        return isGetter;
+      }
+      return getters.isEmpty() ? null : getters.get(0);
+    }
+
+    private Method getWrite(final Method read) {
+      for (final Method setter : setters) {
+        if (read == null || parameterDescriptor(setter.member.descriptor).equals(returnDescriptor(read.member.descriptor))) {
+          return setter;
+        }
+      }
+      return null;
+    }
+  }
+
+  /** A parsed generic type signature, rendered the same as {@link java.lang.reflect.Type#getTypeName()}. */
+  static class Signature {
+    private final char kind; // P(rimitive), L (class), T (type variable), [ (array), or * + - (wildcards)
+    private final String name;
+    private final List<Signature> args;
+    private final Signature owner;
+    private final Signature component;
+
+    private Signature(final char kind, final String name, final List<Signature> args, final Signature owner, final Signature component) {
+      this.kind = kind;
+      this.name = name;
+      this.args = args;
+      this.owner = owner;
+      this.component = component;
+    }
+
+    static Signature parse(final String signature) {
+      return new SignatureParser(signature).parseType();
+    }
+
+    /** @return whether reflection would return a {@code ParameterizedType}, {@code TypeVariable} or {@code GenericArrayType} */
+    boolean isGeneric() {
+      switch (kind) {
+        case 'L':
+          return isParameterized();
+        case '[':
+          return component.isGeneric();
+        case 'T':
+          return true;
+        default:
+          return false;
+      }
+    }
+
+    boolean isParameterized() {
+      return kind == 'L' && (args != null || (owner != null && owner.isParameterized()));
+    }
+
+    boolean hasTypeVariables() {
+      if (kind == 'T') {
+        return true;
+      }
+      if (component != null && component.hasTypeVariables()) {
+        return true;
+      }
+      if (owner != null && owner.hasTypeVariables()) {
+        return true;
+      }
+      if (args != null) {
+        for (final Signature arg : args) {
+          if (arg.hasTypeVariables()) {
+            return true;
+          }
+        }
+      }
+      return false;
+    }
+
+    String getTypeName() {
+      switch (kind) {
+        case '[':
+          return component.getTypeName() + "[]";
+        case '*':
+          return "?";
+        case '+':
+          return component.kind == 'L' && component.args == null && component.name.equals("java.lang.Object")
+            ? "?"
+            : "? extends " + component.getTypeName();
+        case '-':
+          return "? super " + component.getTypeName();
+        case 'L':
+          final StringBuilder sb = new StringBuilder();
+          if (owner != null && owner.isParameterized()) {
+            sb.append(owner.getTypeName()).append("$").append(name.substring(owner.name.length() + 1));
+          } else {
+            sb.append(name);
+          }
+          if (args != null && !args.isEmpty()) {
+            sb.append("<");
+            for (int i = 0; i < args.size(); i++) {
+              sb.append(i == 0 ? "" : ", ").append(args.get(i).getTypeName());
+            }
+            sb.append(">");
+          }
+          return sb.toString();
+        default:
+          return name;
+      }
+    }
+
+    @Override
+    public String toString() {
+      return getTypeName();
+    }
+
+    private static String primitive(final char c) {
+      switch (c) {
+        case 'B':
+          return "byte";
+        case 'C':
+          return "char";
+        case 'D':
+          return "double";
+        case 'F':
+          return "float";
+        case 'I':
+          return "int";
+        case 'J':
+          return "long";
+        case 'S':
+          return "short";
+        case 'Z':
+          return "boolean";
+        case 'V':
+          return "void";
+        default:
+          throw new IllegalArgumentException("Unknown primitive " + c);
+      }
+    }
+  }
+
+  private static class SignatureParser {
+    private final String s;
+    private int pos;
+
+    private SignatureParser(final String s) {
+      this.s = s;
+    }
+
+    private Signature parseType() {
+      final char c = s.charAt(pos);
+      switch (c) {
+        case 'L':
+          return parseClass();
+        case 'T':
+          final int end = s.indexOf(';', pos);
+          final String name = s.substring(pos + 1, end);
+          pos = end + 1;
+          return new Signature('T', name, null, null, null);
+        case '[':
+          pos++;
+          return new Signature('[', null, null, null, parseType());
+        default:
+          pos++;
+          return new Signature('P', Signature.primitive(c), null, null, null);
+      }
+    }
+
+    private Signature parseClass() {
+      pos++; // L
+      Signature current = new Signature('L', readName().replace('/', '.'), parseArgs(), null, null);
+      while (s.charAt(pos) == '.') {
+        pos++;
+        final String inner = current.name + "$" + readName();
+        current = new Signature('L', inner, parseArgs(), current, null);
+      }
+      pos++; // ;
+      return current;
+    }
+
+    private String readName() {
+      final int start = pos;
+      while ("<.;".indexOf(s.charAt(pos)) == -1) {
+        pos++;
+      }
+      return s.substring(start, pos);
+    }
+
+    private List<Signature> parseArgs() {
+      if (s.charAt(pos) != '<') {
+        return null;
+      }
+      pos++;
+      final List<Signature> args = list();
+      while (s.charAt(pos) != '>') {
+        final char c = s.charAt(pos);
+        if (c == '*') {
+          pos++;
+          args.add(new Signature('*', null, null, null, null));
+        } else if (c == '+' || c == '-') {
+          pos++;
+          args.add(new Signature(c, null, null, null, parseType()));
+        } else {
+          args.add(parseType());
+        }
+      }
+      pos++;
+      return args;
+    }
+  }
+
+}
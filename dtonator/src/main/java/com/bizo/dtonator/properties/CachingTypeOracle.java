@@ -0,0 +1,208 @@
+package com.bizo.dtonator.properties;
+
+import static joist.util.Copy.list;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.collections4.MultiValuedMap;
+
+/**
+ * Memoizes another {@link TypeOracle}, as the config asks the same questions (e.g. "is this an entity?") over and over.
+ *
+ * Properties are keyed by class name, {@code excludeInherited} and the set of excluded annotations. Results are
+ * assumed to not change for the life of the oracle, i.e. a single generation run, unless they're {@link #invalidate}d,
+ * e.g. by {@code Watcher} when classes are recompiled.
+ */
+public class CachingTypeOracle implements TypeOracle {
+
+  /** Stands in for {@code null} results, which {@link ConcurrentHashMap} can't hold. */
+  private static final Object NULL = new Object();
+  private volatile TypeOracle delegate;
+  private final ConcurrentMap<String, Object> properties = new ConcurrentHashMap<String, Object>();
+  private final ConcurrentMap<String, Object> enums = new ConcurrentHashMap<String, Object>();
+  private final ConcurrentMap<String, Object> abstracts = new ConcurrentHashMap<String, Object>();
+  private final ConcurrentMap<String, Object> enumValues = new ConcurrentHashMap<String, Object>();
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong missNanos = new AtomicLong();
+
+  public CachingTypeOracle(final TypeOracle delegate) {
+    this.delegate = delegate;
+  }
+
+  @Override
+  public List<Prop> getProperties(final String className, final boolean excludeInherited) {
+    return getProperties(className, excludeInherited, null);
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public List<Prop> getProperties(final String className, final boolean excludeInherited, final List<String> excludedAnnotations) {
+    final String key = className + "|" + excludeInherited + "|" + annotationKey(excludedAnnotations);
+    final Object cached = properties.get(key);
+    if (cached != null) {
+      hits.incrementAndGet();
+      return (List<Prop>) unwrap(cached);
+    }
+    misses.incrementAndGet();
+    final long start = System.nanoTime();
+    final List<Prop> props = delegate.getProperties(className, excludeInherited, excludedAnnotations);
+    missNanos.addAndGet(System.nanoTime() - start);
+    return (List<Prop>) unwrap(cache(properties, key, props));
+  }
+
+  @Override
+  public boolean isEnum(final String className) {
+    final String key = String.valueOf(className);
+    final Object cached = enums.get(key);
+    if (cached != null) {
+      hits.incrementAndGet();
+      return (Boolean) cached;
+    }
+    misses.incrementAndGet();
+    final long start = System.nanoTime();
+    final boolean isEnum = delegate.isEnum(className);
+    missNanos.addAndGet(System.nanoTime() - start);
+    return (Boolean) cache(enums, key, isEnum);
+  }
+
+  @Override
+  public boolean isAbstract(final String className) {
+    final String key = String.valueOf(className);
+    final Object cached = abstracts.get(key);
+    if (cached != null) {
+      hits.incrementAndGet();
+      return (Boolean) cached;
+    }
+    misses.incrementAndGet();
+    final long start = System.nanoTime();
+    final boolean isAbstract = delegate.isAbstract(className);
+    missNanos.addAndGet(System.nanoTime() - start);
+    return (Boolean) cache(abstracts, key, isAbstract);
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public List<String> getEnumValues(final String className) {
+    final String key = String.valueOf(className);
+    final Object cached = enumValues.get(key);
+    if (cached != null) {
+      hits.incrementAndGet();
+      return (List<String>) unwrap(cached);
+    }
+    misses.incrementAndGet();
+    final long start = System.nanoTime();
+    final List<String> values = delegate.getEnumValues(className);
+    missNanos.addAndGet(System.nanoTime() - start);
+    return (List<String>) unwrap(cache(enumValues, key, values));
+  }
+
+  /** Not cached, as {@code DtoConfig} rewrites the returned parts in place. */
+  @Override
+  public MultiValuedMap<String, GenericPartsDto> getClassTypes(final String className) {
+    return delegate.getClassTypes(className);
+  }
+
+  /** Not cached, as it's only called once per DTO. */
+  @Override
+  public String getClassTypesString(final String className) {
+    return delegate.getClassTypesString(className);
+  }
+
+  /**
+   * Runs {@code lookups} (which are expected to call back into this oracle) on a thread pool, so that the
+   * single-threaded generation only sees cache hits.
+   *
+   * Failures are ignored, as nothing gets cached for them and generation will hit (and report) them again.
+   */
+  public <T> void prefetch(final Collection<? extends Callable<T>> lookups) {
+    final ExecutorService pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+    try {
+      pool.invokeAll(lookups);
+    } catch (final InterruptedException ie) {
+      Thread.currentThread().interrupt();
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  /** Switches to a new delegate, e.g. one with a new class loader, keeping what has been cached so far. */
+  public void setDelegate(final TypeOracle delegate) {
+    this.delegate = delegate;
+  }
+
+  /** Forgets everything cached about {@code classNames}, e.g. because they've been recompiled. */
+  public void invalidate(final Collection<String> classNames) {
+    for (final ConcurrentMap<String, Object> map : list(properties, enums, abstracts, enumValues)) {
+      for (final Iterator<String> i = map.keySet().iterator(); i.hasNext();) {
+        if (classNames.contains(toClassName(i.next()))) {
+          i.remove();
+        }
+      }
+    }
+  }
+
+  /** @return the names of the classes with cached results */
+  public Set<String> getClassNames() {
+    final Set<String> classNames = new TreeSet<String>();
+    for (final ConcurrentMap<String, Object> map : list(properties, enums, abstracts, enumValues)) {
+      for (final String key : map.keySet()) {
+        classNames.add(toClassName(key));
+      }
+    }
+    return classNames;
+  }
+
+  public long getHits() {
+    return hits.get();
+  }
+
+  public long getMisses() {
+    return misses.get();
+  }
+
+  /** @return the time spent in the delegate, summed across threads */
+  public long getMissNanos() {
+    return missNanos.get();
+  }
+
+  @Override
+  public String toString() {
+    return "TypeOracle cache: " + getHits() + " hits, " + getMisses() + " misses";
+  }
+
+  /** @return the winning value for {@code key}, in case another thread computed it first */
+  private static Object cache(final ConcurrentMap<String, Object> map, final String key, final Object value) {
+    final Object existing = map.putIfAbsent(key, value == null ? NULL : value);
+    return existing != null ? existing : (value == null ? NULL : value);
+  }
+
+  /** @return the class name from a cache key, which for properties is followed by the other arguments */
+  private static String toClassName(final String key) {
+    final int i = key.indexOf('|');
+    return i == -1 ? key : key.substring(0, i);
+  }
+
+  private static Object unwrap(final Object value) {
+    return value == NULL ? null : value;
+  }
+
+  /** @return the annotations as a sorted set, so the same annotations in different orders share an entry */
+  private static String annotationKey(final List<String> excludedAnnotations) {
+    if (excludedAnnotations == null) {
+      return "[]";
+    }
+    return new TreeSet<String>(excludedAnnotations).toString();
+  }
+
+}
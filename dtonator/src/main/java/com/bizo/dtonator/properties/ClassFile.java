@@ -0,0 +1,236 @@
+package com.bizo.dtonator.properties;
+
+import static joist.util.Copy.list;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The parts of a {@code .class} file that {@link BytecodeTypeOracle} needs, read without loading the class.
+ *
+ * Names are in binary form, e.g. {@code com.foo.Bar$Inner}, as returned by {@link Class#getName()}.
+ */
+class ClassFile {
+
+  static final int ACC_PUBLIC = 0x0001;
+  static final int ACC_STATIC = 0x0008;
+  static final int ACC_BRIDGE = 0x0040;
+  static final int ACC_INTERFACE = 0x0200;
+  static final int ACC_ABSTRACT = 0x0400;
+  static final int ACC_SYNTHETIC = 0x1000;
+  static final int ACC_ENUM = 0x4000;
+
+  final int access;
+  final String name;
+  final String superName;
+  final List<String> interfaces;
+  /** The generic signature, or {@code null} if the class isn't generic. */
+  final String signature;
+  final List<Member> fields;
+  final List<Member> methods;
+
+  /** A field or method. */
+  static class Member {
+    final int access;
+    final String name;
+    final String descriptor;
+    final String signature;
+    /** The runtime-visible annotations, as class names. */
+    final Set<String> annotations;
+
+    private Member(final int access, final String name, final String descriptor, final String signature, final Set<String> annotations) {
+      this.access = access;
+      this.name = name;
+      this.descriptor = descriptor;
+      this.signature = signature;
+      this.annotations = annotations;
+    }
+
+    boolean is(final int flag) {
+      return (access & flag) != 0;
+    }
+
+    @Override
+    public String toString() {
+      return name + descriptor;
+    }
+  }
+
+  static ClassFile read(final InputStream stream) throws IOException {
+    return new Parser(new DataInputStream(stream)).parse();
+  }
+
+  private ClassFile(
+    final int access,
+    final String name,
+    final String superName,
+    final List<String> interfaces,
+    final String signature,
+    final List<Member> fields,
+    final List<Member> methods) {
+    this.access = access;
+    this.name = name;
+    this.superName = superName;
+    this.interfaces = Collections.unmodifiableList(interfaces);
+    this.signature = signature;
+    this.fields = Collections.unmodifiableList(fields);
+    this.methods = Collections.unmodifiableList(methods);
+  }
+
+  boolean is(final int flag) {
+    return (access & flag) != 0;
+  }
+
+  @Override
+  public String toString() {
+    return name;
+  }
+
+  private static class Parser {
+    private final DataInputStream in;
+    private Object[] pool;
+
+    private Parser(final DataInputStream in) {
+      this.in = in;
+    }
+
+    private ClassFile parse() throws IOException {
+      if (in.readInt() != 0xCAFEBABE) {
+        throw new IOException("Not a class file");
+      }
+      in.readUnsignedShort(); // minor
+      in.readUnsignedShort(); // major
+      readConstantPool();
+      final int access = in.readUnsignedShort();
+      final String name = className(in.readUnsignedShort());
+      final int superIndex = in.readUnsignedShort();
+      final String superName = superIndex == 0 ? null : className(superIndex);
+      final List<String> interfaces = list();
+      for (int i = in.readUnsignedShort(); i > 0; i--) {
+        interfaces.add(className(in.readUnsignedShort()));
+      }
+      final List<Member> fields = readMembers();
+      final List<Member> methods = readMembers();
+      final Member attributes = readAttributes(access, name, null);
+      return new ClassFile(access, name, superName, interfaces, attributes.signature, fields, methods);
+    }
+
+    private void readConstantPool() throws IOException {
+      final int count = in.readUnsignedShort();
+      pool = new Object[count];
+      for (int i = 1; i < count; i++) {
+        final int tag = in.readUnsignedByte();
+        switch (tag) {
+          case 1: // Utf8
+            pool[i] = in.readUTF();
+            break;
+          case 7: // Class, store the name index and resolve lazily
+            pool[i] = Integer.valueOf(in.readUnsignedShort());
+            break;
+          case 8: // String
+          case 16: // MethodType
+          case 19: // Module
+          case 20: // Package
+            in.readUnsignedShort();
+            break;
+          case 15: // MethodHandle
+            in.readUnsignedByte();
+            in.readUnsignedShort();
+            break;
+          case 3: // Integer
+          case 4: // Float
+          case 9: // Fieldref
+          case 10: // Methodref
+          case 11: // InterfaceMethodref
+          case 12: // NameAndType
+          case 17: // Dynamic
+          case 18: // InvokeDynamic
+            in.readInt();
+            break;
+          case 5: // Long
+          case 6: // Double
+            in.readLong();
+            i++; // takes two slots
+            break;
+          default:
+            throw new IOException("Unknown constant pool tag " + tag);
+        }
+      }
+    }
+
+    private List<Member> readMembers() throws IOException {
+      final List<Member> members = list();
+      for (int i = in.readUnsignedShort(); i > 0; i--) {
+        final int access = in.readUnsignedShort();
+        final String name = utf8(in.readUnsignedShort());
+        final String descriptor = utf8(in.readUnsignedShort());
+        members.add(readAttributes(access, name, descriptor));
+      }
+      return members;
+    }
+
+    private Member readAttributes(final int access, final String name, final String descriptor) throws IOException {
+      String signature = null;
+      final Set<String> annotations = new HashSet<String>();
+      for (int i = in.readUnsignedShort(); i > 0; i--) {
+        final String attribute = utf8(in.readUnsignedShort());
+        final int length = in.readInt();
+        if ("Signature".equals(attribute)) {
+          signature = utf8(in.readUnsignedShort());
+        } else if ("RuntimeVisibleAnnotations".equals(attribute)) {
+          for (int j = in.readUnsignedShort(); j > 0; j--) {
+            annotations.add(readAnnotation());
+          }
+        } else {
+          in.readFully(new byte[length]);
+        }
+      }
+      return new Member(access, name, descriptor, signature, Collections.unmodifiableSet(annotations));
+    }
+
+    /** @return the annotation's type, skipping over its values */
+    private String readAnnotation() throws IOException {
+      final String type = utf8(in.readUnsignedShort());
+      for (int i = in.readUnsignedShort(); i > 0; i--) {
+        in.readUnsignedShort(); // element name
+        skipElementValue();
+      }
+      return type.substring(1, type.length() - 1).replace('/', '.');
+    }
+
+    private void skipElementValue() throws IOException {
+      final char tag = (char) in.readUnsignedByte();
+      switch (tag) {
+        case 'e':
+          in.readUnsignedShort();
+          in.readUnsignedShort();
+          break;
+        case '@':
+          readAnnotation();
+          break;
+        case '[':
+          for (int i = in.readUnsignedShort(); i > 0; i--) {
+            skipElementValue();
+          }
+          break;
+        default:
+          // primitives, strings and classes are all a single constant pool index
+          in.readUnsignedShort();
+      }
+    }
+
+    private String utf8(final int index) {
+      return (String) pool[index];
+    }
+
+    private String className(final int index) {
+      return utf8((Integer) pool[index]).replace('/', '.');
+    }
+  }
+
+}
@@ -0,0 +1,404 @@
+package com.bizo.dtonator.properties;
+
+import static joist.util.Copy.list;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.TypeParameterElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.ExecutableType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.type.TypeVariable;
+import javax.lang.model.type.WildcardType;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+
+import org.apache.commons.collections4.MultiValuedMap;
+import org.apache.commons.collections4.multimap.ArrayListValuedHashMap;
+
+/**
+ * Finds metadata with {@code javax.lang.model}, for running inside javac as an annotation processor, where the domain
+ * classes are being compiled and so can't be loaded.
+ *
+ * Properties are described the same way as {@link ReflectionTypeOracle}, with type variables resolved by javac
+ * instead of {@code GenericsResolver}. The per-property {@link GenericParts} are built from {@code java.lang.reflect}
+ * types, which don't exist here, so they are left empty.
+ */
+public class ElementsTypeOracle implements TypeOracle {
+
+  private final Elements elements;
+  private final Types types;
+
+  public ElementsTypeOracle(final ProcessingEnvironment env) {
+    this(env.getElementUtils(), env.getTypeUtils());
+  }
+
+  public ElementsTypeOracle(final Elements elements, final Types types) {
+    this.elements = elements;
+    this.types = types;
+  }
+
+  @Override
+  public List<Prop> getProperties(final String className, final boolean excludeInherited) {
+    return getProperties(className, excludeInherited, null);
+  }
+
+  @Override
+  public List<Prop> getProperties(final String className, final boolean excludeInherited, final List<String> excludedAnnotations) {
+    final TypeElement te = getTypeElement(className);
+    if (te == null) {
+      return list();
+    }
+    if (excludedAnnotations != null) {
+      for (final String annotation : excludedAnnotations) {
+        if (getTypeElement(annotation) == null) {
+          return list(); // the reflection oracle fails to load the annotation, and finds nothing
+        }
+      }
+    }
+    final DeclaredType type = (DeclaredType) te.asType();
+    final List<Prop> ps = list();
+    for (final Accessors a : findAccessors(te).values()) {
+      if (a.name.equals("class") || a.name.equals("declaringClass")) {
+        continue;
+      }
+      final ExecutableElement read = a.getRead();
+      final ExecutableElement write = a.getWrite(type, read);
+      if (read == null && write == null) {
+        continue;
+      }
+      if (excludedAnnotations != null && hasAnnotation(te, a.name, read, excludedAnnotations)) {
+        continue;
+      }
+      final String propertyType;
+      if (read == null) {
+        propertyType = className(types.erasure(resolve(type, write).getParameterTypes().get(0)));
+      } else {
+        final TypeMirror declared = read.getReturnType();
+        final TypeMirror resolved = resolve(type, read).getReturnType();
+        final boolean isDeclaredHere = read.getEnclosingElement().equals(te);
+        if (isParameterized(declared) && !isDeclaredHere) {
+          propertyType = typeName(resolved);
+        } else if (isDeclaredHere && isGeneric(declared)) {
+          propertyType = typeName(declared);
+        } else {
+          propertyType = className(types.erasure(resolved));
+        }
+      }
+      ps.add(new Prop( //
+        a.name,
+        propertyType,
+        write == null,
+        read == null ? null : read.getSimpleName().toString(),
+        write == null ? null : write.getSimpleName().toString(),
+        excludeInherited && read != null && !className.equals(binaryName(read.getEnclosingElement())),
+        read != null && read.getModifiers().contains(Modifier.ABSTRACT),
+        new ArrayListValuedHashMap<String, GenericParts>()));
+    }
+    return ps;
+  }
+
+  @Override
+  public MultiValuedMap<String, GenericPartsDto> getClassTypes(final String className) {
+    final TypeElement te = getTypeElement(className);
+    if (te == null) {
+      return null;
+    }
+    final MultiValuedMap<String, GenericPartsDto> parts = new ArrayListValuedHashMap<String, GenericPartsDto>();
+    for (final TypeParameterElement p : te.getTypeParameters()) {
+      parts.put("default", new GenericPartsDto(p.getSimpleName().toString(), "extends", typeName(p.getBounds().get(0))));
+    }
+    return parts;
+  }
+
+  @Override
+  public String getClassTypesString(final String className) {
+    final MultiValuedMap<String, GenericPartsDto> partsMap = getClassTypes(className);
+    return partsMap == null ? "" : GenericParser.typeToMapString(partsMap);
+  }
+
+  @Override
+  public boolean isEnum(final String className) {
+    final TypeElement te = getTypeElement(className);
+    return te != null && te.getKind() == ElementKind.ENUM;
+  }
+
+  @Override
+  public boolean isAbstract(final String className) {
+    final TypeElement te = getTypeElement(className);
+    return te != null && te.getModifiers().contains(Modifier.ABSTRACT);
+  }
+
+  @Override
+  public List<String> getEnumValues(final String className) {
+    final List<String> values = list();
+    final TypeElement te = getTypeElement(className);
+    if (te != null) {
+      for (final Element e : te.getEnclosedElements()) {
+        if (e.getKind() == ElementKind.ENUM_CONSTANT) {
+          values.add(e.getSimpleName().toString());
+        }
+      }
+    }
+    return values;
+  }
+
+  /** @return the type for the binary name {@code className}, e.g. {@code com.foo.Bar$Inner}, or {@code null} */
+  private TypeElement getTypeElement(final String className) {
+    if (className == null) {
+      return null;
+    }
+    return elements.getTypeElement(className.replace('$', '.'));
+  }
+
+  private String binaryName(final Element e) {
+    return elements.getBinaryName((TypeElement) e).toString();
+  }
+
+  /** @return {@code method} with type variables resolved, as seen from {@code type} */
+  private ExecutableType resolve(final DeclaredType type, final ExecutableElement method) {
+    return (ExecutableType) types.asMemberOf(type, method);
+  }
+
+  /** @return the bean accessors, by property name, considering subclass methods before the ones they override */
+  private Map<String, Accessors> findAccessors(final TypeElement te) {
+    final Map<String, ExecutableElement> methods = new LinkedHashMap<String, ExecutableElement>();
+    for (TypeElement current = te; current != null && !isObject(current); current = superClass(current)) {
+      for (final ExecutableElement m : ElementFilter.methodsIn(current.getEnclosedElements())) {
+        if (!m.getModifiers().contains(Modifier.PUBLIC) || m.getModifiers().contains(Modifier.STATIC)) {
+          continue;
+        }
+        final StringBuilder key = new StringBuilder(m.getSimpleName());
+        for (final VariableElement p : m.getParameters()) {
+          key.append(",").append(types.erasure(p.asType()));
+        }
+        if (!methods.containsKey(key.toString())) {
+          methods.put(key.toString(), m);
+        }
+      }
+    }
+    // the Introspector returns properties sorted by name
+    final Map<String, Accessors> accessors = new TreeMap<String, Accessors>();
+    for (final ExecutableElement m : methods.values()) {
+      final String name = m.getSimpleName().toString();
+      final int parameters = m.getParameters().size();
+      final TypeKind returns = m.getReturnType().getKind();
+      if (parameters == 0 && name.startsWith("get") && name.length() > 3 && returns != TypeKind.VOID) {
+        get(accessors, name.substring(3)).getters.add(m);
+      } else if (parameters == 0 && name.startsWith("is") && name.length() > 2 && returns == TypeKind.BOOLEAN) {
+        get(accessors, name.substring(2)).isGetter = m;
+      } else if (parameters == 1 && name.startsWith("set") && name.length() > 3 && returns == TypeKind.VOID) {
+        get(accessors, name.substring(3)).setters.add(m);
+      }
+    }
+    return accessors;
+  }
+
+  private Accessors get(final Map<String, Accessors> accessors, final String suffix) {
+    final String name = decapitalize(suffix);
+    Accessors a = accessors.get(name);
+    if (a == null) {
+      a = new Accessors(name);
+      accessors.put(name, a);
+    }
+    return a;
+  }
+
+  /** Matches {@code ReflectionTypeOracle.hasAnnotation}: annotated fields, or annotated getters in any supertype. */
+  private boolean hasAnnotation(final TypeElement te, final String name, final ExecutableElement read, final List<String> annotations) {
+    for (TypeElement current = te; current != null; current = superClass(current)) {
+      for (final VariableElement field : ElementFilter.fieldsIn(current.getEnclosedElements())) {
+        if (field.getSimpleName().contentEquals(name) && isAnnotated(field, annotations)) {
+          return true;
+        }
+      }
+    }
+    if (read == null) {
+      return false;
+    }
+    final Set<TypeElement> seen = new HashSet<TypeElement>();
+    final Deque<TypeElement> toProbe = new ArrayDeque<TypeElement>();
+    toProbe.add(te);
+    while (!toProbe.isEmpty()) {
+      final TypeElement current = toProbe.removeFirst();
+      if (!seen.add(current)) {
+        continue;
+      }
+      for (final ExecutableElement method : ElementFilter.methodsIn(current.getEnclosedElements())) {
+        if (method.getSimpleName().equals(read.getSimpleName()) && isAnnotated(method, annotations)) {
+          return true;
+        }
+      }
+      if (superClass(current) != null) {
+        toProbe.add(superClass(current));
+      }
+      for (final TypeMirror i : current.getInterfaces()) {
+        toProbe.add((TypeElement) types.asElement(i));
+      }
+    }
+    return false;
+  }
+
+  private boolean isAnnotated(final Element e, final List<String> annotations) {
+    for (final AnnotationMirror am : e.getAnnotationMirrors()) {
+      if (annotations.contains(binaryName(am.getAnnotationType().asElement()))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private TypeElement superClass(final TypeElement te) {
+    final TypeMirror superClass = te.getSuperclass();
+    return superClass.getKind() == TypeKind.DECLARED ? (TypeElement) types.asElement(superClass) : null;
+  }
+
+  private static boolean isObject(final TypeElement te) {
+    return te.getQualifiedName().contentEquals("java.lang.Object");
+  }
+
+  private static boolean isParameterized(final TypeMirror type) {
+    return type.getKind() == TypeKind.DECLARED && !((DeclaredType) type).getTypeArguments().isEmpty();
+  }
+
+  /** @return whether reflection would return a {@code ParameterizedType}, {@code TypeVariable} or {@code GenericArrayType} */
+  private static boolean isGeneric(final TypeMirror type) {
+    switch (type.getKind()) {
+      case DECLARED:
+        return isParameterized(type);
+      case ARRAY:
+        return isGeneric(((ArrayType) type).getComponentType());
+      case TYPEVAR:
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  /** @return {@code type} as {@link Class#getName()} would, e.g. {@code int} or {@code [Ljava.lang.String;} */
+  private String className(final TypeMirror type) {
+    if (type.getKind() == TypeKind.ARRAY) {
+      return "[" + descriptor(((ArrayType) type).getComponentType());
+    } else if (type.getKind() == TypeKind.DECLARED) {
+      return binaryName(((DeclaredType) type).asElement());
+    }
+    return type.toString();
+  }
+
+  private String descriptor(final TypeMirror type) {
+    switch (type.getKind()) {
+      case BOOLEAN:
+        return "Z";
+      case BYTE:
+        return "B";
+      case CHAR:
+        return "C";
+      case DOUBLE:
+        return "D";
+      case FLOAT:
+        return "F";
+      case INT:
+        return "I";
+      case LONG:
+        return "J";
+      case SHORT:
+        return "S";
+      case ARRAY:
+        return "[" + descriptor(((ArrayType) type).getComponentType());
+      default:
+        return "L" + className(types.erasure(type)) + ";";
+    }
+  }
+
+  /** @return {@code type} as {@link java.lang.reflect.Type#getTypeName()} would */
+  private String typeName(final TypeMirror type) {
+    switch (type.getKind()) {
+      case ARRAY:
+        return typeName(((ArrayType) type).getComponentType()) + "[]";
+      case TYPEVAR:
+        return ((TypeVariable) type).asElement().getSimpleName().toString();
+      case WILDCARD:
+        final WildcardType wildcard = (WildcardType) type;
+        if (wildcard.getSuperBound() != null) {
+          return "? super " + typeName(wildcard.getSuperBound());
+        } else if (wildcard.getExtendsBound() != null && !typeName(wildcard.getExtendsBound()).equals("java.lang.Object")) {
+          return "? extends " + typeName(wildcard.getExtendsBound());
+        }
+        return "?";
+      case DECLARED:
+        final StringBuilder sb = new StringBuilder(binaryName(((DeclaredType) type).asElement()));
+        final List<? extends TypeMirror> args = ((DeclaredType) type).getTypeArguments();
+        if (!args.isEmpty()) {
+          sb.append("<");
+          for (int i = 0; i < args.size(); i++) {
+            sb.append(i == 0 ? "" : ", ").append(typeName(args.get(i)));
+          }
+          sb.append(">");
+        }
+        return sb.toString();
+      default:
+        return type.toString();
+    }
+  }
+
+  /** Same as {@code java.beans.Introspector.decapitalize}. */
+  private static String decapitalize(final String name) {
+    if (name.length() > 1 && Character.isUpperCase(name.charAt(1)) && Character.isUpperCase(name.charAt(0))) {
+      return name;
+    }
+    return Character.toLowerCase(name.charAt(0)) + name.substring(1);
+  }
+
+  /** The possible getters/setters for a property. */
+  private class Accessors {
+    private final String name;
+    private final List<ExecutableElement> getters = list();
+    private final List<ExecutableElement> setters = list();
+    private ExecutableElement isGetter;
+
+    private Accessors(final String name) {
+      this.name = name;
+    }
+
+    private ExecutableElement getRead() {
+      // isFoo wins over getFoo for booleans
+      if (isGetter != null) {
+        return isGetter;
+      }
+      return getters.isEmpty() ? null : getters.get(0);
+    }
+
+    private ExecutableElement getWrite(final DeclaredType type, final ExecutableElement read) {
+      for (final ExecutableElement setter : setters) {
+        if (read == null) {
+          return setter;
+        }
+        final TypeMirror readType = types.erasure(resolve(type, read).getReturnType());
+        final TypeMirror writeType = types.erasure(resolve(type, setter).getParameterTypes().get(0));
+        if (types.isSameType(readType, writeType)) {
+          return setter;
+        }
+      }
+      return null;
+    }
+  }
+
+}
@@ -34,6 +34,18 @@ import org.apache.commons.collections4.multimap.ArrayListValuedHashMap;
 
 public class ReflectionTypeOracle implements TypeOracle {
 
+  /** The loader for domain classes, or {@code null} to use our own. */
+  private final ClassLoader loader;
+
+  public ReflectionTypeOracle() {
+    this(null);
+  }
+
+  /** @param loader the loader to find domain classes with, e.g. a new one for each watch mode run */
+  public ReflectionTypeOracle(final ClassLoader loader) {
+    this.loader = loader;
+  }
+
   @Override
   public List<Prop> getProperties(final String className, boolean excludeInherited) {
 
@@ -69,20 +81,16 @@ public class ReflectionTypeOracle implements TypeOracle {
 
           if (TypeUtils.containsTypeVariables(pd.getReadMethod().getGenericReturnType())) {
 
-            System.out.println(pd.getName() + " Resolving from " + clazz + " to " + pd.getReadMethod().getDeclaringClass().toString());
             GenericsContext context = GenericsResolver.resolve(clazz).type(pd.getReadMethod().getDeclaringClass());
             Class outer = context.resolveClass(pd.getReadMethod().getGenericReturnType());
             Class inner = null;
             if (!clazz.equals(pd.getReadMethod().getDeclaringClass()) && pd.getReadMethod().getGenericReturnType() instanceof ParameterizedType) {
-              System.out.println("Resolving generic...");
               inner = context.resolveGenericOf(pd.getReadMethod().getGenericReturnType());
 
               String outerString = outer.toString().replaceAll("^class ", "").replaceAll("^interface ", "");
               String innerString = inner.toString().replaceAll("^class ", "").replaceAll("^interface ", "");
               type = outerString + "<" + innerString + ">";
             }
-            System.out.println("Resolved outer " + outer + ", inner " + inner);
-            System.out.println("");
             genericMethodMap = GenericParser.typeToMap(pd.getReadMethod().getGenericReturnType(), pd.getName());
 
           }
@@ -132,7 +140,8 @@ public class ReflectionTypeOracle implements TypeOracle {
 
       for (String annotationName : annotations) {
 
-        Class<? extends Annotation> annotation = (Class<? extends Annotation>) getClass(annotationName);
+        // the annotations must come from the same loader as the class, or they won't match
+        Class<? extends Annotation> annotation = (Class<? extends Annotation>) getClass(annotationName, clazz.getClassLoader());
 
         List<Field> annotatedFields = FieldUtils.getFieldsListWithAnnotation(clazz, annotation);
         for (Field f : annotatedFields) {
@@ -211,12 +220,18 @@ public class ReflectionTypeOracle implements TypeOracle {
 
   }
 
-  private static Class<?> getClass(final String className) throws ClassNotFoundException {
+  private Class<?> getClass(final String className) throws ClassNotFoundException {
+    return getClass(className, loader);
+  }
+
+  private static Class<?> getClass(final String className, final ClassLoader loader) throws ClassNotFoundException {
 
-    if (className != null) {
+    if (className == null) {
+      throw new ClassNotFoundException();
+    } else if (loader == null) {
       return Class.forName(className);
     } else {
-      throw new ClassNotFoundException();
+      return Class.forName(className, true, loader);
     }
 
   }
@@ -0,0 +1,191 @@
+package com.bizo.dtonator;
+
+import static joist.util.Copy.list;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.Test;
+
+public class BinaryCodecTest {
+
+  private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+  private final DataOutputStream out = new DataOutputStream(bytes);
+
+  @Test
+  public void shouldWriteSmallNumbersInOneByte() throws IOException {
+    BinaryCodec.writeVarLong(out, 63);
+    BinaryCodec.writeVarInt(out, -64);
+    assertThat(bytes.size(), is(2));
+    final DataInput in = in();
+    assertThat(BinaryCodec.readVarLong(in), is(63l));
+    assertThat(BinaryCodec.readVarInt(in), is(-64));
+  }
+
+  @Test
+  public void shouldRoundTripExtremes() throws IOException {
+    BinaryCodec.writeVarLong(out, Long.MIN_VALUE);
+    BinaryCodec.writeVarLong(out, Long.MAX_VALUE);
+    BinaryCodec.writeVarInt(out, Integer.MIN_VALUE);
+    BinaryCodec.writeVarInt(out, Integer.MAX_VALUE);
+    final DataInput in = in();
+    assertThat(BinaryCodec.readVarLong(in), is(Long.MIN_VALUE));
+    assertThat(BinaryCodec.readVarLong(in), is(Long.MAX_VALUE));
+    assertThat(BinaryCodec.readVarInt(in), is(Integer.MIN_VALUE));
+    assertThat(BinaryCodec.readVarInt(in), is(Integer.MAX_VALUE));
+  }
+
+  @Test
+  public void shouldRoundTripListsWithNulls() throws IOException {
+    BinaryCodec.writeCollection(out, list("a", null, "é"), BinaryCodec.STRING);
+    assertThat(BinaryCodec.readList(in(), BinaryCodec.STRING), contains("a", null, "é"));
+  }
+
+  @Test
+  public void shouldReadNestedRecords() throws IOException {
+    final Foo foo = new Foo(1l, "a", list(new Foo(2l, null, null)));
+    foo.writeTo(out);
+    final Foo read = Foo.readFrom(in());
+    assertThat(read.id, is(1l));
+    assertThat(read.name, is("a"));
+    assertThat(read.children.get(0).id, is(2l));
+    assertThat(read.children.get(0).name, is(nullValue()));
+    assertThat(read.children.get(0).children, is(nullValue()));
+  }
+
+  @Test
+  public void shouldSkipPropertiesFromNewerWriters() throws IOException {
+    // given a newer Foo, with properties before, between and after the ones we know
+    final BinaryCodec.Buffer b = BinaryCodec.buffer(out);
+    final int mark = b.mark();
+    b.writeInt(BinaryCodec.key("first", "java.lang.Double", BinaryCodec.FIXED64));
+    b.writeDouble(1.5);
+    b.writeInt(Foo.NAME);
+    BinaryCodec.writeString(b, "a");
+    b.writeInt(BinaryCodec.key("middle", "java.util.ArrayList<java.lang.String>", BinaryCodec.SIZED));
+    BinaryCodec.writeSizedCollection(b, list("b", "c"), BinaryCodec.STRING);
+    b.writeInt(Foo.ID);
+    BinaryCodec.writeVarLong(b, 1);
+    b.writeInt(BinaryCodec.key("last", "java.lang.String", BinaryCodec.BYTES));
+    BinaryCodec.writeString(b, "extra");
+    b.writeInt(0);
+    b.end(mark, out);
+    // and then another record
+    new Foo(3l, null, null).writeTo(out);
+    // then we read the properties we know, and the next record
+    final DataInput in = in();
+    final Foo foo = Foo.readFrom(in);
+    assertThat(foo.id, is(1l));
+    assertThat(foo.name, is("a"));
+    assertThat(Foo.readFrom(in).id, is(3l));
+  }
+
+  @Test
+  public void shouldReadOlderWritersWithoutTheirMissingProperties() throws IOException {
+    final BinaryCodec.Buffer b = BinaryCodec.buffer(out);
+    final int mark = b.mark();
+    b.writeInt(Foo.ID);
+    BinaryCodec.writeVarLong(b, 1);
+    b.writeInt(0);
+    b.end(mark, out);
+    final Foo foo = Foo.readFrom(in());
+    assertThat(foo.id, is(1l));
+    assertThat(foo.name, is(nullValue()));
+  }
+
+  @Test
+  public void shouldSkipRetypedProperties() throws IOException {
+    // given a writer where name is a nested record, and id is a string
+    final BinaryCodec.Buffer b = BinaryCodec.buffer(out);
+    final int mark = b.mark();
+    b.writeInt(BinaryCodec.key("name", "com.dto.NameDto", BinaryCodec.SIZED));
+    new Foo(2l, "nested", null).writeTo(b);
+    b.writeInt(BinaryCodec.key("id", "java.lang.String", BinaryCodec.BYTES));
+    BinaryCodec.writeString(b, "1");
+    b.writeInt(0);
+    b.end(mark, out);
+    // then we don't read either as our types
+    final Foo foo = Foo.readFrom(in());
+    assertThat(foo.id, is(nullValue()));
+    assertThat(foo.name, is(nullValue()));
+  }
+
+  private DataInput in() {
+    return new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+  }
+
+  /** Like a generated DTO's codec. */
+  private static class Foo {
+    private static final int ID = BinaryCodec.key("id", "java.lang.Long", BinaryCodec.VARINT);
+    private static final int NAME = BinaryCodec.key("name", "java.lang.String", BinaryCodec.BYTES);
+    private static final int CHILDREN = BinaryCodec.key("children", "java.util.ArrayList<Foo>", BinaryCodec.SIZED);
+    private static final BinaryCodec.Codec<Foo> CODEC = new BinaryCodec.Codec<Foo>() {
+      @Override
+      public void write(final DataOutput out, final Foo value) throws IOException {
+        value.writeTo(out);
+      }
+
+      @Override
+      public Foo read(final DataInput in) throws IOException {
+        return Foo.readFrom(in);
+      }
+    };
+    private Long id;
+    private String name;
+    private List<Foo> children;
+
+    private Foo(final Long id, final String name, final List<Foo> children) {
+      this.id = id;
+      this.name = name;
+      this.children = children;
+    }
+
+    private void writeTo(final DataOutput out) throws IOException {
+      final BinaryCodec.Buffer b = BinaryCodec.buffer(out);
+      final int mark = b.mark();
+      if (id != null) {
+        b.writeInt(ID);
+        BinaryCodec.writeVarLong(b, id);
+      }
+      if (name != null) {
+        b.writeInt(NAME);
+        BinaryCodec.writeString(b, name);
+      }
+      if (children != null) {
+        b.writeInt(CHILDREN);
+        BinaryCodec.writeSizedCollection(b, children, CODEC);
+      }
+      b.writeInt(0);
+      b.end(mark, out);
+    }
+
+    private static Foo readFrom(final DataInput in) throws IOException {
+      in.readInt();
+      final Foo foo = new Foo(null, null, null);
+      for (int key = in.readInt(); key != 0; key = in.readInt()) {
+        // the generated code switches on the keys, which it has as literals
+        if (key == ID) {
+          foo.id = BinaryCodec.readVarLong(in);
+        } else if (key == NAME) {
+          foo.name = BinaryCodec.readString(in);
+        } else if (key == CHILDREN) {
+          foo.children = BinaryCodec.readSizedList(in, CODEC);
+        } else {
+          BinaryCodec.skip(in, key);
+        }
+      }
+      return foo;
+    }
+  }
+
+}
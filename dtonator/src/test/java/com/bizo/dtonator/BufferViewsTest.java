@@ -0,0 +1,62 @@
+package com.bizo.dtonator;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import org.junit.Test;
+
+public class BufferViewsTest {
+
+  private final BufferViews.Encoder e = new BufferViews.Encoder();
+
+  @Test
+  public void shouldReadStringsFromHeapAndDirectBuffers() {
+    final int at = e.string("é");
+    assertThat(BufferViews.getString(e.toByteBuffer(), at), is("é"));
+    assertThat(BufferViews.getString(e.toDirectByteBuffer(), at), is("é"));
+  }
+
+  @Test
+  public void shouldFillInSlotsAfterGrowing() {
+    final int record = e.reserve(8);
+    // write enough to grow the buffer, before filling in the record's slots
+    final StringBuilder large = new StringBuilder();
+    for (int i = 0; i < 1000; i++) {
+      large.append("large");
+    }
+    e.putInt(record, e.string(large.toString()));
+    e.putInt(record + 4, -1);
+    final ByteBuffer b = e.toByteBuffer();
+    assertThat(BufferViews.getString(b, b.getInt(record)), is(large.toString()));
+    assertThat(b.getInt(record + 4), is(-1));
+  }
+
+  @Test
+  public void shouldReadListElementsLazily() {
+    final int list = e.list(3);
+    e.element(list, 0, e.value(1l));
+    e.element(list, 1, -1);
+    e.element(list, 2, e.value(3l));
+    final List<Long> view = new BufferViews.ViewList<Long>(e.toDirectByteBuffer(), list) {
+      @Override
+      protected Long element(final ByteBuffer b, final int at) {
+        return b.getLong(at);
+      }
+    };
+    assertThat(view.size(), is(3));
+    assertThat(view.get(1), is(nullValue()));
+    assertThat(view, contains(1l, null, 3l));
+  }
+
+  @Test
+  public void shouldFallBackToSerialization() {
+    final int at = e.serialized(java.util.Arrays.asList("a", "b"));
+    assertThat((List<?>) BufferViews.getSerialized(e.toByteBuffer(), at), contains((Object) "a", "b"));
+  }
+
+}
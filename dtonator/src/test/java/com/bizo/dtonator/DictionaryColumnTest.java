@@ -0,0 +1,47 @@
+package com.bizo.dtonator;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import org.junit.Test;
+
+public class DictionaryColumnTest {
+
+  private final DictionaryColumn c = new DictionaryColumn(1);
+
+  @Test
+  public void shouldStoreEachValueOnce() {
+    c.set(0, "a");
+    c.set(1, "b");
+    c.set(2, "a");
+    c.set(3, null);
+    assertThat(c.get(0), is("a"));
+    assertThat(c.get(2), is("a"));
+    assertThat(c.get(3), is(nullValue()));
+    assertThat(c.distinct(), is(2));
+  }
+
+  @Test
+  public void shouldKeepCodesAfterDeserializing() throws Exception {
+    c.set(0, "a");
+    c.set(1, "b");
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    final ObjectOutputStream out = new ObjectOutputStream(bytes);
+    out.writeObject(c);
+    out.close();
+    final DictionaryColumn read = (DictionaryColumn) new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+    read.set(2, "b");
+    read.set(3, "c");
+    assertThat(read.get(1), is("b"));
+    assertThat(read.get(2), is("b"));
+    assertThat(read.get(3), is("c"));
+    assertThat(read.distinct(), is(3));
+  }
+
+}
@@ -2,8 +2,15 @@ package com.bizo.dtonator;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
 import static org.hamcrest.MatcherAssert.assertThat;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 import org.junit.Test;
 
 public class DomainObjectContextTest {
@@ -17,6 +24,100 @@ public class DomainObjectContextTest {
     assertThat(c.get(d2), is(nullValue()));
   }
 
+  @Test
+  public void shouldOnlyBatchTheOutermostMappingWithABatchLookup() {
+    final DomainObjectContext c = DomainObjectContext.push();
+    try {
+      assertThat(c.startBatch(new SingleLookup()), is(false));
+      final DomainObjectContext inner = DomainObjectContext.push();
+      try {
+        assertThat(inner.startBatch(new TestLookup()), is(false));
+      } finally {
+        inner.pop();
+      }
+      assertThat(c.startBatch(new TestLookup()), is(true));
+      assertThat(c.startBatch(new TestLookup()), is(false));
+    } finally {
+      c.pop();
+    }
+  }
+
+  @Test
+  public void shouldLookupWantedIdsInOneBatch() {
+    final TestLookup lookup = new TestLookup();
+    final DomainObjectContext c = new DomainObjectContext();
+    c.want(String.class, 1l);
+    c.want(String.class, 2l);
+    c.want(String.class, 1l);
+    c.fetch(lookup);
+    assertThat(lookup.batches.size(), is(1));
+    assertThat(lookup.batches.get(0).size(), is(2));
+    final String s1 = c.lookup(lookup, String.class, 1l);
+    assertThat(s1, is(sameInstance(c.lookup(lookup, String.class, 1l))));
+    assertThat(lookup.singles, is(0));
+  }
+
+  @Test
+  public void shouldFallBackToSingleLookupsForMissingIds() {
+    final TestLookup lookup = new TestLookup();
+    final DomainObjectContext c = new DomainObjectContext();
+    c.want(String.class, 1l);
+    c.fetch(lookup);
+    assertThat(c.lookup(lookup, String.class, 3l), is("3"));
+    assertThat(c.lookup(lookup, Integer.class, 1l), is(nullValue()));
+    assertThat(lookup.singles, is(2));
+  }
+
+  @Test
+  public void shouldVisitEachDtoOnce() {
+    final DomainObjectContext c = new DomainObjectContext();
+    final TestDto d1 = new TestDto("d");
+    assertThat(c.visit(d1), is(true));
+    assertThat(c.visit(d1), is(false));
+    assertThat(c.visit(new TestDto("d")), is(true));
+  }
+
+  @Test
+  public void shouldForgetEverythingOnReset() {
+    final TestLookup lookup = new TestLookup();
+    final DomainObjectContext c = new DomainObjectContext();
+    final TestDto d1 = new TestDto("d");
+    c.store(d1, new Object());
+    assertThat(c.startBatch(lookup), is(true));
+    c.want(String.class, 1l);
+    c.fetch(lookup);
+    c.reset();
+    assertThat(c.get(d1), is(nullValue()));
+    assertThat(c.startBatch(lookup), is(true));
+    c.lookup(lookup, String.class, 1l);
+    assertThat(lookup.singles, is(1));
+  }
+
+  /** Only finds {@code String}s, which are the ids as strings. */
+  private static class SingleLookup implements DomainObjectLookup {
+    protected int singles;
+
+    @Override
+    public <T> T lookup(final Class<T> type, final Long id) {
+      singles++;
+      return type == String.class ? type.cast(String.valueOf(id)) : null;
+    }
+  }
+
+  private static class TestLookup extends SingleLookup implements BatchDomainObjectLookup {
+    private final List<Collection<Long>> batches = new ArrayList<Collection<Long>>();
+
+    @Override
+    public <T> Map<Long, T> lookupAll(final Class<T> type, final Collection<Long> ids) {
+      batches.add(new ArrayList<Long>(ids));
+      final Map<Long, T> found = new HashMap<Long, T>();
+      for (final Long id : ids) {
+        found.put(id, type.cast(new String(String.valueOf(id))));
+      }
+      return found;
+    }
+  }
+
   public static class TestDto {
     private final String name;
 
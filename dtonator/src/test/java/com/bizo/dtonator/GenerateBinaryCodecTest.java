@@ -0,0 +1,79 @@
+package com.bizo.dtonator;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import joist.sourcegen.GClass;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.bizo.dtonator.config.RootConfig;
+import com.bizo.dtonator.properties.StubTypeOracle;
+
+public class GenerateBinaryCodecTest {
+
+  private final StubTypeOracle oracle = new StubTypeOracle();
+  private final Map<String, Object> root = new LinkedHashMap<String, Object>();
+  private final Map<String, Object> config = new HashMap<String, Object>();
+  private final OutputDirectory out = new OutputDirectory("target/gen-java-src");
+
+  @Before
+  public void setup() {
+    config.put("dtoPackage", "com.dto");
+    config.put("domainPackage", "com.domain");
+    root.put("config", config);
+  }
+
+  @Test
+  public void testSubclassOfBaseWithCodec() {
+    addDto("BaseDto", "id Integer", null).put("binaryCodec", true);
+    addDto("FooDto", "name String", "BaseDto");
+    final String code = generate("FooDto");
+    assertThat(isOverride(code, "writeTo"), is(true));
+    assertThat(isOverride(code, "readBody"), is(true));
+    assertThat(code, not(containsString(" readExternal(")));
+  }
+
+  @Test
+  public void testSubclassOfBaseWithoutCodec() {
+    addDto("BaseDto", "id Integer", null);
+    addDto("FooDto", "name String", "BaseDto").put("binaryCodec", true);
+    final String code = generate("FooDto");
+    // then there's nothing to override, and we're the root of the codec's hierarchy
+    assertThat(isOverride(code, "writeTo"), is(false));
+    assertThat(isOverride(code, "readBody"), is(false));
+    assertThat(code, containsString(" readExternal("));
+  }
+
+  private String generate(final String name) {
+    final RootConfig rc = new RootConfig(oracle, root);
+    final GClass gc = out.getClass("com.dto." + name);
+    new GenerateBinaryCodec(rc, rc.getDto(name), gc).generate();
+    return gc.toCode();
+  }
+
+  private Map<String, Object> addDto(final String simpleName, final String properties, final String base) {
+    final Map<String, Object> map = new HashMap<String, Object>();
+    map.put("domain", simpleName.replace("Dto", ""));
+    map.put("properties", properties);
+    if (base != null) {
+      map.put("extends", base);
+    }
+    root.put(simpleName, map);
+    return map;
+  }
+
+  /** @return whether {@code method} has an {@code @Override}, i.e. one between it and the previous member */
+  private static boolean isOverride(final String code, final String method) {
+    final int i = code.indexOf(" " + method + "(");
+    return code.substring(code.lastIndexOf('}', i) + 1, i).contains("@Override");
+  }
+
+}
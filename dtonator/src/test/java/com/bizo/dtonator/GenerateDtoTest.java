@@ -0,0 +1,208 @@
+package com.bizo.dtonator;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.hasItem;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import joist.util.Join;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.bizo.dtonator.config.RootConfig;
+import com.bizo.dtonator.properties.StubTypeOracle;
+
+public class GenerateDtoTest {
+
+  private final StubTypeOracle oracle = new StubTypeOracle();
+  private final Map<String, Object> root = new LinkedHashMap<String, Object>();
+  private final Map<String, Object> config = new HashMap<String, Object>();
+  private final Map<String, Object> foo = new HashMap<String, Object>();
+  private final OutputDirectory out = new OutputDirectory("target/gen-java-src");
+
+  @Before
+  public void setup() {
+    config.put("dtoPackage", "com.dto");
+    config.put("domainPackage", "com.domain");
+    config.put("mapperPackage", "com.mapper");
+    root.put("config", config);
+    oracle.addProperty("com.domain.Foo", "id", "java.lang.Long");
+    oracle.addProperty("com.domain.Foo", "bars", "java.util.List<com.domain.Bar>");
+    oracle.addProperty("com.domain.Bar", "id", "java.lang.Long");
+    foo.put("domain", "Foo");
+    foo.put("properties", "id, bars ArrayList<BarDto>");
+    root.put("FooDto", foo);
+    final Map<String, Object> bar = new HashMap<String, Object>();
+    bar.put("domain", "Bar");
+    bar.put("properties", "id");
+    root.put("BarDto", bar);
+  }
+
+  @Test
+  public void testParallelThreshold() {
+    foo.put("parallelThreshold", 100);
+    final Map<String, Object> dumped = generateFoo();
+    assertThat(barsHelper(dumped), containsString("if (os.size() >= {}) {, 100]"));
+    assertThat(barsHelper(dumped), containsString("ParallelMapping.map"));
+    assertThat(imports(dumped), hasItem(ParallelMapping.class.getName()));
+  }
+
+  @Test
+  public void testParallelThresholdPerProperty() {
+    final Map<String, Object> thresholds = new HashMap<String, Object>();
+    thresholds.put("bars", 10);
+    foo.put("parallelThreshold", thresholds);
+    assertThat(barsHelper(generateFoo()), containsString("if (os.size() >= {}) {, 10]"));
+  }
+
+  @Test
+  public void testNoParallelThreshold() {
+    final Map<String, Object> dumped = generateFoo();
+    assertThat(barsHelper(dumped), not(containsString("ParallelMapping")));
+    assertThat(imports(dumped), not(hasItem(ParallelMapping.class.getName())));
+  }
+
+  @Test
+  public void testParallelThresholdIsIgnoredWithIdentityToDto() {
+    config.put("identityToDto", true);
+    foo.put("parallelThreshold", 100);
+    final Map<String, Object> dumped = generateFoo();
+    assertThat(barsHelper(dumped), not(containsString("ParallelMapping")));
+    assertThat(imports(dumped), hasItem(ToDtoContext.class.getName()));
+  }
+
+  @Test
+  public void testThreadLocalContext() {
+    final List<String> signatures = signatures(generateFoo());
+    assertThat(signatures, hasItem("fromDto(com.dto.FooDto)"));
+    assertThat(signatures, not(hasItem("fromDto(com.dto.FooDto, DomainObjectContext)")));
+  }
+
+  @Test
+  public void testExplicitContext() {
+    config.put("explicitContext", true);
+    final Map<String, Object> dumped = generateFoo();
+    // then fromDto takes the context, and the old signature is a wrapper that pushes one
+    assertThat(signatures(dumped), hasItem("fromDto(com.dto.FooDto, DomainObjectContext)"));
+    assertThat(signatures(dumped), hasItem("fromDto(com.domain.Foo, com.dto.FooDto, DomainObjectContext)"));
+    assertThat(lines(dumped, "fromDto(com.dto.FooDto)"), containsString("_ return {}fromDto(dto, c);"));
+  }
+
+  @Test
+  public void testToDtoWithoutIdentity() {
+    final List<String> signatures = signatures(generateFoo());
+    assertThat(signatures, hasItem("toFooDto(com.domain.Foo)"));
+    assertThat(signatures, not(hasItem("toFooDto(com.domain.Foo, ToDtoContext)")));
+  }
+
+  @Test
+  public void testIdentityToDto() {
+    config.put("identityToDto", true);
+    final Map<String, Object> dumped = generateFoo();
+    // then toFooDto takes the context, and the old signature is a wrapper that makes one
+    assertThat(signatures(dumped), hasItem("toFooDto(com.domain.Foo, ToDtoContext)"));
+    assertThat(lines(dumped, "toFooDto(com.domain.Foo)"), containsString("new ToDtoContext()"));
+  }
+
+  @Test
+  public void testIdentityToDtoPrintsNestedDtosById() {
+    config.put("identityToDto", true);
+    addBuddy();
+    generateFoo();
+    final String code = out.getClass("com.dto.FooDto").toCode();
+    // then toString has the buddy's id instead of the buddy, and no bars, as they've no id to print
+    assertThat(code, containsString("return \"FooDto[\" + this.id + \", \" + (this.buddy == null ? null : this.buddy.id) + \"]\";"));
+    // and copyOf shares the buddy instead of copying it
+    assertThat(code, containsString("((com.dto.FooDto) o).buddy,"));
+  }
+
+  @Test
+  public void testIdentityToDtoComparesNestedDtosById() {
+    config.put("identityToDto", true);
+    foo.put("equality", "id buddy bars");
+    addBuddy();
+    generateFoo();
+    final String code = out.getClass("com.dto.FooDto").toCode();
+    assertThat(code, containsString("(this.buddy == null ? null : this.buddy.id).equals((o.buddy == null ? null : o.buddy.id))"));
+    assertThat(code, not(containsString("this.bars")));
+  }
+
+  @Test
+  public void testIdentityToDtoWithACodec() {
+    config.put("identityToDto", true);
+    foo.put("json", true);
+    addBuddy();
+    try {
+      generateFoo();
+      fail();
+    } catch (final IllegalStateException ise) {
+      assertThat(ise.getMessage(), is("FooDto.buddy may be a cycle with identityToDto, which json can't write"));
+    }
+  }
+
+  /** Adds a {@code buddy} to Foo, which can refer back to itself, like the features' PersonDto. */
+  private void addBuddy() {
+    oracle.addProperty("com.domain.Foo", "buddy", "com.domain.Foo");
+    foo.put("properties", "id, buddy FooDto, bars ArrayList<BarDto>");
+  }
+
+  private Map<String, Object> generateFoo() {
+    final RootConfig rc = new RootConfig(oracle, root);
+    final MapperFragment fragment = new MapperFragment();
+    new GenerateDto(rc, out, fragment, true, rc.getDto("FooDto")).generate();
+    return fragment.dump();
+  }
+
+  /** @return the {@code barsForFooDto} helper, as a string of its dumped lines */
+  private static String barsHelper(final Map<String, Object> dumped) {
+    for (final Object o : (List<?>) dumped.get("methods")) {
+      final Map<?, ?> method = (Map<?, ?>) o;
+      if ("barsForFooDto".equals(method.get("name"))) {
+        return method.get("lines").toString();
+      }
+    }
+    throw new IllegalStateException("barsForFooDto not found");
+  }
+
+  /** @return each method's name and argument types, e.g. {@code fromDto(com.dto.FooDto)} */
+  private static List<String> signatures(final Map<String, Object> dumped) {
+    final List<String> signatures = new ArrayList<String>();
+    for (final Object o : (List<?>) dumped.get("methods")) {
+      signatures.add(signature((Map<?, ?>) o));
+    }
+    return signatures;
+  }
+
+  /** @return the method with {@code signature}, as a string of its dumped lines */
+  private static String lines(final Map<String, Object> dumped, final String signature) {
+    for (final Object o : (List<?>) dumped.get("methods")) {
+      if (signature.equals(signature((Map<?, ?>) o))) {
+        return ((Map<?, ?>) o).get("lines").toString();
+      }
+    }
+    throw new IllegalStateException(signature + " not found");
+  }
+
+  private static String signature(final Map<?, ?> method) {
+    final List<String> types = new ArrayList<String>();
+    for (final Object arg : (List<?>) method.get("args")) {
+      types.add(String.valueOf(((List<?>) arg).get(0)));
+    }
+    return method.get("name") + "(" + Join.commaSpace(types) + ")";
+  }
+
+  @SuppressWarnings("unchecked")
+  private static List<String> imports(final Map<String, Object> dumped) {
+    return (List<String>) dumped.get("imports");
+  }
+
+}
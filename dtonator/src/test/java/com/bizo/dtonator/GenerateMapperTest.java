@@ -0,0 +1,123 @@
+package com.bizo.dtonator;
+
+import static joist.sourcegen.Argument.arg;
+import static joist.util.Copy.list;
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.bizo.dtonator.config.RootConfig;
+import com.bizo.dtonator.properties.StubTypeOracle;
+
+public class GenerateMapperTest {
+
+  private final StubTypeOracle oracle = new StubTypeOracle();
+  private final Map<String, Object> root = new LinkedHashMap<String, Object>();
+  private final Map<String, Object> config = new HashMap<String, Object>();
+  private final OutputDirectory out = new OutputDirectory("target/gen-java-src");
+
+  @Before
+  public void setup() {
+    config.put("dtoPackage", "com.dto");
+    config.put("domainPackage", "com.domain");
+    config.put("mapperPackage", "com.mapper");
+    root.put("config", config);
+    addDto("FooDto", "Foo");
+    addDto("BarDto", "Bar");
+    addDto("ZazDto", "com.other.domain.Zaz");
+  }
+
+  @Test
+  public void testUnshardedIsOneMapper() {
+    generate();
+    assertThat(out.getClasses().keySet(), is(set("com.mapper.Mapper")));
+  }
+
+  @Test
+  public void testShardPerDto() {
+    config.put("mapperShards", "dto");
+    generate();
+    assertThat(out.getClasses().keySet(), is(set(
+      "com.mapper.BarDtoMapperShard",
+      "com.mapper.FooDtoMapperShard",
+      "com.mapper.Mapper",
+      "com.mapper.ZazDtoMapperShard")));
+  }
+
+  @Test
+  public void testShardedMapperDelegatesToTheShards() {
+    config.put("mapperShards", "dto");
+    final String mapper = generate().getMapper().toCode();
+    assertThat(mapper, containsString("return fooDtoMapperShard().toFooDto(o);"));
+    assertThat(mapper, containsString("shard = new FooDtoMapperShard(this, lookup, "));
+  }
+
+  @Test
+  public void testShardPerPackageWithUniqueNames() {
+    config.put("mapperShards", "package");
+    generate();
+    assertThat(out.getClasses().keySet(), is(set(
+      "com.mapper.Domain2MapperShard",
+      "com.mapper.DomainMapperShard",
+      "com.mapper.Mapper")));
+  }
+
+  @Test
+  public void testEmptyFragmentsDoNotGetShards() {
+    config.put("mapperShards", "dto");
+    final RootConfig rc = new RootConfig(oracle, root);
+    final GenerateMapper gm = new GenerateMapper(out, rc);
+    gm.generate();
+    gm.add(rc.getDto("FooDto"), new MapperFragment());
+    assertThat(out.getClasses().keySet(), is(set("com.mapper.Mapper")));
+  }
+
+  @Test
+  public void testFragmentImportsAreSaved() {
+    final MapperFragment fragment = new MapperFragment();
+    fragment.addImports(ToDtoContext.class, Mapping.class);
+    fragment.getMethod("toFooDto", arg("com.domain.Foo", "o"), arg("ToDtoContext", "c")).returnType("com.dto.FooDto");
+    final Map<String, Object> dumped = fragment.dump();
+    assertThat(dumped.get("imports"), is((Object) list(Mapping.class.getName(), ToDtoContext.class.getName())));
+    assertThat(MapperFragment.load(dumped).dump(), is(dumped));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testUnknownSetting() {
+    config.put("mapperShards", "class");
+    new RootConfig(oracle, root).getMapperShards();
+  }
+
+  private GenerateMapper generate() {
+    final RootConfig rc = new RootConfig(oracle, root);
+    final GenerateMapper gm = new GenerateMapper(out, rc);
+    gm.generate();
+    for (final String name : list("FooDto", "BarDto", "ZazDto")) {
+      final MapperFragment fragment = new MapperFragment();
+      fragment.getMethod("to" + name, arg(rc.getDto(name).getDomainType(), "o")).returnType("com.dto." + name);
+      gm.add(rc.getDto(name), fragment);
+    }
+    return gm;
+  }
+
+  private void addDto(final String simpleName, final String domain) {
+    final Map<String, Object> map = new HashMap<String, Object>();
+    map.put("domain", domain);
+    map.put("properties", "id Integer");
+    root.put(simpleName, map);
+  }
+
+  private static Set<String> set(final String... names) {
+    return new TreeSet<String>(list(names));
+  }
+
+}
@@ -0,0 +1,111 @@
+package com.bizo.dtonator;
+
+import static joist.util.Copy.list;
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import joist.sourcegen.GClass;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+import com.bizo.dtonator.config.RootConfig;
+import com.bizo.dtonator.properties.StubTypeOracle;
+
+/** Tests the settings whose generated code calls the nested dtos' generated code, so they need the setting too. */
+@RunWith(Parameterized.class)
+public class GenerateNestedDtosTest {
+
+  @Parameters(name = "{0}")
+  public static List<Object[]> settings() {
+    return list(new Object[][] { //
+      { "binaryCodec", "BarDto.readFrom(" },
+      { "json", "BarDtoJson.read(r)" },
+      { "bufferView", "BarDtoView.encode(e, " } });
+  }
+
+  private final StubTypeOracle oracle = new StubTypeOracle();
+  private final Map<String, Object> root = new LinkedHashMap<String, Object>();
+  private final Map<String, Object> config = new HashMap<String, Object>();
+  private final OutputDirectory out = new OutputDirectory("target/gen-java-src");
+  private final String setting;
+  private final String nestedCall;
+
+  public GenerateNestedDtosTest(final String setting, final String nestedCall) {
+    this.setting = setting;
+    this.nestedCall = nestedCall;
+  }
+
+  @Before
+  public void setup() {
+    config.put("dtoPackage", "com.dto");
+    config.put("domainPackage", "com.domain");
+    root.put("config", config);
+  }
+
+  @Test
+  public void testNestedDtoWithSetting() {
+    addDto("FooDto", "id Integer, bar BarDto", true);
+    addDto("BarDto", "id Integer", true);
+    assertThat(generate("FooDto"), containsString(nestedCall));
+  }
+
+  @Test
+  public void testNestedDtoWithoutSetting() {
+    addDto("FooDto", "id Integer, bar BarDto", true);
+    addDto("BarDto", "id Integer", false);
+    assertFails("FooDto.bar is a BarDto, which needs " + setting + " too");
+  }
+
+  @Test
+  public void testListOfDtosWithoutSetting() {
+    addDto("FooDto", "id Integer, bars java.util.ArrayList<BarDto>", true);
+    addDto("BarDto", "id Integer", false);
+    assertFails("FooDto.bars is a BarDto, which needs " + setting + " too");
+  }
+
+  private void assertFails(final String message) {
+    try {
+      generate("FooDto");
+      fail();
+    } catch (final IllegalStateException ise) {
+      assertThat(ise.getMessage(), is(message));
+    }
+  }
+
+  /** @return the code generated for {@code name}'s {@code setting} */
+  private String generate(final String name) {
+    final RootConfig rc = new RootConfig(oracle, root);
+    if ("binaryCodec".equals(setting)) {
+      final GClass gc = out.getClass("com.dto." + name);
+      new GenerateBinaryCodec(rc, rc.getDto(name), gc).generate();
+      return gc.toCode();
+    } else if ("json".equals(setting)) {
+      new GenerateJson(rc, out, rc.getDto(name)).generate();
+      return out.getClass(GenerateJson.jsonClass(rc.getDto(name))).toCode();
+    } else if ("bufferView".equals(setting)) {
+      new GenerateBufferView(rc, out, rc.getDto(name)).generate();
+      return out.getClass(GenerateBufferView.viewClass(rc.getDto(name))).toCode();
+    }
+    throw new IllegalArgumentException(setting);
+  }
+
+  private void addDto(final String simpleName, final String properties, final boolean value) {
+    final Map<String, Object> map = new HashMap<String, Object>();
+    map.put("domain", simpleName.replace("Dto", ""));
+    map.put("properties", properties);
+    map.put(setting, value);
+    root.put(simpleName, map);
+  }
+
+}
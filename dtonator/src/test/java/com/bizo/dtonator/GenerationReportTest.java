@@ -0,0 +1,66 @@
+package com.bizo.dtonator;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import org.junit.Test;
+
+import com.bizo.dtonator.GenerationReport.Timer;
+import com.bizo.dtonator.properties.CachingTypeOracle;
+import com.bizo.dtonator.properties.StubTypeOracle;
+
+public class GenerationReportTest {
+
+  private final GenerationReport report = new GenerationReport();
+  private final OutputDirectory out = new OutputDirectory("target/unused");
+
+  @Test
+  public void testPhasesAreInOrderAndSummed() {
+    report.phase("yaml", report.start());
+    report.phase("compile", report.start());
+    report.phase("tessell", report.start());
+    report.phase("tessell", report.start());
+    final String json = report.toJson(new StubTypeOracle(), out);
+    assertThat(count(json, "\"name\": \"tessell\""), is(1));
+    assertThat(json.indexOf("\"yaml\"") < json.indexOf("\"compile\""), is(true));
+    assertThat(json, containsString("\"output\": {\"written\": 0, \"skipped\": 0, \"deleted\": 0}"));
+    // only caching oracles count their calls
+    assertThat(json, not(containsString("\"oracle\"")));
+  }
+
+  @Test
+  public void testDtosAreSortedSlowestFirst() throws InterruptedException {
+    final Timer slow = report.start();
+    final Timer fast = report.start();
+    report.dto("FastDto", "dto", fast);
+    Thread.sleep(5);
+    report.dto("SlowDto", "enum", slow);
+    final String json = report.toJson(new StubTypeOracle(), out);
+    assertThat(json.indexOf("\"SlowDto\"") < json.indexOf("\"FastDto\""), is(true));
+    assertThat(json, containsString("\"kind\": \"enum\""));
+    assertThat(json, containsString("\"name\": \"dtos\""));
+
+    final String summary = report.toSummary(1);
+    assertThat(summary, containsString("SlowDto"));
+    assertThat(summary, not(containsString("FastDto")));
+  }
+
+  @Test
+  public void testOracleCounts() {
+    final CachingTypeOracle oracle = new CachingTypeOracle(new StubTypeOracle());
+    oracle.isEnum("com.domain.Foo");
+    oracle.isEnum("com.domain.Foo");
+    assertThat(report.toJson(oracle, out), containsString("\"oracle\": {\"calls\": 2, \"hits\": 1, \"misses\": 1"));
+  }
+
+  private static int count(final String s, final String part) {
+    int count = 0;
+    for (int i = s.indexOf(part); i != -1; i = s.indexOf(part, i + 1)) {
+      count++;
+    }
+    return count;
+  }
+
+}
@@ -0,0 +1,113 @@
+package com.bizo.dtonator;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import org.junit.Test;
+
+public class JsonTest {
+
+  private final StringWriter out = new StringWriter();
+  private final JsonWriter w = new JsonWriter(out);
+
+  @Test
+  public void shouldWriteObjectsAndArrays() throws IOException {
+    w.beginObject();
+    w.name("id").value(1l);
+    w.name("name").value("a \"b\"\n");
+    w.name("ids").beginArray().value(1).value((Long) null).value(2.5).endArray();
+    w.name("empty").beginObject().endObject();
+    w.name("ok").value(true);
+    w.endObject();
+    w.flush();
+    assertThat(out.toString(), is("{\"id\":1,\"name\":\"a \\\"b\\\"\\u000a\",\"ids\":[1,null,2.5],\"empty\":{},\"ok\":true}"));
+  }
+
+  @Test
+  public void shouldWriteDeeplyNestedArrays() throws IOException {
+    final StringBuilder expected = new StringBuilder();
+    for (int i = 0; i < 100; i++) {
+      w.beginArray().value(i);
+      expected.append("[").append(i).append(",");
+    }
+    for (int i = 0; i < 100; i++) {
+      w.value(true).endArray();
+      expected.append("true]");
+      if (i < 99) {
+        expected.append(",");
+      }
+    }
+    w.flush();
+    assertThat(out.toString(), is(expected.toString()));
+  }
+
+  @Test
+  public void shouldReadWhatWeWrite() throws IOException {
+    final JsonReader r = new JsonReader(new StringReader(" { \"name\" : \"a \\\"b\\\"\\u000a\", \"ids\": [1, null, -2.5e1], \"ok\": false } "));
+    r.beginObject();
+    assertThat(r.nextName(), is("name"));
+    assertThat(r.nextString(), is("a \"b\"\n"));
+    assertThat(r.nextName(), is("ids"));
+    r.beginArray();
+    assertThat(r.nextLong(), is(1l));
+    assertThat(r.nextNull(), is(true));
+    assertThat(r.nextNull(), is(false));
+    assertThat(r.nextDouble(), is(-25.0));
+    assertThat(r.hasNext(), is(false));
+    r.endArray();
+    assertThat(r.nextName(), is("ok"));
+    assertThat(r.nextBoolean(), is(false));
+    assertThat(r.hasNext(), is(false));
+    r.endObject();
+  }
+
+  @Test
+  public void shouldReadTheTypeOnlyIfItsFirst() throws IOException {
+    JsonReader r = new JsonReader(new StringReader("{\"@type\":\"Red\",\"id\":1}"));
+    r.beginObject();
+    assertThat(r.nextTypeName(), is("Red"));
+    assertThat(r.nextName(), is("id"));
+
+    r = new JsonReader(new StringReader("{\"id\":1}"));
+    r.beginObject();
+    assertThat(r.nextTypeName(), is(nullValue()));
+    assertThat(r.hasNext(), is(true));
+    assertThat(r.nextName(), is("id"));
+    assertThat(r.nextLong(), is(1l));
+  }
+
+  @Test
+  public void shouldSkipUnknownValues() throws IOException {
+    final JsonReader r = new JsonReader(new StringReader("{\"a\":{\"b\":[1,{\"c\":\"]\"}],\"d\":null},\"e\":true}"));
+    r.beginObject();
+    assertThat(r.nextName(), is("a"));
+    r.skipValue();
+    assertThat(r.nextName(), is("e"));
+    assertThat(r.nextBoolean(), is(true));
+    r.endObject();
+  }
+
+  @Test
+  public void shouldStreamArraysLargerThanTheBuffers() throws IOException {
+    w.beginArray();
+    for (int i = 0; i < 10000; i++) {
+      w.value(i);
+    }
+    w.endArray();
+    w.flush();
+    final JsonReader r = new JsonReader(new StringReader(out.toString()));
+    r.beginArray();
+    int i = 0;
+    while (r.hasNext()) {
+      assertThat(r.nextInt(), is(i++));
+    }
+    r.endArray();
+    assertThat(i, is(10000));
+  }
+
+}
@@ -0,0 +1,116 @@
+package com.bizo.dtonator;
+
+import static joist.util.Copy.list;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.bizo.dtonator.config.DtoConfig;
+import com.bizo.dtonator.config.RootConfig;
+import com.bizo.dtonator.properties.StubTypeOracle;
+
+public class ManifestTest {
+
+  private final StubTypeOracle oracle = new StubTypeOracle();
+  private final Map<String, Object> root = new LinkedHashMap<String, Object>();
+  private final Map<String, Object> config = new HashMap<String, Object>();
+  private File file;
+
+  @Before
+  public void setup() throws IOException {
+    file = File.createTempFile("dtonator", ".manifest");
+    file.delete();
+    config.put("dtoPackage", "com.dto");
+    config.put("outputDirectory", file.getParent());
+    root.put("config", config);
+    addDto("FooDto", "bar BarDto");
+    addDto("BarDto", "name String");
+    addDto("ZazDto", "id Integer");
+  }
+
+  @After
+  public void deleteManifest() {
+    file.delete();
+  }
+
+  @Test
+  public void testFirstRunIsFull() {
+    final Manifest m = newManifest();
+    assertThat(m.isFullRun(), is(true));
+    assertThat(names(m.getDirtyDtos()), is(list("FooDto", "BarDto", "ZazDto")));
+  }
+
+  @Test
+  public void testNoChangesIsClean() {
+    run();
+    final Manifest m = newManifest();
+    assertThat(m.isFullRun(), is(false));
+    assertThat(m.getDirtyDtos().size(), is(0));
+  }
+
+  @Test
+  public void testChangedDtoAndItsReferencesAreDirty() {
+    run();
+    addDto("BarDto", "name String, description String");
+    assertThat(names(newManifest().getDirtyDtos()), is(list("FooDto", "BarDto")));
+  }
+
+  @Test
+  public void testChangedConfigIsFull() {
+    run();
+    config.put("indent", "tab");
+    assertThat(newManifest().isFullRun(), is(true));
+  }
+
+  @Test
+  public void testAddedDtoIsFull() {
+    run();
+    addDto("NewDto", "id Integer");
+    assertThat(newManifest().isFullRun(), is(true));
+  }
+
+  /** Simulates a successful run, recording every dirty dto. */
+  private void run() {
+    final RootConfig rc = new RootConfig(oracle, root);
+    final Manifest m = new Manifest(rc, file, getClass().getClassLoader());
+    final List<DtoConfig> dirty = m.getDirtyDtos();
+    rc.compile(dirty);
+    for (final DtoConfig dto : rc.getDtos()) {
+      if (dirty.contains(dto)) {
+        m.record(dto, new MapperFragment());
+      } else {
+        m.recordUnchanged(dto);
+      }
+    }
+    m.save();
+  }
+
+  private Manifest newManifest() {
+    return new Manifest(new RootConfig(oracle, root), file, getClass().getClassLoader());
+  }
+
+  private void addDto(final String simpleName, final String properties) {
+    final Map<String, Object> map = new HashMap<String, Object>();
+    map.put("properties", properties);
+    root.put(simpleName, map);
+  }
+
+  private static List<String> names(final List<DtoConfig> dtos) {
+    final List<String> names = list();
+    for (final DtoConfig dto : dtos) {
+      names.add(dto.getSimpleName());
+    }
+    return names;
+  }
+
+}
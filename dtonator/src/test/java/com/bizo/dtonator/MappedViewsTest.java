@@ -0,0 +1,58 @@
+package com.bizo.dtonator;
+
+import static joist.util.Copy.list;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class MappedViewsTest {
+
+  private int mapped;
+  private final Mapping<Integer, String> toString = new Mapping<Integer, String>() {
+    @Override
+    public String map(final Integer i) {
+      mapped++;
+      return String.valueOf(i);
+    }
+  };
+
+  @Test
+  public void shouldMapListElementsOnRead() {
+    final List<String> view = MappedViews.list(list(1, 2, 3), toString);
+    assertThat(view.size(), is(3));
+    assertThat(mapped, is(0));
+    assertThat(view.get(1), is("2"));
+    assertThat(mapped, is(1));
+    assertThat(view, contains("1", "2", "3"));
+  }
+
+  @Test
+  public void shouldIterateTheSourceDirectly() {
+    final List<String> view = MappedViews.list(new LinkedList<Integer>(list(1, 2, 3)), toString);
+    final Iterator<String> i = view.iterator();
+    assertThat(i.next(), is("1"));
+    assertThat(mapped, is(1));
+  }
+
+  @Test
+  public void shouldMapIterablesAsTheyAreIterated() {
+    final Iterable<String> iterable = MappedViews.iterable(list(1, 2), toString);
+    assertThat(mapped, is(0));
+    assertThat(iterable, contains("1", "2"));
+    // and again, as it's not a one-shot iterator
+    assertThat(iterable, contains("1", "2"));
+    assertThat(mapped, is(4));
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void shouldBeReadOnly() {
+    MappedViews.list(list(1), toString).add("2");
+  }
+
+}
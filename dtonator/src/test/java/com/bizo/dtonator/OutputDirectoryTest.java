@@ -0,0 +1,93 @@
+package com.bizo.dtonator;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.bizo.dtonator.config.Prune;
+
+public class OutputDirectoryTest {
+
+  private File dir;
+
+  @Before
+  public void setup() throws IOException {
+    dir = File.createTempFile("dtonator", "");
+    dir.delete();
+  }
+
+  @After
+  public void cleanup() {
+    delete(dir);
+    new File(dir.getPath() + ".files").delete();
+  }
+
+  @Test
+  public void testUnchangedFilesAreSkipped() {
+    final OutputDirectory first = newDirectory("com.dto.FooDto");
+    first.output();
+    assertThat(first.getWritten(), is(1));
+    final OutputDirectory second = newDirectory("com.dto.FooDto");
+    second.output();
+    assertThat(second.getWritten(), is(0));
+    assertThat(second.getSkipped(), is(1));
+  }
+
+  @Test
+  public void testPrunesFilesFromThePreviousRun() {
+    final OutputDirectory first = newDirectory("com.dto.FooDto", "com.dto.BarDto");
+    first.output();
+    first.prune(Prune.ALL_PACKAGES);
+    final OutputDirectory second = newDirectory("com.dto.FooDto");
+    second.output();
+    second.prune(Prune.ALL_PACKAGES);
+    assertThat(second.getDeleted(), is(1));
+    assertThat(new File(dir, "com/dto/BarDto.java").exists(), is(false));
+    assertThat(new File(dir, "com/dto/FooDto.java").exists(), is(true));
+  }
+
+  @Test
+  public void testUsedPackagesOnlyPrunesPackagesWeWroteTo() {
+    final OutputDirectory first = newDirectory("com.dto.FooDto", "com.other.BarDto");
+    first.output();
+    first.prune(Prune.USED_PACKAGES);
+    final OutputDirectory second = newDirectory("com.dto.FooDto");
+    second.output();
+    second.prune(Prune.USED_PACKAGES);
+    assertThat(second.getDeleted(), is(0));
+    assertThat(new File(dir, "com/other/BarDto.java").exists(), is(true));
+  }
+
+  @Test
+  public void testGenericsAreNotPartOfTheFileName() {
+    final OutputDirectory out = newDirectory("com.dto.FooDto<T>");
+    out.output();
+    assertThat(new File(dir, "com/dto/FooDto.java").exists(), is(true));
+    assertThat(out.exists("com.dto.FooDto"), is(true));
+  }
+
+  private OutputDirectory newDirectory(final String... classNames) {
+    final OutputDirectory out = new OutputDirectory(dir.getPath());
+    for (final String className : classNames) {
+      out.getClass(className);
+    }
+    return out;
+  }
+
+  private static void delete(final File file) {
+    final File[] children = file.listFiles();
+    if (children != null) {
+      for (final File child : children) {
+        delete(child);
+      }
+    }
+    file.delete();
+  }
+
+}
@@ -0,0 +1,65 @@
+package com.bizo.dtonator;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class ParallelMappingTest {
+
+  @Test
+  public void shouldKeepTheOrder() {
+    final List<Integer> in = range(10000);
+    final List<String> out = ParallelMapping.map(in, new Mapping<Integer, String>() {
+      @Override
+      public String map(final Integer i) {
+        return String.valueOf(i);
+      }
+    }, new ArrayList<String>());
+    assertThat(out.size(), is(10000));
+    for (int i = 0; i < out.size(); i++) {
+      assertThat(out.get(i), is(String.valueOf(i)));
+    }
+  }
+
+  @Test
+  public void shouldMapNestedCollectionsInTheSamePool() {
+    final List<List<Integer>> out = ParallelMapping.map(range(1000), new Mapping<Integer, List<Integer>>() {
+      @Override
+      public List<Integer> map(final Integer i) {
+        return ParallelMapping.map(range(300), new Mapping<Integer, Integer>() {
+          @Override
+          public Integer map(final Integer j) {
+            return i * j;
+          }
+        }, new ArrayList<Integer>());
+      }
+    }, new ArrayList<List<Integer>>());
+    assertThat(out.get(999).get(299), is(999 * 299));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void shouldRethrowFailures() {
+    ParallelMapping.map(range(1000), new Mapping<Integer, Integer>() {
+      @Override
+      public Integer map(final Integer i) {
+        if (i == 500) {
+          throw new IllegalStateException();
+        }
+        return i;
+      }
+    }, new ArrayList<Integer>());
+  }
+
+  private static List<Integer> range(final int size) {
+    final List<Integer> list = new ArrayList<Integer>(size);
+    for (int i = 0; i < size; i++) {
+      list.add(i);
+    }
+    return list;
+  }
+
+}
@@ -0,0 +1,31 @@
+package com.bizo.dtonator;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import org.junit.Test;
+
+import com.bizo.dtonator.DomainObjectContextTest.TestDto;
+
+public class ToDtoContextTest {
+
+  @Test
+  public void shouldUseReferenceEquality() {
+    final ToDtoContext c = new ToDtoContext();
+    final TestDto dto = new TestDto("dto");
+    c.put(TestDto.class, "domain", dto);
+    assertThat(c.get(TestDto.class, "domain"), is(sameInstance(dto)));
+    assertThat(c.get(TestDto.class, new String("domain")), is(nullValue()));
+  }
+
+  @Test
+  public void shouldTrackEachDtoTypeSeparately() {
+    final ToDtoContext c = new ToDtoContext();
+    final Object domain = new Object();
+    c.put(TestDto.class, domain, new TestDto("dto"));
+    assertThat(c.get(String.class, domain), is(nullValue()));
+  }
+
+}
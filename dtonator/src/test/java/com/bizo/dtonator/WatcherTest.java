@@ -0,0 +1,63 @@
+package com.bizo.dtonator;
+
+import static joist.util.Copy.list;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.bizo.dtonator.domain.AbstractParent;
+import com.bizo.dtonator.domain.Brother;
+import com.bizo.dtonator.domain.Child;
+import com.bizo.dtonator.domain.IBrother;
+import com.bizo.dtonator.domain.Parent;
+import com.bizo.dtonator.domain.Sibling;
+
+public class WatcherTest {
+
+  private final List<Path> classDirectories = list(Paths.get("/project/a/classes"), Paths.get("/project/b/classes"));
+
+  @Test
+  public void testToClassName() {
+    assertThat(toClassName("/project/b/classes/com/foo/Bar.class"), is("com.foo.Bar"));
+    assertThat(toClassName("/project/a/classes/com/foo/Bar$Inner.class"), is("com.foo.Bar$Inner"));
+    assertThat(toClassName("/project/a/classes/Top.class"), is("Top"));
+  }
+
+  @Test
+  public void testToClassNameIgnoresOtherFiles() {
+    assertThat(toClassName("/project/a/classes/com/foo/Bar.java"), is(nullValue()));
+    assertThat(toClassName("/project/c/classes/com/foo/Bar.class"), is(nullValue()));
+    assertThat(toClassName("/project/dtonator.yaml"), is(nullValue()));
+  }
+
+  @Test
+  public void testFindAffectedIncludesSubclasses() {
+    final List<String> cached = list(Child.class.getName(), Parent.class.getName(), Sibling.class.getName(), "boolean");
+    final String affected = Watcher.findAffected(cached, Collections.singleton(AbstractParent.class.getName()), loader()).toString();
+    // boolean isn't a class, so is dropped to be safe
+    assertThat(affected, is(list(AbstractParent.class.getName(), Child.class.getName(), Parent.class.getName(), "boolean").toString()));
+  }
+
+  @Test
+  public void testFindAffectedIncludesImplementations() {
+    final List<String> cached = list(Brother.class.getName(), Sibling.class.getName());
+    final String affected = Watcher.findAffected(cached, Collections.singleton(IBrother.class.getName()), loader()).toString();
+    assertThat(affected, is(list(IBrother.class.getName(), Brother.class.getName()).toString()));
+  }
+
+  private String toClassName(final String file) {
+    return Watcher.toClassName(classDirectories, Paths.get(file));
+  }
+
+  private ClassLoader loader() {
+    return getClass().getClassLoader();
+  }
+
+}
@@ -3,10 +3,13 @@ package com.bizo.dtonator.config;
 import static joist.util.Copy.list;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.junit.Assert.*;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.junit.Before;
@@ -705,6 +708,129 @@ public class DtoConfigTest {
     assertThat(dc.getClassProperties().get(3).getName(), is("a"));
   }
 
+  @Test
+  public void testLookupBySimpleAndFullName() {
+    addDto("FooDto", domain("Foo"));
+    assertThat(rootConfig.getDto("FooDto").getSimpleName(), is("FooDto"));
+    assertThat(rootConfig.getDto("com.dto.FooDto").getSimpleName(), is("FooDto"));
+    assertThat(rootConfig.getDto("BarDto"), is(nullValue()));
+  }
+
+  @Test
+  public void testLookupByDomainType() {
+    addDto("FooDto", domain("Foo"));
+    addDto("FooSummaryDto", domain("Foo"));
+    addDto("BarDto", domain("Bar"));
+    assertThat(rootConfig.getDtosForDomainType("com.domain.Foo").size(), is(2));
+    assertThat(rootConfig.getDtosForDomainType("com.domain.Bar").get(0).getSimpleName(), is("BarDto"));
+    assertThat(rootConfig.getDtosForDomainType("com.domain.Zaz").size(), is(0));
+  }
+
+  @Test
+  public void testCompileClassifiesProperties() {
+    // given an entity, a list of entities, and a value type
+    oracle.addProperty("com.domain.Parent", "id", "java.lang.Long");
+    oracle.addProperty("com.domain.Parent", "children", "java.util.List<com.domain.Child>");
+    oracle.addProperty("com.domain.Parent", "price", "com.domain.Money");
+    oracle.addProperty("com.domain.Child", "id", "java.lang.Long");
+    oracle.addProperty("com.domain.Child", "parent", "com.domain.Parent");
+    valueTypes().put("com.domain.Money", "com.dto.Money");
+    addDto("ParentDto", domain("Parent"), properties("id, children, price"));
+    addDto("ChildDto", domain("Child"), properties("parent"));
+    rootConfig.compile();
+    // then each property was classified
+    final DtoConfig parent = rootConfig.getDto("ParentDto");
+    assertThat(parent.getAllPropertiesMap().get("children").isListOfEntities(), is(true));
+    assertThat(parent.getAllPropertiesMap().get("price").isValueType(), is(true));
+    assertThat(rootConfig.getDto("ChildDto").getClassProperties().get(0).isEntity(), is(true));
+    // and repeated lookups return the same, frozen instances
+    assertThat(parent.getClassProperties(), is(sameInstance(parent.getClassProperties())));
+    try {
+      parent.getClassProperties().clear();
+      fail();
+    } catch (final UnsupportedOperationException uoe) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testSubClassesAreLeafFirst() {
+    // given A <- B <- C and A <- D
+    addDto("ADto", domain("A"));
+    addDto("BDto", domain("B"), extendsDto("ADto"));
+    addDto("CDto", domain("C"), extendsDto("BDto"));
+    addDto("DDto", domain("D"), extendsDto("ADto"));
+    final List<DtoConfig> subClasses = rootConfig.getDto("ADto").getSubClassDtos();
+    // then grand children come before children
+    assertThat(subClasses.size(), is(3));
+    assertThat(subClasses.get(0).getSimpleName(), is("CDto"));
+    assertThat(subClasses.indexOf(rootConfig.getDto("BDto")) > 0, is(true));
+    assertThat(rootConfig.getDto("CDto").getBaseDto().getSimpleName(), is("BDto"));
+    assertThat(rootConfig.getDto("DDto").getSubClassDtos().size(), is(0));
+    // and base classes come before their subclasses
+    final List<DtoConfig> order = rootConfig.getInheritance().getTopologicalOrder();
+    assertThat(order.indexOf(rootConfig.getDto("ADto")) < order.indexOf(rootConfig.getDto("BDto")), is(true));
+    assertThat(order.indexOf(rootConfig.getDto("BDto")) < order.indexOf(rootConfig.getDto("CDto")), is(true));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testUnknownBaseDto() {
+    addDto("BDto", domain("B"), extendsDto("ADto"));
+    rootConfig.getDto("BDto").getSubClassDtos();
+  }
+
+  @Test
+  public void testPrimitiveFields() {
+    // given a base dto with primitive fields, and a subclass without
+    oracle.addProperty("com.domain.Foo", "id", "java.lang.Long");
+    oracle.addProperty("com.domain.Foo", "name", "java.lang.String");
+    oracle.addProperty("com.domain.Foo", "count", "java.lang.Integer");
+    oracle.addProperty("com.domain.Foo", "working", "boolean");
+    oracle.addProperty("com.domain.Bar", "rate", "java.lang.Double");
+    addDto("FooDto", domain("Foo"), properties("id, name, count, working"), new Entry("primitiveFields", true));
+    addDto("BarDto", domain("Bar"), properties("rate"), extendsDto("FooDto"));
+    // then only the boxed properties are primitive fields, with a bit each
+    final DtoConfig foo = rootConfig.getDto("FooDto");
+    assertThat(foo.getPrimitiveFields().toString(), is("[id, count]"));
+    assertThat(foo.getPrimitiveFields().get(0).getDtoTypeUnboxed(), is("long"));
+    assertThat(foo.getPrimitiveFields().get(1).getNullBit(), is(2));
+    // and the subclass reads its inherited ones as primitive fields, but keeps its own as-is
+    final DtoConfig bar = rootConfig.getDto("BarDto");
+    assertThat(bar.getAllPropertiesMap().get("id").isPrimitiveField(), is(true));
+    assertThat(bar.getAllPropertiesMap().get("name").isPrimitiveField(), is(false));
+    assertThat(bar.getAllPropertiesMap().get("rate").isPrimitiveField(), is(false));
+  }
+
+  @Test
+  public void testPrimitiveFieldsGlobally() {
+    oracle.addProperty("com.domain.Foo", "rate", "java.lang.Double");
+    addDto("FooDto", domain("Foo"), properties("rate"));
+    config.put("primitiveFields", true);
+    assertThat(rootConfig.getDto("FooDto").getAllPropertiesMap().get("rate").isPrimitiveField(), is(true));
+  }
+
+  @Test
+  public void testDirtyTracking() {
+    // given a base dto with dirty tracking, and a subclass
+    oracle.addProperty("com.domain.Foo", "id", "java.lang.Long");
+    oracle.addProperty("com.domain.Foo", "name", "java.lang.String");
+    oracle.addProperty("com.domain.Bar", "rate", "java.lang.Double");
+    addDto("FooDto", domain("Foo"), properties("id, name"), new Entry("dirtyTracking", true), new Entry("beanMethods", true));
+    addDto("BarDto", domain("Bar"), properties("rate"), extendsDto("FooDto"));
+    // then only the base declares the mask
+    final DtoConfig foo = rootConfig.getDto("FooDto");
+    final DtoConfig bar = rootConfig.getDto("BarDto");
+    assertThat(foo.declaresChangedMask(), is(true));
+    assertThat(bar.includeDirtyTracking(), is(false));
+    // as the subclass doesn't have bean methods, until they're on globally
+    config.put("beanMethods", true);
+    assertThat(bar.includeDirtyTracking(), is(true));
+    assertThat(bar.declaresChangedMask(), is(false));
+    // and the subclass's properties come after the inherited bits
+    assertThat(foo.getAllPropertiesMap().get("name").getChangedBit(), is(2L));
+    assertThat(bar.getAllPropertiesMap().get("rate").getChangedBit(), is(4L));
+  }
+
   private void addDto(final String simpleName, final Entry... entries) {
     final Map<String, Object> map = new HashMap<String, Object>();
     for (final Entry entry : entries) {
@@ -0,0 +1,110 @@
+package com.bizo.dtonator.properties;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.bizo.dtonator.domain.AbstractParent;
+import com.bizo.dtonator.domain.Brother;
+import com.bizo.dtonator.domain.Child;
+import com.bizo.dtonator.domain.ChildGeneric;
+import com.bizo.dtonator.domain.IBrother;
+import com.bizo.dtonator.domain.Parent;
+import com.bizo.dtonator.domain.ParentGeneric;
+import com.bizo.dtonator.domain.Sibling;
+import com.bizo.dtonator.domain.Sister;
+
+public class BytecodeTypeOracleTest {
+
+  private static boolean initialized = false;
+  private final ReflectionTypeOracle reflection = new ReflectionTypeOracle();
+  private final BytecodeTypeOracle oracle = new BytecodeTypeOracle(getClass().getClassLoader(), reflection);
+
+  @Test
+  public void testSamePropertiesAsReflection() {
+    for (final Class<?> c : new Class<?>[] {
+      AbstractParent.class,
+      Parent.class,
+      Child.class,
+      Brother.class,
+      IBrother.class,
+      Sibling.class,
+      Sister.class,
+      ParentGeneric.class,
+      ChildGeneric.class,
+      Thread.class }) {
+      assertSameProperties(c.getName(), true);
+      assertSameProperties(c.getName(), false);
+    }
+  }
+
+  @Test
+  public void testEnums() {
+    assertThat(oracle.isEnum(TimeUnit.class.getName()), is(true));
+    assertThat(oracle.isEnum(Parent.class.getName()), is(false));
+    assertThat(oracle.getEnumValues(TimeUnit.class.getName()), is(reflection.getEnumValues(TimeUnit.class.getName())));
+  }
+
+  @Test
+  public void testAbstract() {
+    assertThat(oracle.isAbstract(AbstractParent.class.getName()), is(true));
+    assertThat(oracle.isAbstract(Parent.class.getName()), is(false));
+  }
+
+  @Test
+  public void testMissingClasses() {
+    assertThat(oracle.isEnum("boolean"), is(false));
+    assertThat(oracle.getProperties("com.foo.Missing", false).size(), is(0));
+  }
+
+  @Test
+  public void testDoesNotInitializeClasses() {
+    assertThat(oracle.getProperties(Initialized.class.getName(), false).size(), is(1));
+    assertThat(initialized, is(false));
+  }
+
+  @Test
+  public void testGenericSignatures() {
+    assertThat(sig("Ljava/util/List<Ljava/lang/String;>;"), is("java.util.List<java.lang.String>"));
+    assertThat(sig("Ljava/util/Map<Ljava/lang/String;[I>;"), is("java.util.Map<java.lang.String, int[]>"));
+    assertThat(sig("Ljava/util/List<+Ljava/lang/Number;>;"), is("java.util.List<? extends java.lang.Number>"));
+    assertThat(sig("Ljava/util/List<*>;"), is("java.util.List<?>"));
+    assertThat(sig("Ljava/util/Set<Ljava/util/Map$Entry<Ljava/lang/String;Ljava/lang/Long;>;>;"), is(
+      "java.util.Set<java.util.Map$Entry<java.lang.String, java.lang.Long>>"));
+  }
+
+  private void assertSameProperties(final String className, final boolean excludeInherited) {
+    final List<Prop> expected = reflection.getProperties(className, excludeInherited);
+    final List<Prop> actual = oracle.getProperties(className, excludeInherited);
+    assertThat(className, describe(actual), is(describe(expected)));
+  }
+
+  private static String describe(final List<Prop> props) {
+    final StringBuilder sb = new StringBuilder();
+    for (final Prop p : props) {
+      sb.append(p.name).append(" ").append(p.type).append(" ").append(p.readOnly).append(" ");
+      sb.append(p.getGetterMethodName()).append(" ").append(p.getSetterNameMethod()).append(" ");
+      sb.append(p.inherited).append(" ").append(p.isAbstract).append("\n");
+    }
+    return sb.toString();
+  }
+
+  private static String sig(final String signature) {
+    return BytecodeTypeOracle.Signature.parse(signature).getTypeName();
+  }
+
+  public static class Initialized {
+    static {
+      initialized = true;
+    }
+
+    public String getName() {
+      return null;
+    }
+  }
+
+}
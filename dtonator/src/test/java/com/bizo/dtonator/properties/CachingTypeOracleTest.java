@@ -0,0 +1,125 @@
+package com.bizo.dtonator.properties;
+
+import static joist.util.Copy.list;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import joist.util.Copy;
+
+import org.junit.Test;
+
+public class CachingTypeOracleTest {
+
+  private final StubTypeOracle stub = new StubTypeOracle();
+  private final CachingTypeOracle oracle = new CachingTypeOracle(stub);
+
+  @Test
+  public void testPropertiesAreCached() {
+    stub.addProperty("com.domain.Foo", "a", "java.lang.String");
+    final List<Prop> first = oracle.getProperties("com.domain.Foo", false);
+    final List<Prop> second = oracle.getProperties("com.domain.Foo", false);
+    assertThat(second, is(sameInstance(first)));
+    assertThat(oracle.getMisses(), is(1L));
+    assertThat(oracle.getHits(), is(1L));
+  }
+
+  @Test
+  public void testPropertiesAreKeyedByExcludeInherited() {
+    stub.addProperty("com.domain.Foo", "a", "java.lang.String");
+    oracle.getProperties("com.domain.Foo", false);
+    oracle.getProperties("com.domain.Foo", true);
+    assertThat(oracle.getMisses(), is(2L));
+  }
+
+  @Test
+  public void testPropertiesAreKeyedByAnnotationSet() {
+    stub.addProperty("com.domain.Foo", "a", "java.lang.String");
+    oracle.getProperties("com.domain.Foo", false, list("com.A", "com.B"));
+    oracle.getProperties("com.domain.Foo", false, list("com.B", "com.A"));
+    oracle.getProperties("com.domain.Foo", false, list("com.A"));
+    assertThat(oracle.getMisses(), is(2L));
+    assertThat(oracle.getHits(), is(1L));
+  }
+
+  @Test
+  public void testNoAnnotationsSharesAnEntryWithEmptyAnnotations() {
+    oracle.getProperties("com.domain.Foo", false);
+    oracle.getProperties("com.domain.Foo", false, Copy.<String> list());
+    assertThat(oracle.getHits(), is(1L));
+  }
+
+  @Test
+  public void testNullResultsAreCached() {
+    // the stub returns null enum values for non-enums
+    oracle.getEnumValues("com.domain.Foo");
+    oracle.getEnumValues("com.domain.Foo");
+    assertThat(oracle.getHits(), is(1L));
+  }
+
+  @Test
+  public void testEnumAndAbstractAreCached() {
+    stub.setEnumValues("com.domain.Color", list("RED"));
+    stub.addAbstractDomain("com.domain.Base");
+    assertThat(oracle.isEnum("com.domain.Color"), is(true));
+    assertThat(oracle.isEnum("com.domain.Color"), is(true));
+    assertThat(oracle.isAbstract("com.domain.Base"), is(true));
+    assertThat(oracle.isAbstract("com.domain.Color"), is(false));
+    assertThat(oracle.isAbstract("com.domain.Color"), is(false));
+    assertThat(oracle.getHits(), is(2L));
+    assertThat(oracle.getMisses(), is(3L));
+  }
+
+  @Test
+  public void testPrefetchWarmsTheCache() {
+    stub.addProperty("com.domain.Foo", "a", "java.lang.String");
+    stub.addProperty("com.domain.Bar", "b", "java.lang.String");
+    final List<Callable<Void>> lookups = list();
+    for (final String className : list("com.domain.Foo", "com.domain.Bar")) {
+      lookups.add(new Callable<Void>() {
+        @Override
+        public Void call() {
+          oracle.getProperties(className, false);
+          return null;
+        }
+      });
+    }
+    oracle.prefetch(lookups);
+    assertThat(oracle.getMisses(), is(2L));
+    assertThat(oracle.getProperties("com.domain.Bar", false).size(), is(1));
+    assertThat(oracle.getMisses(), is(2L));
+    assertThat(oracle.getHits(), is(not(0L)));
+  }
+
+  @Test
+  public void testInvalidateOnlyForgetsTheGivenClasses() {
+    stub.addProperty("com.domain.Foo", "a", "java.lang.String");
+    stub.addProperty("com.domain.Bar", "b", "java.lang.String");
+    oracle.getProperties("com.domain.Foo", false);
+    oracle.getProperties("com.domain.Bar", true);
+    oracle.isEnum("com.domain.Foo");
+    assertThat(oracle.getClassNames().toString(), is("[com.domain.Bar, com.domain.Foo]"));
+
+    oracle.invalidate(list("com.domain.Foo"));
+    assertThat(oracle.getClassNames().toString(), is("[com.domain.Bar]"));
+    oracle.getProperties("com.domain.Bar", true);
+    oracle.getProperties("com.domain.Foo", false);
+    assertThat(oracle.getHits(), is(1L));
+    assertThat(oracle.getMisses(), is(4L));
+  }
+
+  @Test
+  public void testSetDelegateKeepsTheCache() {
+    stub.addProperty("com.domain.Foo", "a", "java.lang.String");
+    oracle.getProperties("com.domain.Foo", false);
+    oracle.setDelegate(new StubTypeOracle());
+    assertThat(oracle.getProperties("com.domain.Foo", false).size(), is(1));
+    oracle.invalidate(list("com.domain.Foo"));
+    assertThat(oracle.getProperties("com.domain.Foo", false).size(), is(0));
+  }
+
+}
@@ -0,0 +1,148 @@
+package com.bizo.dtonator.properties;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.TypeElement;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+
+import org.junit.Test;
+
+import com.bizo.dtonator.domain.AbstractParent;
+import com.bizo.dtonator.domain.Brother;
+import com.bizo.dtonator.domain.Child;
+import com.bizo.dtonator.domain.Parent;
+import com.bizo.dtonator.domain.Sibling;
+import com.bizo.dtonator.domain.Sister;
+
+public class ElementsTypeOracleTest {
+
+  private final ReflectionTypeOracle reflection = new ReflectionTypeOracle();
+
+  @Test
+  public void testSamePropertiesAsReflection() {
+    run(new Check() {
+      public void check(final ElementsTypeOracle oracle) {
+        for (final Class<?> c : new Class<?>[] {
+          AbstractParent.class,
+          Parent.class,
+          Child.class,
+          Brother.class,
+          Sibling.class,
+          Sister.class }) {
+          assertSameProperties(oracle, c.getName(), true);
+          assertSameProperties(oracle, c.getName(), false);
+        }
+      }
+    });
+  }
+
+  @Test
+  public void testEnums() {
+    run(new Check() {
+      public void check(final ElementsTypeOracle oracle) {
+        assertThat(oracle.isEnum(TimeUnit.class.getName()), is(true));
+        assertThat(oracle.isEnum(Parent.class.getName()), is(false));
+        assertThat(oracle.getEnumValues(TimeUnit.class.getName()), is(reflection.getEnumValues(TimeUnit.class.getName())));
+      }
+    });
+  }
+
+  @Test
+  public void testAbstract() {
+    run(new Check() {
+      public void check(final ElementsTypeOracle oracle) {
+        assertThat(oracle.isAbstract(AbstractParent.class.getName()), is(true));
+        assertThat(oracle.isAbstract(Parent.class.getName()), is(false));
+      }
+    });
+  }
+
+  private void assertSameProperties(final ElementsTypeOracle oracle, final String className, final boolean excludeInherited) {
+    final List<Prop> expected = reflection.getProperties(className, excludeInherited);
+    final List<Prop> actual = oracle.getProperties(className, excludeInherited);
+    assertThat(className, describe(actual), is(describe(expected)));
+  }
+
+  private static String describe(final List<Prop> props) {
+    final StringBuilder sb = new StringBuilder();
+    for (final Prop p : props) {
+      sb.append(p.name).append(" ").append(p.type).append(" ").append(p.readOnly).append(" ");
+      sb.append(p.getGetterMethodName()).append(" ").append(p.getSetterNameMethod()).append(" ");
+      sb.append(p.inherited).append(" ").append(p.isAbstract).append("\n");
+    }
+    return sb.toString();
+  }
+
+  private interface Check {
+    void check(ElementsTypeOracle oracle);
+  }
+
+  /** Runs {@code check} inside javac, with the test classpath, so the oracle sees the compiled domain objects. */
+  private static void run(final Check check) {
+    final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+    final JavaFileObject source = new SimpleJavaFileObject(URI.create("string:///Empty.java"), JavaFileObject.Kind.SOURCE) {
+      @Override
+      public CharSequence getCharContent(final boolean ignoreEncodingErrors) {
+        return "class Empty {}";
+      }
+    };
+    final CheckProcessor processor = new CheckProcessor(check);
+    final List<String> options = Arrays.asList("-proc:only", "-classpath", System.getProperty("java.class.path"));
+    final JavaCompiler.CompilationTask task = compiler.getTask(null, null, null, options, null, Arrays.asList(source));
+    task.setProcessors(Arrays.asList(processor));
+    task.call();
+    if (processor.failure != null) {
+      if (processor.failure instanceof Error) {
+        throw (Error) processor.failure;
+      }
+      throw (RuntimeException) processor.failure;
+    }
+    assertThat(processor.ran, is(true));
+  }
+
+  @SupportedAnnotationTypes("*")
+  private static class CheckProcessor extends AbstractProcessor {
+    private final Check check;
+    private boolean ran;
+    private Throwable failure;
+
+    private CheckProcessor(final Check check) {
+      this.check = check;
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+      return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(final Set<? extends TypeElement> annotations, final RoundEnvironment roundEnv) {
+      if (!ran) {
+        ran = true;
+        try {
+          check.check(new ElementsTypeOracle(processingEnv));
+        } catch (final RuntimeException e) {
+          failure = e;
+        } catch (final Error e) {
+          failure = e;
+        }
+      }
+      return false;
+    }
+  }
+
+}
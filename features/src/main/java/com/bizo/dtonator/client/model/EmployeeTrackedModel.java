@@ -0,0 +1,16 @@
+package com.bizo.dtonator.client.model;
+
+import com.bizo.dtonator.dtos.EmployeeTrackedDto;
+
+public class EmployeeTrackedModel extends EmployeeTrackedModelCodegen {
+
+  public EmployeeTrackedModel(EmployeeTrackedDto dto) {
+    super(dto);
+    addRules();
+    merge(dto);
+  }
+
+  private void addRules() {
+  }
+
+}
@@ -0,0 +1,41 @@
+package com.bizo.dtonator.domain;
+
+public class Person implements HasId {
+
+  private Long id;
+  private String name;
+  private Person buddy;
+
+  public Person() {
+  }
+
+  public Person(final Long id, final String name) {
+    setId(id);
+    setName(name);
+  }
+
+  public Long getId() {
+    return id;
+  }
+
+  public void setId(Long id) {
+    this.id = id;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public void setName(final String name) {
+    this.name = name;
+  }
+
+  public Person getBuddy() {
+    return buddy;
+  }
+
+  public void setBuddy(final Person buddy) {
+    this.buddy = buddy;
+  }
+
+}
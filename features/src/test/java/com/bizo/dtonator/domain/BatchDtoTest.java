@@ -0,0 +1,60 @@
+package com.bizo.dtonator.domain;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.bizo.dtonator.dtos.EmployeeCompactDto;
+import com.bizo.dtonator.dtos.EmployeeCompactDtoBatch;
+import com.bizo.dtonator.dtos.EmployeeType;
+import com.bizo.dtonator.dtos.EmployeeWithTypeDto;
+import com.bizo.dtonator.dtos.EmployeeWithTypeDtoBatch;
+import com.bizo.dtonator.mapper.Mapper;
+
+public class BatchDtoTest {
+
+  private final Mapper mapper = new Mapper(new StubDomainLookup(), null, null, null, null, null);
+
+  @Test
+  public void testToDtoBatch() {
+    final List<Employee> employees = new ArrayList<Employee>();
+    for (int i = 0; i < 20; i++) {
+      employees.add(new Employee((long) i, i % 2 == 0 ? "even" : "odd"));
+    }
+    final EmployeeCompactDtoBatch batch = mapper.toEmployeeCompactDtoBatch(employees);
+    assertThat(batch.size(), is(20));
+    assertThat(batch.getId(19), is(19l));
+    assertThat(batch.getName(3), is("odd"));
+    assertThat(batch.row(4).getName(), is("even"));
+    assertThat(batch.rows().get(5).getId(), is(5l));
+    assertThat(batch.get(6), is(new EmployeeCompactDto(6l, "even", false)));
+  }
+
+  @Test
+  public void testNullsAndEnums() {
+    final EmployeeCompactDtoBatch compact = new EmployeeCompactDtoBatch(1);
+    compact.add(new EmployeeCompactDto(null, null, true));
+    compact.add(new EmployeeCompactDto(0l, "e", false));
+    assertThat(compact.getId(0), is(nullValue()));
+    assertThat(compact.getName(0), is(nullValue()));
+    assertThat(compact.getId(1), is(0l));
+
+    final EmployeeWithTypeDtoBatch withType = new EmployeeWithTypeDtoBatch();
+    withType.add(new EmployeeWithTypeDto("a", EmployeeType.SMALL));
+    withType.add(new EmployeeWithTypeDto("b", null));
+    assertThat(withType.getType(0), is(EmployeeType.SMALL));
+    assertThat(withType.getType(1), is(nullValue()));
+    assertThat(withType.toDtos().get(0).getName(), is("a"));
+  }
+
+  @Test(expected = IndexOutOfBoundsException.class)
+  public void testRowsAreChecked() {
+    new EmployeeWithTypeDtoBatch().getName(0);
+  }
+
+}
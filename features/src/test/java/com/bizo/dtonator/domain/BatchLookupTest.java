@@ -0,0 +1,97 @@
+package com.bizo.dtonator.domain;
+
+import static joist.util.Copy.list;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.bizo.dtonator.BatchDomainObjectLookup;
+import com.bizo.dtonator.dtos.EmployeeAccountDto;
+import com.bizo.dtonator.dtos.EmployeeWithAccountsDto;
+import com.bizo.dtonator.mapper.Mapper;
+
+public class BatchLookupTest {
+
+  private final CountingLookup lookup = new CountingLookup();
+  private final Mapper mapper = new Mapper(lookup, null, null, null, null, null);
+
+  @Test
+  public void testFromDtosLooksUpEachTypeOnce() {
+    final Employee e1 = store(new Employee(1l, "e1"));
+    final Employee e2 = store(new Employee(2l, "e2"));
+    final EmployeeAccount ea3 = store(new EmployeeAccount(3l, "ea3"));
+    final EmployeeAccount ea4 = store(new EmployeeAccount(4l, "ea4"));
+
+    final List<Employee> ees = mapper.fromEmployeeWithAccountsDtos(list( //
+      new EmployeeWithAccountsDto(1l, "e1", list(new EmployeeAccountDto(3l, null, "ea3"))),
+      new EmployeeWithAccountsDto(2l, "e2", list(new EmployeeAccountDto(4l, null, "ea4"), new EmployeeAccountDto(3l, null, "ea3")))));
+
+    assertThat(ees, contains(e1, e2));
+    assertThat(e2.getAccounts(), contains(ea4, ea3));
+    assertThat(lookup.batches, is(2));
+    assertThat(lookup.singles, is(0));
+  }
+
+  @Test
+  public void testFromDtoLooksUpTheGraphInOneBatch() {
+    final Employee e1 = store(new Employee(1l, "e1"));
+    final EmployeeAccount ea2 = store(new EmployeeAccount(2l, "ea2"));
+    final EmployeeAccount ea3 = store(new EmployeeAccount(3l, "ea3"));
+
+    final Employee ee = mapper.fromDto(new EmployeeWithAccountsDto(1l, "changed", list( //
+      new EmployeeAccountDto(2l, null, "ea2"),
+      new EmployeeAccountDto(3l, null, "ea3"))));
+
+    assertThat(ee, is(e1));
+    assertThat(ee.getName(), is("changed"));
+    assertThat(ee.getAccounts(), contains(ea2, ea3));
+    assertThat(lookup.batches, is(2));
+    assertThat(lookup.singles, is(0));
+  }
+
+  @Test
+  public void testToDtos() {
+    final List<EmployeeAccountDto> dtos = mapper.toEmployeeAccountDtos(list(new EmployeeAccount(1l, "ea1"), new EmployeeAccount(2l, "ea2")));
+    assertThat(dtos.size(), is(2));
+    assertThat(dtos.get(1).name, is("ea2"));
+  }
+
+  private <T> T store(final T instance) {
+    lookup.objects.put(instance.getClass() + "#" + idOf(instance), instance);
+    return instance;
+  }
+
+  private static Long idOf(final Object instance) {
+    return instance instanceof Employee ? ((Employee) instance).getId() : ((EmployeeAccount) instance).getId();
+  }
+
+  private static final class CountingLookup implements BatchDomainObjectLookup {
+    private final Map<String, Object> objects = new HashMap<String, Object>();
+    private int singles;
+    private int batches;
+
+    @Override
+    public <T> T lookup(final Class<T> type, final Long id) {
+      singles++;
+      return type.cast(objects.get(type + "#" + id));
+    }
+
+    @Override
+    public <T> Map<Long, T> lookupAll(final Class<T> type, final Collection<Long> ids) {
+      batches++;
+      final Map<Long, T> found = new HashMap<Long, T>();
+      for (final Long id : ids) {
+        found.put(id, type.cast(objects.get(type + "#" + id)));
+      }
+      return found;
+    }
+  }
+
+}
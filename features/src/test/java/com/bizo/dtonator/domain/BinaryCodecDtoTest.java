@@ -0,0 +1,91 @@
+package com.bizo.dtonator.domain;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.instanceOf;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+import com.bizo.dtonator.dtos.CodecAccountDto;
+import com.bizo.dtonator.dtos.CodecBlueHueAccountDto;
+import com.bizo.dtonator.dtos.CodecEmployeeDto;
+import com.bizo.dtonator.dtos.CodecEmployeeV2Dto;
+import com.bizo.dtonator.dtos.CodecRedAccountDto;
+import com.bizo.dtonator.dtos.EmployeeType;
+import com.bizo.dtonator.dtos.EmployeeWithCodecAccountsDto;
+
+public class BinaryCodecDtoTest {
+
+  @Test
+  public void testRoundTripWithSubclasses() throws IOException {
+    final EmployeeWithCodecAccountsDto dto = newDto();
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    dto.writeTo(new DataOutputStream(bytes));
+
+    final EmployeeWithCodecAccountsDto read = EmployeeWithCodecAccountsDto.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    assertThat(read.id, is(1L));
+    assertThat(read.name, is(nullValue()));
+    assertThat(read.accounts.size(), is(3));
+    assertThat(read.accounts.get(0), is(instanceOf(CodecRedAccountDto.class)));
+    assertThat(((CodecRedAccountDto) read.accounts.get(0)).foo, is(true));
+    assertThat(read.accounts.get(1), is(nullValue()));
+    final CodecBlueHueAccountDto blueHue = (CodecBlueHueAccountDto) read.accounts.get(2);
+    assertThat(blueHue.name, is("three"));
+    assertThat(blueHue.zaz, is(false));
+  }
+
+  @Test
+  public void testExternalizable() throws Exception {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    final ObjectOutputStream out = new ObjectOutputStream(bytes);
+    out.writeObject(newDto());
+    out.close();
+
+    final ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+    final EmployeeWithCodecAccountsDto read = (EmployeeWithCodecAccountsDto) in.readObject();
+    assertThat(read.accounts.get(2), is(instanceOf(CodecBlueHueAccountDto.class)));
+  }
+
+  @Test
+  public void testReadAnotherVersion() throws IOException {
+    final CodecEmployeeDto v1 = new CodecEmployeeDto();
+    v1.id = 1L;
+    v1.name = "a";
+    v1.working = true;
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    v1.writeTo(new DataOutputStream(bytes));
+    // then the newer version reads the properties they share
+    final CodecEmployeeV2Dto v2 = CodecEmployeeV2Dto.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    assertThat(v2.id, is(1L));
+    assertThat(v2.name, is("a"));
+    assertThat(v2.type, is(nullValue()));
+
+    // and the older version reads the newer version's record
+    v2.type = EmployeeType.LARGE;
+    bytes.reset();
+    v2.writeTo(new DataOutputStream(bytes));
+    final CodecEmployeeDto read = CodecEmployeeDto.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    assertThat(read.id, is(1L));
+    assertThat(read.name, is("a"));
+    assertThat(read.working, is(false));
+  }
+
+  private static EmployeeWithCodecAccountsDto newDto() {
+    final EmployeeWithCodecAccountsDto dto = new EmployeeWithCodecAccountsDto(1L, null, new ArrayList<CodecAccountDto>());
+    dto.accounts.add(new CodecRedAccountDto(2L, "two", true));
+    dto.accounts.add(null);
+    dto.accounts.add(new CodecBlueHueAccountDto(3L, "three", true, false));
+    return dto;
+  }
+
+}
@@ -0,0 +1,74 @@
+package com.bizo.dtonator.domain;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.instanceOf;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.bizo.dtonator.dtos.AccountDto;
+import com.bizo.dtonator.dtos.AccountDtoView;
+import com.bizo.dtonator.dtos.BlueHueAccountDto;
+import com.bizo.dtonator.dtos.BlueHueAccountDtoView;
+import com.bizo.dtonator.dtos.EmployeeCompactDto;
+import com.bizo.dtonator.dtos.EmployeeCompactDtoView;
+import com.bizo.dtonator.dtos.EmployeeType;
+import com.bizo.dtonator.dtos.EmployeeWithTypeDto;
+import com.bizo.dtonator.dtos.EmployeeWithTypeDtoView;
+import com.bizo.dtonator.dtos.EmployeeWithTypedAccountsDto;
+import com.bizo.dtonator.dtos.EmployeeWithTypedAccountsDtoView;
+import com.bizo.dtonator.dtos.RedAccountDto;
+import com.bizo.dtonator.dtos.RedAccountDtoView;
+
+public class BufferViewDtoTest {
+
+  @Test
+  public void testNestedSubclassesAndNulls() {
+    final EmployeeWithTypedAccountsDto dto = new EmployeeWithTypedAccountsDto(1L, null, new ArrayList<AccountDto>());
+    dto.accounts.add(new RedAccountDto(2L, "two", true));
+    dto.accounts.add(null);
+    dto.accounts.add(new BlueHueAccountDto(3L, "three", true, false));
+
+    final EmployeeWithTypedAccountsDtoView view = EmployeeWithTypedAccountsDtoView.wrap(EmployeeWithTypedAccountsDtoView.encode(dto));
+    assertThat(view.getId(), is(1L));
+    assertThat(view.getName(), is(nullValue()));
+    final List<AccountDtoView> accounts = view.getAccounts();
+    assertThat(accounts.size(), is(3));
+    assertThat(accounts.get(0), is(instanceOf(RedAccountDtoView.class)));
+    assertThat(accounts.get(0).getName(), is("two"));
+    assertThat(((RedAccountDtoView) accounts.get(0)).getFoo(), is(true));
+    assertThat(accounts.get(1), is(nullValue()));
+    assertThat(((BlueHueAccountDtoView) accounts.get(2)).getZaz(), is(false));
+  }
+
+  @Test
+  public void testDirectBuffersAndLists() {
+    final List<AccountDto> dtos = new ArrayList<AccountDto>();
+    dtos.add(new RedAccountDto(1L, "one", false));
+    dtos.add(new BlueHueAccountDto(2L, "two", true, true));
+    final ByteBuffer heap = AccountDtoView.encodeList(dtos);
+    final ByteBuffer direct = ByteBuffer.allocateDirect(heap.remaining());
+    direct.put(heap).flip();
+
+    final List<AccountDtoView> views = AccountDtoView.wrapList(direct);
+    assertThat(views.get(1).getId(), is(2L));
+    assertThat(views.get(1).getName(), is("two"));
+  }
+
+  @Test
+  public void testPrimitiveFieldsAndEnums() {
+    final EmployeeCompactDtoView compact = EmployeeCompactDtoView.wrap(EmployeeCompactDtoView.encode(new EmployeeCompactDto(null, "e", true)));
+    assertThat(compact.getId(), is(nullValue()));
+    assertThat(compact.getName(), is("e"));
+    assertThat(compact.getWorking(), is(true));
+
+    final EmployeeWithTypeDtoView withType = EmployeeWithTypeDtoView.wrap(EmployeeWithTypeDtoView.encode(new EmployeeWithTypeDto("a", EmployeeType.SMALL)));
+    assertThat(withType.getType(), is(EmployeeType.SMALL));
+  }
+
+}
@@ -0,0 +1,54 @@
+package com.bizo.dtonator.domain;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import org.junit.Test;
+
+import com.bizo.dtonator.dtos.BlueHueAccountDto;
+import com.bizo.dtonator.dtos.BlueHueAccountDto_CustomFieldSerializer;
+import com.bizo.dtonator.dtos.EmployeeCompactDto;
+import com.bizo.dtonator.dtos.EmployeeCompactDto_CustomFieldSerializer;
+import com.bizo.dtonator.dtos.EmployeeType;
+import com.bizo.dtonator.dtos.EmployeeWithTypeDto;
+import com.bizo.dtonator.dtos.EmployeeWithTypeDto_CustomFieldSerializer;
+
+public class CustomFieldSerializerTest {
+
+  private final StubSerializationStream s = new StubSerializationStream();
+
+  @Test
+  public void testSubclassesWriteTheirBaseFieldsFirst() throws Exception {
+    BlueHueAccountDto_CustomFieldSerializer.serialize(s, new BlueHueAccountDto(1L, "one", true, false));
+    final BlueHueAccountDto read = BlueHueAccountDto_CustomFieldSerializer.instantiate(s);
+    new BlueHueAccountDto_CustomFieldSerializer().deserializeInstance(s, read);
+    assertThat(read.id, is(1L));
+    assertThat(read.name, is("one"));
+    assertThat(read.bar, is(true));
+    assertThat(read.zaz, is(false));
+    assertThat(s.size(), is(0));
+  }
+
+  @Test
+  public void testNullsAndPrimitiveFields() throws Exception {
+    EmployeeCompactDto_CustomFieldSerializer.serialize(s, new EmployeeCompactDto(null, null, true));
+    final EmployeeCompactDto read = EmployeeCompactDto_CustomFieldSerializer.instantiate(s);
+    EmployeeCompactDto_CustomFieldSerializer.deserialize(s, read);
+    assertThat(read, is(new EmployeeCompactDto(null, null, true)));
+  }
+
+  @Test
+  public void testEnums() throws Exception {
+    EmployeeWithTypeDto_CustomFieldSerializer.serialize(s, new EmployeeWithTypeDto("a", EmployeeType.SMALL));
+    EmployeeWithTypeDto_CustomFieldSerializer.serialize(s, new EmployeeWithTypeDto("b", null));
+    final EmployeeWithTypeDto small = EmployeeWithTypeDto_CustomFieldSerializer.instantiate(s);
+    EmployeeWithTypeDto_CustomFieldSerializer.deserialize(s, small);
+    final EmployeeWithTypeDto none = EmployeeWithTypeDto_CustomFieldSerializer.instantiate(s);
+    EmployeeWithTypeDto_CustomFieldSerializer.deserialize(s, none);
+    assertThat(small.type, is(EmployeeType.SMALL));
+    assertThat(none.name, is("b"));
+    assertThat(none.type, is(nullValue()));
+  }
+
+}
@@ -0,0 +1,76 @@
+package com.bizo.dtonator.domain;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.bizo.dtonator.client.model.EmployeeTrackedModel;
+import com.bizo.dtonator.dtos.EmployeeTrackedDto;
+import com.bizo.dtonator.dtos.EmployeeTrackedDto_CustomFieldSerializer;
+import com.bizo.dtonator.mapper.Mapper;
+
+public class DirtyTrackingDtoTest {
+
+  private final Mapper mapper = new Mapper(new StubDomainLookup(), null, null, null, null, null);
+
+  @Test
+  public void testFromDtoOnlyAppliesChangedProperties() {
+    final Employee e = new Employee(1l, "e");
+    final List<EmployeeAccount> accounts = new ArrayList<EmployeeAccount>();
+    e.setAccounts(accounts);
+    final EmployeeTrackedDto dto = mapper.toEmployeeTrackedDto(e);
+    // when the entity changes after the dto was made
+    e.setWorking(true);
+    e.setType(EmployeeType.LARGE);
+    // and only the name is changed on the dto
+    dto.setName("e2");
+    mapper.fromDto(e, dto);
+    // then only the name is applied
+    assertThat(e.getName(), is("e2"));
+    assertThat(e.isWorking(), is(true));
+    assertThat(e.getType(), is(EmployeeType.LARGE));
+    assertThat(e.getAccounts(), is(sameInstance(accounts)));
+  }
+
+  @Test
+  public void testTessellModelEditsAreApplied() {
+    final Employee e = new Employee(1l, "e");
+    final EmployeeTrackedDto dto = mapper.toEmployeeTrackedDto(e);
+    final EmployeeTrackedModel model = new EmployeeTrackedModel(dto);
+    model.name.set("e2");
+    model.working.set(true);
+    mapper.fromDto(e, dto);
+    assertThat(e.getName(), is("e2"));
+    assertThat(e.isWorking(), is(true));
+  }
+
+  @Test
+  public void testNewDtosApplyEverything() {
+    final Employee e = new Employee(1l, "e");
+    e.setWorking(true);
+    mapper.fromDto(e, new EmployeeTrackedDto(1l, "e2", false, null, null));
+    assertThat(e.getName(), is("e2"));
+    assertThat(e.isWorking(), is(false));
+  }
+
+  @Test
+  public void testCustomFieldSerializerKeepsTheChanges() throws Exception {
+    final EmployeeTrackedDto dto = mapper.toEmployeeTrackedDto(new Employee(1l, "e"));
+    dto.setWorking(true);
+    final StubSerializationStream s = new StubSerializationStream();
+    EmployeeTrackedDto_CustomFieldSerializer.serialize(s, dto);
+    final EmployeeTrackedDto read = EmployeeTrackedDto_CustomFieldSerializer.instantiate(s);
+    EmployeeTrackedDto_CustomFieldSerializer.deserialize(s, read);
+
+    final Employee e = new Employee(1l, "other");
+    mapper.fromDto(e, read);
+    assertThat(e.isWorking(), is(true));
+    assertThat(e.getName(), is("other"));
+  }
+
+}
@@ -0,0 +1,46 @@
+package com.bizo.dtonator.domain;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import org.junit.Test;
+
+import com.bizo.dtonator.dtos.EmployeeCompactDto;
+import com.bizo.dtonator.mapper.Mapper;
+
+public class EmployeeCompactDtoTest {
+
+  private final StubDomainLookup lookup = new StubDomainLookup();
+  private final Mapper mapper = new Mapper(lookup, null, null, null, null, null);
+
+  @Test
+  public void testNullIsNotZero() {
+    final EmployeeCompactDto dto = new EmployeeCompactDto(null, "e", true);
+    assertThat(dto.getId(), is(nullValue()));
+    assertThat(dto.equals(new EmployeeCompactDto(0l, "e", true)), is(false));
+    assertThat(dto.toString(), is("EmployeeCompactDto[null, e, true]"));
+    dto.setId(0l);
+    assertThat(dto.getId(), is(0l));
+    assertThat(dto.equals(new EmployeeCompactDto(0l, "e", true)), is(true));
+    assertThat(dto.hashCode() == new EmployeeCompactDto(0l, "e", true).hashCode(), is(true));
+  }
+
+  @Test
+  public void testCopyKeepsNulls() {
+    final EmployeeCompactDto dto = new EmployeeCompactDto(null, "e", true);
+    assertThat(dto.copy().getId(), is(nullValue()));
+    assertThat(dto.copy(), is(dto));
+  }
+
+  @Test
+  public void testToAndFromDto() {
+    final Employee e = new Employee(1l, "e");
+    final EmployeeCompactDto dto = mapper.toEmployeeCompactDto(e);
+    assertThat(dto.getId(), is(1l));
+    lookup.store(1l, e);
+    dto.name = "e2";
+    assertThat(mapper.fromDto(dto).getName(), is("e2"));
+  }
+
+}
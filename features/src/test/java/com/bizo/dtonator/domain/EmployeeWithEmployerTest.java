@@ -6,6 +6,9 @@ import static org.hamcrest.CoreMatchers.nullValue;
 import static org.hamcrest.CoreMatchers.sameInstance;
 import static org.junit.Assert.assertThat;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.junit.Test;
 
 import com.bizo.dtonator.dtos.EmployeeWithEmployerDto;
@@ -40,6 +43,19 @@ public class EmployeeWithEmployerTest {
     assertThat(dto.employer, is(nullValue()));
   }
 
+  @Test
+  public void testToDtosLazy() {
+    final List<Employer> ers = new ArrayList<Employer>();
+    ers.add(new Employer(1l, "er1"));
+    ers.add(new Employer(2l, "er2"));
+
+    final List<EmployerDto> dtos = mapper.toEmployerDtosLazy(ers);
+    assertThat(dtos.size(), is(2));
+    // the employer is mapped when it's read, so sees later changes
+    ers.get(1).setName("er2 changed");
+    assertThat(dtos.get(1).name, is("er2 changed"));
+  }
+
   @Test
   public void testFromDto() {
     // store a reference to er1 for the incoming dto to refer to
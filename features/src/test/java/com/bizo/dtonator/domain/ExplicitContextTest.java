@@ -0,0 +1,50 @@
+package com.bizo.dtonator.domain;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+import com.bizo.dtonator.DomainObjectContext;
+import com.bizo.dtonator.modes.dtos.EmployeeWithEmployerDto;
+import com.bizo.dtonator.modes.dtos.EmployerDto;
+import com.bizo.dtonator.modes.mapper.Mapper;
+
+public class ExplicitContextTest {
+
+  private final StubDomainLookup lookup = new StubDomainLookup();
+  private final Mapper mapper = new Mapper(lookup);
+
+  @Test
+  public void testContextIsSharedAcrossCalls() {
+    // two new employees with the same new employer
+    final EmployerDto er = new EmployerDto(null, "er");
+    final DomainObjectContext c = new DomainObjectContext();
+    final Employee e1 = mapper.fromDto(new EmployeeWithEmployerDto(null, "e1", er), c);
+    final Employee e2 = mapper.fromDto(new EmployeeWithEmployerDto(null, "e2", er), c);
+    // then they get the same new employer
+    assertThat(e2.getEmployer(), is(sameInstance(e1.getEmployer())));
+    assertThat(e1.getEmployer().getName(), is("er"));
+  }
+
+  @Test
+  public void testResetForgetsNewObjects() {
+    final EmployerDto er = new EmployerDto(null, "er");
+    final DomainObjectContext c = new DomainObjectContext();
+    final Employee e1 = mapper.fromDto(new EmployeeWithEmployerDto(null, "e1", er), c);
+    c.reset();
+    final Employee e2 = mapper.fromDto(new EmployeeWithEmployerDto(null, "e2", er), c);
+    assertThat(e2.getEmployer(), is(not(sameInstance(e1.getEmployer()))));
+  }
+
+  @Test
+  public void testWrapperUsesItsOwnContext() {
+    final EmployerDto er = new EmployerDto(null, "er");
+    final Employee e1 = mapper.fromDto(new EmployeeWithEmployerDto(null, "e1", er));
+    final Employee e2 = mapper.fromDto(new EmployeeWithEmployerDto(null, "e2", er));
+    assertThat(e2.getEmployer(), is(not(sameInstance(e1.getEmployer()))));
+  }
+
+}
@@ -0,0 +1,72 @@
+package com.bizo.dtonator.domain;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.bizo.dtonator.modes.dtos.PersonDto;
+import com.bizo.dtonator.modes.mapper.Mapper;
+
+public class IdentityToDtoTest {
+
+  private final Mapper mapper = new Mapper(new StubDomainLookup());
+
+  @Test
+  public void testCycleMapsToTheSameInstance() {
+    final Person a = new Person(1l, "a");
+    final Person b = new Person(2l, "b");
+    a.setBuddy(b);
+    b.setBuddy(a);
+
+    final PersonDto dto = mapper.toPersonDto(a);
+    assertThat(dto.buddy.name, is("b"));
+    assertThat(dto.buddy.buddy, is(sameInstance(dto)));
+  }
+
+  @Test
+  public void testCycleToStringHasTheNestedIds() {
+    final Person a = new Person(1l, "a");
+    final Person b = new Person(2l, "b");
+    a.setBuddy(b);
+    b.setBuddy(a);
+
+    final PersonDto dto = mapper.toPersonDto(a);
+    assertThat(dto.toString(), is("PersonDto[1, a, 2]"));
+    assertThat(dto.copy().buddy, is(sameInstance(dto.buddy)));
+  }
+
+  @Test
+  public void testSelfReference() {
+    final Person a = new Person(1l, "a");
+    a.setBuddy(a);
+
+    final PersonDto dto = mapper.toPersonDto(a);
+    assertThat(dto.buddy, is(sameInstance(dto)));
+  }
+
+  @Test
+  public void testListSharesEntities() {
+    final Person a = new Person(1l, "a");
+    final Person b = new Person(2l, "b");
+    a.setBuddy(b);
+    final List<Person> people = new ArrayList<Person>();
+    people.add(a);
+    people.add(b);
+
+    final List<PersonDto> dtos = mapper.toPersonDtos(people);
+    assertThat(dtos.get(0).buddy, is(sameInstance(dtos.get(1))));
+  }
+
+  @Test
+  public void testSeparateCallsMakeNewDtos() {
+    final Person a = new Person(1l, "a");
+    assertThat(mapper.toPersonDto(a), is(not(sameInstance(mapper.toPersonDto(a)))));
+  }
+
+}
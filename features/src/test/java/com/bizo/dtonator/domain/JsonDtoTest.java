@@ -0,0 +1,107 @@
+package com.bizo.dtonator.domain;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.instanceOf;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.bizo.dtonator.JsonReader;
+import com.bizo.dtonator.JsonValueTypes;
+import com.bizo.dtonator.JsonWriter;
+import com.bizo.dtonator.dtos.AccountDto;
+import com.bizo.dtonator.dtos.AccountDtoJson;
+import com.bizo.dtonator.dtos.BlueHueAccountDto;
+import com.bizo.dtonator.dtos.Dollars;
+import com.bizo.dtonator.dtos.EmployeeDto;
+import com.bizo.dtonator.dtos.EmployeeDtoJson;
+import com.bizo.dtonator.dtos.EmployeeType;
+import com.bizo.dtonator.dtos.EmployeeWithTypedAccountsDto;
+import com.bizo.dtonator.dtos.EmployeeWithTypedAccountsDtoJson;
+import com.bizo.dtonator.dtos.InternDto;
+import com.bizo.dtonator.dtos.RedAccountDto;
+
+public class JsonDtoTest {
+
+  @BeforeClass
+  public static void registerDollars() {
+    JsonValueTypes.register(Dollars.class, new JsonValueTypes.Adapter<Dollars>() {
+      @Override
+      public void write(final JsonWriter w, final Dollars value) throws IOException {
+        w.value(value.cents);
+      }
+
+      @Override
+      public Dollars read(final JsonReader r) throws IOException {
+        return new Dollars(r.nextInt());
+      }
+    });
+  }
+
+  @Test
+  public void testRoundTripWithValueTypesAndEnums() throws IOException {
+    final StringWriter out = new StringWriter();
+    EmployeeDtoJson.write(out, new EmployeeDto(1l, "e \"quoted\"", new Dollars(100), EmployeeType.LARGE, true));
+    assertThat(out.toString(), containsString("\"@type\":\"EmployeeDto\""));
+    assertThat(out.toString(), containsString("\"salary\":100"));
+    assertThat(out.toString(), containsString("\"type\":\"LARGE\""));
+
+    final EmployeeDto read = EmployeeDtoJson.read(new StringReader(out.toString()));
+    assertThat(read.id, is(1l));
+    assertThat(read.name, is("e \"quoted\""));
+    assertThat(read.salary.cents, is(100));
+    assertThat(read.type, is(EmployeeType.LARGE));
+    assertThat(read.working, is(true));
+  }
+
+  @Test
+  public void testReadSubclassByType() throws IOException {
+    final EmployeeDto read = EmployeeDtoJson.read(new StringReader("{\"@type\":\"InternDto\",\"name\":\"i\",\"unknown\":[1,{}]}"));
+    assertThat(read, is(instanceOf(InternDto.class)));
+    assertThat(read.name, is("i"));
+    assertThat(read.salary, is(nullValue()));
+  }
+
+  @Test
+  public void testRoundTripNestedSubclassesAndNulls() throws IOException {
+    final EmployeeWithTypedAccountsDto dto = new EmployeeWithTypedAccountsDto(1L, null, new ArrayList<AccountDto>());
+    dto.accounts.add(new RedAccountDto(2L, "two", true));
+    dto.accounts.add(null);
+    dto.accounts.add(new BlueHueAccountDto(3L, "three", true, false));
+    final StringWriter out = new StringWriter();
+    EmployeeWithTypedAccountsDtoJson.write(out, dto);
+
+    final EmployeeWithTypedAccountsDto read = EmployeeWithTypedAccountsDtoJson.read(new StringReader(out.toString()));
+    assertThat(read.id, is(1L));
+    assertThat(read.name, is(nullValue()));
+    assertThat(read.accounts.size(), is(3));
+    assertThat(((RedAccountDto) read.accounts.get(0)).foo, is(true));
+    assertThat(read.accounts.get(1), is(nullValue()));
+    assertThat(((BlueHueAccountDto) read.accounts.get(2)).zaz, is(false));
+  }
+
+  @Test
+  public void testStreamLists() throws IOException {
+    final List<AccountDto> accounts = new ArrayList<AccountDto>();
+    for (long i = 0; i < 1000; i++) {
+      accounts.add(new RedAccountDto(i, "account " + i, i % 2 == 0));
+    }
+    final StringWriter out = new StringWriter();
+    AccountDtoJson.writeList(out, accounts);
+
+    final List<AccountDto> read = AccountDtoJson.readList(new StringReader(out.toString()));
+    assertThat(read.size(), is(1000));
+    assertThat(read.get(999).name, is("account 999"));
+    assertThat(((RedAccountDto) read.get(998)).foo, is(true));
+  }
+
+}
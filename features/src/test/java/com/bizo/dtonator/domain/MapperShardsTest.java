@@ -0,0 +1,43 @@
+package com.bizo.dtonator.domain;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.lang.reflect.Modifier;
+
+import org.junit.Test;
+
+import com.bizo.dtonator.modes.dtos.EmployeeWithEmployerDto;
+import com.bizo.dtonator.modes.mapper.Mapper;
+
+public class MapperShardsTest {
+
+  private final StubDomainLookup lookup = new StubDomainLookup();
+  private final Mapper mapper = new Mapper(lookup);
+
+  @Test
+  public void testRoundTripThroughTheShards() {
+    final Employer er = new Employer(1l, "er");
+    lookup.store(1l, er);
+    final Employee e = new Employee(2l, "e");
+    e.setEmployer(er);
+    lookup.store(2l, e);
+
+    final EmployeeWithEmployerDto dto = mapper.toEmployeeWithEmployerDto(e);
+    assertThat(dto.employer.name, is("er"));
+    dto.name = "e changed";
+    dto.employer.name = "er changed";
+
+    assertThat(mapper.fromDto(dto), is(sameInstance(e)));
+    assertThat(e.getName(), is("e changed"));
+    assertThat(e.getEmployer().getName(), is("er changed"));
+  }
+
+  @Test
+  public void testShardsArePackagePrivate() throws Exception {
+    final Class<?> shard = Class.forName("com.bizo.dtonator.modes.mapper.EmployeeWithEmployerDtoMapperShard");
+    assertThat(Modifier.isPublic(shard.getModifiers()), is(false));
+  }
+
+}
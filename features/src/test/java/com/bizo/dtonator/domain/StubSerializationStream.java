@@ -0,0 +1,118 @@
+package com.bizo.dtonator.domain;
+
+import java.util.LinkedList;
+
+import com.google.gwt.user.client.rpc.SerializationException;
+import com.google.gwt.user.client.rpc.SerializationStreamReader;
+import com.google.gwt.user.client.rpc.SerializationStreamWriter;
+
+/** Queues the written values, and reads them back in the same order, for testing custom field serializers. */
+public class StubSerializationStream implements SerializationStreamWriter, SerializationStreamReader {
+
+  private final LinkedList<Object> values = new LinkedList<Object>();
+
+  public int size() {
+    return values.size();
+  }
+
+  @Override
+  public void writeBoolean(final boolean value) {
+    values.add(value);
+  }
+
+  @Override
+  public void writeByte(final byte value) {
+    values.add(value);
+  }
+
+  @Override
+  public void writeChar(final char value) {
+    values.add(value);
+  }
+
+  @Override
+  public void writeDouble(final double value) {
+    values.add(value);
+  }
+
+  @Override
+  public void writeFloat(final float value) {
+    values.add(value);
+  }
+
+  @Override
+  public void writeInt(final int value) {
+    values.add(value);
+  }
+
+  @Override
+  public void writeLong(final long value) {
+    values.add(value);
+  }
+
+  @Override
+  public void writeObject(final Object value) throws SerializationException {
+    values.add(value);
+  }
+
+  @Override
+  public void writeShort(final short value) {
+    values.add(value);
+  }
+
+  @Override
+  public void writeString(final String value) {
+    values.add(value);
+  }
+
+  @Override
+  public boolean readBoolean() {
+    return (Boolean) values.removeFirst();
+  }
+
+  @Override
+  public byte readByte() {
+    return (Byte) values.removeFirst();
+  }
+
+  @Override
+  public char readChar() {
+    return (Character) values.removeFirst();
+  }
+
+  @Override
+  public double readDouble() {
+    return (Double) values.removeFirst();
+  }
+
+  @Override
+  public float readFloat() {
+    return (Float) values.removeFirst();
+  }
+
+  @Override
+  public int readInt() {
+    return (Integer) values.removeFirst();
+  }
+
+  @Override
+  public long readLong() {
+    return (Long) values.removeFirst();
+  }
+
+  @Override
+  public Object readObject() throws SerializationException {
+    return values.removeFirst();
+  }
+
+  @Override
+  public short readShort() {
+    return (Short) values.removeFirst();
+  }
+
+  @Override
+  public String readString() {
+    return (String) values.removeFirst();
+  }
+
+}